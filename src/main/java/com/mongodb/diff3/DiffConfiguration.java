@@ -1,7 +1,12 @@
 package com.mongodb.diff3;
 
 import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.mongodb.shardsync.BaseConfiguration;
 
 public class DiffConfiguration extends BaseConfiguration {
@@ -25,17 +30,42 @@ public class DiffConfiguration extends BaseConfiguration {
 	private String statusDbCollName;
 	private final String[] knownModes = new String[]{PARTITION_MODE, RECHECK_MODE, SHARD_MODE};
 	private DiffSummaryClient diffSummaryClient;
+	private ThreadPoolExecutor loaderPool;
 	private boolean bypassMongos;
+	private boolean streamingCompare;
+	private int statusBatchSize;
+	private long statusFlushIntervalMs = 1000;
+	private boolean resume = true;
+	private long chunkSplitBytes;
+	private String catalogCacheFile;
+	private long catalogCacheMaxAgeSeconds = 3600;
 	
 	public DiffSummaryClient getDiffSummaryClient() {
 		if (diffSummaryClient == null) {
 			diffSummaryClient = new DiffSummaryClient(getStatusDbUri(), getStatusDbName(),
 	                getStatusDbCollName());
+			if (statusBatchSize > 0) {
+				diffSummaryClient.enableBatching(statusBatchSize, statusFlushIntervalMs);
+			}
 		}
 		return diffSummaryClient;
 		
 	}
 
+	/**
+	 * Pool shared by the diff tasks for loading and prefetching the source side while the
+	 * task thread reads the dest side. A task has at most one job on it at a time, so it is
+	 * sized like the worker pools, one loader thread per task thread.
+	 */
+	public synchronized ExecutorService getLoaderPool() {
+		if (loaderPool == null) {
+			loaderPool = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+					new ThreadFactoryBuilder().setNameFormat("DiffLoader-%d").setDaemon(true).build());
+			loaderPool.allowCoreThreadTimeOut(true);
+		}
+		return loaderPool;
+	}
+
 	public String getMode() {
 		return mode;
 	}
@@ -151,4 +181,61 @@ public class DiffConfiguration extends BaseConfiguration {
 	public void setBypassMongos(boolean bypassMongos) {
 		this.bypassMongos = bypassMongos;
 	}
+
+	public boolean isStreamingCompare() {
+		return streamingCompare;
+	}
+
+	public void setStreamingCompare(boolean streamingCompare) {
+		this.streamingCompare = streamingCompare;
+	}
+
+	public int getStatusBatchSize() {
+		return statusBatchSize;
+	}
+
+	public void setStatusBatchSize(int statusBatchSize) {
+		this.statusBatchSize = statusBatchSize;
+	}
+
+	public long getStatusFlushIntervalMs() {
+		return statusFlushIntervalMs;
+	}
+
+	public void setStatusFlushIntervalMs(long statusFlushIntervalMs) {
+		this.statusFlushIntervalMs = statusFlushIntervalMs;
+	}
+
+	public boolean isResume() {
+		return resume;
+	}
+
+	public void setResume(boolean resume) {
+		this.resume = resume;
+	}
+
+	public long getChunkSplitBytes() {
+		return chunkSplitBytes;
+	}
+
+	public void setChunkSplitBytes(long chunkSplitBytes) {
+		this.chunkSplitBytes = chunkSplitBytes;
+	}
+
+	public String getCatalogCacheFile() {
+		return catalogCacheFile;
+	}
+
+	public void setCatalogCacheFile(String catalogCacheFile) {
+		this.catalogCacheFile = catalogCacheFile;
+	}
+
+	public long getCatalogCacheMaxAgeSeconds() {
+		return catalogCacheMaxAgeSeconds;
+	}
+
+	public void setCatalogCacheMaxAgeSeconds(long catalogCacheMaxAgeSeconds) {
+		this.catalogCacheMaxAgeSeconds = catalogCacheMaxAgeSeconds;
+	}
+
 }
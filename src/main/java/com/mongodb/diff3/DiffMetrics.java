@@ -0,0 +1,187 @@
+package com.mongodb.diff3;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mongodb.model.Namespace;
+
+/**
+ * Metrics for a diff3 run, backed by the counters in DiffSummary plus latency histograms
+ * recorded by DiffTask and the worker pools registered by the diff utils.
+ */
+public class DiffMetrics implements DiffMetricsMXBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(DiffMetrics.class);
+
+    public static final String OBJECT_NAME = "com.mongodb.diff3:type=DiffMetrics";
+
+    private static final long RATE_WINDOW_MS = 10000;
+
+    private final DiffSummary summary;
+
+    private final LatencyHistogram loadLatency = new LatencyHistogram();
+    private final LatencyHistogram compareLatency = new LatencyHistogram();
+    private final LatencyHistogram taskLatency = new LatencyHistogram();
+
+    private final Map<String, LongAdder> namespaceProcessedDocs = new ConcurrentHashMap<>();
+    private final Map<String, ThreadPoolExecutor> pools = new ConcurrentHashMap<>();
+
+    // two most recent samples of (time, docs, bytes), rates are taken between them
+    private long[] rateSample;
+    private long[] previousRateSample;
+
+    DiffMetrics(DiffSummary summary) {
+        this.summary = summary;
+        this.rateSample = sample();
+        this.previousRateSample = rateSample;
+    }
+
+    /**
+     * Publish these metrics over JMX, replacing those of any earlier run in this JVM.
+     */
+    public void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (JMException e) {
+            logger.warn("Unable to register diff metrics MBean", e);
+        }
+    }
+
+    public void registerPool(String name, ThreadPoolExecutor pool) {
+        pools.put(name, pool);
+    }
+
+    public void recordLoad(long millis) {
+        loadLatency.record(millis);
+    }
+
+    public void recordCompare(long millis) {
+        compareLatency.record(millis);
+    }
+
+    public void recordTask(long millis) {
+        taskLatency.record(millis);
+    }
+
+    void addNamespaceProcessedDocs(Namespace ns, long docs) {
+        namespaceProcessedDocs.computeIfAbsent(ns.getNamespace(), k -> new LongAdder()).add(docs);
+    }
+
+    @Override
+    public long getProcessedChunks() {
+        return summary.getTotalProcessedChunks().sum();
+    }
+
+    @Override
+    public int getTotalChunks() {
+        return summary.getTotalChunks();
+    }
+
+    @Override
+    public long getProcessedDocs() {
+        return summary.getTotalProcessedDocs().sum();
+    }
+
+    @Override
+    public long getProcessedBytes() {
+        return summary.getTotalProcessedSize().sum();
+    }
+
+    @Override
+    public long getFailedDocs() {
+        return summary.getTotalFailedDocs().sum();
+    }
+
+    @Override
+    public long getSourceOnlyDocs() {
+        return summary.getTotalSourceOnly().sum();
+    }
+
+    @Override
+    public long getDestOnlyDocs() {
+        return summary.getTotalDestOnly().sum();
+    }
+
+    @Override
+    public double getDocsPerSecond() {
+        return rate(1);
+    }
+
+    @Override
+    public double getBytesPerSecond() {
+        return rate(2);
+    }
+
+    private synchronized double rate(int field) {
+        long now = System.currentTimeMillis();
+        if (now - rateSample[0] >= RATE_WINDOW_MS) {
+            previousRateSample = rateSample;
+            rateSample = sample();
+        }
+        long[] current = sample();
+        long elapsed = current[0] - previousRateSample[0];
+        return elapsed <= 0 ? 0 : (current[field] - previousRateSample[field]) * 1000.0 / elapsed;
+    }
+
+    private long[] sample() {
+        return new long[]{System.currentTimeMillis(), summary.getTotalProcessedDocs().sum(),
+                summary.getTotalProcessedSize().sum()};
+    }
+
+    @Override
+    public Map<String, Long> getNamespaceProcessedDocs() {
+        Map<String, Long> output = new TreeMap<>();
+        namespaceProcessedDocs.forEach((ns, docs) -> output.put(ns, docs.sum()));
+        return output;
+    }
+
+    @Override
+    public Map<String, Long> getLoadLatencyMs() {
+        return loadLatency.getSummary();
+    }
+
+    @Override
+    public Map<String, Long> getCompareLatencyMs() {
+        return compareLatency.getSummary();
+    }
+
+    @Override
+    public Map<String, Long> getTaskLatencyMs() {
+        return taskLatency.getSummary();
+    }
+
+    @Override
+    public int getRetryingChunks() {
+        return summary.getRetryingChunks();
+    }
+
+    @Override
+    public Map<String, Integer> getPoolActiveThreads() {
+        Map<String, Integer> output = new TreeMap<>();
+        pools.forEach((name, pool) -> output.put(name, pool.getActiveCount()));
+        return output;
+    }
+
+    @Override
+    public Map<String, Integer> getPoolQueuedTasks() {
+        Map<String, Integer> output = new TreeMap<>();
+        pools.forEach((name, pool) -> output.put(name, pool.getQueue().size()));
+        return output;
+    }
+}
@@ -0,0 +1,49 @@
+package com.mongodb.diff3;
+
+import java.util.Map;
+
+/**
+ * Live progress of a diff3 run, registered as <code>com.mongodb.diff3:type=DiffMetrics</code>
+ * so it can be watched with jconsole or scraped with the Prometheus JMX exporter.
+ * Latencies are in milliseconds and summarized as count, p50, p90, p99 and max.
+ */
+public interface DiffMetricsMXBean {
+
+    long getProcessedChunks();
+
+    int getTotalChunks();
+
+    long getProcessedDocs();
+
+    long getProcessedBytes();
+
+    long getFailedDocs();
+
+    long getSourceOnlyDocs();
+
+    long getDestOnlyDocs();
+
+    /** Rate over roughly the last 10 seconds. */
+    double getDocsPerSecond();
+
+    /** Rate over roughly the last 10 seconds. */
+    double getBytesPerSecond();
+
+    Map<String, Long> getNamespaceProcessedDocs();
+
+    /** Time to load both sides of a chunk (map compare only). */
+    Map<String, Long> getLoadLatencyMs();
+
+    /** Time to compare two loaded chunk sides (map compare only). */
+    Map<String, Long> getCompareLatencyMs();
+
+    /** Time for a whole diff task, any compare mode. */
+    Map<String, Long> getTaskLatencyMs();
+
+    /** Chunks with failed ids that have not been rechecked successfully yet. */
+    int getRetryingChunks();
+
+    Map<String, Integer> getPoolActiveThreads();
+
+    Map<String, Integer> getPoolQueuedTasks();
+}
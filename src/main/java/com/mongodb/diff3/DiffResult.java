@@ -4,6 +4,7 @@ import com.mongodb.model.Namespace;
 import org.bson.BsonValue;
 
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -57,6 +58,40 @@ public class DiffResult {
         failedKeys.addAll(this.destOnlyKeys);
     }
 
+    /**
+     * Combines the results of the sub-ranges of a split chunk into one result for the chunk.
+     */
+    public static DiffResult merge(Namespace namespace, ChunkDef chunkDef, List<DiffResult> parts) {
+        long matches = 0;
+        long bytes = 0;
+        Set<MismatchEntry> mismatches = new HashSet<>();
+        Set<BsonValue> srcOnly = new HashSet<>();
+        Set<BsonValue> destOnly = new HashSet<>();
+        boolean retryable = true;
+        for (DiffResult part : parts) {
+            matches += part.matches;
+            bytes += part.bytesProcessed;
+            mismatches.addAll(part.mismatchedEntries);
+            srcOnly.addAll(part.srcOnlyKeys);
+            destOnly.addAll(part.destOnlyKeys);
+            retryable &= part.retryable;
+        }
+        DiffResult result = new DiffResult(matches, bytes, mismatches, srcOnly, destOnly, namespace, chunkDef);
+        result.retryable = retryable;
+        return result;
+    }
+
+    /**
+     * A copy of this result with the matches and bytes of an earlier, partial comparison
+     * of the same chunk added in.
+     */
+    public DiffResult withPriorProgress(long priorMatches, long priorBytes) {
+        DiffResult result = new DiffResult(matches + priorMatches, bytesProcessed + priorBytes,
+                mismatchedEntries, srcOnlyKeys, destOnlyKeys, namespace, chunkDef);
+        result.retryable = retryable;
+        return result;
+    }
+
     public long getMatches() {
         return matches;
     }
@@ -35,6 +35,7 @@ public class DiffSummary {
 	private final long startTime;
 	private final String ppTotalSize;
 	private final DiffSummaryClient dbClient;
+	private final DiffMetrics metrics;
 	private static final long K = 1024;
 	private static final long M = 1024 * 1024;
 	private static final long G = 1024 * 1024 * 1024;
@@ -47,6 +48,29 @@ public class DiffSummary {
 		this.ppTotalSize = ppSize(totalSize);
 		chunkResultMap = new HashMap<>();
 		this.startTime = new Date().getTime();
+		this.metrics = new DiffMetrics(this);
+	}
+
+	public DiffMetrics getMetrics() {
+		return metrics;
+	}
+
+	public synchronized int getTotalChunks() {
+		return totalChunks;
+	}
+
+	public int getRetryingChunks() {
+		int retrying = 0;
+		synchronized (chunkResultMap) {
+			for (Map<String, ChunkResult> nsMap : chunkResultMap.values()) {
+				for (ChunkResult cr : nsMap.values()) {
+					if (cr.getStatus() == DiffStatus.RETRYING) {
+						retrying++;
+					}
+				}
+			}
+		}
+		return retrying;
 	}
 
 	public synchronized void setTotalChunks(int totalChunks) {
@@ -162,7 +186,7 @@ public class DiffSummary {
 		return now - startTime;
 	}
 
-	private void incrementCountersFromChunkResult(ChunkResult cr) {
+	private void incrementCountersFromChunkResult(Namespace ns, ChunkResult cr) {
 		if (cr.getStatus() == DiffStatus.SUCCEEDED || cr.getStatus() == DiffStatus.FAILED) {
 			totalProcessedChunks.increment();
 		} else {
@@ -171,7 +195,9 @@ public class DiffSummary {
 		long numMismatches = cr.getMismatches().size();
 		long numSourceOnly = cr.getSourceOnly().size();
 		long numDestOnly = cr.getDestOnly().size();
-		totalProcessedDocs.add(cr.getMatches().longValue() + numMismatches + numSourceOnly + numDestOnly);
+		long processedDocs = cr.getMatches().longValue() + numMismatches + numSourceOnly + numDestOnly;
+		totalProcessedDocs.add(processedDocs);
+		metrics.addNamespaceProcessedDocs(ns, processedDocs);
 
 		if ((numMismatches + numSourceOnly + numDestOnly) > 0) {
 			totalFailedChunks.increment();
@@ -202,14 +228,10 @@ public class DiffSummary {
 		cr.setSourceOnly(result.getSrcOnlyKeys());
 		cr.setDestOnly(result.getDestOnlyKeys());
 		
-		incrementCountersFromChunkResult(cr);
+		incrementCountersFromChunkResult(ns, cr);
 
 		if (dbClient != null) {
-			try {
-				dbClient.update(result.getChunkDef(), cr);
-			} catch (RuntimeException e) {
-				dbClient.simpleUpdate(result.getChunkDef(), cr);
-			}
+			dbClient.submit(result.getChunkDef(), cr);
 		}
 
 		synchronized (chunkResultMap) {
@@ -255,14 +277,10 @@ public class DiffSummary {
 			cr.addBytesProcessed(result.getBytesProcessed());
 
 			if (dbClient != null) {
-				try {
-					dbClient.update(result.getChunkDef(), cr);
-				} catch (RuntimeException e) {
-					dbClient.simpleUpdate(result.getChunkDef(), cr);
-				}
+				dbClient.submit(result.getChunkDef(), cr);
 			}
 		}
-		incrementCountersFromChunkResult(cr);
+		incrementCountersFromChunkResult(result.getNamespace(), cr);
 	}
 
 	private ChunkResult findChunkResult(DiffResult result) {
@@ -3,13 +3,18 @@ package com.mongodb.diff3;
 import static com.mongodb.client.model.Projections.exclude;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+import org.bson.BsonArray;
 import org.bson.BsonBinary;
 import org.bson.BsonDocument;
 import org.bson.BsonValue;
@@ -20,20 +25,30 @@ import org.bson.conversions.Bson;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.mongodb.ConnectionString;
+import com.mongodb.MongoBulkWriteException;
 import com.mongodb.MongoClientSettings;
+import com.mongodb.bulk.BulkWriteError;
 import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoClients;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.BulkWriteOptions;
 import com.mongodb.client.model.Filters;
 import com.mongodb.client.model.FindOneAndUpdateOptions;
 import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
 import com.mongodb.client.model.ReturnDocument;
 import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
 import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
 import com.mongodb.diff3.DiffSummary.DiffStatus;
+import com.mongodb.model.ChunkKey;
 import com.mongodb.model.Namespace;
 import com.mongodb.shardsync.ShardClient;
 import com.mongodb.util.bson.BsonUuidUtil;
@@ -43,6 +58,11 @@ public class DiffSummaryClient {
     private final MongoDatabase db;
     private final MongoCollection<RawBsonDocument> coll;
     private final MongoCollection<BsonDocument> simpleColl;
+
+    private final Map<String, PendingUpdate> pendingUpdates = new LinkedHashMap<>();
+    private final Object flushLock = new Object();
+    private volatile int batchSize;
+    private ScheduledExecutorService flushExecutor;
     private static final Logger logger = LoggerFactory.getLogger(DiffSummaryClient.class);
 
 
@@ -58,9 +78,9 @@ public class DiffSummaryClient {
         coll.createIndex(Indexes.compoundIndex(Indexes.ascending("ns"), Indexes.ascending("min"), Indexes.ascending("max")));
     }
 
-    public Map<String, RawBsonDocument> loadChunksCache(BsonDocument chunkQuery) {
+    public Map<ChunkKey, RawBsonDocument> loadChunksCache(BsonDocument chunkQuery) {
 
-        Map<String, RawBsonDocument> chunksCache = new LinkedHashMap<>();
+        Map<ChunkKey, RawBsonDocument> chunksCache = new LinkedHashMap<>();
         //Bson projection = include("min", "max", "ns", "status");
         Bson projection = exclude("history");
         // TODO sort by UUID in 5+
@@ -68,13 +88,39 @@ public class DiffSummaryClient {
 
         for (Iterator<RawBsonDocument> sourceChunksIterator = sourceChunks.iterator(); sourceChunksIterator.hasNext(); ) {
             RawBsonDocument chunk = sourceChunksIterator.next();
-            String chunkId = getIdFromChunk(chunk);
+            ChunkKey chunkId = getIdFromChunk(chunk);
             chunksCache.put(chunkId, chunk);
         }
         return chunksCache;
     }
     
-    public String getIdFromChunk(RawBsonDocument sourceChunk) {
+    /**
+     * Status documents written by earlier runs, keyed the same way as the source chunk
+     * cache. Only the status field is filtered on: the source chunk query may be by
+     * collection uuid (5.0+), which status documents do not carry.
+     */
+    public Map<ChunkKey, RawBsonDocument> loadChunkStatus(DiffStatus... statuses) {
+        List<String> names = new ArrayList<>(statuses.length);
+        for (DiffStatus status : statuses) {
+            names.add(status.toString());
+        }
+        return loadChunksCache(Filters.in("status", names).toBsonDocument());
+    }
+
+    /**
+     * The ids a status document recorded as mismatched, source only or dest only.
+     */
+    public static List<BsonValue> getFailedIds(BsonDocument status) {
+        List<BsonValue> ids = new ArrayList<>();
+        for (BsonValue m : status.getArray("mismatches", new BsonArray())) {
+            ids.add(m.asDocument().get("key"));
+        }
+        ids.addAll(status.getArray("srcOnly", new BsonArray()));
+        ids.addAll(status.getArray("destOnly", new BsonArray()));
+        return ids;
+    }
+
+    public ChunkKey getIdFromChunk(RawBsonDocument sourceChunk) {
 		RawBsonDocument min = null;
 		BsonValue minVal = sourceChunk.get("min");
 		if (minVal instanceof BsonDocument) {
@@ -89,24 +135,178 @@ public class DiffSummaryClient {
 		return getIdFromChunk(ns, min, max);
 	}
 	
-	public static String getIdFromChunk(String ns, RawBsonDocument min, RawBsonDocument max) {
-		String minHash = min.toJson();
-		String maxHash = max.toJson();
-		return String.format("%s_%s_%s", ns, minHash, maxHash);
+	public static ChunkKey getIdFromChunk(String ns, RawBsonDocument min, RawBsonDocument max) {
+		return new ChunkKey(ns, min, max);
 	}
 
-    public void simpleUpdate(ChunkDef cd, ChunkResult cr) {
+    /**
+     * Buffer status updates and write them as unordered bulk writes, flushed when
+     * <code>batchSize</code> updates are pending or every <code>flushIntervalMs</code>.
+     * Pending updates for the same chunk are coalesced into one pipeline update that runs
+     * their stages in submit order, so the history entries of every retry are kept.
+     */
+    public synchronized void enableBatching(int batchSize, long flushIntervalMs) {
+        this.batchSize = batchSize;
+        if (flushExecutor == null) {
+            flushExecutor = Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactoryBuilder().setNameFormat("DiffSummaryFlush-%d").setDaemon(true).build());
+            flushExecutor.scheduleWithFixedDelay(() -> {
+                try {
+                    flush();
+                } catch (RuntimeException e) {
+                    logger.error("Error flushing status updates", e);
+                }
+            }, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Record the status of a chunk, either immediately or via the batch buffer when
+     * batching is enabled.
+     */
+    public void submit(ChunkDef cd, ChunkResult cr) {
+        if (batchSize <= 0) {
+            try {
+                update(cd, cr);
+            } catch (RuntimeException e) {
+                simpleUpdate(cd, cr);
+            }
+            return;
+        }
+        // build the updates now from copies, the ChunkResult keeps changing while retries run
+        PendingUpdate pending = new PendingUpdate(cd.unitString(), getChunkFilter(cd), getUpdates(cr),
+                getSimpleDoc(cd, cr));
+        boolean full;
+        synchronized (pendingUpdates) {
+            pendingUpdates.merge(pending.key, pending, PendingUpdate::then);
+            full = pendingUpdates.size() >= batchSize;
+        }
+        if (full) {
+            flush();
+        }
+    }
+
+    /**
+     * Write all buffered status updates. Updates the server rejects (e.g. pipeline updates
+     * on an old server) are retried as upsert replacements, the same fallback as simpleUpdate.
+     * If the write fails otherwise the batch is put back, ahead of anything submitted since,
+     * and the exception is thrown.
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            List<PendingUpdate> batch;
+            synchronized (pendingUpdates) {
+                if (pendingUpdates.isEmpty()) {
+                    return;
+                }
+                batch = new ArrayList<>(pendingUpdates.values());
+                pendingUpdates.clear();
+            }
+            List<WriteModel<BsonDocument>> updates = new ArrayList<>(batch.size());
+            for (PendingUpdate p : batch) {
+                updates.add(p.getUpdate());
+            }
+            BulkWriteOptions unordered = new BulkWriteOptions().ordered(false);
+            try {
+                simpleColl.bulkWrite(updates, unordered);
+                logger.trace("Flushed {} status updates", updates.size());
+            } catch (MongoBulkWriteException bwe) {
+                List<PendingUpdate> failed = new ArrayList<>();
+                List<WriteModel<BsonDocument>> replacements = new ArrayList<>();
+                for (BulkWriteError error : bwe.getWriteErrors()) {
+                    PendingUpdate p = batch.get(error.getIndex());
+                    failed.add(p);
+                    replacements.add(p.getReplace());
+                }
+                logger.info("{} of {} status updates failed; retrying as replacements",
+                        replacements.size(), updates.size());
+                if (!replacements.isEmpty()) {
+                    try {
+                        simpleColl.bulkWrite(replacements, unordered);
+                    } catch (RuntimeException e) {
+                        requeue(failed);
+                        throw e;
+                    }
+                }
+            } catch (RuntimeException e) {
+                requeue(batch);
+                throw e;
+            }
+        }
+    }
+
+    private void requeue(List<PendingUpdate> batch) {
+        synchronized (pendingUpdates) {
+            List<PendingUpdate> newer = new ArrayList<>(pendingUpdates.values());
+            pendingUpdates.clear();
+            for (PendingUpdate p : batch) {
+                pendingUpdates.put(p.key, p);
+            }
+            for (PendingUpdate p : newer) {
+                pendingUpdates.merge(p.key, p, PendingUpdate::then);
+            }
+        }
+        logger.warn("Status update flush failed, {} chunk updates requeued", batch.size());
+    }
+
+    public void close() {
+        if (flushExecutor != null) {
+            flushExecutor.shutdown();
+        }
+        flush();
+    }
+
+    /**
+     * The update pipeline stages for one chunk, in submit order, and the replacement
+     * document for the latest status.
+     */
+    private static class PendingUpdate {
+        private final String key;
+        private final Bson filter;
+        private final List<Bson> stages;
+        private final BsonDocument replacement;
+
+        PendingUpdate(String key, Bson filter, List<Bson> stages, BsonDocument replacement) {
+            this.key = key;
+            this.filter = filter;
+            this.stages = stages;
+            this.replacement = replacement;
+        }
+
+        PendingUpdate then(PendingUpdate next) {
+            List<Bson> combined = new ArrayList<>(stages.size() + next.stages.size());
+            combined.addAll(stages);
+            combined.addAll(next.stages);
+            return new PendingUpdate(key, filter, combined, next.replacement);
+        }
+
+        WriteModel<BsonDocument> getUpdate() {
+            return new UpdateOneModel<>(filter, stages, new UpdateOptions().upsert(true));
+        }
+
+        WriteModel<BsonDocument> getReplace() {
+            return new ReplaceOneModel<>(filter, replacement, new ReplaceOptions().upsert(true));
+        }
+    }
+
+    private static BsonArray copyOf(Collection<? extends BsonValue> values) {
+        return new BsonArray(new ArrayList<>(values));
+    }
+
+    private Bson getChunkFilter(ChunkDef cd) {
         BsonValue min = cd.getMin() == null ? new BsonDocument() : cd.getMin();
         BsonValue max = cd.getMax() == null ? new BsonDocument() : cd.getMax();
 
-
-        Bson filter = Filters.and(
+        return Filters.and(
                 Filters.eq("ns", cd.getNs().getNamespace()),
                 Filters.eq("min", min),
                 Filters.eq("max", max)
         );
+    }
 
-        BsonDocument res = coll.find(filter).first();
+    private BsonDocument getSimpleDoc(ChunkDef cd, ChunkResult cr) {
+        BsonValue min = cd.getMin() == null ? new BsonDocument() : cd.getMin();
+        BsonValue max = cd.getMax() == null ? new BsonDocument() : cd.getMax();
 
         Document newDoc = new Document();
         newDoc.put("ns", cd.getNs().getNamespace());
@@ -115,36 +315,27 @@ public class DiffSummaryClient {
         newDoc.put("status", cr.getStatus().toString());
         newDoc.put("retryNum", cr.getRetryNum().intValue());
         newDoc.put("matches", cr.getMatches().longValue());
-        newDoc.put("mismatches", cr.getMismatchDocs());
-        newDoc.put("srcOnly", cr.getSourceOnly());
-        newDoc.put("scrOnlyCount", cr.getSourceOnly().size());
-        newDoc.put("destOnly", cr.getDestOnly());
-        newDoc.put("destOnlyCount", cr.getDestOnly().size());
+        BsonArray srcOnly = copyOf(cr.getSourceOnly());
+        BsonArray destOnly = copyOf(cr.getDestOnly());
+        newDoc.put("mismatches", copyOf(cr.getMismatchDocs()));
+        newDoc.put("srcOnly", srcOnly);
+        newDoc.put("scrOnlyCount", srcOnly.size());
+        newDoc.put("destOnly", destOnly);
+        newDoc.put("destOnlyCount", destOnly.size());
         newDoc.put("bytesProcessed", cr.getBytesProcessed().longValue());
         newDoc.put("timestamp", new Date());
 
-        BsonDocument newBsonDoc = newDoc.toBsonDocument();
-        if (res == null) {
-            simpleColl.insertOne(newBsonDoc);
-        } else {
-            simpleColl.replaceOne(filter, newBsonDoc);
-        }
+        return newDoc.toBsonDocument();
     }
 
-    public void update(ChunkDef cd, ChunkResult cr) {
-        FindOneAndUpdateOptions opts = new FindOneAndUpdateOptions();
-        opts.upsert(true);
-        opts.returnDocument(ReturnDocument.AFTER);
-
-        BsonValue min = cd.getMin() == null ? new BsonDocument() : cd.getMin();
-        BsonValue max = cd.getMax() == null ? new BsonDocument() : cd.getMax();
-
-        Bson filter = Filters.and(
-                Filters.eq("ns", cd.getNs().getNamespace()),
-                Filters.eq("min", min),
-                Filters.eq("max", max)
-        );
+    /**
+     * Upserts the full status document for a chunk, without reading it first.
+     */
+    public void simpleUpdate(ChunkDef cd, ChunkResult cr) {
+        simpleColl.replaceOne(getChunkFilter(cd), getSimpleDoc(cd, cr), new ReplaceOptions().upsert(true));
+    }
 
+    private List<Bson> getUpdates(ChunkResult cr) {
         List<Bson> updates = new ArrayList<>();
 
         // Aha SO IDIOMATIC!!
@@ -173,14 +364,27 @@ public class DiffSummaryClient {
         updates.add(Updates.set("status", cr.getStatus().toString()));
         updates.add(Updates.set("retryNum", cr.getRetryNum().intValue()));
         updates.add(Updates.set("matches", cr.getMatches().longValue()));
-        updates.add(Updates.set("mismatches", cr.getMismatchDocs()));
-        updates.add(Updates.set("mismatchesCount", cr.getMismatchDocs().size()));
-        updates.add(Updates.set("srcOnly", cr.getSourceOnly()));
-        updates.add(Updates.set("srcOnlyCount", cr.getSourceOnly().size()));
-        updates.add(Updates.set("destOnly", cr.getDestOnly()));
-        updates.add(Updates.set("destOnlyCount", cr.getDestOnly().size()));
+        BsonArray mismatches = copyOf(cr.getMismatchDocs());
+        BsonArray srcOnly = copyOf(cr.getSourceOnly());
+        BsonArray destOnly = copyOf(cr.getDestOnly());
+        updates.add(Updates.set("mismatches", mismatches));
+        updates.add(Updates.set("mismatchesCount", mismatches.size()));
+        updates.add(Updates.set("srcOnly", srcOnly));
+        updates.add(Updates.set("srcOnlyCount", srcOnly.size()));
+        updates.add(Updates.set("destOnly", destOnly));
+        updates.add(Updates.set("destOnlyCount", destOnly.size()));
         updates.add(Updates.set("bytesProcessed", cr.getBytesProcessed().longValue()));
         updates.add(Updates.set("timestamp", new Date()));
+        return updates;
+    }
+
+    public void update(ChunkDef cd, ChunkResult cr) {
+        FindOneAndUpdateOptions opts = new FindOneAndUpdateOptions();
+        opts.upsert(true);
+        opts.returnDocument(ReturnDocument.AFTER);
+
+        Bson filter = getChunkFilter(cd);
+        List<Bson> updates = getUpdates(cr);
 
         logger.trace("Fire Status update Query");
         try {
@@ -3,18 +3,25 @@ package com.mongodb.diff3;
 import static com.mongodb.diff3.DiffTask.Target.DEST;
 import static com.mongodb.diff3.DiffTask.Target.SOURCE;
 
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Map;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.mongodb.model.Database;
 import com.mongodb.model.DatabaseCatalog;
 import com.mongodb.model.IndexSpec;
 import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonNull;
 import org.bson.BsonValue;
 import org.bson.ByteBuf;
 import org.bson.Document;
@@ -23,18 +30,17 @@ import org.bson.conversions.Bson;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.collect.MapDifference;
-import com.google.common.collect.MapDifference.ValueDifference;
-import com.google.common.collect.Maps;
 import com.mongodb.MongoException;
 import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Collation;
 import com.mongodb.client.model.Filters;
 import com.mongodb.diff3.partition.PartitionDiffTask;
 import com.mongodb.model.Namespace;
 import com.mongodb.util.CodecUtils;
+import com.mongodb.util.bson.CanonicalBsonComparator;
 
 public abstract class DiffTask implements Callable<DiffResult> {
 
@@ -55,6 +61,12 @@ public abstract class DiffTask implements Callable<DiffResult> {
     }
 
     protected static final Logger logger = LoggerFactory.getLogger(DiffTask.class);
+
+    private static final int PREFETCH_DOCS = 1000;
+
+    // binary string order, as CanonicalBsonComparator compares them in the merge-join
+    private static final Collation SIMPLE_COLLATION = Collation.builder().locale("simple").build();
+
     protected DiffConfiguration config;
 
     protected Namespace namespace;
@@ -63,14 +75,15 @@ public abstract class DiffTask implements Callable<DiffResult> {
     protected long start;
     protected DiffSummary summary;
 
-    protected long sourceBytesProcessed;
-    protected long destBytesProcessed;
+    // written by the loader pool thread that loads the source side
+    protected final AtomicLong sourceBytesProcessed = new AtomicLong();
+    protected final AtomicLong destBytesProcessed = new AtomicLong();
 
     protected MongoCursor<RawBsonDocument> sourceCursor = null;
     protected MongoCursor<RawBsonDocument> destCursor = null;
 
-    protected Map<BsonValue, String> sourceDocs = null;
-    protected Map<BsonValue, String> destDocs = null;
+    protected DocumentDigestMap sourceDocs = null;
+    protected DocumentDigestMap destDocs = null;
 
     public DiffTask(DiffConfiguration config, Namespace namespace, DiffSummary summary) {
         this.config = config;
@@ -103,6 +116,9 @@ public abstract class DiffTask implements Callable<DiffResult> {
         long timeSpent = System.currentTimeMillis() - start;
         logger.debug("[{}] completed a diff task in {} ms ({})",
                 Thread.currentThread().getName(), timeSpent, unitString());
+        if (summary != null) {
+            summary.getMetrics().recordTask(timeSpent);
+        }
 
         return result;
     }
@@ -112,11 +128,17 @@ public abstract class DiffTask implements Callable<DiffResult> {
     }
 
     protected DiffResult computeDiff(Collection<BsonValue> ids) {
+        return config.isStreamingCompare() ? computeStreamingDiff(ids) : computeMapDiff(ids);
+    }
 
+    private DiffResult computeMapDiff(Collection<BsonValue> ids) {
         for (int i = 1; i <= 3; i++) {
             try {
-                sourceDocs = load(ids, SOURCE);
-                destDocs = load(ids, DEST);
+                long loadStart = System.currentTimeMillis();
+                loadBothSides(ids);
+                if (summary != null) {
+                    summary.getMetrics().recordLoad(System.currentTimeMillis() - loadStart);
+                }
                 break;
             } catch (MongoException me) {
                 logger.warn("computeDiff caught mongo exception on attempt " + i, me);
@@ -125,44 +147,64 @@ public abstract class DiffTask implements Callable<DiffResult> {
         return doComparison();
     }
 
+    /**
+     * Loads the source side on the shared loader pool while the dest side is loaded
+     * on the calling thread, so a chunk costs the slower of the two rather than the sum.
+     */
+    private void loadBothSides(Collection<BsonValue> ids) {
+        Future<DocumentDigestMap> sourceFuture = config.getLoaderPool().submit(() -> load(ids, SOURCE));
+        try {
+            destDocs = load(ids, DEST);
+            sourceDocs = sourceFuture.get();
+        } catch (InterruptedException e) {
+            sourceFuture.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } catch (RuntimeException e) {
+            sourceFuture.cancel(true);
+            throw e;
+        }
+    }
+
     private DiffResult doComparison() {
         long compStart = System.currentTimeMillis();
-        MapDifference<BsonValue, String> diff = Maps.difference(sourceDocs, destDocs);
 
         Set<DiffResult.MismatchEntry> mismatches = new HashSet<>();
         Set<BsonValue> srcOnly = new HashSet<>();
         Set<BsonValue> destOnly = new HashSet<>();
-        int numMatches;
-        if (diff.areEqual()) {
-            numMatches = sourceDocs.size();
-//            result.setMatches(numMatches);
-        } else {
-            Map<BsonValue, ValueDifference<String>> valueDiff = diff.entriesDiffering();
-            for (Map.Entry<BsonValue, ValueDifference<String>> entry : valueDiff.entrySet()) {
-                BsonValue key = entry.getKey();
-                ValueDifference<String> val = entry.getValue();
-                mismatches.add(new DiffResult.MismatchEntry(key, val.leftValue(), val.rightValue()));
-            }
-            Set<BsonValue> onlyOnSource = diff.entriesOnlyOnLeft().keySet();
-            if (!onlyOnSource.isEmpty()) {
-                //logger.debug("[{}] {} - diff failure, onlyOnSource: {}", Thread.currentThread().getName(), namespace, onlyOnSource);
-                srcOnly.addAll(onlyOnSource);
-            }
+        long numMatches = 0;
 
-            Set<BsonValue> onlyOnDest = diff.entriesOnlyOnRight().keySet();
-            if (!onlyOnDest.isEmpty()) {
-                //logger.warn("[{}] {} - diff failure, onlyOnDest: {}", Thread.currentThread().getName(), namespace, onlyOnDest);
-                destOnly.addAll(onlyOnDest);
+        BitSet destSeen = new BitSet(destDocs.size());
+        for (int i = 0; i < sourceDocs.size(); i++) {
+            int j = destDocs.indexOf(sourceDocs, i);
+            if (j < 0) {
+                srcOnly.add(sourceDocs.getKey(i));
+            } else {
+                destSeen.set(j);
+                if (sourceDocs.digestEquals(i, destDocs, j)) {
+                    numMatches++;
+                } else {
+                    mismatches.add(new DiffResult.MismatchEntry(sourceDocs.getKey(i),
+                            sourceDocs.getDigestHex(i), destDocs.getDigestHex(j)));
+                }
             }
-
-            numMatches = (int) (sourceDocs.size() - valueDiff.size()
-                    - onlyOnSource.size() - onlyOnDest.size());
-//            result.setMatches(numMatches);
         }
-        long bytes = Math.max(sourceBytesProcessed, destBytesProcessed);
+        for (int j = destSeen.nextClearBit(0); j < destDocs.size(); j = destSeen.nextClearBit(j + 1)) {
+            destOnly.add(destDocs.getKey(j));
+        }
+
+        long bytes = Math.max(sourceBytesProcessed.get(), destBytesProcessed.get());
         long diffTime = System.currentTimeMillis() - compStart;
         logger.trace("[{}] computed diff in {} ms ({})",
                 Thread.currentThread().getName(), diffTime, unitString());
+        if (summary != null) {
+            summary.getMetrics().recordCompare(diffTime);
+        }
         return new DiffResult(numMatches, bytes, mismatches, srcOnly, destOnly, namespace, chunkDef);
     }
 
@@ -201,15 +243,45 @@ public abstract class DiffTask implements Callable<DiffResult> {
         }).get().getSourceSpec().toBsonDocument();
     }
 
-    protected Map<BsonValue, String> load(Collection<BsonValue> ids, Target target) {
+    protected DocumentDigestMap load(Collection<BsonValue> ids, Target target) {
         MongoClient loadClient = getLoadClient(target);
         long bytesProcessed = 0;
 
-        Map<BsonValue, String> output = new HashMap<>();
+        DocumentDigestMap output = ids != null && ids.size() > 0 ? new DocumentDigestMap(ids.size())
+                : new DocumentDigestMap();
         long loadStart = System.currentTimeMillis();
         MongoCollection<RawBsonDocument> coll = getRawCollection(loadClient, namespace.getNamespace());
-        FindIterable<RawBsonDocument> finder;
+        FindIterable<RawBsonDocument> finder = createFinder(coll, ids);
+
+        for (RawBsonDocument doc : finder) {
+            bytesProcessed += output.put(doc);
+        }
+        setBytesProcessed(target, bytesProcessed);
+        if (logger.isTraceEnabled()) {
+            long loadTime = System.currentTimeMillis() - loadStart;
+            logger.trace("[{}] loaded {} {} docs for {} in {} ms ({})",
+                    Thread.currentThread().getName(), output.size(), target.getName(),
+                    namespace.getNamespace(), loadTime, unitString());
+        }
 
+        return output;
+    }
+
+    private void setBytesProcessed(Target target, long bytesProcessed) {
+        switch (target) {
+            case SOURCE:
+                sourceBytesProcessed.set(bytesProcessed);
+                break;
+            case DEST:
+                destBytesProcessed.set(bytesProcessed);
+                break;
+            default:
+                throw new RuntimeException("Unknown target");
+        }
+    }
+
+    private FindIterable<RawBsonDocument> createFinder(MongoCollection<RawBsonDocument> coll, Collection<BsonValue> ids) {
+        FindIterable<RawBsonDocument> finder;
         if (ids != null && ids.size() > 0) {
             Bson q = formIdsQuery(ids);
             finder = coll.find(q).batchSize(10000);
@@ -232,34 +304,185 @@ public abstract class DiffTask implements Callable<DiffResult> {
                 finder = coll.find().min(min).max(max).hint(hintDoc.getDocument("key")).batchSize(10000);
             }
         }
+        return finder;
+    }
 
-        for (RawBsonDocument doc : finder) {
-            BsonValue id = doc.get("_id");
-            ByteBuf bb = doc.getByteBuffer();
-            byte[] docBytes = bb.array();
-            bytesProcessed += bb.remaining();
+    /**
+     * Sort used by the streaming compare. For a bounded chunk this is the key of the hint
+     * index (so the server can walk the same index it uses for min/max), with _id appended
+     * as a tie breaker so that the order is total. Everything else is sorted on _id alone.
+     */
+    private BsonDocument getStreamingSortDoc(Collection<BsonValue> ids) {
+        BsonDocument sortDoc = new BsonDocument();
+        boolean chunkBounded = (ids == null || ids.isEmpty()) && !(this instanceof PartitionDiffTask)
+                && chunkDef != null && chunkDef.getMin() != null;
+        if (chunkBounded) {
+            for (String key : findHintDoc(chunkDef.getMin()).getDocument("key").keySet()) {
+                sortDoc.append(key, new BsonInt32(1));
+            }
+        }
+        if (!sortDoc.containsKey("_id")) {
+            sortDoc.append("_id", new BsonInt32(1));
+        }
+        return sortDoc;
+    }
 
-            String docHash = CodecUtils.md5Hex(docBytes);
-            output.put(id, docHash);
+    protected DiffResult computeStreamingDiff(Collection<BsonValue> ids) {
+        MongoException lastException = null;
+        for (int i = 1; i <= 3; i++) {
+            try {
+                return streamingComparison(ids);
+            } catch (MongoException me) {
+                lastException = me;
+                logger.warn("computeStreamingDiff caught mongo exception on attempt " + i, me);
+            }
         }
-        switch (target) {
-            case SOURCE:
-                sourceBytesProcessed = bytesProcessed;
-                break;
-            case DEST:
-                destBytesProcessed = bytesProcessed;
-                break;
-            default:
-                throw new RuntimeException("Unknown target");
+        throw lastException;
+    }
+
+    /**
+     * Merge-join of the source and dest cursors, both sorted the same way. Only the current
+     * document from each side is held in memory, so the cost no longer depends on chunk size.
+     * Both sides are sorted with the simple collation, which is what mergeJoin compares with;
+     * a collection's default collation would otherwise order strings differently.
+     */
+    private DiffResult streamingComparison(Collection<BsonValue> ids) {
+        long compStart = System.currentTimeMillis();
+        BsonDocument sortDoc = getStreamingSortDoc(ids);
+        List<String> sortFields = new ArrayList<>(sortDoc.keySet());
+
+        MongoCollection<RawBsonDocument> srcColl = getRawCollection(getLoadClient(SOURCE), namespace.getNamespace());
+        MongoCollection<RawBsonDocument> destColl = getRawCollection(getLoadClient(DEST), namespace.getNamespace());
+
+        FindIterable<RawBsonDocument> srcFinder = createFinder(srcColl, ids).sort(sortDoc).collation(SIMPLE_COLLATION)
+                .allowDiskUse(true);
+        FindIterable<RawBsonDocument> destFinder = createFinder(destColl, ids).sort(sortDoc).collation(SIMPLE_COLLATION)
+                .allowDiskUse(true);
+
+        StreamingDiff joined = new StreamingDiff();
+        sourceCursor = srcFinder.iterator();
+        try (PrefetchingCursor src = new PrefetchingCursor(sourceCursor, config.getLoaderPool(), PREFETCH_DOCS);
+             MongoCursor<RawBsonDocument> dest = destFinder.iterator()) {
+            destCursor = dest;
+
+            mergeJoin(src, dest, sortFields, joined);
+        } finally {
+            sourceCursor = null;
+            destCursor = null;
         }
+        sourceBytesProcessed.set(joined.srcBytes);
+        destBytesProcessed.set(joined.destBytes);
+
+        long bytes = Math.max(sourceBytesProcessed.get(), destBytesProcessed.get());
         if (logger.isTraceEnabled()) {
-            long loadTime = System.currentTimeMillis() - loadStart;
-            logger.trace("[{}] loaded {} {} docs for {} in {} ms ({})",
-                    Thread.currentThread().getName(), output.size(), target.getName(),
-                    namespace.getNamespace(), loadTime, unitString());
+            long diffTime = System.currentTimeMillis() - compStart;
+            logger.trace("[{}] computed streaming diff in {} ms ({})",
+                    Thread.currentThread().getName(), diffTime, unitString());
         }
+        return new DiffResult(joined.numMatches, bytes, joined.mismatches, joined.srcOnly, joined.destOnly,
+                namespace, chunkDef);
+    }
 
-        return output;
+    /**
+     * Receives the pairs and leftovers of a {@link #mergeJoin}.
+     */
+    interface MergeJoinHandler {
+        void matched(RawBsonDocument src, RawBsonDocument dest);
+
+        void sourceOnly(RawBsonDocument src);
+
+        void destOnly(RawBsonDocument dest);
+    }
+
+    /**
+     * Merges two cursors that the server sorted on sortFields. The keys are compared with
+     * the server's BSON ordering (see CanonicalBsonComparator), a missing field sorting as
+     * null, so that the client walks both sides in the same order the server produced them.
+     */
+    static void mergeJoin(Iterator<RawBsonDocument> src, Iterator<RawBsonDocument> dest, List<String> sortFields,
+            MergeJoinHandler handler) {
+        RawBsonDocument srcDoc = src.hasNext() ? src.next() : null;
+        RawBsonDocument destDoc = dest.hasNext() ? dest.next() : null;
+
+        while (srcDoc != null || destDoc != null) {
+            int cmp;
+            if (srcDoc == null) {
+                cmp = 1;
+            } else if (destDoc == null) {
+                cmp = -1;
+            } else {
+                cmp = compareSortKeys(srcDoc, destDoc, sortFields);
+            }
+
+            if (cmp == 0) {
+                handler.matched(srcDoc, destDoc);
+                srcDoc = src.hasNext() ? src.next() : null;
+                destDoc = dest.hasNext() ? dest.next() : null;
+            } else if (cmp < 0) {
+                handler.sourceOnly(srcDoc);
+                srcDoc = src.hasNext() ? src.next() : null;
+            } else {
+                handler.destOnly(destDoc);
+                destDoc = dest.hasNext() ? dest.next() : null;
+            }
+        }
+    }
+
+    static int compareSortKeys(BsonDocument x, BsonDocument y, List<String> sortFields) {
+        for (String field : sortFields) {
+            int cmp = CanonicalBsonComparator.INSTANCE.compare(getPathValue(x, field), getPathValue(y, field));
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    private static class StreamingDiff implements MergeJoinHandler {
+        final Set<DiffResult.MismatchEntry> mismatches = new HashSet<>();
+        final Set<BsonValue> srcOnly = new HashSet<>();
+        final Set<BsonValue> destOnly = new HashSet<>();
+        long numMatches;
+        long srcBytes;
+        long destBytes;
+
+        @Override
+        public void matched(RawBsonDocument srcDoc, RawBsonDocument destDoc) {
+            ByteBuf srcBuf = srcDoc.getByteBuffer();
+            ByteBuf destBuf = destDoc.getByteBuffer();
+            srcBytes += srcBuf.remaining();
+            destBytes += destBuf.remaining();
+            String srcHash = CodecUtils.md5Hex(srcBuf.asNIO());
+            String destHash = CodecUtils.md5Hex(destBuf.asNIO());
+            if (srcHash.equals(destHash)) {
+                numMatches++;
+            } else {
+                mismatches.add(new DiffResult.MismatchEntry(srcDoc.get("_id"), srcHash, destHash));
+            }
+        }
+
+        @Override
+        public void sourceOnly(RawBsonDocument srcDoc) {
+            srcBytes += srcDoc.getByteBuffer().remaining();
+            srcOnly.add(srcDoc.get("_id"));
+        }
+
+        @Override
+        public void destOnly(RawBsonDocument destDoc) {
+            destBytes += destDoc.getByteBuffer().remaining();
+            destOnly.add(destDoc.get("_id"));
+        }
+    }
+
+    static BsonValue getPathValue(BsonDocument doc, String path) {
+        BsonValue val = doc;
+        for (String part : path.split("\\.")) {
+            if (val == null || !val.isDocument()) {
+                return BsonNull.VALUE;
+            }
+            val = val.asDocument().get(part);
+        }
+        return val == null ? BsonNull.VALUE : val;
     }
 
     protected Bson formIdsQuery(Collection<BsonValue> ids) {
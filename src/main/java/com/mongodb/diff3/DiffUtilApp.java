@@ -58,6 +58,15 @@ public class DiffUtilApp {
     private final static String SYNC_MISMATCHES = "syncMismatches";
     private final static String FILTER = "filter";
     private static final String BYPASS_MONGOS = "bypassMongos";
+    private final static String STREAMING_COMPARE = "streamingCompare";
+    private final static String STATUS_BATCH_SIZE = "statusBatchSize";
+    private final static String STATUS_FLUSH_INTERVAL_MS = "statusFlushIntervalMs";
+    private final static String RESUME = "resume";
+    private final static String CHUNK_SPLIT_BYTES = "chunkSplitBytes";
+    private final static String CATALOG_CACHE_FILE = "catalogCacheFile";
+    private final static String CATALOG_CACHE_MAX_AGE_SECONDS = "catalogCacheMaxAgeSeconds";
+    private final static String SHARD_POOL_MIN_SIZE = "shardPoolMinSize";
+    private final static String SHARD_POOL_MAX_SIZE = "shardPoolMaxSize";
 
     private final static String DEFAULT_THREADS = "8";
     private final static String DEFAULT_SAMPLE_RATE = "0.04";
@@ -65,6 +74,12 @@ public class DiffUtilApp {
     private final static String DEFAULT_MAX_DOCS_TO_SAMPLE_PER_PARTITION = "10";
     private final static String DEFAULT_DEFAULT_PARTITION_SIZE = String.valueOf(400  * 1024 * 1024);
     private final static String DEFAULT_MAX_RETRIES = "5";
+    private final static String DEFAULT_STATUS_BATCH_SIZE = "0";
+    private final static String DEFAULT_STATUS_FLUSH_INTERVAL_MS = "1000";
+    private final static String DEFAULT_CHUNK_SPLIT_BYTES = "0";
+    private final static String DEFAULT_CATALOG_CACHE_MAX_AGE_SECONDS = "3600";
+    private final static String DEFAULT_SHARD_POOL_MIN_SIZE = "0";
+    private final static String DEFAULT_SHARD_POOL_MAX_SIZE = "0";
     private final static String DEFAULT_STATUS_DB_NAME = "Diff3";
     private final static String DEFAULT_STATUS_DB_COLL_NAME = "Status";
 
@@ -97,8 +112,26 @@ public class DiffUtilApp {
         options.addOption(withArgName("Status DB URI").hasArg().withLongOpt(STATUS_DB_URI).create());
         options.addOption(withArgName("Status DB Name").hasArg().withLongOpt(STATUS_DB_NAME).create());
         options.addOption(withArgName("Status DB Collection Name").hasArg().withLongOpt(STATUS_DB_COLL_NAME).create());
+        options.addOption(withArgName("Status updates per bulk write (0 writes each update immediately)").hasArg()
+                .withLongOpt(STATUS_BATCH_SIZE).create());
+        options.addOption(withArgName("Max ms between status bulk writes").hasArg()
+                .withLongOpt(STATUS_FLUSH_INTERVAL_MS).create());
+        options.addOption(withArgName("Resume from the status collection, skipping succeeded chunks and rechecking only failed ids (default true)")
+                .hasArg().withLongOpt(RESUME).create());
         options.addOption(OptionBuilder.withArgName("Bypass mongos (requires exact chunk alignment between source and target")
                 .hasArg().withLongOpt(BYPASS_MONGOS).create(BYPASS_MONGOS));
+        options.addOption(withArgName("Compare sorted source/dest cursors with a merge-join instead of loading each chunk into memory")
+                .hasArg().withLongOpt(STREAMING_COMPARE).create());
+        options.addOption(withArgName("Split chunks larger than this many bytes into sub-ranges diffed in parallel (0 disables)")
+                .hasArg().withLongOpt(CHUNK_SPLIT_BYTES).create());
+        options.addOption(withArgName("File to cache the source collection and index catalog in between runs").hasArg()
+                .withLongOpt(CATALOG_CACHE_FILE).create());
+        options.addOption(withArgName("Max age (seconds) of a cached catalog that is still used").hasArg()
+                .withLongOpt(CATALOG_CACHE_MAX_AGE_SECONDS).create());
+        options.addOption(withArgName("Connections to open to each shard member before starting (0 for none)").hasArg()
+                .withLongOpt(SHARD_POOL_MIN_SIZE).create());
+        options.addOption(withArgName("Max connections per shard member (0 for the driver default)").hasArg()
+                .withLongOpt(SHARD_POOL_MAX_SIZE).create());
         CommandLineParser parser = new GnuParser();
 
         try {
@@ -181,6 +214,17 @@ public class DiffUtilApp {
         config.setDestRsManual(properties.getStringArray(DEST_RS_MANUAL));
         config.setBypassMongos(Boolean.parseBoolean(getConfigValue(
                 line, properties, BYPASS_MONGOS, "true")));
+        config.setStreamingCompare(Boolean.parseBoolean(getConfigValue(
+                line, properties, STREAMING_COMPARE, "false")));
+        config.setChunkSplitBytes(Long.parseLong(
+                getConfigValue(line, properties, CHUNK_SPLIT_BYTES, DEFAULT_CHUNK_SPLIT_BYTES)));
+        config.setCatalogCacheFile(getConfigValue(line, properties, CATALOG_CACHE_FILE));
+        config.setCatalogCacheMaxAgeSeconds(Long.parseLong(getConfigValue(line, properties,
+                CATALOG_CACHE_MAX_AGE_SECONDS, DEFAULT_CATALOG_CACHE_MAX_AGE_SECONDS)));
+        config.setShardPoolMinSize(Integer.parseInt(
+                getConfigValue(line, properties, SHARD_POOL_MIN_SIZE, DEFAULT_SHARD_POOL_MIN_SIZE)));
+        config.setShardPoolMaxSize(Integer.parseInt(
+                getConfigValue(line, properties, SHARD_POOL_MAX_SIZE, DEFAULT_SHARD_POOL_MAX_SIZE)));
 
         Set<Namespace> inclNamespaces = new HashSet<>();
         String[] filters = getConfigValues(line, properties, FILTER);
@@ -193,6 +237,11 @@ public class DiffUtilApp {
             config.setStatusDbName(getConfigValue(line, properties, STATUS_DB_NAME, DEFAULT_STATUS_DB_NAME));
             config.setStatusDbCollName(getConfigValue(line, properties,
                     STATUS_DB_COLL_NAME, DEFAULT_STATUS_DB_COLL_NAME));
+        config.setStatusBatchSize(Integer.parseInt(
+                getConfigValue(line, properties, STATUS_BATCH_SIZE, DEFAULT_STATUS_BATCH_SIZE)));
+        config.setStatusFlushIntervalMs(Long.parseLong(
+                getConfigValue(line, properties, STATUS_FLUSH_INTERVAL_MS, DEFAULT_STATUS_FLUSH_INTERVAL_MS)));
+        config.setResume(Boolean.parseBoolean(getConfigValue(line, properties, RESUME, "true")));
         
         String shardMaps = properties.getString(SHARD_MAP);
         if (shardMaps != null) {
@@ -0,0 +1,248 @@
+package com.mongodb.diff3;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import org.bson.BsonBinaryReader;
+import org.bson.BsonType;
+import org.bson.BsonValue;
+import org.bson.ByteBuf;
+import org.bson.RawBsonDocument;
+import org.bson.io.BsonInput;
+import org.bson.io.ByteBufferBsonInput;
+
+import com.mongodb.util.CodecUtils;
+
+/**
+ * Compact map of document _id to the MD5 digest of the whole document, used by
+ * DiffTask to hold one side of a chunk.
+ * <p>
+ * Keys are the raw BSON encoding of the _id value (type byte followed by the value
+ * bytes) appended to a single byte arena, digests are stored as two longs per entry,
+ * and lookups use open addressing with linear probing over an int slot table. This is
+ * a few dozen bytes per document instead of a boxed BsonValue key plus a 32 char hex
+ * String in a HashMap. BsonValue keys and hex digests are only materialized for the
+ * (normally few) entries that end up in a DiffResult.
+ * <p>
+ * Entries are addressed by insertion index, 0 to size() - 1. Not thread safe.
+ */
+public class DocumentDigestMap {
+
+	private static final int EMPTY = -1;
+	private static final float LOAD_FACTOR = 0.6f;
+
+	private byte[] arena;
+	private int arenaSize;
+
+	private int[] keyOffsets;
+	private int[] keyLengths;
+	private int[] keyHashes;
+	private long[] digests;
+	private int size;
+
+	private int[] slots;
+	private int mask;
+
+	private final byte[] digestBuffer = new byte[CodecUtils.MD5_BYTE_SIZE];
+
+	public DocumentDigestMap() {
+		this(1024);
+	}
+
+	public DocumentDigestMap(int expectedSize) {
+		int capacity = Math.max(16, expectedSize);
+		arena = new byte[capacity * 16];
+		keyOffsets = new int[capacity];
+		keyLengths = new int[capacity];
+		keyHashes = new int[capacity];
+		digests = new long[capacity * 2];
+		initSlots(tableSizeFor(capacity));
+	}
+
+	/**
+	 * Adds the _id and digest of the given document, computed over the document's own
+	 * byte range without copying it. A repeated _id replaces the earlier digest.
+	 *
+	 * @return the number of bytes in the document
+	 */
+	public int put(RawBsonDocument doc) {
+		ByteBuf buf = doc.getByteBuffer();
+		int docLength = buf.remaining();
+		byte[] docBytes = buf.array();
+
+		CodecUtils.md5(buf.asNIO(), digestBuffer);
+		long digestHi = toLong(digestBuffer, 0);
+		long digestLo = toLong(digestBuffer, 8);
+
+		int valueStart = -1;
+		int valueEnd = -1;
+		BsonType idType = null;
+		try (BsonBinaryReader reader = new BsonBinaryReader(new ByteBufferBsonInput(doc.getByteBuffer()))) {
+			BsonInput input = reader.getBsonInput();
+			reader.readStartDocument();
+			while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+				if (reader.readName().equals("_id")) {
+					idType = reader.getCurrentBsonType();
+					valueStart = input.getPosition();
+					reader.skipValue();
+					valueEnd = input.getPosition();
+					break;
+				}
+				reader.skipValue();
+			}
+		}
+		if (idType == null) {
+			throw new IllegalArgumentException("Document has no _id field");
+		}
+
+		int keyLength = 1 + valueEnd - valueStart;
+		ensureArena(keyLength);
+		int keyOffset = arenaSize;
+		arena[arenaSize++] = (byte) idType.getValue();
+		System.arraycopy(docBytes, valueStart, arena, arenaSize, valueEnd - valueStart);
+		arenaSize += valueEnd - valueStart;
+
+		int hash = hash(arena, keyOffset, keyLength);
+		int existing = find(arena, keyOffset, keyLength, hash);
+		if (existing >= 0) {
+			// keep the first copy of the key, only replace the digest
+			arenaSize = keyOffset;
+			digests[existing * 2] = digestHi;
+			digests[existing * 2 + 1] = digestLo;
+			return docLength;
+		}
+		addEntry(keyOffset, keyLength, hash, digestHi, digestLo);
+		return docLength;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the index of the entry in this map with the same _id as entry
+	 *         <code>index</code> of <code>other</code>, or -1 if there is none
+	 */
+	public int indexOf(DocumentDigestMap other, int index) {
+		return find(other.arena, other.keyOffsets[index], other.keyLengths[index], other.keyHashes[index]);
+	}
+
+	public boolean digestEquals(int index, DocumentDigestMap other, int otherIndex) {
+		return digests[index * 2] == other.digests[otherIndex * 2]
+				&& digests[index * 2 + 1] == other.digests[otherIndex * 2 + 1];
+	}
+
+	public BsonValue getKey(int index) {
+		int keyLength = keyLengths[index];
+		// Wrap the value in a single field document with an empty name:
+		// int32 size, type byte, "" cstring, value bytes, terminator
+		int docLength = 4 + keyLength + 2;
+		byte[] docBytes = new byte[docLength];
+		ByteBuffer.wrap(docBytes).order(ByteOrder.LITTLE_ENDIAN).putInt(docLength);
+		int keyOffset = keyOffsets[index];
+		docBytes[4] = arena[keyOffset];
+		docBytes[5] = 0;
+		System.arraycopy(arena, keyOffset + 1, docBytes, 6, keyLength - 1);
+		docBytes[docLength - 1] = 0;
+		return new RawBsonDocument(docBytes).get("");
+	}
+
+	public String getDigestHex(int index) {
+		byte[] bytes = new byte[CodecUtils.MD5_BYTE_SIZE];
+		putLong(bytes, 0, digests[index * 2]);
+		putLong(bytes, 8, digests[index * 2 + 1]);
+		return CodecUtils.toHex(bytes);
+	}
+
+	private int find(byte[] keyArena, int keyOffset, int keyLength, int hash) {
+		int slot = hash & mask;
+		while (true) {
+			int entry = slots[slot];
+			if (entry == EMPTY) {
+				return -1;
+			}
+			if (keyHashes[entry] == hash && keyLengths[entry] == keyLength
+					&& Arrays.equals(arena, keyOffsets[entry], keyOffsets[entry] + keyLength,
+							keyArena, keyOffset, keyOffset + keyLength)) {
+				return entry;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	private void addEntry(int keyOffset, int keyLength, int hash, long digestHi, long digestLo) {
+		if (size == keyOffsets.length) {
+			int capacity = keyOffsets.length * 2;
+			keyOffsets = Arrays.copyOf(keyOffsets, capacity);
+			keyLengths = Arrays.copyOf(keyLengths, capacity);
+			keyHashes = Arrays.copyOf(keyHashes, capacity);
+			digests = Arrays.copyOf(digests, capacity * 2);
+		}
+		keyOffsets[size] = keyOffset;
+		keyLengths[size] = keyLength;
+		keyHashes[size] = hash;
+		digests[size * 2] = digestHi;
+		digests[size * 2 + 1] = digestLo;
+		insertSlot(size, hash);
+		size++;
+		if (size > slots.length * LOAD_FACTOR) {
+			rehash(slots.length * 2);
+		}
+	}
+
+	private void insertSlot(int entry, int hash) {
+		int slot = hash & mask;
+		while (slots[slot] != EMPTY) {
+			slot = (slot + 1) & mask;
+		}
+		slots[slot] = entry;
+	}
+
+	private void rehash(int tableSize) {
+		initSlots(tableSize);
+		for (int i = 0; i < size; i++) {
+			insertSlot(i, keyHashes[i]);
+		}
+	}
+
+	private void initSlots(int tableSize) {
+		slots = new int[tableSize];
+		Arrays.fill(slots, EMPTY);
+		mask = tableSize - 1;
+	}
+
+	private void ensureArena(int needed) {
+		if (arenaSize + needed > arena.length) {
+			arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaSize + needed));
+		}
+	}
+
+	private static int tableSizeFor(int expectedSize) {
+		int needed = (int) Math.ceil(expectedSize / LOAD_FACTOR);
+		return Integer.highestOneBit(Math.max(needed, 16) - 1) << 1;
+	}
+
+	private static int hash(byte[] bytes, int offset, int length) {
+		int h = 0x811c9dc5;
+		for (int i = offset; i < offset + length; i++) {
+			h = (h ^ bytes[i]) * 0x01000193;
+		}
+		return h ^ (h >>> 16);
+	}
+
+	private static long toLong(byte[] bytes, int offset) {
+		long v = 0;
+		for (int i = offset; i < offset + 8; i++) {
+			v = (v << 8) | (bytes[i] & 0xff);
+		}
+		return v;
+	}
+
+	private static void putLong(byte[] bytes, int offset, long v) {
+		for (int i = offset + 7; i >= offset; i--) {
+			bytes[i] = (byte) v;
+			v >>>= 8;
+		}
+	}
+}
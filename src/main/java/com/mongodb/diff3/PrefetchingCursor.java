@@ -0,0 +1,78 @@
+package com.mongodb.diff3;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.bson.RawBsonDocument;
+
+import com.mongodb.client.MongoCursor;
+
+/**
+ * Drains a cursor on a background thread into a bounded queue, so that the next
+ * batches of one side of a diff are fetched while the caller is busy reading and
+ * comparing the other side. Errors from the cursor are rethrown to the consumer.
+ */
+class PrefetchingCursor implements Iterator<RawBsonDocument>, Closeable {
+
+    private static final Object END = new Object();
+
+    private final BlockingQueue<Object> queue;
+    private final Future<?> producer;
+    private Object next;
+
+    PrefetchingCursor(MongoCursor<RawBsonDocument> cursor, ExecutorService executor, int capacity) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.producer = executor.submit(() -> {
+            try {
+                while (cursor.hasNext()) {
+                    queue.put(cursor.next());
+                }
+                queue.put(END);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                queue.clear();
+                queue.offer(e);
+            } finally {
+                cursor.close();
+            }
+        });
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            try {
+                next = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted waiting for prefetched documents", e);
+            }
+        }
+        if (next instanceof RuntimeException) {
+            throw (RuntimeException) next;
+        }
+        return next != END;
+    }
+
+    @Override
+    public RawBsonDocument next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        RawBsonDocument doc = (RawBsonDocument) next;
+        next = null;
+        return doc;
+    }
+
+    @Override
+    public void close() {
+        producer.cancel(true);
+        queue.clear();
+    }
+}
@@ -21,6 +21,7 @@ import org.bson.UuidRepresentation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
@@ -68,6 +69,10 @@ public class PartitionDiffUtil {
         destClient = initClient(config.getDestClusterUri());
 
         databaseCatalogProvider = new StandardDatabaseCatalogProvider(sourceClient);
+        if (config.getCatalogCacheFile() != null) {
+            ((StandardDatabaseCatalogProvider) databaseCatalogProvider).setCache(
+                    new File(config.getCatalogCacheFile()), config.getCatalogCacheMaxAgeSeconds());
+        }
         partitionManager = new PartitionManager(config.getSampleRate(), config.getSampleMinDocs(),
                 config.getMaxDocsToSamplePerPartition(), config.getDefaultPartitionSize());
 
@@ -105,6 +110,9 @@ public class PartitionDiffUtil {
         // Initialize diff summary (optionally with db storage)
         DiffSummaryClient diffSummaryClient = config.getDiffSummaryClient();
         DiffSummary summary = new DiffSummary(estimatedTotalDocs, totalSize, diffSummaryClient);
+        summary.getMetrics().register();
+        summary.getMetrics().registerPool("WorkerPool", initialTaskPool);
+        summary.getMetrics().registerPool("PartitionerPool", partitionerTaskPool);
 
         ScheduledExecutorService statusReporter = Executors.newSingleThreadScheduledExecutor();
         statusReporter.scheduleAtFixedRate(() ->
@@ -295,6 +303,7 @@ public class PartitionDiffUtil {
 
         logger.info("[Main] shutting down statusReporter thread");
         statusReporter.shutdown();
+        diffSummaryClient.close();
 
         logger.info(summary.getSummary(true));
         sourceClient.close();
@@ -0,0 +1,79 @@
+package com.mongodb.diff3.shard;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonInt64;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.MongoClient;
+import com.mongodb.diff3.ChunkDef;
+
+/**
+ * Splits a chunk into sub-ranges of roughly <code>maxBytes</code> each, using splitVector on
+ * the source shard, so that an oversized (e.g. jumbo) chunk can be diffed by several tasks
+ * in parallel instead of holding up the end of the run.
+ * <p>
+ * splitVector can only be run directly against a shard, and needs privileges that Atlas does
+ * not grant. When it is not available, chunks are left whole and splitting is switched off.
+ */
+class ChunkSplitter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChunkSplitter.class);
+
+    private static final int UNAUTHORIZED = 13;
+    private static final int COMMAND_NOT_FOUND = 59;
+
+    private final long maxBytes;
+    private volatile boolean unsupported;
+
+    ChunkSplitter(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    List<ChunkDef> split(MongoClient client, ChunkDef chunk, BsonDocument keyPattern) {
+        if (unsupported || chunk.getMin() == null) {
+            return List.of(chunk);
+        }
+        BsonDocument splitVectorCmd = new BsonDocument("splitVector", new BsonString(chunk.getNs().getNamespace()))
+                .append("keyPattern", keyPattern)
+                .append("min", chunk.getMin())
+                .append("max", chunk.getMax())
+                // splitVector aims for ranges of half the max chunk size
+                .append("maxChunkSizeBytes", new BsonInt64(maxBytes * 2));
+
+        BsonArray splitKeys;
+        try {
+            BsonDocument result = client.getDatabase(chunk.getNs().getDatabaseName())
+                    .runCommand(splitVectorCmd, BsonDocument.class);
+            splitKeys = result.getArray("splitKeys", new BsonArray());
+        } catch (MongoCommandException mce) {
+            if (mce.getCode() == UNAUTHORIZED || mce.getCode() == COMMAND_NOT_FOUND) {
+                logger.warn("splitVector not available ({}), chunks will not be split", mce.getErrorMessage());
+                unsupported = true;
+            } else {
+                logger.warn("splitVector failed for ({}), diffing the whole chunk: {}",
+                        chunk.unitString(), mce.getErrorMessage());
+            }
+            return List.of(chunk);
+        }
+        if (splitKeys.isEmpty()) {
+            return List.of(chunk);
+        }
+
+        List<ChunkDef> ranges = new ArrayList<>(splitKeys.size() + 1);
+        BsonDocument lower = chunk.getMin();
+        for (BsonValue splitKey : splitKeys) {
+            ranges.add(new ChunkDef(chunk.getNs(), lower, splitKey.asDocument()));
+            lower = splitKey.asDocument();
+        }
+        ranges.add(new ChunkDef(chunk.getNs(), lower, chunk.getMax()));
+        return ranges;
+    }
+}
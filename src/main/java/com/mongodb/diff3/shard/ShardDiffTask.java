@@ -1,8 +1,11 @@
 package com.mongodb.diff3.shard;
 
+import java.util.List;
 import java.util.Queue;
 
 import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
 import org.bson.RawBsonDocument;
 
 import com.mongodb.client.MongoClient;
@@ -10,6 +13,7 @@ import com.mongodb.diff3.ChunkDef;
 import com.mongodb.diff3.DiffConfiguration;
 import com.mongodb.diff3.DiffResult;
 import com.mongodb.diff3.DiffSummary;
+import com.mongodb.diff3.DiffSummaryClient;
 import com.mongodb.diff3.DiffTask;
 import com.mongodb.diff3.RetryStatus;
 import com.mongodb.diff3.RetryTask;
@@ -26,6 +30,11 @@ public class ShardDiffTask extends DiffTask {
 
     protected final RawBsonDocument chunk;
 
+    // set when resuming a chunk that failed in an earlier run
+    private List<BsonValue> resumeIds;
+    private long resumeMatches;
+    private long resumeBytes;
+
     public ShardDiffTask(DiffConfiguration config,
                          RawBsonDocument chunk, Namespace namespace, String srcShardName,
                          String destShardName, DiffSummary summary) {
@@ -41,6 +50,42 @@ public class ShardDiffTask extends DiffTask {
         this.chunkDef = findChunkBounds();
     }
 
+    /**
+     * Resume from the status an earlier run recorded for this chunk: only the ids that
+     * failed are compared again, and the earlier matches are carried into the result.
+     */
+    public void setResumeStatus(BsonDocument status) {
+        this.resumeIds = DiffSummaryClient.getFailedIds(status);
+        this.resumeMatches = status.getNumber("matches").longValue();
+        this.resumeBytes = status.getNumber("bytesProcessed").longValue();
+    }
+
+    /**
+     * A task for one sub-range of this task's chunk.
+     */
+    ShardDiffTask forRange(ChunkDef range) {
+        ShardDiffTask task = new ShardDiffTask(config, chunk, namespace, srcShardName, destShardName, summary);
+        task.chunkDef = range;
+        return task;
+    }
+
+    List<ChunkDef> split(ChunkSplitter splitter) {
+        Document collMeta = sourceShardClient.getCollectionsMap().get(namespace.getNamespace());
+        if (chunk == null || resumeIds != null || collMeta == null) {
+            return List.of(chunkDef);
+        }
+        BsonDocument keyPattern = ((Document) collMeta.get("key")).toBsonDocument();
+        return splitter.split(getLoadClient(Target.SOURCE), chunkDef, keyPattern);
+    }
+
+    @Override
+    protected DiffResult computeDiff() {
+        if (resumeIds == null) {
+            return super.computeDiff();
+        }
+        return computeDiff(resumeIds).withPriorProgress(resumeMatches, resumeBytes);
+    }
+
     private ChunkDef findChunkBounds() {
         BsonDocument min = chunk != null ? chunk.getDocument("min") : null;
         BsonDocument max = chunk != null ? chunk.getDocument("max") : null;
@@ -1,11 +1,13 @@
 package com.mongodb.diff3.shard;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
-import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.DelayQueue;
 import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
@@ -13,17 +15,20 @@ import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.bson.RawBsonDocument;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.mongodb.diff3.ChunkDef;
 import com.mongodb.diff3.DiffConfiguration;
 import com.mongodb.diff3.DiffResult;
 import com.mongodb.diff3.DiffSummary;
 import com.mongodb.diff3.DiffSummaryClient;
 import com.mongodb.diff3.RetryTask;
+import com.mongodb.model.ChunkKey;
 import com.mongodb.model.Namespace;
 import com.mongodb.util.BlockWhenQueueFull;
 
@@ -35,7 +40,8 @@ public class ShardDiffTaskExecutor {
 	private final String destShardName;
 	private final DiffConfiguration config;
 	private final DiffSummaryClient diffSummaryClient;
-	private final Map<String, RawBsonDocument> chunkMap;
+	private final Map<ChunkKey, RawBsonDocument> chunkMap;
+	private final Map<ChunkKey, RawBsonDocument> resumeStatus;
 	private final int numThreads;
 	private final DiffSummary summary;
 	
@@ -44,46 +50,119 @@ public class ShardDiffTaskExecutor {
 	
 	private AtomicBoolean complete = new AtomicBoolean(false);
 	
-	private int submitCount = 0;
+	private final ChunkSplitter splitter;
+
+	private final AtomicInteger submitCount = new AtomicInteger();
 	private int count = 0;
 
-	public ShardDiffTaskExecutor(DiffConfiguration config, Map<String, RawBsonDocument> chunkMap,
-			String sourceShardName, String destShardName, int numThreads, DiffSummary summary) {
+	/**
+	 * @param resumeStatus status documents of chunks that failed in an earlier run, by chunk id;
+	 *                     those chunks only recheck the ids that failed
+	 */
+	public ShardDiffTaskExecutor(DiffConfiguration config, Map<ChunkKey, RawBsonDocument> chunkMap,
+			Map<ChunkKey, RawBsonDocument> resumeStatus, String sourceShardName, String destShardName,
+			int numThreads, DiffSummary summary) {
 		this.config = config;
 		this.diffSummaryClient = config.getDiffSummaryClient();
 		this.chunkMap = chunkMap;
+		this.resumeStatus = resumeStatus;
 		this.sourceShardName = sourceShardName;
 		this.destShardName = destShardName;
 		this.numThreads = numThreads;
 		this.summary = summary;
+		this.splitter = config.getChunkSplitBytes() > 0 ? new ChunkSplitter(config.getChunkSplitBytes()) : null;
 	}
 
 	public void initializeTasks() {
-		BlockingQueue<Runnable> workQueue = new ArrayBlockingQueue<>(chunkMap.size());
+		// unbounded, split chunks add their sub-range tasks from the worker threads
+		BlockingQueue<Runnable> workQueue = new LinkedBlockingQueue<>();
 		ThreadFactory initialTaskPoolThreadFactory = new ThreadFactoryBuilder()
 				.setNameFormat("WorkerPool-" + sourceShardName + "-%d").build();
 		threadPoolExecutor = new ThreadPoolExecutor(numThreads, numThreads, 30, TimeUnit.SECONDS,
 				workQueue, new BlockWhenQueueFull());
 		threadPoolExecutor.setThreadFactory(initialTaskPoolThreadFactory);
+		summary.getMetrics().registerPool("WorkerPool-" + sourceShardName, threadPoolExecutor);
 		// initialTaskPoolMap.put(shard, initialTaskPool);
 
 		completionService = new ExecutorCompletionService<>(threadPoolExecutor);
 
-		for (RawBsonDocument chunk : chunkMap.values()) {
+		// chunks completed by an earlier run were already filtered out by ShardDiffUtil.loadChunks()
+		for (Map.Entry<ChunkKey, RawBsonDocument> entry : chunkMap.entrySet()) {
+			RawBsonDocument chunk = entry.getValue();
 			String nsStr = chunk.get("ns").asString().getValue();
 			Namespace ns = new Namespace(nsStr);
-			boolean complete = diffSummaryClient.updateChunkCompletion(ns, chunk, summary);
-			if (complete) {
-				logger.debug("Skipping chunk, already complete");
+			ShardDiffTask task = new ShardDiffTask(config, chunk, ns, sourceShardName, destShardName, summary);
+			RawBsonDocument status = resumeStatus.get(entry.getKey());
+			if (status != null) {
+				task.setResumeStatus(status);
+			}
+			if (splitter != null && status == null) {
+				completionService.submit(() -> splitOrDiff(task));
 			} else {
-				ShardDiffTask task = new ShardDiffTask(config, chunk, ns, sourceShardName, destShardName, summary);
-				// List<Future<DiffResult>> initialTaskPoolFutures =
-				// initialTaskPoolFutureMap.get(srcShard);
-				// ThreadPoolExecutor initialTaskPool = initialTaskPoolMap.get(srcShard);
 				completionService.submit(task);
-				submitCount++;
-				// initialTaskPoolFutures.add(initialTaskPool.submit(task));
 			}
+			submitCount.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Diffs the chunk directly if it is within the split size, otherwise submits a task per
+	 * sub-range and returns null; the last sub-range to finish returns the merged result.
+	 */
+	private DiffResult splitOrDiff(ShardDiffTask task) throws Exception {
+		List<ChunkDef> ranges = task.split(splitter);
+		if (ranges.size() <= 1) {
+			return task.call();
+		}
+		logger.debug("[{}] split ({}) into {} sub-ranges", Thread.currentThread().getName(),
+				task.getChunkDef().unitString(), ranges.size());
+		SplitChunk splitChunk = new SplitChunk(task.getChunkDef(), ranges.size());
+		for (ChunkDef range : ranges) {
+			ShardDiffTask rangeTask = task.forRange(range);
+			// counted before this task completes, so the collector keeps waiting for them
+			submitCount.incrementAndGet();
+			completionService.submit(() -> splitChunk.complete(rangeTask));
+		}
+		return null;
+	}
+
+	/**
+	 * Collects the sub-range results of a split chunk, so that the chunk is reported as a
+	 * single result (and status document) like any other chunk.
+	 */
+	private static class SplitChunk {
+		private final ChunkDef chunkDef;
+		private final List<DiffResult> results = new ArrayList<>();
+		private int remaining;
+		private Exception failure;
+
+		SplitChunk(ChunkDef chunkDef, int numRanges) {
+			this.chunkDef = chunkDef;
+			this.remaining = numRanges;
+		}
+
+		DiffResult complete(ShardDiffTask rangeTask) throws Exception {
+			DiffResult result = null;
+			Exception error = null;
+			try {
+				result = rangeTask.call();
+			} catch (Exception e) {
+				error = e;
+			}
+			synchronized (this) {
+				if (error != null) {
+					failure = error;
+				} else {
+					results.add(result);
+				}
+				if (--remaining > 0) {
+					return null;
+				}
+			}
+			if (failure != null) {
+				throw new RuntimeException("Diff of a sub-range of (" + chunkDef.unitString() + ") failed", failure);
+			}
+			return DiffResult.merge(chunkDef.getNs(), chunkDef, results);
 		}
 	}
 
@@ -95,7 +174,7 @@ public class ShardDiffTaskExecutor {
 			@Override
 			public void run() {
 				
-				while (count < submitCount) {
+				while (count < submitCount.get()) {
 					logger.debug("{} [InitialTaskPoolCollector] loop: {}, tasks: {}", sourceShardName, count, threadPoolExecutor.getQueue().size());
 
 					try {
@@ -103,6 +182,10 @@ public class ShardDiffTaskExecutor {
 						//logger.debug("**** {} starting take/get: {}", sourceShardName, count);
 						DiffResult result = completionService.take().get();
 						count++;
+						if (result == null) {
+							// a split chunk, or a sub-range of one that is not the last to finish
+							continue;
+						}
 						//logger.debug("**** {} finished take/get: {}", sourceShardName, count);
 						int failures = result.getFailedKeys().size();
 						if (failures > 0) {
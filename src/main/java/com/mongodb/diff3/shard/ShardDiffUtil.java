@@ -1,6 +1,8 @@
 package com.mongodb.diff3.shard;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -20,7 +22,6 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import org.bson.BsonDocument;
-import org.bson.BsonString;
 import org.bson.RawBsonDocument;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,6 +32,7 @@ import com.mongodb.diff3.DiffResult;
 import com.mongodb.diff3.DiffSummary;
 import com.mongodb.diff3.DiffSummary.DiffStatus;
 import com.mongodb.diff3.DiffSummaryClient;
+import com.mongodb.model.ChunkKey;
 import com.mongodb.model.Collection;
 import com.mongodb.model.DatabaseCatalog;
 import com.mongodb.model.Namespace;
@@ -41,6 +43,9 @@ import com.mongodb.util.BlockWhenQueueFull;
 public class ShardDiffUtil {
 
 	private static final Logger logger = LoggerFactory.getLogger(ShardDiffUtil.class);
+
+	private static final int MAX_RESUME_IDS = 10000;
+	private static final RawBsonDocument UNSHARDED_BOUND = RawBsonDocument.parse("{}");
 	private final List<String> destShardNames;
 	private final List<String> srcShardNames;
 
@@ -55,7 +60,7 @@ public class ShardDiffUtil {
 
 	private Map<String, ShardDiffTaskExecutor> shardDiffTaskExecutors = new HashMap<>();
 
-	private Map<String, Map<String, RawBsonDocument>> sourceChunksCacheMap;
+	private Map<String, Map<ChunkKey, RawBsonDocument>> sourceChunksCacheMap;
 	private final long estimatedTotalDocs;
 	private final long totalSize;
 	private final int numUnshardedCollections;
@@ -63,6 +68,10 @@ public class ShardDiffUtil {
 
 	private int alreadyCompletedCount = 0;
 
+	// status from earlier runs, by chunk id (empty unless resuming)
+	private Map<ChunkKey, RawBsonDocument> chunkStatus = Collections.emptyMap();
+	private final Map<ChunkKey, RawBsonDocument> resumeStatus = new HashMap<>();
+
 	private ChunkManager chunkManager;
 
 	private DiffSummary summary;
@@ -81,6 +90,10 @@ public class ShardDiffUtil {
 		Set<String> includeNs = config.getIncludeNamespaces().stream().map(Namespace::getNamespace)
 				.collect(Collectors.toSet());
 		sourceShardClient.populateCollectionsMap(includeNs);
+		if (config.getCatalogCacheFile() != null) {
+			sourceShardClient.setDatabaseCatalogCache(new File(config.getCatalogCacheFile()),
+					config.getCatalogCacheMaxAgeSeconds());
+		}
 		DatabaseCatalog catalog = sourceShardClient.getDatabaseCatalog(config.getIncludeNamespaces());
 
 		long[] sizeAndCount = catalog.getTotalSizeAndCount();
@@ -98,6 +111,7 @@ public class ShardDiffUtil {
 		logger.info("[Main] unshardedColls:[" + String.join(", ", unshardedColls) + "]");
 
 		summary = new DiffSummary(estimatedTotalDocs, totalSize, diffSummaryClient);
+		summary.getMetrics().register();
 		
 		loadChunks();
 
@@ -114,7 +128,7 @@ public class ShardDiffUtil {
 		
 		for (String shard : srcShardNames) {
             int numThreads = config.getThreads() / srcShardNames.size();
-            Map<String, RawBsonDocument> chunkMap = sourceChunksCacheMap.get(shard);
+            Map<ChunkKey, RawBsonDocument> chunkMap = sourceChunksCacheMap.get(shard);
             int qSize = chunkMap == null ? 1 : chunkMap.size();
             totalInitialTasks += qSize;
             logger.debug("[Main] Setting workQueue size to {}", qSize);
@@ -126,6 +140,7 @@ public class ShardDiffUtil {
                     workQueue, new BlockWhenQueueFull());
             initialTaskPool.setThreadFactory(initialTaskPoolThreadFactory);
             initialTaskPoolMap.put(shard, initialTaskPool);
+            summary.getMetrics().registerPool("UnshardedPool-" + shard, initialTaskPool);
         }
         totalInitialTasks += unshardedColls.size();
 
@@ -136,53 +151,73 @@ public class ShardDiffUtil {
 		sourceChunksCacheMap = new HashMap<>();
 
 		BsonDocument chunkQuery = chunkManager.getSourceChunkQuery();
-		Map<String, RawBsonDocument> sourceCache = sourceShardClient.loadChunksCache(chunkQuery);
-		DiffSummaryClient diffSummaryClient = config.getDiffSummaryClient();
+		Map<ChunkKey, RawBsonDocument> sourceCache = sourceShardClient.loadChunksCache(chunkQuery);
 
-		BsonDocument completedChunksQuery = chunkQuery.clone();
-		completedChunksQuery.append("status", new BsonString(DiffStatus.SUCCEEDED.toString()));
-		Map<String, RawBsonDocument> completedChunks = diffSummaryClient.loadChunksCache(completedChunksQuery);
+		if (config.isResume()) {
+			chunkStatus = diffSummaryClient.loadChunkStatus(DiffStatus.SUCCEEDED, DiffStatus.RETRYING,
+					DiffStatus.FAILED);
+		}
 
 		int todoCount = 0;
-		for (Map.Entry<String, RawBsonDocument> entry : sourceCache.entrySet()) {
+		for (Map.Entry<ChunkKey, RawBsonDocument> entry : sourceCache.entrySet()) {
 			RawBsonDocument chunk = entry.getValue();
-			String chunkId = entry.getKey();
-
-			if (completedChunks.containsKey(chunkId)) {
-
-				RawBsonDocument completedChunk = completedChunks.get(chunkId);
-
-				int srcOnlyCount = completedChunk.getArray("srcOnly").size();
-				int destOnlyCount = completedChunk.getArray("destOnly").size();
-				int mismatches = completedChunk.getArray("mismatches").size();
-				long bytesProcessed = completedChunk.getInt64("bytesProcessed").getValue();
-				long matches = completedChunk.getInt64("matches").getValue();
-
-				long totalProcessedDocs = matches + mismatches + srcOnlyCount + destOnlyCount;
-				// (cr.getMatches().longValue() + numMismatches + numSourceOnly + numDestOnly);
-
-				summary.getTotalSourceOnly().add(srcOnlyCount);
-				summary.getTotalDestOnly().add(destOnlyCount);
-				summary.getTotalFailedDocs().add(mismatches);
-				summary.getTotalProcessedDocs().add(totalProcessedDocs);
-				summary.getTotalProcessedSize().add(bytesProcessed);
-				summary.getTotalProcessedChunks().increment();
+			ChunkKey chunkId = entry.getKey();
 
+			RawBsonDocument status = chunkStatus.get(chunkId);
+			if (isSucceeded(status)) {
+				addCompletedChunk(status);
 				alreadyCompletedCount++;
 				continue;
 			}
+			if (isResumable(status)) {
+				resumeStatus.put(chunkId, status);
+			}
 
 			String shard = ShardClient.getShardFromChunk(chunk);
 
 			if (!sourceChunksCacheMap.containsKey(shard)) {
 				sourceChunksCacheMap.put(shard, new HashMap<>());
 			}
-			Map<String, RawBsonDocument> shardChunkCache = sourceChunksCacheMap.get(shard);
+			Map<ChunkKey, RawBsonDocument> shardChunkCache = sourceChunksCacheMap.get(shard);
 			shardChunkCache.put(chunkId, chunk);
 			todoCount++;
 		}
-		logger.debug("ShardDiffUtil loaded chunk cache, completedCount: {}, todoCount: {}", alreadyCompletedCount,
-				todoCount);
+		logger.info("ShardDiffUtil loaded chunk cache, completedCount: {}, todoCount: {} ({} rechecking failed ids only)",
+				alreadyCompletedCount, todoCount, resumeStatus.size());
+	}
+
+	private static boolean isSucceeded(RawBsonDocument status) {
+		return status != null && status.getString("status").getValue().equals(DiffStatus.SUCCEEDED.toString());
+	}
+
+	/**
+	 * A chunk that failed in an earlier run can be finished by rechecking just its failed ids,
+	 * unless there are so many that reloading the whole chunk is cheaper than an $in query.
+	 */
+	private static boolean isResumable(RawBsonDocument status) {
+		if (status == null || isSucceeded(status)) {
+			return false;
+		}
+		int failedIds = status.getArray("mismatches").size() + status.getArray("srcOnly").size()
+				+ status.getArray("destOnly").size();
+		return failedIds > 0 && failedIds <= MAX_RESUME_IDS;
+	}
+
+	private void addCompletedChunk(RawBsonDocument completedChunk) {
+		int srcOnlyCount = completedChunk.getArray("srcOnly").size();
+		int destOnlyCount = completedChunk.getArray("destOnly").size();
+		int mismatches = completedChunk.getArray("mismatches").size();
+		long bytesProcessed = completedChunk.getInt64("bytesProcessed").getValue();
+		long matches = completedChunk.getInt64("matches").getValue();
+
+		long totalProcessedDocs = matches + mismatches + srcOnlyCount + destOnlyCount;
+
+		summary.getTotalSourceOnly().add(srcOnlyCount);
+		summary.getTotalDestOnly().add(destOnlyCount);
+		summary.getTotalFailedDocs().add(mismatches);
+		summary.getTotalProcessedDocs().add(totalProcessedDocs);
+		summary.getTotalProcessedSize().add(bytesProcessed);
+		summary.getTotalProcessedChunks().increment();
 	}
 
 	private int getTotalChunks() {
@@ -196,7 +231,7 @@ public class ShardDiffUtil {
 			String destShardName = chunkManager.getShardMapping(sourceShardName);
 
 			int numThreads = config.getThreads() / srcShardNames.size();
-			Map<String, RawBsonDocument> chunkMap = sourceChunksCacheMap.get(sourceShardName);
+			Map<ChunkKey, RawBsonDocument> chunkMap = sourceChunksCacheMap.get(sourceShardName);
 			if (chunkMap == null) {
 				logger.debug("No chunks for shard {}, skipping execution", sourceShardName);
 				continue;
@@ -204,8 +239,8 @@ public class ShardDiffUtil {
 
 			totalInitialTasks += chunkMap.size();
 
-			ShardDiffTaskExecutor executor = new ShardDiffTaskExecutor(config, chunkMap, sourceShardName, destShardName,
-					numThreads, summary);
+			ShardDiffTaskExecutor executor = new ShardDiffTaskExecutor(config, chunkMap, resumeStatus,
+					sourceShardName, destShardName, numThreads, summary);
 			shardDiffTaskExecutors.put(sourceShardName, executor);
 			executor.initializeTasks();
 			executor.run();
@@ -243,12 +278,23 @@ public class ShardDiffUtil {
 				sourceShardClient.getDatabaseCatalog().getUnshardedCollections());
 		for (int i = 0; i < unshardedCollections.size(); i++) {
 			Collection unshardedColl = unshardedCollections.get(i);
+			ChunkKey chunkId = DiffSummaryClient.getIdFromChunk(unshardedColl.getNamespace().getNamespace(),
+					UNSHARDED_BOUND, UNSHARDED_BOUND);
+			RawBsonDocument status = chunkStatus.get(chunkId);
+			if (isSucceeded(status)) {
+				logger.debug("[Main] Skipping {}, already completed", unshardedColl.getNamespace());
+				addCompletedChunk(status);
+				continue;
+			}
 
 			// Round-robin which pool to assign to
 			int shardIdx = i % numShards;
 			String srcShard = srcShardNames.get(shardIdx);
 			String destShard = destShardNames.get(shardIdx);
 			ShardDiffTask task = new ShardDiffTask(config, null, unshardedColl.getNamespace(), srcShard, destShard, summary);
+			if (isResumable(status)) {
+				task.setResumeStatus(status);
+			}
 			logger.debug("[Main] Added an UnshardedDiffTask for {}", unshardedColl.getNamespace());
 			 List<Future<DiffResult>> initialTaskPoolFutures = initialTaskPoolFutureMap.get(srcShard);
 			ThreadPoolExecutor initialTaskPool = initialTaskPoolMap.get(srcShard);
@@ -352,8 +398,11 @@ public class ShardDiffUtil {
 
 		logger.info("[Main] shutting down statusReporter thread");
 		statusReporter.shutdown();
+		diffSummaryClient.close();
 
 		logger.info(summary.getSummary(true));
+		sourceShardClient.logConnectionPoolMetrics();
+		destShardClient.logConnectionPoolMetrics();
 
 	}
 
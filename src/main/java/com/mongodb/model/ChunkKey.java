@@ -0,0 +1,125 @@
+package com.mongodb.model;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+
+import org.bson.BsonDocument;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+
+import com.mongodb.util.bson.CanonicalBsonComparator;
+
+/**
+ * Identity of a chunk (or of a chunk boundary, when max is omitted) within the chunk
+ * caches: namespace plus the raw BSON bytes of the min and max bounds.
+ * <p>
+ * For RawBsonDocument bounds, which is what chunks read from config.chunks have, the key
+ * refers to the bounds' existing bytes rather than copying them, and the hash is computed
+ * once up front. This replaces the "ns_minJson_maxJson" strings that were built for every
+ * chunk, and is what made loading and comparing large chunk maps expensive. Bounds are
+ * compared by their bytes first, and by value (the server's comparison) when the bytes
+ * differ, so an int32 and an int64 bound with the same value are the same key. The hash
+ * is computed from the values for the same reason.
+ */
+public final class ChunkKey {
+
+	private final String ns;
+	private final byte[] minBytes;
+	private final int minOffset;
+	private final int minLength;
+	private final byte[] maxBytes;
+	private final int maxOffset;
+	private final int maxLength;
+	private final int hash;
+
+	public ChunkKey(String ns, BsonDocument min, BsonDocument max) {
+		this.ns = ns;
+		ByteBuffer minBuf = rawBytes(min);
+		this.minBytes = minBuf.array();
+		this.minOffset = minBuf.arrayOffset() + minBuf.position();
+		this.minLength = minBuf.remaining();
+		if (max != null) {
+			ByteBuffer maxBuf = rawBytes(max);
+			this.maxBytes = maxBuf.array();
+			this.maxOffset = maxBuf.arrayOffset() + maxBuf.position();
+			this.maxLength = maxBuf.remaining();
+		} else {
+			this.maxBytes = null;
+			this.maxOffset = 0;
+			this.maxLength = 0;
+		}
+		int h = ns == null ? 0 : ns.hashCode();
+		h = 31 * h + CanonicalBsonComparator.hash(getMin());
+		h = 31 * h + (maxBytes == null ? 0 : CanonicalBsonComparator.hash(getMax()));
+		this.hash = h;
+	}
+
+	/**
+	 * Key of a chunk boundary, i.e. a chunk identified by ns and min only.
+	 */
+	public static ChunkKey ofMin(String ns, BsonDocument min) {
+		return new ChunkKey(ns, min, null);
+	}
+
+	public String getNs() {
+		return ns;
+	}
+
+	public RawBsonDocument getMin() {
+		return new RawBsonDocument(minBytes, minOffset, minLength);
+	}
+
+	public RawBsonDocument getMax() {
+		return maxBytes == null ? null : new RawBsonDocument(maxBytes, maxOffset, maxLength);
+	}
+
+	private static ByteBuffer rawBytes(BsonDocument doc) {
+		RawBsonDocument raw = doc instanceof RawBsonDocument ? (RawBsonDocument) doc
+				: new RawBsonDocument(doc, new BsonDocumentCodec());
+		return raw.getByteBuffer().asNIO();
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof ChunkKey)) {
+			return false;
+		}
+		ChunkKey other = (ChunkKey) obj;
+		if (hash != other.hash || !Objects.equals(ns, other.ns)) {
+			return false;
+		}
+		if (!Arrays.equals(minBytes, minOffset, minOffset + minLength,
+				other.minBytes, other.minOffset, other.minOffset + other.minLength)
+				&& CanonicalBsonComparator.INSTANCE.compare(getMin(), other.getMin()) != 0) {
+			return false;
+		}
+		if (maxBytes == null || other.maxBytes == null) {
+			return maxBytes == other.maxBytes;
+		}
+		return Arrays.equals(maxBytes, maxOffset, maxOffset + maxLength,
+				other.maxBytes, other.maxOffset, other.maxOffset + other.maxLength)
+				|| CanonicalBsonComparator.INSTANCE.compare(getMax(), other.getMax()) == 0;
+	}
+
+	/**
+	 * The legacy "ns_minJson_maxJson" form, for logging only.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append(ns).append('_').append(getMin().toJson());
+		if (maxBytes != null) {
+			builder.append('_').append(getMax().toJson());
+		}
+		return builder.toString();
+	}
+}
@@ -38,6 +38,21 @@ public class CollectionStats {
         return stats;
     }
     
+    /**
+     * The fields read by fromDocument, so that the stats can be stored and read back.
+     */
+    public Document toDocument() {
+        return new Document("ns", namespace)
+                .append("sharded", sharded)
+                .append("size", size)
+                .append("count", count)
+                .append("nindexes", numIndexes)
+                .append("storageSize", storageSize)
+                .append("freeStorageSize", freeStorageSize)
+                .append("totalIndexSize", totalIndexSize)
+                .append("totalSize", totalSize);
+    }
+
     private static Number getNumber(Document doc, String key) {
     	return (Number)doc.get(key);
     }
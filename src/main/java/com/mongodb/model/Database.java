@@ -43,6 +43,10 @@ public class Database {
 		excludedCollections.add(collNs);
 	}
 
+	public Set<String> getExcludedCollections() {
+		return excludedCollections;
+	}
+
 	public String getName() {
 		return name;
 	}
@@ -14,6 +14,8 @@ public class DatabaseCatalog {
 	
 	private long totalDocumentCount = 0L;
 	private long totalDataSize = 0L;
+	
+	private boolean statsPossiblyStale;
 
 	public DatabaseCatalog() {
 		databases = new HashMap<>();
@@ -49,4 +51,16 @@ public class DatabaseCatalog {
 		return databases.values();
 	}
 
+	/**
+	 * True if the catalog was loaded from a cache, so the document counts and sizes may
+	 * have changed since.
+	 */
+	public boolean isStatsPossiblyStale() {
+		return statsPossiblyStale;
+	}
+
+	public void markStatsPossiblyStale() {
+		this.statsPossiblyStale = true;
+	}
+
 }
@@ -0,0 +1,162 @@
+package com.mongodb.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.bson.BsonArray;
+import org.bson.BsonBoolean;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonInt64;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mongodb.util.bson.BsonStreamUtil;
+
+/**
+ * On-disk copy of a DatabaseCatalog, so that repeat runs can skip the per-collection
+ * collStats round trips.
+ * <p>
+ * The file is a sequence of BSON documents: a header holding the format version, the
+ * creation time and a fingerprint of the catalog, then for each database a document with
+ * its name and excluded collections followed by one document per collection. A cached
+ * catalog is only used if it is younger than the max age and its fingerprint (the
+ * collection names, UUIDs and options, sharding, and index counts, see
+ * StandardDatabaseCatalogProvider) matches the cluster. Document counts and sizes are not
+ * part of the fingerprint, so those can be up to max age out of date, and the provider
+ * marks them as possibly stale.
+ */
+public class DatabaseCatalogCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(DatabaseCatalogCache.class);
+
+    private static final int VERSION = 2;
+
+    private static final DocumentCodec documentCodec = new DocumentCodec();
+
+    /**
+     * Read a cached catalog, or null if there is none usable for the given fingerprint.
+     */
+    public static DatabaseCatalog read(File file, BsonDocument fingerprint, long maxAgeSeconds) {
+        if (file == null || !file.exists()) {
+            return null;
+        }
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file.toPath()))) {
+            DataInputStream data = new DataInputStream(in);
+            RawBsonDocument header = BsonStreamUtil.readDocument(data);
+            if (header == null || header.getInt32("version", new BsonInt32(0)).getValue() != VERSION) {
+                logger.info("Ignoring catalog cache {}, unknown version", file);
+                return null;
+            }
+            long ageSeconds = (System.currentTimeMillis() - header.getInt64("created").getValue()) / 1000;
+            if (ageSeconds > maxAgeSeconds) {
+                logger.info("Ignoring catalog cache {}, {}s old (max {}s)", file, ageSeconds, maxAgeSeconds);
+                return null;
+            }
+            if (!fingerprint.equals(header.getDocument("fingerprint"))) {
+                logger.info("Ignoring catalog cache {}, collections have changed", file);
+                return null;
+            }
+
+            DatabaseCatalog catalog = new DatabaseCatalog();
+            Database db = null;
+            RawBsonDocument entry;
+            while ((entry = BsonStreamUtil.readDocument(data)) != null) {
+                if (entry.containsKey("db")) {
+                    if (db != null) {
+                        catalog.addDatabase(db);
+                    }
+                    db = new Database(entry.getString("db").getValue());
+                    for (BsonValue excluded : entry.getArray("excluded")) {
+                        db.excludeCollection(excluded.asString().getValue());
+                    }
+                    continue;
+                }
+                Namespace ns = new Namespace(entry.getString("ns").getValue());
+                if (db == null || !db.getName().equals(ns.getDatabaseName())) {
+                    throw new IOException("collection " + ns + " outside of its database");
+                }
+                Document stats = ((RawBsonDocument) entry.get("stats")).decode(documentCodec);
+                Set<IndexSpec> indexes = new HashSet<>();
+                for (BsonValue index : entry.getArray("indexes")) {
+                    indexes.add(IndexSpec.fromDocument((RawBsonDocument) index, ns));
+                }
+                db.addCollection(new Collection(ns, entry.getBoolean("sharded").getValue(),
+                        CollectionStats.fromDocument(stats), indexes));
+            }
+            if (db != null) {
+                catalog.addDatabase(db);
+            }
+            logger.info("Loaded catalog from cache {} ({}s old)", file, ageSeconds);
+            return catalog;
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Ignoring unreadable catalog cache {}: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Write a catalog, replacing the file atomically. Failures are logged, not thrown, since
+     * the cache is only an optimization.
+     */
+    public static void write(File file, BsonDocument fingerprint, DatabaseCatalog catalog) {
+        if (file == null) {
+            return;
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp.toPath()))) {
+            BsonStreamUtil.writeDocument(out, new BsonDocument("version", new BsonInt32(VERSION))
+                    .append("created", new BsonInt64(System.currentTimeMillis()))
+                    .append("fingerprint", fingerprint));
+
+            List<Database> databases = new ArrayList<>(catalog.getDatabases());
+            databases.sort((a, b) -> a.getName().compareTo(b.getName()));
+            for (Database db : databases) {
+                List<String> excluded = new ArrayList<>(db.getExcludedCollections());
+                excluded.sort(null);
+                BsonArray excludedArray = new BsonArray();
+                for (String collName : excluded) {
+                    excludedArray.add(new BsonString(collName));
+                }
+                BsonStreamUtil.writeDocument(out, new BsonDocument("db", new BsonString(db.getName()))
+                        .append("excluded", excludedArray));
+                for (Collection coll : db.getAllCollections()) {
+                    BsonArray indexes = new BsonArray();
+                    for (IndexSpec index : coll.getIndexes()) {
+                        indexes.add(index.getSourceSpec());
+                    }
+                    BsonStreamUtil.writeDocument(out, new BsonDocument("ns", new BsonString(coll.getNamespace().getNamespace()))
+                            .append("sharded", BsonBoolean.valueOf(coll.isSharded()))
+                            .append("stats", new RawBsonDocument(coll.getCollectionStats().toDocument(), documentCodec))
+                            .append("indexes", indexes));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Error writing catalog cache {}: {}", tmp, e.getMessage());
+            tmp.delete();
+            return;
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.debug("Wrote catalog cache {}", file);
+        } catch (IOException e) {
+            logger.warn("Error writing catalog cache {}: {}", file, e.getMessage());
+        }
+    }
+}
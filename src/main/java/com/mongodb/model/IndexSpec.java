@@ -9,7 +9,7 @@ import org.bson.BsonType;
 import org.bson.BsonValue;
 import org.bson.RawBsonDocument;
 
-import com.mongodb.util.bson.BsonValueComparator;
+import com.mongodb.util.bson.CanonicalBsonComparator;
 
 public class IndexSpec {
 	
@@ -79,7 +79,7 @@ public class IndexSpec {
 
 	@Override
 	public int hashCode() {
-		return Objects.hash(key, namespace, expireAfterSeconds, sparse, unique);
+		return Objects.hash(CanonicalBsonComparator.hash(key), namespace, expireAfterSeconds, sparse, unique);
 	}
 
 	@Override
@@ -97,6 +97,22 @@ public class IndexSpec {
 				&& sparse == other.sparse && unique == other.unique;
 	}
 	
+	/**
+	 * True if both indexes have the same key pattern, whatever their names and options.
+	 */
+	public boolean hasSameKey(IndexSpec other) {
+		return compareKeys(key, other.key);
+	}
+
+	/**
+	 * Equality as {@link #equals(Object)}, but ignoring expireAfterSeconds, e.g. for TTL
+	 * indexes that were extended on the destination.
+	 */
+	public boolean equalsIgnoringTtl(IndexSpec other) {
+		return Objects.equals(namespace, other.namespace) && compareKeys(key, other.key)
+				&& sparse == other.sparse && unique == other.unique;
+	}
+
 	/**
 	 * Compare two index keys using semantic comparison instead of direct object equality.
 	 * This handles cases where functionally equivalent indexes have different numeric types
@@ -106,8 +122,7 @@ public class IndexSpec {
 		if (key1 == key2) return true;
 		if (key1 == null || key2 == null) return false;
 		
-		BsonValueComparator comparator = new BsonValueComparator();
-		return comparator.compare(key1, key2) == 0;
+		return CanonicalBsonComparator.INSTANCE.compare(key1, key2) == 0;
 	}
 
 	@Override
@@ -7,11 +7,10 @@ import java.util.List;
 import java.util.Objects;
 
 import org.bson.BsonDocument;
-import org.bson.RawBsonDocument;
 
 public class Megachunk {
 	
-	private String chunkId;
+	private ChunkKey chunkId;
 	private String ns = null;
 	private String shard = null;
 	private BsonDocument min = null;
@@ -84,17 +83,15 @@ public class Megachunk {
 		lastMovedTime = LocalDateTime.now();
 	}
 
-	public String getId() {
-		String minHash = ((RawBsonDocument) min).toJson();
-		String maxHash = ((RawBsonDocument) max).toJson();
-		return String.format("%s_%s_%s", ns, minHash, maxHash);
+	public ChunkKey getId() {
+		return new ChunkKey(ns, min, max);
 	}
 
-	public String getChunkId() {
+	public ChunkKey getChunkId() {
 		return chunkId;
 	}
 
-	public void setChunkId(String chunkId) {
+	public void setChunkId(ChunkKey chunkId) {
 		this.chunkId = chunkId;
 	}
 
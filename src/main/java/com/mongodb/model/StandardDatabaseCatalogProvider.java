@@ -1,5 +1,7 @@
 package com.mongodb.model;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.mongodb.MongoInterruptedException;
 import com.mongodb.client.ListCollectionsIterable;
 import com.mongodb.client.MongoClient;
 //import com.mongodb.client.MongoCollection;
@@ -7,19 +9,35 @@ import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoIterable;
 import org.bson.BSONException;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonInt64;
+import org.bson.BsonNull;
+import org.bson.BsonString;
+import org.bson.BsonValue;
 import org.bson.Document;
 import org.bson.RawBsonDocument;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.util.*;
 import java.util.Collection;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Pattern;
 
 public class StandardDatabaseCatalogProvider implements DatabaseCatalogProvider {
     private DatabaseCatalog databaseCatalog;
     private final MongoClient client;
     private Map<String, Document> collectionsMap;
+    private int threads = DEFAULT_THREADS;
+    private File cacheFile;
+    private long cacheMaxAgeSeconds = DEFAULT_CACHE_MAX_AGE_SECONDS;
+    public final static int DEFAULT_THREADS = 8;
+    public final static long DEFAULT_CACHE_MAX_AGE_SECONDS = 3600;
     public final static Set<String> excludedSystemDbs =
             new HashSet<>(Arrays.asList("system", "local", "config", "admin"));
     private static final Pattern excludeCollRegex = Pattern.compile("system\\..*");
@@ -29,6 +47,19 @@ public class StandardDatabaseCatalogProvider implements DatabaseCatalogProvider
         this.client = client;
     }
 
+    /**
+     * Cache the catalog in the given file, reusing it for up to maxAgeSeconds while the
+     * collections are unchanged. See DatabaseCatalogCache.
+     */
+    public void setCache(File cacheFile, long cacheMaxAgeSeconds) {
+        this.cacheFile = cacheFile;
+        this.cacheMaxAgeSeconds = cacheMaxAgeSeconds;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
     @Override
     public DatabaseCatalog get() {
         return get(null);
@@ -48,6 +79,14 @@ public class StandardDatabaseCatalogProvider implements DatabaseCatalogProvider
         populateDatabaseCatalog(null);
     }
 
+    /**
+     * Loads the catalog with bounded concurrency: listCollections and dbStats for all
+     * databases, then collStats and listIndexes for all collections, each fanned out over a
+     * pool of <code>threads</code>. With a cache file set, a fingerprint built from the
+     * database level calls and config.collections (see collectionFingerprint) is checked
+     * against the cached catalog, and a matching cache within the max age is used without
+     * any per-collection calls. Its stats are then marked as possibly stale.
+     */
     private void populateDatabaseCatalog(Collection<Namespace> namespaces) {
         databaseCatalog = new DatabaseCatalog();
         MongoIterable<String> dbNames = client.listDatabaseNames();
@@ -64,53 +103,150 @@ public class StandardDatabaseCatalogProvider implements DatabaseCatalogProvider
                 includeMap.get(db).add(coll);
             });
         }
+        List<String> includedDbNames = new ArrayList<>();
         for (String dbName : dbNames) {
             if (excludedSystemDbs.contains(dbName) || (!includeAll && !includeMap.containsKey(dbName))) {
                 logger.trace("Excluding db: {}", dbName);
                 continue;
             }
-            Database db = new Database(dbName);
-            ListCollectionsIterable<Document> colls = listCollections(dbName);
-            for (Document coll : colls) {
-                String collName = coll.getString("name");
-
-                if (!includeAll && !includeMap.get(dbName).contains(collName)) {
-                    logger.debug("Excluding coll: {} in db: {}", collName, dbName);
-                    continue;
-                }
+            includedDbNames.add(dbName);
+        }
 
-                String collType = coll.getString("type");
-                if (collType != null && collType.equals("view")) {
-                    logger.info("Excluding view: {}", collName);
-                    db.excludeCollection(collName);
-                    continue;
+        ExecutorService pool = Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setNameFormat("Catalog-%d").build());
+        try {
+            Map<String, Future<List<RawBsonDocument>>> listings = new LinkedHashMap<>();
+            Map<String, Future<Document>> dbStats = new HashMap<>();
+            for (String dbName : includedDbNames) {
+                listings.put(dbName, pool.submit(() -> listCollections(dbName).into(new ArrayList<>())));
+                if (cacheFile != null) {
+                    dbStats.put(dbName, pool.submit(() -> dbStats(dbName)));
                 }
-                /* Don't include collections starting with system.* */
-                if (excludeCollRegex.matcher(collName).matches()) {
-                    logger.debug("Excluding collection: {}", collName);
-                    db.excludeCollection(collName);
-                    continue;
+            }
+
+            Map<String, Database> databases = new LinkedHashMap<>();
+            Map<Namespace, RawBsonDocument> collInfos = new LinkedHashMap<>();
+            for (Map.Entry<String, Future<List<RawBsonDocument>>> listing : listings.entrySet()) {
+                String dbName = listing.getKey();
+                Database db = new Database(dbName);
+                databases.put(dbName, db);
+                for (RawBsonDocument coll : await(listing.getValue())) {
+                    String collName = coll.getString("name").getValue();
+
+                    if (!includeAll && !includeMap.get(dbName).contains(collName)) {
+                        logger.debug("Excluding coll: {} in db: {}", collName, dbName);
+                        continue;
+                    }
+
+                    BsonValue collType = coll.get("type");
+                    if (collType != null && collType.asString().getValue().equals("view")) {
+                        logger.info("Excluding view: {}", collName);
+                        db.excludeCollection(collName);
+                        continue;
+                    }
+                    /* Don't include collections starting with system.* */
+                    if (excludeCollRegex.matcher(collName).matches()) {
+                        logger.debug("Excluding collection: {}", collName);
+                        db.excludeCollection(collName);
+                        continue;
+                    }
+                    Namespace collNs = new Namespace(dbName, collName);
+                    collInfos.put(collNs, coll);
                 }
-                Namespace collNs = new Namespace(dbName, collName);
-                CollectionStats collStats = CollectionStats.fromDocument(collStats(collNs));
-                boolean sharded = collectionsMap != null && collectionsMap.containsKey(collNs.getNamespace());
+            }
 
-                Set<IndexSpec> indexes = getCollectionIndexSpecs(
-                        client.getDatabase(collNs.getDatabaseName()).getCollection(
-                                collNs.getCollectionName(), RawBsonDocument.class));
+            BsonDocument fingerprint = new BsonDocument();
+            if (cacheFile != null) {
+                for (String dbName : databases.keySet()) {
+                    fingerprint.append(dbName, databaseFingerprint(await(dbStats.get(dbName))));
+                }
+                for (Map.Entry<Namespace, RawBsonDocument> entry : collInfos.entrySet()) {
+                    Namespace collNs = entry.getKey();
+                    Document shardedMeta = collectionsMap == null ? null : collectionsMap.get(collNs.getNamespace());
+                    fingerprint.getDocument(collNs.getDatabaseName()).getArray("collections")
+                            .add(collectionFingerprint(entry.getValue(), shardedMeta));
+                }
+            }
 
-                com.mongodb.model.Collection mcoll = new com.mongodb.model.Collection(
-                        collNs, sharded, collStats, indexes);
+            DatabaseCatalog cached = DatabaseCatalogCache.read(cacheFile, fingerprint, cacheMaxAgeSeconds);
+            if (cached != null) {
+                cached.markStatsPossiblyStale();
+                databaseCatalog = cached;
+                return;
+            }
 
-                String shardedStatus = sharded ? "sharded" : "unsharded";
-                db.addCollection(mcoll);
-                logger.debug("Added {} collection {} to catalog for db {}, stats: {}", shardedStatus, collNs, dbName, collStats);
+            Map<Namespace, Future<com.mongodb.model.Collection>> collections = new LinkedHashMap<>();
+            for (Namespace collNs : collInfos.keySet()) {
+                collections.put(collNs, pool.submit(() -> loadCollection(collNs)));
+            }
+            for (Map.Entry<Namespace, Future<com.mongodb.model.Collection>> entry : collections.entrySet()) {
+                com.mongodb.model.Collection mcoll = await(entry.getValue());
+                String shardedStatus = mcoll.isSharded() ? "sharded" : "unsharded";
+                databases.get(entry.getKey().getDatabaseName()).addCollection(mcoll);
+                logger.debug("Added {} collection {} to catalog, stats: {}", shardedStatus, entry.getKey(),
+                        mcoll.getCollectionStats());
+            }
+            for (Database db : databases.values()) {
+                logger.debug("Add database {} to catalog with {} docs", db.getName(), db.getTotalDocumentCount());
+                databaseCatalog.addDatabase(db);
             }
-            logger.debug("Add database {} to catalog with {} docs", dbName, db.getTotalDocumentCount());
-            databaseCatalog.addDatabase(db);
+            DatabaseCatalogCache.write(cacheFile, fingerprint, databaseCatalog);
+        } finally {
+            pool.shutdownNow();
         }
     }
 
+    private com.mongodb.model.Collection loadCollection(Namespace collNs) {
+        CollectionStats collStats = CollectionStats.fromDocument(collStats(collNs));
+        Set<IndexSpec> indexes = getCollectionIndexSpecs(
+                client.getDatabase(collNs.getDatabaseName()).getCollection(collNs.getCollectionName(), RawBsonDocument.class));
+        boolean sharded = collectionsMap != null && collectionsMap.containsKey(collNs.getNamespace());
+        return new com.mongodb.model.Collection(collNs, sharded, collStats, indexes);
+    }
+
+    /**
+     * The database level part of the fingerprint: the index count from dbStats, which
+     * changes when an index is created or dropped in any of the collections, and the
+     * collection entries added by the caller. Changes to the options of an existing index
+     * are not seen, so cached index specs can be up to max age out of date as well.
+     */
+    static BsonDocument databaseFingerprint(Document dbStats) {
+        Object indexes = dbStats.get("indexes");
+        return new BsonDocument("indexes", indexes instanceof Number ? new BsonInt64(((Number) indexes).longValue())
+                : BsonNull.VALUE)
+                .append("collections", new BsonArray());
+    }
+
+    /**
+     * What the cached catalog depends on for one collection: name, UUID and options from
+     * listCollections, and whether it is sharded with its shard key, uniqueness and epoch
+     * (its config.collections entry, if any).
+     */
+    static BsonDocument collectionFingerprint(BsonDocument collInfo, Document shardedMeta) {
+        BsonValue sharding = shardedMeta == null ? BsonNull.VALUE
+                : new Document("key", shardedMeta.get("key"))
+                        .append("unique", shardedMeta.get("unique"))
+                        .append("epoch", shardedMeta.get("lastmodEpoch"))
+                        .toBsonDocument();
+        return new BsonDocument("name", collInfo.get("name"))
+                .append("uuid", collInfo.getDocument("info", new BsonDocument()).get("uuid", BsonNull.VALUE))
+                .append("options", collInfo.getDocument("options", new BsonDocument()))
+                .append("sharding", sharding);
+    }
+
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MongoInterruptedException("Interrupted loading database catalog", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Error loading database catalog", e.getCause());
+        }
+    }
 
     private Set<IndexSpec> getCollectionIndexSpecs(MongoCollection<RawBsonDocument> collection) {
         Set<IndexSpec> indexSpecs = new HashSet<>();
@@ -135,8 +271,8 @@ public class StandardDatabaseCatalogProvider implements DatabaseCatalogProvider
         return client.getDatabase(dbName).runCommand(new Document("dbStats", 1));
     }
 
-    private ListCollectionsIterable<Document> listCollections(String dbName) {
-        return client.getDatabase(dbName).listCollections();
+    private ListCollectionsIterable<RawBsonDocument> listCollections(String dbName) {
+        return client.getDatabase(dbName).listCollections(RawBsonDocument.class);
     }
 
     private Document collStats(Namespace ns) {
@@ -101,6 +101,14 @@ public class BulkWriteOutput {
 		increment(result);
 		incDuplicateKeyExceptionCount(errorCount);
 	}
+
+	public void add(BulkWriteOutput other) {
+		incDeleted(other.deletedCount);
+		incModified(other.modifiedCount);
+		incInserted(other.insertedCount);
+		incUpserted(other.upsertedCount);
+		incDuplicateKeyExceptionCount(other.duplicateKeyExceptionCount);
+	}
 }
 
 
@@ -4,10 +4,8 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.NavigableMap;
 import java.util.Set;
 
 import org.bson.BsonDocument;
@@ -22,6 +20,7 @@ import org.slf4j.LoggerFactory;
 
 import com.mongodb.shardbalancer.CountingMegachunk;
 import com.mongodb.shardsync.ChunkManager;
+import com.mongodb.shardsync.ChunkRoutingTable;
 import com.mongodb.shardsync.ShardClient;
 import com.mongodb.util.bson.BsonValueConverter;
 import com.mongodb.util.bson.BsonValueWrapper;
@@ -48,8 +47,8 @@ public class DuplicateResolver {
 	private final Set<String> failedChunkMoves = new HashSet<>();
 	
 
-	private final Map<String, RawBsonDocument> destChunksCache = new LinkedHashMap<>();
-	private final Map<String, NavigableMap<BsonValueWrapper, CountingMegachunk>> destChunkMap = new HashMap<>();
+	// routes of the destination chunks; CountingMegachunks are only made for the chunks looked up
+	private final ChunkRoutingTable destRoutes;
 
 	private ChunkManager chunkManager;
 	
@@ -60,7 +59,7 @@ public class DuplicateResolver {
 		this.destShardClient = destShardClient;
 		this.collectionsMap = destShardClient.getCollectionsMap();
 
-		chunkManager.loadChunkMap(destShardClient, null, destChunksCache, destChunkMap);
+		this.destRoutes = chunkManager.loadRoutingTable(destShardClient);
 		this.chunkManager = chunkManager;
 		
 		if (targetShards != null && !targetShards.isEmpty()) {
@@ -561,17 +560,15 @@ public class DuplicateResolver {
 	        for (Document doc : docsWithSameId) {
 	            try {
 	                BsonValueWrapper shardKeyWrapper = getShardKeyWrapper(shardKeyFields, doc);
-	                NavigableMap<BsonValueWrapper, CountingMegachunk> chunkMap = destChunkMap.get(namespace);
 	                
-	                if (chunkMap != null) {
-	                    Map.Entry<BsonValueWrapper, CountingMegachunk> chunkEntry = chunkMap.floorEntry(shardKeyWrapper);
-	                    if (chunkEntry == null) {
+	                if (destRoutes.containsNamespace(namespace)) {
+	                    CountingMegachunk chunk = findChunk(namespace, shardKeyWrapper);
+	                    if (chunk == null) {
 	                        logger.warn("Could not find chunk for document with _id: {}, shardKey: {}", 
 	                                id, shardKeyWrapper);
 	                        continue;
 	                    }
 	                    
-	                    CountingMegachunk chunk = chunkEntry.getValue();
 	                    docToChunkMap.put(doc, chunk);
 	                    
 	                    String shard = chunk.getShard();
@@ -644,17 +641,15 @@ public class DuplicateResolver {
 	        for (Document doc : docsWithSameId) {
 	            try {
 	                BsonValueWrapper shardKeyWrapper = getShardKeyWrapper(shardKeyFields, doc);
-	                NavigableMap<BsonValueWrapper, CountingMegachunk> chunkMap = destChunkMap.get(namespace);
 	                
-	                if (chunkMap != null) {
-	                    Map.Entry<BsonValueWrapper, CountingMegachunk> chunkEntry = chunkMap.floorEntry(shardKeyWrapper);
-	                    if (chunkEntry == null) {
+	                if (destRoutes.containsNamespace(namespace)) {
+	                    CountingMegachunk chunk = findChunk(namespace, shardKeyWrapper);
+	                    if (chunk == null) {
 	                        logger.warn("Could not find chunk for document with _id: {}, shardKey: {}", 
 	                                id, shardKeyWrapper);
 	                        continue;
 	                    }
 	                    
-	                    CountingMegachunk chunk = chunkEntry.getValue();
 	                    freshDocToChunkMap.put(doc, chunk);
 	                    
 	                    String shard = chunk.getShard();
@@ -894,13 +889,9 @@ public class DuplicateResolver {
 	            for (Document doc : docsWithId) {
 	                try {
 	                    BsonValueWrapper shardKeyWrapper = getShardKeyWrapper(shardKeyFields, doc);
-	                    NavigableMap<BsonValueWrapper, CountingMegachunk> chunkMap = destChunkMap.get(namespace);
-
-	                    if (chunkMap != null) {
-	                        Map.Entry<BsonValueWrapper, CountingMegachunk> chunkEntry = chunkMap.floorEntry(shardKeyWrapper);
-	                        if (chunkEntry != null) {
-	                            freshDocToChunkMap.put(doc, chunkEntry.getValue());
-	                        }
+	                    CountingMegachunk chunk = findChunk(namespace, shardKeyWrapper);
+	                    if (chunk != null) {
+	                        freshDocToChunkMap.put(doc, chunk);
 	                    }
 	                } catch (Exception e) {
 	                    logger.error("Error mapping document to chunk: {}", e.getMessage());
@@ -1071,24 +1062,23 @@ public class DuplicateResolver {
 	 */
 	private boolean validateChunkExists(String namespace, CountingMegachunk chunk) {
 	    try {
-	        NavigableMap<BsonValueWrapper, CountingMegachunk> chunkMap = destChunkMap.get(namespace);
-	        if (chunkMap == null) {
+	        if (!destRoutes.containsNamespace(namespace)) {
 	            logger.warn("No chunk map found for namespace: {}", namespace);
 	            return false;
 	        }
 	        
 	        // Look for the exact chunk
-	        for (CountingMegachunk existingChunk : chunkMap.values()) {
-	            if (existingChunk.getMin().equals(chunk.getMin()) && 
-	                existingChunk.getMax().equals(chunk.getMax())) {
-	                
-	                // Verify the chunk is on the expected shard
-	                if (!existingChunk.getShard().equals(chunk.getShard())) {
-	                    logger.warn("Chunk exists but is on shard {} instead of expected shard {}", 
-	                        existingChunk.getShard(), chunk.getShard());
-	                }
-	                return true;
+	        int i = destRoutes.findChunk(namespace, chunk.getMin());
+	        if (i >= 0 && destRoutes.getMin(namespace, i).equals(chunk.getMin()) && 
+	            destRoutes.getMax(namespace, i).equals(chunk.getMax())) {
+	            
+	            // Verify the chunk is on the expected shard
+	            String shard = destRoutes.getShard(namespace, i);
+	            if (!shard.equals(chunk.getShard())) {
+	                logger.warn("Chunk exists but is on shard {} instead of expected shard {}", 
+	                    shard, chunk.getShard());
 	            }
+	            return true;
 	        }
 	        
 	        logger.warn("Chunk with bounds min={}, max={} no longer exists", chunk.getMin(), chunk.getMax());
@@ -1121,8 +1111,7 @@ public class DuplicateResolver {
 		// Group chunks with duplicate _ids by shard
 		Map<String, Map<CountingMegachunk, List<Document>>> shardToChunksWithDupes = new HashMap<>();
 
-		NavigableMap<BsonValueWrapper, CountingMegachunk> chunksByShardKey = destChunkMap.get(namespace);
-		if (chunksByShardKey == null) {
+		if (!destRoutes.containsNamespace(namespace)) {
 			logger.error("No chunk map found for namespace: {}", namespace);
 			return;
 		}
@@ -1140,14 +1129,13 @@ public class DuplicateResolver {
 				// Get shard key value for this document
 				BsonValueWrapper shardKeyValue = getShardKeyWrapper(shardKeyFields, doc);
 
-				Map.Entry<BsonValueWrapper, CountingMegachunk> entry1 = chunksByShardKey.floorEntry(shardKeyValue);
-				if (entry1 == null) {
+				CountingMegachunk chunk = findChunk(namespace, shardKeyValue);
+				if (chunk == null) {
 					logger.error("Could not find chunk for document with _id: {}, shardKey: {}", doc.get("_id"),
 							shardKeyValue);
 					continue;
 				}
 
-				CountingMegachunk chunk = entry1.getValue();
 				String shard = chunk.getShard();
 
 				// Group by shard then by chunk
@@ -1244,50 +1232,17 @@ public class DuplicateResolver {
 	}
 
 	/**
-	 * Enhanced chunk cache refresh to ensure accurate metadata
+	 * Re-read the namespace's chunks into the routing table, after splits or moves
 	 */
 	private boolean refreshChunkCache(String namespace) {
 	    try {
-	        // Store old chunk boundaries for validation
-	        Set<String> oldChunkBoundaries = new HashSet<>();
-	        if (destChunkMap.containsKey(namespace)) {
-	            for (CountingMegachunk chunk : destChunkMap.get(namespace).values()) {
-	                oldChunkBoundaries.add(chunk.getMin() + "-" + chunk.getMax());
-	            }
-	        }
+	        chunkManager.reloadRoutingTable(destRoutes, destShardClient, namespace);
 
-	        // Clear the existing chunk information for this namespace
-	        destChunksCache.clear();
-	        if (destChunkMap.containsKey(namespace)) {
-	            destChunkMap.get(namespace).clear();
-	        }
-
-	        // Reload the chunk information from MongoDB with forced refresh
-	        chunkManager.loadChunkMap(destShardClient, null, destChunksCache, destChunkMap);
-
-	        // Verify refresh was successful by comparing chunk count
-	        if (!destChunkMap.containsKey(namespace)) {
+	        if (!destRoutes.containsNamespace(namespace)) {
 	            logger.error("Failed to refresh chunk cache - namespace {} not found after reload", namespace);
 	            return false;
 	        }
-
-	        // Analyze changes in chunk distribution
-	        Set<String> newChunkBoundaries = new HashSet<>();
-	        Map<String, Integer> chunksByShardCount = new HashMap<>();
-
-	        for (CountingMegachunk chunk : destChunkMap.get(namespace).values()) {
-	            newChunkBoundaries.add(chunk.getMin() + "-" + chunk.getMax());
-	            String shard = chunk.getShard();
-	            chunksByShardCount.put(shard, chunksByShardCount.getOrDefault(shard, 0) + 1);
-	        }
-
-	        // Log summary of chunk distribution
-	        StringBuilder distribution = new StringBuilder();
-	        for (Map.Entry<String, Integer> entry : chunksByShardCount.entrySet()) {
-	            if (distribution.length() > 0) distribution.append(", ");
-	            distribution.append(entry.getKey()).append(": ").append(entry.getValue());
-	        }
-
+	        logger.debug("Refreshed routes for {}, {} chunks", namespace, destRoutes.size(namespace));
 	        return true;
 	    } catch (Exception e) {
 	        logger.error("Error refreshing chunk cache for namespace {}: {}", namespace, e.getMessage(), e);
@@ -1295,25 +1250,44 @@ public class DuplicateResolver {
 	    }
 	}
 
-	public void buildDuplicateMapping(String namespace, List<Document> duplicates,
-			NavigableMap<BsonValueWrapper, CountingMegachunk> chunkMap, Set<String> shardKey) {
+	/**
+	 * True if the destination has chunks for the namespace, i.e. its duplicates can be mapped.
+	 */
+	public boolean hasChunks(String namespace) {
+		return destRoutes.containsNamespace(namespace);
+	}
+
+	/**
+	 * The chunk owning a shard key value, or null if it is not routable. Chunks are equal by
+	 * namespace, bounds and shard, so the same chunk found twice is the same map key.
+	 */
+	private CountingMegachunk findChunk(String namespace, BsonValueWrapper shardKeyValue) {
+		int i = destRoutes.findChunk(namespace, shardKeyValue);
+		return i < 0 ? null : toChunk(namespace, i);
+	}
+
+	private CountingMegachunk toChunk(String namespace, int i) {
+		CountingMegachunk chunk = new CountingMegachunk();
+		chunk.setNs(namespace);
+		chunk.setShard(destRoutes.getShard(namespace, i));
+		chunk.setMin(destRoutes.getMin(namespace, i));
+		chunk.setMax(destRoutes.getMax(namespace, i));
+		return chunk;
+	}
+
+	public void buildDuplicateMapping(String namespace, List<Document> duplicates, Set<String> shardKey) {
 		// Initialize maps for this namespace if not exists
 		duplicateIdToDocsMap.putIfAbsent(namespace, new HashMap<>());
 		chunkToDuplicateIdsMap.putIfAbsent(namespace, new HashMap<>());
 
 		logger.debug("Building duplicate mapping for {} with {} duplicate documents", namespace, duplicates.size());
-		logger.debug("Chunk map contains {} chunks", chunkMap.size());
+		logger.debug("Chunk map contains {} chunks", destRoutes.size(namespace));
 
 		// Log first few chunks for reference
-		int chunkCount = 0;
-		for (Map.Entry<BsonValueWrapper, CountingMegachunk> entry : chunkMap.entrySet()) {
-			if (chunkCount++ < 3) {
-				CountingMegachunk chunk = entry.getValue();
-				logger.debug("Chunk sample: shard={}, min={}, max={}", chunk.getShard(), chunk.getMin(),
-						chunk.getMax());
-			} else {
-				break;
-			}
+		for (int i = 0; i < Math.min(3, destRoutes.size(namespace)); i++) {
+			CountingMegachunk chunk = toChunk(namespace, i);
+			logger.debug("Chunk sample: shard={}, min={}, max={}", chunk.getShard(), chunk.getMin(),
+					chunk.getMax());
 		}
 
 		int processedCount = 0;
@@ -1331,8 +1305,8 @@ public class DuplicateResolver {
 			}
 
 			// Find which chunk this document belongs to based on shard key
-			Map.Entry<BsonValueWrapper, CountingMegachunk> entry = chunkMap.floorEntry(shardKeyValue);
-			if (entry == null) {
+			CountingMegachunk chunk = findChunk(namespace, shardKeyValue);
+			if (chunk == null) {
 				errorCount++;
 				if (errorCount <= 5) {
 					logger.warn("Could not find chunk for document with _id: {}, shardKey: {}", id, shardKeyValue);
@@ -1340,7 +1314,6 @@ public class DuplicateResolver {
 				continue;
 			}
 
-			CountingMegachunk chunk = entry.getValue();
 			BsonValueWrapper min = new BsonValueWrapper(chunk.getMin());
 			BsonValueWrapper max = new BsonValueWrapper(chunk.getMax());
 
@@ -3,8 +3,6 @@ package com.mongodb.mongosync;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
@@ -16,7 +14,6 @@ import java.util.concurrent.atomic.AtomicInteger;
 import org.bson.BsonDocument;
 import org.bson.BsonValue;
 import org.bson.Document;
-import org.bson.RawBsonDocument;
 import org.bson.conversions.Bson;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -39,6 +36,7 @@ import com.mongodb.model.Namespace;
 import com.mongodb.model.Shard;
 import com.mongodb.shardbalancer.CountingMegachunk;
 import com.mongodb.shardsync.ChunkManager;
+import com.mongodb.shardsync.ChunkRoutingTable;
 import com.mongodb.shardsync.ShardClient;
 import com.mongodb.shardsync.ShardConfigSync;
 import com.mongodb.shardsync.SyncConfiguration;
@@ -119,8 +117,7 @@ public class MongoSync implements Callable<Integer>, MongoSyncPauseListener {
 	private ShardClient destShardClient;
 	private DupeUtil dupeUtil;
 	
-	private final Map<String, RawBsonDocument> destChunksCache = new LinkedHashMap<>();
-	private final Map<String, NavigableMap<BsonValueWrapper, CountingMegachunk>> destChunkMap = new HashMap<>();
+	private volatile ChunkRoutingTable destRoutingTable;
 	private Map<String, Document> collectionsMap;
 
 	private List<Namespace> includeNamespaces = new ArrayList<>();
@@ -414,20 +411,17 @@ public class MongoSync implements Callable<Integer>, MongoSyncPauseListener {
 	                    // Try to find chunk information
 	                    try {
 	                        // Get the shard key value for looking up the chunk
-	                        if (shardKeyValue != null && destChunkMap.containsKey(namespace)) {
-	                            NavigableMap<BsonValueWrapper, CountingMegachunk> chunkMap = destChunkMap.get(namespace);
-	                            
+	                        if (shardKeyValue != null && destRoutingTable != null && destRoutingTable.containsNamespace(namespace)) {
 	                            // Convert shard key value to BsonValue for lookup
 	                            BsonValue bsonValue = BsonValueConverter.convertToBsonValue(shardKeyValue);
 	                            BsonValueWrapper wrapper = new BsonValueWrapper(bsonValue);
 	                            
 	                            // Find which chunk this document should belong to
-	                            Map.Entry<BsonValueWrapper, CountingMegachunk> entry = chunkMap.floorEntry(wrapper);
-	                            if (entry != null) {
-	                                CountingMegachunk chunk = entry.getValue();
-	                                logMessage.append(" in chunk: shard=").append(chunk.getShard())
-	                                        .append(", min=").append(chunk.getMin())
-	                                        .append(", max=").append(chunk.getMax());
+	                            int chunkIndex = destRoutingTable.findChunk(namespace, wrapper);
+	                            if (chunkIndex >= 0) {
+	                                logMessage.append(" in chunk: shard=").append(destRoutingTable.getShard(namespace, chunkIndex))
+	                                        .append(", min=").append(destRoutingTable.getMin(namespace, chunkIndex))
+	                                        .append(", max=").append(destRoutingTable.getMax(namespace, chunkIndex));
 	                            }
 	                            
 	                            // Try to find the existing document with same _id
@@ -443,13 +437,11 @@ public class MongoSync implements Callable<Integer>, MongoSyncPauseListener {
 	                                    BsonValue existingBsonValue = BsonValueConverter.convertToBsonValue(existingShardKeyValue);
 	                                    BsonValueWrapper existingWrapper = new BsonValueWrapper(existingBsonValue);
 	                                    
-	                                    Map.Entry<BsonValueWrapper, CountingMegachunk> existingEntry = 
-	                                        chunkMap.floorEntry(existingWrapper);
-	                                    if (existingEntry != null) {
-	                                        CountingMegachunk existingChunk = existingEntry.getValue();
-	                                        logMessage.append(" in chunk: shard=").append(existingChunk.getShard())
-	                                                .append(", min=").append(existingChunk.getMin())
-	                                                .append(", max=").append(existingChunk.getMax());
+	                                    int existingIndex = destRoutingTable.findChunk(namespace, existingWrapper);
+	                                    if (existingIndex >= 0) {
+	                                        logMessage.append(" in chunk: shard=").append(destRoutingTable.getShard(namespace, existingIndex))
+	                                                .append(", min=").append(destRoutingTable.getMin(namespace, existingIndex))
+	                                                .append(", max=").append(destRoutingTable.getMax(namespace, existingIndex));
 	                                    }
 	                                }
 	                            }
@@ -710,16 +702,15 @@ public class MongoSync implements Callable<Integer>, MongoSyncPauseListener {
 	        logger.info("Found {} and {} duplicates in archive collections for {}", 
 	                  duplicates1.size(), duplicates2.size(), ns);
 	        
-	        // Get the chunk map for this namespace
-	        NavigableMap<BsonValueWrapper, CountingMegachunk> chunkMap = destChunkMap.get(ns.getNamespace());
-	        if (chunkMap == null) {
+	        // Check the destination has chunks for this namespace
+	        if (!resolver.hasChunks(ns.getNamespace())) {
 	            logger.warn("No chunk map found for {}, skipping duplicate handling", ns);
 	            continue;
 	        }
 	        
 	        // Build the duplicate mappings using the actual shard key
-	        resolver.buildDuplicateMapping(ns.getNamespace(), duplicates1, chunkMap, shardKey);
-	        resolver.buildDuplicateMapping(ns.getNamespace(), duplicates2, chunkMap, shardKey);
+	        resolver.buildDuplicateMapping(ns.getNamespace(), duplicates1, shardKey);
+	        resolver.buildDuplicateMapping(ns.getNamespace(), duplicates2, shardKey);
 	        
 	        // Determine split points based on duplicate distribution
 	        resolver.determineSplitPoints(ns.getNamespace());
@@ -811,7 +802,7 @@ public class MongoSync implements Callable<Integer>, MongoSyncPauseListener {
 				logger.debug("includeNamespaces: {}", includeNamespaceStrings);
 
 				shardConfigSync.syncMetadataOptimized();
-				chunkManager.loadChunkMap(destShardClient, null, destChunksCache, destChunkMap);
+				destRoutingTable = chunkManager.loadRoutingTable(destShardClient);
 				deleteDuplicatesOnSource();
 
 			} catch (Exception e) {
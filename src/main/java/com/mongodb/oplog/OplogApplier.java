@@ -4,16 +4,13 @@ import static com.mongodb.client.model.Filters.and;
 import static com.mongodb.client.model.Filters.gte;
 import static com.mongodb.client.model.Filters.ne;
 
-import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.Properties;
 
 import org.apache.commons.cli.CommandLine;
@@ -23,23 +20,23 @@ import org.apache.commons.cli.HelpFormatter;
 import org.apache.commons.cli.Option;
 import org.apache.commons.cli.OptionBuilder;
 import org.apache.commons.cli.Options;
-import org.apache.commons.lang3.StringUtils;
-import org.bson.BSONDecoder;
-import org.bson.BSONObject;
-import org.bson.BasicBSONDecoder;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
 import org.bson.BsonTimestamp;
+import org.bson.BsonValue;
 import org.bson.Document;
+import org.bson.RawBsonDocument;
 import org.bson.conversions.Bson;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.mongodb.MongoCommandException;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoDatabase;
 import com.mongodb.shardsync.ShardClient;
 import com.mongodb.shardsync.ShardConfigSyncApp;
+import com.mongodb.util.bson.MappedBsonFileReader;
 
 /**
  * 
@@ -59,6 +56,14 @@ public class OplogApplier {
 	private final static String SOURCE_SHARD = "sourceShard";
 	private final static String DEST_SHARD = "destShard";
 	private final static String TIMESTAMP = "ts";
+	private final static String LANES = "lanes";
+	private final static String BATCH_SIZE = "batchSize";
+	private final static String READER_THREADS = "readerThreads";
+
+	private final static int DEFAULT_LANES = 8;
+	private final static int DEFAULT_BATCH_SIZE = 500;
+	private final static int DEFAULT_READER_THREADS = 4;
+	private final static long PROGRESS_INTERVAL_OPS = 10000;
 
 	private String sourceClusterUri;
 	private String destClusterUri;
@@ -67,6 +72,9 @@ public class OplogApplier {
 	private File sourceFile;
 	
 	private BsonTimestamp timestamp;
+	private int lanes = DEFAULT_LANES;
+	private int batchSize = DEFAULT_BATCH_SIZE;
+	private int readerThreads = DEFAULT_READER_THREADS;
 
 	private ShardClient sourceShardClient;
 	private ShardClient destShardClient;
@@ -90,55 +98,35 @@ public class OplogApplier {
 		MongoClient destClient = destShardClient.getShardMongoClient(destShardId);
 		
 		MongoDatabase local = sourceClient.getDatabase("local");
-        MongoCollection<Document> oplog = local.getCollection("oplog.rs", Document.class);
-        
-        List<Document> opsList = new ArrayList<>(1);
+        MongoCollection<RawBsonDocument> oplog = local.getCollection("oplog.rs", RawBsonDocument.class);
         
-        MongoCursor<Document> cursor = null;
+        OplogBatchApplier applier = new OplogBatchApplier(applyOpsApplier(destClient), lanes, batchSize);
         Bson query = and(gte("ts", timestamp), ne("op", "n"));
         long start = System.currentTimeMillis();
         long count = 0;
-        long errorCount = 0;
-        try {
-            //cursor = oplog.find(query).noCursorTimeout(true).cursorType(CursorType.TailableAwait).iterator();
-        	cursor = oplog.find(query).sort(new Document("$natural", 1)).noCursorTimeout(true).iterator();
+        //cursor = oplog.find(query).noCursorTimeout(true).cursorType(CursorType.TailableAwait).iterator();
+        try (MongoCursor<RawBsonDocument> cursor = oplog.find(query).sort(new Document("$natural", 1))
+        		.noCursorTimeout(true).iterator()) {
             while (cursor.hasNext()) {
-                Document doc = cursor.next();
-                String ns = doc.getString("ns");
+                RawBsonDocument doc = cursor.next();
+                String ns = doc.getString("ns").getValue();
                 if (ns.startsWith("config.")) {
                 	continue;
                 }
-                String dbName = StringUtils.substringBefore(ns, ".");
-                doc.remove("ui");
-                //logger.debug("applying: " + doc);
-                
-                opsList.clear();
-                opsList.add(doc);
-                Document applyOps = new Document("applyOps", opsList);
-                try {
-                	Document result = destClient.getDatabase(dbName).runCommand(applyOps);
-                	//logger.debug("result: " + result);
-                } catch (MongoCommandException mce) {
-                	errorCount++;
-                	logger.error("error applying: " + mce.getMessage());
-                	logger.debug("op: " + doc);
-                }
-                
+                applier.add(doc);
                 count++;
-                if (count % 100 == 0) {
-                	logger.debug(String.format("Executed %s applyOps, errorCount: %s", count, errorCount));
+                if (count % PROGRESS_INTERVAL_OPS == 0) {
+                	logProgress(applier);
                 }
             }
-            
         } finally {
-            cursor.close();
+            // stops the lane threads, which would otherwise keep the JVM running
+            applier.close();
         }
-        long end = System.currentTimeMillis();
-        Double dur = (end - start)/1000.0;
-        logger.debug(String.format("Executed %s applyOps in %f seconds, errorCount: %s", count, dur, errorCount));
+        logComplete(applier, start);
     }
 	
-	public void runFile() throws FileNotFoundException {
+	public void runFile() {
 		logger.debug("OplogApplier starting");
 
 		//sourceToDestShardMap.put(sourceShardId, destShardId);
@@ -156,64 +144,62 @@ public class OplogApplier {
 		
 		
         long start = System.currentTimeMillis();
-        long count = 0;
-        long errorCount = 0;
-        
-        InputStream inputStream = new BufferedInputStream(new FileInputStream(sourceFile));
+        AtomicLong count = new AtomicLong();
         
-        List<BSONObject> opsList = new ArrayList<>(1);
-        BSONDecoder decoder = new BasicBSONDecoder();
-        try {
-            while (inputStream.available() > 0) {
-                
-            	
-                BSONObject obj = decoder.readObject(inputStream);
-                if(obj == null){
-                    break;
+        OplogBatchApplier applier = new OplogBatchApplier(applyOpsApplier(destClient), lanes, batchSize);
+        try (MappedBsonFileReader reader = new MappedBsonFileReader(sourceFile)) {
+            reader.forEachParallel(readerThreads, obj -> {
+                String ns = obj.getString("ns").getValue();
+                return !ns.startsWith("config.") && !ns.contains(".tmp.");
+            }, obj -> {
+                applier.add(obj);
+                if (count.incrementAndGet() % PROGRESS_INTERVAL_OPS == 0) {
+                	logProgress(applier);
                 }
-                
-                String ns = (String)obj.get("ns");
-                if (ns.startsWith("config.") || ns.contains(".tmp.")) {
-                	continue;
-                }
-                String dbName = StringUtils.substringBefore(ns, ".");
-                obj.removeField("ui");
-                
-                opsList.clear();
-                opsList.add(obj);
-                Document applyOps = new Document("applyOps", opsList);
-                try {
-                	Document result = destClient.getDatabase(dbName).runCommand(applyOps);
-                	logger.debug("result: " + result);
-                } catch (MongoCommandException mce) {
-                	errorCount++;
-                	logger.error("error applying: " + mce.getMessage());
-                	logger.debug("op: " + obj);
-                }
-                
-                count++;
-                if (count % 100 == 0) {
-                	logger.debug(String.format("Executed %s applyOps, errorCount: %s", count, errorCount));
-                }
-                
-            }
+            });
         } catch (IOException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
+            logger.error("Error reading {}", sourceFile, e);
         } finally {
-            try {
-                inputStream.close();
-            } catch (IOException e) {
-            }
+            applier.close();
         }
         System.err.println(String.format("%s objects read", count));
         
-        
-        
-        long end = System.currentTimeMillis();
-        Double dur = (end - start)/1000.0;
-        logger.debug(String.format("Executed %s applyOps in %f seconds, errorCount: %s", count, dur, errorCount));
+        logComplete(applier, start);
     }
+
+	/**
+	 * Applies each batch as one applyOps command. The collection UUIDs ("ui") are removed
+	 * since they differ between the source and destination.
+	 */
+	private static OplogBatchApplier.OpsApplier applyOpsApplier(MongoClient destClient) {
+		MongoDatabase admin = destClient.getDatabase("admin");
+		return ops -> {
+			BsonArray opsList = new BsonArray(ops.size());
+			for (RawBsonDocument op : ops) {
+				BsonDocument doc = new BsonDocument();
+				for (Map.Entry<String, BsonValue> entry : op.entrySet()) {
+					if (!entry.getKey().equals("ui")) {
+						doc.append(entry.getKey(), entry.getValue());
+					}
+				}
+				opsList.add(doc);
+			}
+			admin.runCommand(new BsonDocument("applyOps", opsList));
+		};
+	}
+
+	private static void logProgress(OplogBatchApplier applier) {
+		logger.debug(String.format("Applied %s ops in %s applyOps, errorCount: %s", applier.getApplied(),
+				applier.getBatches(), applier.getErrors()));
+	}
+
+	private static void logComplete(OplogBatchApplier applier, long start) {
+		long end = System.currentTimeMillis();
+		Double dur = (end - start)/1000.0;
+		logger.debug(String.format("Applied %s ops in %s applyOps in %f seconds (%.0f ops/s), errorCount: %s",
+				applier.getApplied(), applier.getBatches(), dur, applier.getApplied() / Math.max(dur, 0.001),
+				applier.getErrors()));
+	}
         
 
 	@SuppressWarnings("static-access")
@@ -231,6 +217,15 @@ public class OplogApplier {
 		
 		options.addOption(
 				OptionBuilder.withArgName("source file").hasArg().withLongOpt("sourceFile").create("f"));
+		options.addOption(
+				OptionBuilder.withArgName("parallel apply lanes, ops on the same _id share a lane (default 8)").hasArg()
+						.withLongOpt(LANES).create());
+		options.addOption(
+				OptionBuilder.withArgName("max ops per applyOps command (default 500)").hasArg()
+						.withLongOpt(BATCH_SIZE).create());
+		options.addOption(
+				OptionBuilder.withArgName("threads reading and filtering the source file (default 4)").hasArg()
+						.withLongOpt(READER_THREADS).create());
 
 		CommandLineParser parser = new GnuParser();
 		try {
@@ -296,6 +291,16 @@ public class OplogApplier {
 		}
 		
 		
+		if (line.hasOption(LANES)) {
+			oplog.setLanes(Integer.parseInt(line.getOptionValue(LANES)));
+		}
+		if (line.hasOption(BATCH_SIZE)) {
+			oplog.setBatchSize(Integer.parseInt(line.getOptionValue(BATCH_SIZE)));
+		}
+		if (line.hasOption(READER_THREADS)) {
+			oplog.setReaderThreads(Integer.parseInt(line.getOptionValue(READER_THREADS)));
+		}
+		
 		String sourceFileName = line.getOptionValue("sourceFile");
 		if (sourceFileName != null) {
 			oplog.setSourceFile(new File(sourceFileName));
@@ -340,4 +345,16 @@ public class OplogApplier {
 		this.sourceFile = sourceFile;
 	}
 
+	public void setLanes(int lanes) {
+		this.lanes = lanes;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	public void setReaderThreads(int readerThreads) {
+		this.readerThreads = readerThreads;
+	}
+
 }
@@ -0,0 +1,188 @@
+package com.mongodb.oplog;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.RawBsonDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.mongodb.MongoInterruptedException;
+import com.mongodb.util.BlockWhenQueueFull;
+import com.mongodb.util.bson.CanonicalBsonComparator;
+
+/**
+ * Applies a stream of oplog entries in batches across parallel lanes. CRUD entries are
+ * hashed to a lane by namespace and _id, so all the entries for one document are applied
+ * in oplog order by the same lane thread, while different documents are applied
+ * concurrently. Each lane groups its entries into batches of up to batchSize entries (and
+ * BATCH_MAX_BYTES) for the OpsApplier. Commands (op "c") are barriers: every lane is
+ * drained before the command is applied on its own, and lanes only resume after it.
+ * <p>
+ * If a batch fails, its entries are retried one at a time, so that one bad entry does not
+ * fail the rest. This relies on oplog entries being idempotent, which is what allows
+ * secondaries to re-apply them too.
+ */
+public class OplogBatchApplier {
+
+	private static Logger logger = LoggerFactory.getLogger(OplogBatchApplier.class);
+
+	private static final int BATCH_MAX_BYTES = 12 * 1024 * 1024;
+	private static final int LANE_QUEUE_DEPTH = 4;
+
+	/**
+	 * Applies a batch of oplog entries, e.g. as a single applyOps command. Throws on
+	 * failure, e.g. MongoCommandException.
+	 */
+	public interface OpsApplier {
+		void apply(List<RawBsonDocument> ops);
+	}
+
+	private class Lane {
+		final ThreadPoolExecutor executor;
+		List<RawBsonDocument> batch = new ArrayList<>();
+		int batchBytes;
+
+		Lane(ThreadFactory threadFactory) {
+			executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue<>(LANE_QUEUE_DEPTH), threadFactory, new BlockWhenQueueFull());
+		}
+
+		void add(RawBsonDocument op, int size) {
+			if (!batch.isEmpty() && batchBytes + size > BATCH_MAX_BYTES) {
+				submit();
+			}
+			batch.add(op);
+			batchBytes += size;
+			if (batch.size() >= batchSize) {
+				submit();
+			}
+		}
+
+		void submit() {
+			if (batch.isEmpty()) {
+				return;
+			}
+			List<RawBsonDocument> ops = batch;
+			batch = new ArrayList<>();
+			batchBytes = 0;
+			executor.execute(() -> applyBatch(ops));
+		}
+
+		void await() {
+			try {
+				executor.submit(() -> {}).get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new MongoInterruptedException("Interrupted waiting for oplog apply lane", e);
+			} catch (ExecutionException e) {
+				throw new IllegalStateException(e.getCause());
+			}
+		}
+	}
+
+	private final OpsApplier applier;
+	private final int batchSize;
+	private final Lane[] lanes;
+
+	private final AtomicLong applied = new AtomicLong();
+	private final AtomicLong errors = new AtomicLong();
+	private final AtomicLong batches = new AtomicLong();
+
+	public OplogBatchApplier(OpsApplier applier, int numLanes, int batchSize) {
+		this.applier = applier;
+		this.batchSize = Math.max(1, batchSize);
+		ThreadFactory threadFactory = new ThreadFactoryBuilder().setNameFormat("OplogLane-%d").build();
+		this.lanes = new Lane[Math.max(1, numLanes)];
+		for (int i = 0; i < lanes.length; i++) {
+			lanes[i] = new Lane(threadFactory);
+		}
+	}
+
+	public void add(RawBsonDocument op) {
+		String opType = op.getString("op").getValue();
+		if (opType.equals("c")) {
+			flush();
+			applyBatch(List.of(op));
+			return;
+		}
+		int size = op.getByteBuffer().remaining();
+		lanes[laneFor(op)].add(op, size);
+	}
+
+	/**
+	 * Apply everything added so far, returning once all lanes are idle.
+	 */
+	public void flush() {
+		for (Lane lane : lanes) {
+			lane.submit();
+		}
+		for (Lane lane : lanes) {
+			lane.await();
+		}
+	}
+
+	/**
+	 * Flush and stop the lane threads.
+	 */
+	public void close() {
+		try {
+			flush();
+		} finally {
+			for (Lane lane : lanes) {
+				lane.executor.shutdown();
+			}
+		}
+	}
+
+	int laneFor(BsonDocument op) {
+		String ns = op.getString("ns").getValue();
+		BsonDocument idDoc = op.getString("op").getValue().equals("u") ? op.getDocument("o2", null)
+				: op.getDocument("o", null);
+		BsonValue id = idDoc == null ? null : idDoc.get("_id");
+		// hashed by value, so that e.g. NumberInt(1) and NumberLong(1) share a lane
+		int hash = 31 * ns.hashCode() + (id == null ? 0 : CanonicalBsonComparator.hash(id));
+		return Math.floorMod(hash, lanes.length);
+	}
+
+	private void applyBatch(List<RawBsonDocument> ops) {
+		try {
+			applier.apply(ops);
+			applied.addAndGet(ops.size());
+			batches.incrementAndGet();
+			return;
+		} catch (RuntimeException e) {
+			if (ops.size() == 1) {
+				errors.incrementAndGet();
+				logger.error("error applying: {}", e.getMessage());
+				logger.debug("op: {}", ops.get(0).toJson());
+				return;
+			}
+			logger.debug("batch of {} ops failed, retrying one at a time: {}", ops.size(), e.getMessage());
+		}
+		for (RawBsonDocument op : ops) {
+			applyBatch(List.of(op));
+		}
+	}
+
+	public long getApplied() {
+		return applied.get();
+	}
+
+	public long getErrors() {
+		return errors.get();
+	}
+
+	public long getBatches() {
+		return batches.get();
+	}
+}
@@ -0,0 +1,218 @@
+package com.mongodb.oplog;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoInterruptedException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.model.WriteModel;
+import com.mongodb.model.Namespace;
+import com.mongodb.mongosync.BulkWriteOutput;
+import com.mongodb.util.BlockWhenQueueFull;
+
+/**
+ * Writes oplog CRUD entries as unordered bulk writes across parallel lanes. Entries are
+ * hashed to a lane by namespace and _id, and each lane keeps one pending batch per
+ * namespace. A batch never holds two writes for the same _id (adding a second one sends
+ * the batch first), and a lane's batches are written one after another by its single
+ * thread, so writes to a document are applied in oplog order even though each batch is
+ * unordered. Each lane has at most maxInFlight batches queued; add() blocks beyond that.
+ * <p>
+ * Individual write errors in a bulk write are counted and logged (duplicate keys are
+ * counted separately, as BulkWriteOutput does), the rest of the batch is applied. If a
+ * bulk write fails as a whole, the batch is split in half and each half retried, down to
+ * single writes, so that one bad write only fails itself.
+ */
+public class OplogBulkWriter {
+
+	private static Logger logger = LoggerFactory.getLogger(OplogBulkWriter.class);
+
+	private static final int DUPLICATE_KEY_ERROR = 11000;
+
+	/**
+	 * Runs one unordered bulk write, e.g. MongoCollection.bulkWrite.
+	 */
+	public interface BulkWriter {
+		BulkWriteResult write(Namespace ns, List<WriteModel<BsonDocument>> models);
+	}
+
+	private static class Batch {
+		final List<WriteModel<BsonDocument>> models = new ArrayList<>();
+		final Set<BsonValue> ids = new HashSet<>();
+	}
+
+	private class Lane {
+		final ThreadPoolExecutor executor;
+		final Map<Namespace, Batch> batches = new HashMap<>();
+		// only updated by the lane thread
+		final BulkWriteOutput output = new BulkWriteOutput();
+
+		Lane(ThreadFactory threadFactory) {
+			executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue<>(maxInFlight), threadFactory, new BlockWhenQueueFull());
+		}
+
+		void add(Namespace ns, BsonValue id, WriteModel<BsonDocument> model) {
+			Batch batch = batches.computeIfAbsent(ns, k -> new Batch());
+			if (batch.ids.contains(id)) {
+				submit(ns);
+				batch = batches.computeIfAbsent(ns, k -> new Batch());
+			}
+			batch.models.add(model);
+			batch.ids.add(id);
+			if (batch.models.size() >= batchSize) {
+				submit(ns);
+			}
+		}
+
+		void submit(Namespace ns) {
+			Batch batch = batches.remove(ns);
+			if (batch != null && !batch.models.isEmpty()) {
+				executor.execute(() -> write(this, ns, batch.models));
+			}
+		}
+
+		void submitAll() {
+			for (Namespace ns : new ArrayList<>(batches.keySet())) {
+				submit(ns);
+			}
+		}
+
+		void await() {
+			try {
+				executor.submit(() -> {}).get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new MongoInterruptedException("Interrupted waiting for oplog write lane", e);
+			} catch (ExecutionException e) {
+				throw new IllegalStateException(e.getCause());
+			}
+		}
+	}
+
+	private final BulkWriter writer;
+	private final int batchSize;
+	private final int maxInFlight;
+	private final Lane[] lanes;
+
+	private final AtomicLong errors = new AtomicLong();
+	private final AtomicLong bulkWrites = new AtomicLong();
+
+	public OplogBulkWriter(BulkWriter writer, int numLanes, int batchSize, int maxInFlight) {
+		this.writer = writer;
+		this.batchSize = Math.max(1, batchSize);
+		this.maxInFlight = Math.max(1, maxInFlight);
+		ThreadFactory threadFactory = new ThreadFactoryBuilder().setNameFormat("OplogWriter-%d").build();
+		this.lanes = new Lane[Math.max(1, numLanes)];
+		for (int i = 0; i < lanes.length; i++) {
+			lanes[i] = new Lane(threadFactory);
+		}
+	}
+
+	/**
+	 * Queue a write for the document with the given _id. Not thread safe, entries must be
+	 * added from one thread in oplog order.
+	 */
+	public void add(Namespace ns, BsonValue id, WriteModel<BsonDocument> model) {
+		int hash = 31 * ns.hashCode() + (id == null ? 0 : id.hashCode());
+		lanes[Math.floorMod(hash, lanes.length)].add(ns, id, model);
+	}
+
+	/**
+	 * Write everything added so far, returning once all lanes are idle.
+	 */
+	public void flush() {
+		for (Lane lane : lanes) {
+			lane.submitAll();
+		}
+		for (Lane lane : lanes) {
+			lane.await();
+		}
+	}
+
+	public void close() {
+		flush();
+		for (Lane lane : lanes) {
+			lane.executor.shutdown();
+		}
+	}
+
+	private void write(Lane lane, Namespace ns, List<WriteModel<BsonDocument>> models) {
+		try {
+			lane.output.increment(writer.write(ns, models));
+			bulkWrites.incrementAndGet();
+		} catch (MongoBulkWriteException e) {
+			bulkWrites.incrementAndGet();
+			int duplicateKeys = 0;
+			for (BulkWriteError error : e.getWriteErrors()) {
+				if (error.getCode() == DUPLICATE_KEY_ERROR) {
+					duplicateKeys++;
+				} else {
+					errors.incrementAndGet();
+					logger.error("{} write error: {}", ns, error.getMessage());
+					logger.debug("write: {}", models.get(error.getIndex()));
+				}
+			}
+			if (e.getWriteConcernError() != null) {
+				logger.error("{} write concern error: {}", ns, e.getWriteConcernError().getMessage());
+			}
+			lane.output.increment(e.getWriteResult(), duplicateKeys);
+		} catch (RuntimeException e) {
+			if (models.size() == 1) {
+				errors.incrementAndGet();
+				logger.error("{} write failed: {}", ns, e.getMessage());
+				logger.debug("write: {}", models.get(0));
+				return;
+			}
+			logger.debug("{} bulk write of {} failed, splitting: {}", ns, models.size(), e.getMessage());
+			int mid = models.size() / 2;
+			write(lane, ns, models.subList(0, mid));
+			write(lane, ns, models.subList(mid, models.size()));
+		}
+	}
+
+	/**
+	 * Counts per lane. Only consistent after flush() or close().
+	 */
+	public List<BulkWriteOutput> getLaneOutputs() {
+		List<BulkWriteOutput> outputs = new ArrayList<>(lanes.length);
+		for (Lane lane : lanes) {
+			outputs.add(lane.output);
+		}
+		return outputs;
+	}
+
+	public BulkWriteOutput getTotalOutput() {
+		BulkWriteOutput total = new BulkWriteOutput();
+		for (Lane lane : lanes) {
+			total.add(lane.output);
+		}
+		return total;
+	}
+
+	public long getErrors() {
+		return errors.get();
+	}
+
+	public long getBulkWrites() {
+		return bulkWrites.get();
+	}
+}
@@ -0,0 +1,74 @@
+package com.mongodb.oplog;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.bson.BsonDocument;
+import org.bson.BsonTimestamp;
+import org.bson.BsonValue;
+import org.bson.RawBsonDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mongodb.util.bson.BsonStreamUtil;
+
+/**
+ * Last consumed oplog timestamp per shard, kept in a file as a single BSON document of
+ * shardId: Timestamp so that a tailer can resume where it left off.
+ */
+public class OplogCheckpointStore {
+
+	private static final Logger logger = LoggerFactory.getLogger(OplogCheckpointStore.class);
+
+	private final File file;
+
+	public OplogCheckpointStore(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * @return the saved checkpoints, empty if there is no (readable) checkpoint file
+	 */
+	public Map<String, BsonTimestamp> load() {
+		Map<String, BsonTimestamp> checkpoints = new TreeMap<>();
+		if (!file.exists()) {
+			return checkpoints;
+		}
+		try (InputStream in = new BufferedInputStream(Files.newInputStream(file.toPath()))) {
+			RawBsonDocument doc = BsonStreamUtil.readDocument(new DataInputStream(in));
+			if (doc != null) {
+				for (Map.Entry<String, BsonValue> entry : doc.entrySet()) {
+					checkpoints.put(entry.getKey(), entry.getValue().asTimestamp());
+				}
+			}
+			logger.debug("loaded oplog checkpoints from {}: {}", file, checkpoints);
+		} catch (IOException | RuntimeException e) {
+			logger.warn("ignoring unreadable oplog checkpoint file {}: {}", file, e.getMessage());
+		}
+		return checkpoints;
+	}
+
+	/**
+	 * Replace the checkpoint file atomically.
+	 */
+	public void save(Map<String, BsonTimestamp> checkpoints) throws IOException {
+		BsonDocument doc = new BsonDocument();
+		for (Map.Entry<String, BsonTimestamp> entry : new TreeMap<>(checkpoints).entrySet()) {
+			doc.append(entry.getKey(), entry.getValue());
+		}
+		File tmp = new File(file.getPath() + ".tmp");
+		try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp.toPath()))) {
+			BsonStreamUtil.writeDocument(out, doc);
+		}
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+}
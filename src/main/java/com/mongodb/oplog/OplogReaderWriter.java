@@ -3,10 +3,7 @@ package com.mongodb.oplog;
 import static com.mongodb.client.model.Filters.and;
 import static com.mongodb.client.model.Filters.ne;
 
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -24,9 +21,7 @@ import org.slf4j.LoggerFactory;
 import com.mongodb.util.DatabaseUtil;
 
 import com.mongodb.ConnectionString;
-import com.mongodb.MongoBulkWriteException;
 import com.mongodb.MongoClientSettings;
-import com.mongodb.bulk.BulkWriteError;
 import com.mongodb.bulk.BulkWriteResult;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoClients;
@@ -43,14 +38,18 @@ public class OplogReaderWriter {
 
 	private static Logger logger = LoggerFactory.getLogger(OplogReaderWriter.class);
 
-	private final static BulkWriteOptions orderedBulkWriteOptions = new BulkWriteOptions();
+	private final static BulkWriteOptions unorderedBulkWriteOptions = new BulkWriteOptions().ordered(false);
 
 	private static Options options;
 
 	private final static int BATCH_SIZE = 1000;
+	private final static int MAX_IN_FLIGHT_PER_LANE = 4;
+	private final static int DEFAULT_LANES = 8;
+	private final static long PROGRESS_INTERVAL_OPS = 100000;
 
 	private final static String SOURCE_URI = "source";
 	private final static String DEST_URI = "dest";
+	private final static String LANES = "lanes";
 	private String sourceUri;
 	private String destUri;
 
@@ -60,7 +59,7 @@ public class OplogReaderWriter {
 	private MongoClient sourceClient;
 	private MongoClient destClient;
 
-	BulkWriteOutput results = new BulkWriteOutput();
+	private int lanes = DEFAULT_LANES;
 
 	public OplogReaderWriter(String sourceUri, String destUri) {
 		this.sourceUri = sourceUri;
@@ -89,7 +88,8 @@ public class OplogReaderWriter {
 		// MongoCursor<Document> cursor = null;
 		Bson query = and(ne("op", "n"));
 
-		Map<Namespace, List<WriteModel<BsonDocument>>> writeModelsMap = new HashMap<>();
+		OplogBulkWriter bulkWriter = new OplogBulkWriter(this::bulkWrite, lanes, BATCH_SIZE, MAX_IN_FLIGHT_PER_LANE);
+		long count = 0;
 
 		try {
 			cursor = oplog.find(query).noCursorTimeout(true).iterator();
@@ -107,18 +107,13 @@ public class OplogReaderWriter {
 					continue;
 				}
 
-				List<WriteModel<BsonDocument>> writeModels = writeModelsMap.get(ns);
-				if (writeModels == null) {
-					writeModels = new ArrayList<>(BATCH_SIZE);
-					writeModelsMap.put(ns, writeModels);
-				}
-
+				BsonDocument idDoc = op.equals("u") ? doc.getDocument("o2") : doc.getDocument("o");
 				WriteModel<BsonDocument> model = ApplyOperationsHelper.getWriteModelForOperation(doc, false);
 				if (model != null) {
-					writeModels.add(model);
-
-					if (writeModels.size() >= BATCH_SIZE) {
-						flush(ns, writeModels);
+					bulkWriter.add(ns, idDoc.get("_id"), model);
+					if (++count % PROGRESS_INTERVAL_OPS == 0) {
+						logger.debug("{} oplog entries queued, {} bulk writes, {} errors", count,
+								bulkWriter.getBulkWrites(), bulkWriter.getErrors());
 					}
 
 				} else {
@@ -128,41 +123,24 @@ public class OplogReaderWriter {
 							doc.toJson());
 				}
 			}
+			bulkWriter.close();
 
 		} finally {
 			cursor.close();
 		}
 
+		List<BulkWriteOutput> laneOutputs = bulkWriter.getLaneOutputs();
+		for (int i = 0; i < laneOutputs.size(); i++) {
+			logger.debug("lane {}: {}", i, laneOutputs.get(i));
+		}
+		logger.info("{} oplog entries applied in {} bulk writes, {} errors, {}", count, bulkWriter.getBulkWrites(),
+				bulkWriter.getErrors(), bulkWriter.getTotalOutput());
 	}
 
-	private void flush(Namespace ns, List<WriteModel<BsonDocument>> writeModels) {
-
+	private BulkWriteResult bulkWrite(Namespace ns, List<WriteModel<BsonDocument>> writeModels) {
 		MongoCollection<BsonDocument> collection = destClient.getDatabase(ns.getDatabaseName())
 				.getCollection(ns.getCollectionName(), BsonDocument.class);
-
-		BulkWriteResult bulkWriteResult = null;
-		try {
-			bulkWriteResult = collection.bulkWrite(writeModels, orderedBulkWriteOptions);
-			writeModels.clear();
-			results.increment(bulkWriteResult);
-			logger.debug(results.toString());
-
-		} catch (MongoBulkWriteException err) {
-			List<BulkWriteError> errors = err.getWriteErrors();
-			bulkWriteResult = err.getWriteResult();
-			if (errors.size() == writeModels.size()) {
-				logger.error("{} bulk write errors, all {} operations failed: {}", err);
-			} else {
-				for (BulkWriteError bwe : errors) {
-					int index = bwe.getIndex();
-					writeModels.remove(index);
-				}
-				flush(ns, writeModels);
-			}
-		} catch (Exception ex) {
-			logger.error("{} unknown error: {}", ex.getMessage(), ex);
-		}
-
+		return collection.bulkWrite(writeModels, unorderedBulkWriteOptions);
 	}
 
 	@SuppressWarnings("static-access")
@@ -173,6 +151,9 @@ public class OplogReaderWriter {
 				OptionBuilder.withArgName("source cluster mongo uri").hasArg().withLongOpt(SOURCE_URI).isRequired(true).create("s"));
 		options.addOption(
 				OptionBuilder.withArgName("destination cluster mongo uri").hasArg().withLongOpt(DEST_URI).isRequired(true).create("d"));
+		options.addOption(
+				OptionBuilder.withArgName("parallel write lanes, writes to the same _id share a lane (default 8)").hasArg()
+						.withLongOpt(LANES).create());
 
 		CommandLineParser parser = new GnuParser();
 		CommandLine line = null;
@@ -203,7 +184,14 @@ public class OplogReaderWriter {
 		String sourceUri = line.getOptionValue("s");
 		String destUri = line.getOptionValue("d");
 		OplogReaderWriter op = new OplogReaderWriter(sourceUri, destUri);
+		if (line.hasOption(LANES)) {
+			op.setLanes(Integer.parseInt(line.getOptionValue(LANES)));
+		}
 		op.run();
 	}
 
+	public void setLanes(int lanes) {
+		this.lanes = lanes;
+	}
+
 }
@@ -6,7 +6,9 @@ import java.util.Set;
 
 import org.bson.BsonDocument;
 import org.bson.BsonValue;
+import org.bson.Document;
 import org.bson.RawBsonDocument;
+import org.bson.conversions.Bson;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -24,6 +26,33 @@ public class OplogUtil {
 	private final static Set<String> databasesBlacklist = new HashSet<>(
 			Arrays.asList("system", "local", "config", "admin"));
 
+	/**
+	 * Size in bytes of the full oplog entry, added by {@link #getAnalyzerProjection()}.
+	 */
+	public final static String ENTRY_SIZE_FIELD = "_entrySize";
+
+	/**
+	 * Projection keeping only the oplog entry fields the analyzers read, plus the size of
+	 * the whole entry, so inserted documents and update specs are not sent to the client.
+	 * Aggregation expressions in find projections need MongoDB 4.4 or later.
+	 */
+	public static Bson getAnalyzerProjection() {
+		return new Document("ts", 1).append("ns", 1).append("op", 1).append("wall", 1).append("o._id", 1)
+				.append("o2", 1).append(ENTRY_SIZE_FIELD, new Document("$bsonSize", "$$ROOT"));
+	}
+
+	/**
+	 * @return the size of the full oplog entry, also when it was read with
+	 *         {@link #getAnalyzerProjection()}
+	 */
+	public static int getEntrySize(RawBsonDocument oplogEntry) {
+		BsonValue size = oplogEntry.get(ENTRY_SIZE_FIELD);
+		if (size != null && size.isNumber()) {
+			return size.asNumber().intValue();
+		}
+		return oplogEntry.getByteBuffer().remaining();
+	}
+
 	public static OplogSummary getOplogSummaryFromOplogEntry(RawBsonDocument oplogEntry) {
 
 		String opTypeCode = oplogEntry.getString("op").getValue();
@@ -0,0 +1,429 @@
+package com.mongodb.oplog;
+
+import static com.mongodb.client.model.Filters.and;
+import static com.mongodb.client.model.Filters.gt;
+import static com.mongodb.client.model.Filters.gte;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.BsonTimestamp;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.conversions.Bson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.mongodb.CursorType;
+import com.mongodb.MongoException;
+import com.mongodb.MongoInterruptedException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.shardsync.ShardClient;
+
+/**
+ * Tails the oplog of each shard on its own thread and hands the entries, in batches of
+ * RawBsonDocument, to a set of consumers through one bounded queue. Tailers block when the
+ * queue is full, so slow consumers hold back reading instead of buffering the oplog in
+ * memory.
+ * <p>
+ * The filter (and projection, if set) are sent with the oplog query, so entries the
+ * consumers don't want never leave the shard. Consumers are called from a single dispatch
+ * thread; once every consumer has taken a batch the last ts of the batch becomes the
+ * checkpoint for its shard. The saved checkpoint stays before any entry a consumer still
+ * holds unwritten (see OplogConsumer.getPendingTs). With a checkpoint file the checkpoints are saved periodically
+ * and on stop(), and a restarted tailer resumes after them rather than at the end of the
+ * oplog. Delivery is at least once: batches consumed after the last save are seen again
+ * after a crash.
+ * <p>
+ * Transient read errors re-open the shard's cursor after the last delivered ts, backing
+ * off exponentially while the errors persist. A consumer failure, or a shard whose oplog
+ * has rolled over past its checkpoint (CappedPositionLost), stops all tailers: entries
+ * would otherwise be skipped. awaitTermination() then throws the failure.
+ */
+public class ShardOplogTailer {
+
+	private static final Logger logger = LoggerFactory.getLogger(ShardOplogTailer.class);
+
+	private static final int DEFAULT_BATCH_SIZE = 1000;
+	private static final int DEFAULT_QUEUE_CAPACITY = 64;
+	private static final long CHECKPOINT_INTERVAL_MS = 1000;
+	private static final long RETRY_DELAY_MS = 1000;
+	private static final long MAX_RETRY_DELAY_MS = 60000;
+	private static final int CAPPED_POSITION_LOST = 136;
+
+	/**
+	 * Entries read from one shard, in oplog order.
+	 */
+	public static class OplogBatch {
+		private final String shardId;
+		private final List<RawBsonDocument> entries;
+		private final BsonTimestamp lastTs;
+
+		public OplogBatch(String shardId, List<RawBsonDocument> entries, BsonTimestamp lastTs) {
+			this.shardId = shardId;
+			this.entries = entries;
+			this.lastTs = lastTs;
+		}
+
+		public String getShardId() {
+			return shardId;
+		}
+
+		public List<RawBsonDocument> getEntries() {
+			return entries;
+		}
+
+		public BsonTimestamp getLastTs() {
+			return lastTs;
+		}
+	}
+
+	public interface OplogConsumer {
+		void accept(OplogBatch batch);
+
+		/**
+		 * For consumers that buffer their results: the ts of the oldest entry accepted from
+		 * the shard whose results are not durable yet, or null if there is none. Saved
+		 * checkpoints stay before it, so that it is read again after a crash. Called on the
+		 * dispatch thread, or after stop().
+		 */
+		default BsonTimestamp getPendingTs(String shardId) {
+			return null;
+		}
+	}
+
+	/**
+	 * Where the oplog of each shard is read from.
+	 */
+	interface OplogSource {
+		BsonTimestamp getLatestOplogTimestamp(String shardId);
+
+		MongoCursor<RawBsonDocument> tail(String shardId, Bson query, Bson projection, int batchSize);
+	}
+
+	private final OplogSource source;
+	private final List<String> shardIds;
+	private final List<OplogConsumer> consumers = new CopyOnWriteArrayList<>();
+	private final Map<String, BsonTimestamp> checkpoints = new ConcurrentHashMap<>();
+
+	private Bson filter;
+	private Bson projection;
+	private int batchSize = DEFAULT_BATCH_SIZE;
+	private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+	private OplogCheckpointStore checkpointStore;
+	private long retryDelayMs = RETRY_DELAY_MS;
+	private long maxRetryDelayMs = MAX_RETRY_DELAY_MS;
+
+	private BlockingQueue<OplogBatch> queue;
+	private ExecutorService tailExecutor;
+	private Thread dispatchThread;
+	private volatile boolean running;
+	private volatile boolean failed;
+	private volatile RuntimeException failure;
+
+	public ShardOplogTailer(ShardClient shardClient, Collection<String> shardIds) {
+		this(shardClientSource(shardClient), shardIds);
+	}
+
+	ShardOplogTailer(OplogSource source, Collection<String> shardIds) {
+		this.source = source;
+		this.shardIds = new ArrayList<>(shardIds);
+	}
+
+	private static OplogSource shardClientSource(ShardClient shardClient) {
+		return new OplogSource() {
+			@Override
+			public BsonTimestamp getLatestOplogTimestamp(String shardId) {
+				return shardClient.getLatestOplogTimestamp(shardId);
+			}
+
+			@Override
+			public MongoCursor<RawBsonDocument> tail(String shardId, Bson query, Bson projection, int batchSize) {
+				MongoCollection<RawBsonDocument> oplog = shardClient.getShardMongoClient(shardId).getDatabase("local")
+						.getCollection("oplog.rs", RawBsonDocument.class);
+				return oplog.find(query).projection(projection).sort(new Document("$natural", 1))
+						.noCursorTimeout(true).cursorType(CursorType.TailableAwait).maxAwaitTime(1, TimeUnit.SECONDS)
+						.batchSize(batchSize).iterator();
+			}
+		};
+	}
+
+	public void addConsumer(OplogConsumer consumer) {
+		consumers.add(consumer);
+	}
+
+	/**
+	 * Server side filter on the oplog entries, combined with the ts range of the query.
+	 */
+	public void setFilter(Bson filter) {
+		this.filter = filter;
+	}
+
+	/**
+	 * Server side projection of the oplog entries. The projection must keep ts, which the
+	 * tailer uses for checkpoints.
+	 */
+	public void setProjection(Bson projection) {
+		this.projection = projection;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = Math.max(1, batchSize);
+	}
+
+	public void setQueueCapacity(int queueCapacity) {
+		this.queueCapacity = Math.max(1, queueCapacity);
+	}
+
+	public void setCheckpointFile(File checkpointFile) {
+		this.checkpointStore = checkpointFile == null ? null : new OplogCheckpointStore(checkpointFile);
+	}
+
+	/**
+	 * Delay before re-opening a cursor after an error, doubled on each consecutive error up
+	 * to the max.
+	 */
+	void setRetryDelay(long retryDelayMs, long maxRetryDelayMs) {
+		this.retryDelayMs = retryDelayMs;
+		this.maxRetryDelayMs = maxRetryDelayMs;
+	}
+
+	public void start() {
+		if (checkpointStore != null) {
+			checkpoints.putAll(checkpointStore.load());
+		}
+		queue = new ArrayBlockingQueue<>(queueCapacity);
+		running = true;
+
+		tailExecutor = Executors.newFixedThreadPool(shardIds.size(),
+				new ThreadFactoryBuilder().setNameFormat("OplogTail-%d").build());
+		for (String shardId : shardIds) {
+			tailExecutor.execute(() -> {
+				try {
+					tail(shardId);
+				} catch (RuntimeException e) {
+					logger.error("{}: oplog tailer failed, stopping all tailers", shardId, e);
+					fail(e);
+				}
+			});
+		}
+		tailExecutor.shutdown();
+
+		dispatchThread = new Thread(this::dispatch, "OplogDispatch");
+		dispatchThread.start();
+	}
+
+	/**
+	 * Stop tailing, deliver what has already been read and save the checkpoints.
+	 */
+	public void stop() {
+		if (tailExecutor == null) {
+			return;
+		}
+		logger.debug("stopping oplog tailers");
+		running = false;
+		try {
+			// tailers notice within the await time of the tailable cursor
+			if (!tailExecutor.awaitTermination(1, TimeUnit.MINUTES)) {
+				tailExecutor.shutdownNow();
+			}
+			dispatchThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		logger.debug("oplog tailers stopped, checkpoints: {}", checkpoints);
+	}
+
+	/**
+	 * Wait for all tailers to end, e.g. after a failure.
+	 *
+	 * @throws RuntimeException the consumer exception or oplog error that stopped the tailers
+	 */
+	public void awaitTermination() throws InterruptedException {
+		tailExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		dispatchThread.join();
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * The consumer exception or oplog error that stopped the tailers, or null.
+	 */
+	public RuntimeException getFailure() {
+		return failure;
+	}
+
+	public Map<String, BsonTimestamp> getCheckpoints() {
+		return checkpoints;
+	}
+
+	private void tail(String shardId) {
+		BsonTimestamp lastTs = checkpoints.get(shardId);
+		boolean resume = lastTs != null;
+		if (!resume) {
+			lastTs = source.getLatestOplogTimestamp(shardId);
+		}
+		logger.debug("{}: tailing oplog from {}{}", shardId, lastTs, resume ? " (checkpoint)" : "");
+
+		long retryDelay = retryDelayMs;
+		while (running) {
+			List<RawBsonDocument> batch = new ArrayList<>(batchSize);
+			Bson query = resume ? gt("ts", lastTs) : gte("ts", lastTs);
+			if (filter != null) {
+				query = and(query, filter);
+			}
+			try (MongoCursor<RawBsonDocument> cursor = source.tail(shardId, query, projection, batchSize)) {
+				while (running) {
+					RawBsonDocument doc = cursor.tryNext();
+					if (doc != null) {
+						retryDelay = retryDelayMs;
+						batch.add(doc);
+						if (batch.size() < batchSize) {
+							continue;
+						}
+					}
+					if (!batch.isEmpty()) {
+						lastTs = publish(shardId, batch);
+						resume = true;
+						batch = new ArrayList<>(batchSize);
+					}
+				}
+			} catch (MongoInterruptedException e) {
+				break;
+			} catch (MongoException e) {
+				if (e.getCode() == CAPPED_POSITION_LOST) {
+					logger.error("{}: oplog rolled over past {}, stopping all tailers", shardId, lastTs);
+					fail(e);
+					break;
+				}
+				logger.warn("{}: oplog tail error, retrying from {} in {} ms: {}", shardId, lastTs, retryDelay,
+						e.getMessage());
+				backoff(retryDelay);
+				retryDelay = Math.min(retryDelay * 2, maxRetryDelayMs);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			} finally {
+				if (!batch.isEmpty()) {
+					try {
+						lastTs = publish(shardId, batch);
+						resume = true;
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			}
+		}
+		logger.debug("{}: oplog tailer stopped at {}", shardId, lastTs);
+	}
+
+	private BsonTimestamp publish(String shardId, List<RawBsonDocument> batch) throws InterruptedException {
+		BsonTimestamp lastTs = batch.get(batch.size() - 1).getTimestamp("ts");
+		OplogBatch oplogBatch = new OplogBatch(shardId, batch, lastTs);
+		while (!queue.offer(oplogBatch, 100, TimeUnit.MILLISECONDS)) {
+			if (failed) {
+				// nothing is consuming anymore, drop it
+				break;
+			}
+		}
+		return lastTs;
+	}
+
+	private void dispatch() {
+		long lastSave = System.currentTimeMillis();
+		try {
+			while (running || !tailExecutor.isTerminated() || !queue.isEmpty()) {
+				OplogBatch batch = queue.poll(100, TimeUnit.MILLISECONDS);
+				if (batch != null) {
+					for (OplogConsumer consumer : consumers) {
+						consumer.accept(batch);
+					}
+					checkpoints.put(batch.getShardId(), batch.getLastTs());
+				}
+				if (System.currentTimeMillis() - lastSave >= CHECKPOINT_INTERVAL_MS) {
+					saveCheckpoints();
+					lastSave = System.currentTimeMillis();
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (RuntimeException e) {
+			// the failed batch is not checkpointed, so it is delivered again on restart
+			logger.error("oplog consumer failed, stopping tailers", e);
+			failed = true;
+			fail(e);
+			queue.clear();
+		} finally {
+			saveCheckpoints();
+		}
+	}
+
+	/**
+	 * Stop all tailers. Batches already queued are still delivered, unless it was the
+	 * consumers that failed.
+	 */
+	private synchronized void fail(RuntimeException e) {
+		if (failure == null) {
+			failure = e;
+		}
+		running = false;
+	}
+
+	/**
+	 * Save the checkpoints, held back before the entries the consumers have pending. Done
+	 * periodically and on stop(); call it again after stop() once the consumers have written
+	 * out what they still held.
+	 */
+	public synchronized void saveCheckpoints() {
+		if (checkpointStore == null || checkpoints.isEmpty()) {
+			return;
+		}
+		Map<String, BsonTimestamp> durable = new HashMap<>();
+		for (Map.Entry<String, BsonTimestamp> entry : checkpoints.entrySet()) {
+			BsonTimestamp ts = entry.getValue();
+			for (OplogConsumer consumer : consumers) {
+				BsonTimestamp pending = consumer.getPendingTs(entry.getKey());
+				if (pending != null && pending.compareTo(ts) <= 0) {
+					ts = before(pending);
+				}
+			}
+			durable.put(entry.getKey(), ts);
+		}
+		try {
+			checkpointStore.save(durable);
+		} catch (IOException e) {
+			logger.error("error saving oplog checkpoints", e);
+		}
+	}
+
+	/**
+	 * The timestamp just before ts, so that resuming after it reads ts again.
+	 */
+	static BsonTimestamp before(BsonTimestamp ts) {
+		return ts.getInc() != 0 ? new BsonTimestamp(ts.getTime(), ts.getInc() - 1)
+				: new BsonTimestamp(ts.getTime() - 1, -1);
+	}
+
+	void backoff(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
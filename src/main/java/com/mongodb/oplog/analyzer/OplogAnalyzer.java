@@ -1,11 +1,13 @@
 package com.mongodb.oplog.analyzer;
 
-import java.util.ArrayList;
-import java.util.List;
+import static com.mongodb.client.model.Filters.and;
+import static com.mongodb.client.model.Filters.ne;
+import static com.mongodb.client.model.Filters.not;
+import static com.mongodb.client.model.Filters.regex;
+
+import java.io.File;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -18,6 +20,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.mongodb.model.Shard;
+import com.mongodb.oplog.OplogUtil;
+import com.mongodb.oplog.ShardOplogTailer;
 import com.mongodb.shardsync.ShardClient;
 
 public class OplogAnalyzer {
@@ -27,9 +31,11 @@ public class OplogAnalyzer {
 	private static Options options;
 
 	private String sourceUri;
+	private File checkpointFile;
+	private boolean serverSideProjection;
 	private ShardClient sourceShardClient;
-	private ExecutorService executor;
-	private List<OplogAnalyzerWorker> workers;
+	private ShardOplogTailer tailer;
+	private Map<String, OplogAnalyzerWorker> workers;
 
 	public void init() {
 		sourceShardClient = new ShardClient("source", sourceUri);
@@ -39,15 +45,20 @@ public class OplogAnalyzer {
 
 	public void run() {
 		Map<String, Shard> shardsMap = sourceShardClient.getShardsMap();
-		int numThreads = shardsMap.size();
-		workers = new ArrayList<>(numThreads);
-		executor = Executors.newFixedThreadPool(numThreads);
-
+		workers = new HashMap<>(shardsMap.size());
 		for (String shardId : shardsMap.keySet()) {
-			OplogAnalyzerWorker worker = new OplogAnalyzerWorker(sourceShardClient, shardId);
-			workers.add(worker);
-			executor.execute(worker);
+			workers.put(shardId, new OplogAnalyzerWorker(shardId));
+		}
+
+		tailer = new ShardOplogTailer(sourceShardClient, shardsMap.keySet());
+		// skip no-ops and config.* on the shard rather than in the workers
+		tailer.setFilter(and(ne("op", "n"), not(regex("ns", "^config\\."))));
+		if (serverSideProjection) {
+			tailer.setProjection(OplogUtil.getAnalyzerProjection());
 		}
+		tailer.setCheckpointFile(checkpointFile);
+		tailer.addConsumer(batch -> workers.get(batch.getShardId()).accept(batch));
+		tailer.start();
 	}
 
 	@SuppressWarnings("static-access")
@@ -56,6 +67,11 @@ public class OplogAnalyzer {
 		options.addOption(new Option("help", "print this message"));
 		options.addOption(OptionBuilder.withArgName("mongodb connection uri").hasArg().withLongOpt("uri")
 				.isRequired(true).create("u"));
+		options.addOption(OptionBuilder.withArgName("resume from the oplog timestamps saved in this file")
+				.hasArg().withLongOpt("checkpointFile").create("c"));
+		options.addOption(OptionBuilder
+				.withDescription("only fetch the oplog fields the analyzer needs (MongoDB 4.4+)")
+				.withLongOpt("serverSideProjection").create("p"));
 
 		CommandLineParser parser = new GnuParser();
 		CommandLine line = null;
@@ -78,18 +94,13 @@ public class OplogAnalyzer {
 	private void shutdown() {
 		logger.debug("starting shutdown");
 
-		if (executor != null) {
-			for (OplogAnalyzerWorker w : workers) {
+		if (tailer != null) {
+			tailer.stop();
+			for (OplogAnalyzerWorker w : workers.values()) {
 				w.stop();
 			}
-		}
-
-		executor.shutdownNow();
-		try {
-			executor.awaitTermination(5, TimeUnit.MINUTES);
-		} catch (InterruptedException e) {
-			//logger.warn("interrupted");
-			Thread.currentThread().interrupt();
+			// everything the workers held is written now, so the checkpoints can catch up
+			tailer.saveCheckpoints();
 		}
 		logger.debug("shutdown complete");
 	}
@@ -114,6 +125,10 @@ public class OplogAnalyzer {
 
 		OplogAnalyzer analyzer = new OplogAnalyzer();
 		analyzer.setSourceUri(line.getOptionValue("u"));
+		analyzer.setServerSideProjection(line.hasOption("p"));
+		if (line.hasOption("c")) {
+			analyzer.setCheckpointFile(new File(line.getOptionValue("c")));
+		}
 		analyzer.init();
 		analyzer.run();
 		addShutdownHook(analyzer);
@@ -123,4 +138,12 @@ public class OplogAnalyzer {
 		this.sourceUri = sourceUri;
 	}
 
+	public void setCheckpointFile(File checkpointFile) {
+		this.checkpointFile = checkpointFile;
+	}
+
+	public void setServerSideProjection(boolean serverSideProjection) {
+		this.serverSideProjection = serverSideProjection;
+	}
+
 }
@@ -53,6 +53,7 @@ import com.mongodb.client.model.Aggregates;
 import com.mongodb.client.model.IndexOptions;
 import com.mongodb.client.model.Projections;
 import com.mongodb.client.model.Updates;
+import com.mongodb.model.ChunkKey;
 import com.mongodb.shardsync.ChunkManager;
 import com.mongodb.shardsync.ShardClient;
 import com.mongodb.util.bson.BsonUuidUtil;
@@ -79,6 +80,7 @@ public class Balancer implements Callable<Integer> {
 	private final static String INCLUDE_NAMESPACES = "includeNamespaces";
 	private final static String ANALYZER_SLEEP_INTERVAL = "analyzerSleepIntervalMinutes";
 	private final static String DRY_RUN = "dryRun";
+	private final static String SERVER_SIDE_PROJECTION = "serverSideProjection";
 	private final static String DELTA_THRESHOLD_PERCENT = "deltaThresholdPercent";
 	private final static String MOVE_COUNT_BACKOFF_THRESHOLD = "moveCountBackoffThreshold";
 	private final static String ACTIVE_CHUNK_THRESHOLD = "activeChunkThreshold";
@@ -97,7 +99,7 @@ public class Balancer implements Callable<Integer> {
 
 	private ChunkStats chunkStats;
 
-	Map<String, RawBsonDocument> sourceChunksCache;
+	Map<ChunkKey, RawBsonDocument> sourceChunksCache;
 	Map<String, NavigableMap<BsonValueWrapper, CountingMegachunk>> chunkMap;
 	
 	private int backoffSleepMinutes = 0;
@@ -446,6 +448,7 @@ public class Balancer implements Callable<Integer> {
 		balancerConfig.setSourceShards(sourceShards);
 		balancerConfig.setAnalyzerSleepIntervalMinutes(config.getInt(ANALYZER_SLEEP_INTERVAL, 15));
 		balancerConfig.setDryRun(config.getBoolean(DRY_RUN, false));
+		balancerConfig.setServerSideProjection(config.getBoolean(SERVER_SIDE_PROJECTION, false));
 		balancerConfig.setDeltaThresholdPercent(config.getDouble(DELTA_THRESHOLD_PERCENT, 3.0));
 		balancerConfig.setMoveCountBackoffThreshold(config.getInt(MOVE_COUNT_BACKOFF_THRESHOLD, 10));
 		balancerConfig.setActiveChunkThreshold(config.getInt(ACTIVE_CHUNK_THRESHOLD, 10));
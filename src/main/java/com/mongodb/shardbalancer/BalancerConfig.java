@@ -40,6 +40,8 @@ public class BalancerConfig extends BaseConfiguration {
 	
 	private boolean dryRun;
 	
+	private boolean serverSideProjection;
+	
 	private double deltaThresholdPercent;
 	
 	Map<String, NavigableMap<BsonValueWrapper, CountingMegachunk>> chunkMap;
@@ -150,6 +152,14 @@ public class BalancerConfig extends BaseConfiguration {
 		this.dryRun = dryRun;
 	}
 
+	public boolean isServerSideProjection() {
+		return serverSideProjection;
+	}
+
+	public void setServerSideProjection(boolean serverSideProjection) {
+		this.serverSideProjection = serverSideProjection;
+	}
+
 	public double getDeltaThresholdPercent() {
 		return deltaThresholdPercent;
 	}
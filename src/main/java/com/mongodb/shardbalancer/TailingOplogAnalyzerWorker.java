@@ -4,19 +4,23 @@ import static com.mongodb.client.model.Filters.and;
 import static com.mongodb.client.model.Filters.eq;
 import static com.mongodb.client.model.Filters.gte;
 import static com.mongodb.client.model.Filters.in;
+import static com.mongodb.client.model.Filters.ne;
+import static com.mongodb.client.model.Filters.nin;
+import static com.mongodb.client.model.Filters.not;
+import static com.mongodb.client.model.Filters.regex;
 import static com.mongodb.client.model.Projections.include;
 
 import java.time.Instant;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 
-import org.bson.BsonBoolean;
 import org.bson.BsonDocument;
 import org.bson.BsonTimestamp;
 import org.bson.Document;
@@ -117,35 +121,31 @@ public class TailingOplogAnalyzerWorker implements Runnable {
 		
 		logger.debug("{}: oplog analyzer starting round {}, latestOplogTimestamp: {}", shardId, round++, DateTimeFormatter.ISO_DATE_TIME.format(zonedDateTime));
 		
+		// no-ops, deletes, migrations and config/admin writes are dropped on the shard
+		List<Bson> filters = new ArrayList<>();
+		filters.add(gte("ts", shardTimestamp));
+		filters.add(nin("op", "n", "d"));
+		filters.add(ne("fromMigrate", true));
+		filters.add(not(regex("ns", "^(config|admin)\\.")));
 		List<String> includedNamespaces = config.getIncludedNamespaceStrings(); 
-		Bson query = null;
-		if (includedNamespaces.isEmpty()) {
-			query = gte("ts", shardTimestamp);
-		} else {
-			query = and(gte("ts", shardTimestamp), in("ns", includedNamespaces));
+		if (!includedNamespaces.isEmpty()) {
+			filters.add(in("ns", includedNamespaces));
 		}
+		Bson query = and(filters);
+		Bson projection = config.isServerSideProjection() ? OplogUtil.getAnalyzerProjection() : null;
 		
 		chunkUpdateBuffer.start();
 		
 		try {
-			cursor = oplog.find(query).sort(new Document("$natural", 1)).noCursorTimeout(true)
+			cursor = oplog.find(query).projection(projection).sort(new Document("$natural", 1)).noCursorTimeout(true)
 					.cursorType(CursorType.TailableAwait).iterator();
 			while (cursor.hasNext() && running.get()) {
 				
 				RawBsonDocument doc = cursor.next();
 				
 				String opType = doc.getString("op").getValue();
-				if ( opType.equals("n") || opType.equals("d")) {
-					continue;
-				}
-
 				String ns = doc.getString("ns").getValue();
 				
-				boolean fromMigrate = doc.getBoolean("fromMigrate", BsonBoolean.FALSE).getValue();
-	            if (fromMigrate || ns.startsWith("config.") || ns.startsWith("admin.")) {
-	            	continue;
-	            }
-				
 				Document collMeta = collectionsMap.get(ns);
 				
 				// if there's no collection metadata, it's most likely unsharded
@@ -49,6 +49,9 @@ public class BaseConfiguration {
 	public String destRsRegex;
 	
 	public Boolean sourceRsSsl;
+	public String metadataSnapshotDir;
+	public int shardPoolMinSize;
+	public int shardPoolMaxSize;
 	
 	public BaseConfiguration() {
 		super();
@@ -427,6 +430,30 @@ public class BaseConfiguration {
 		this.destRsManual = destRsManual;
 	}
 	
+	public String getMetadataSnapshotDir() {
+		return metadataSnapshotDir;
+	}
+
+	public void setMetadataSnapshotDir(String metadataSnapshotDir) {
+		this.metadataSnapshotDir = metadataSnapshotDir;
+	}
+
+	public int getShardPoolMinSize() {
+		return shardPoolMinSize;
+	}
+
+	public void setShardPoolMinSize(int shardPoolMinSize) {
+		this.shardPoolMinSize = shardPoolMinSize;
+	}
+
+	public int getShardPoolMaxSize() {
+		return shardPoolMaxSize;
+	}
+
+	public void setShardPoolMaxSize(int shardPoolMaxSize) {
+		this.shardPoolMaxSize = shardPoolMaxSize;
+	}
+
 	public String getDestCsrsUri() {
 		return destCsrsUri;
 	}
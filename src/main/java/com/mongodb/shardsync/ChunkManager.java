@@ -2,7 +2,7 @@ package com.mongodb.shardsync;
 
 import static com.mongodb.client.model.Filters.eq;
 
-import java.time.Instant;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -32,6 +32,7 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.Sets;
 import com.mongodb.client.MongoCollection;
+import com.mongodb.model.ChunkKey;
 import com.mongodb.model.Megachunk;
 import com.mongodb.model.Namespace;
 import com.mongodb.model.Shard;
@@ -60,6 +61,9 @@ public class ChunkManager {
 	
 	private boolean waitForDelete;
 	
+	private int moveChunkThreads = SyncConfiguration.DEFAULT_MOVE_CHUNK_THREADS;
+	private int splitThreads = SyncConfiguration.DEFAULT_SPLIT_THREADS;
+	
 	private Set<String> targetShards;
 	private Iterator<String> targetShardIterator;
 	
@@ -68,6 +72,8 @@ public class ChunkManager {
 		if (config instanceof SyncConfiguration) {
 	        SyncConfiguration syncConfig = (SyncConfiguration) config;
 	        this.targetShards = syncConfig.getTargetShards();
+	        this.moveChunkThreads = syncConfig.getMoveChunkThreads();
+	        this.splitThreads = syncConfig.getSplitThreads();
 	    }
 	}
 	
@@ -177,7 +183,9 @@ public class ChunkManager {
 		client.setRsPattern(config.getSourceRsPattern());
 		client.setRsStringsManual(config.getSourceRsManual());
 		client.setRsRegex(config.getSourceRsRegex());
+		client.setShardPoolSize(config.getShardPoolMinSize(), config.getShardPoolMaxSize());
 		client.init();
+		initializeMetadataSnapshot(client);
 	}
 
 	/**
@@ -191,7 +199,15 @@ public class ChunkManager {
 		client.setRsStringsManual(config.getDestRsManual());
 		client.setRsRegex(config.getDestRsRegex());
 		client.setCsrsUri(config.getDestCsrsUri());
+		client.setShardPoolSize(config.getShardPoolMinSize(), config.getShardPoolMaxSize());
 		client.init();
+		initializeMetadataSnapshot(client);
+	}
+
+	private void initializeMetadataSnapshot(ShardClient client) {
+		if (config.getMetadataSnapshotDir() != null) {
+			client.setMetadataSnapshotDir(new File(config.getMetadataSnapshotDir()));
+		}
 	}
 	
 	/**
@@ -203,7 +219,7 @@ public class ChunkManager {
 	 * @param shardClient The shard client for metadata lookups
 	 * @param clearNamespace Optional namespace to clear from the map before processing
 	 */
-	private void processChunksIntoMap(Map<String, RawBsonDocument> chunksToProcess,
+	private void processChunksIntoMap(Map<ChunkKey, RawBsonDocument> chunksToProcess,
 			Map<String, NavigableMap<BsonValueWrapper, CountingMegachunk>> chunkMap,
 			ShardClient shardClient, String clearNamespace) {
 		
@@ -296,7 +312,7 @@ public class ChunkManager {
 		return null;
 	}
 	
-	public void loadChunkMap(ShardClient shardClient, String namespace, Map<String, RawBsonDocument> chunksCache, 
+	public void loadChunkMap(ShardClient shardClient, String namespace, Map<ChunkKey, RawBsonDocument> chunksCache, 
 			Map<String, NavigableMap<BsonValueWrapper, CountingMegachunk>> chunkMap) {
 		logger.debug("Starting loadChunkMap with specified ShardClient, size: {}, ns: {}", chunkMap.size(), namespace);
 		BsonDocument chunkQuery = null;
@@ -320,6 +336,80 @@ public class ChunkManager {
 		processChunksIntoMap(chunksCache, chunkMap, shardClient, null);
 	}
 	
+	/**
+	 * Loads all chunks of the cluster (as loadChunkMap with no namespace) into a
+	 * ChunkRoutingTable, streaming them from config.chunks. Only one namespace's chunks are
+	 * held at a time; neither the ShardClient chunks cache nor a CountingMegachunk map is
+	 * filled.
+	 */
+	public ChunkRoutingTable loadRoutingTable(ShardClient shardClient) {
+		if (shardClient == destShardClient && destChunkQuery == null) {
+			destChunkQuery = newChunkQuery(destShardClient);
+		}
+		BsonDocument chunkQuery = (shardClient == sourceShardClient) ? sourceChunkQuery : destChunkQuery;
+		return loadRoutingTable(shardClient, shardClient.getSourceChunks(chunkQuery));
+	}
+
+	/**
+	 * Builds a ChunkRoutingTable from a chunks cache, for lookups that only need the owning
+	 * shard and bounds of a chunk. The cache must hold each namespace's chunks contiguously
+	 * and sorted by min, as loadChunksCache does.
+	 */
+	public ChunkRoutingTable loadRoutingTable(ShardClient shardClient, Map<ChunkKey, RawBsonDocument> chunksCache) {
+		return loadRoutingTable(shardClient, chunksCache.values());
+	}
+
+	private ChunkRoutingTable loadRoutingTable(ShardClient shardClient, Iterable<RawBsonDocument> chunks) {
+		ChunkRoutingTable table = new ChunkRoutingTable();
+		String currentNs = null;
+		List<RawBsonDocument> nsChunks = new ArrayList<>();
+		for (RawBsonDocument chunk : chunks) {
+			String ns = extractNamespaceFromChunk(chunk, shardClient);
+			if (ns == null) {
+				logger.error("Could not determine namespace for chunk");
+				continue;
+			}
+			if (!ns.equals(currentNs)) {
+				putRoutes(table, shardClient, currentNs, nsChunks);
+				currentNs = ns;
+				nsChunks = new ArrayList<>();
+			}
+			nsChunks.add(chunk);
+		}
+		putRoutes(table, shardClient, currentNs, nsChunks);
+		logger.debug("{}: loaded {}", shardClient.getName(), table);
+		return table;
+	}
+
+	/**
+	 * Re-reads the chunks of one namespace from config.chunks into the routing table, e.g.
+	 * after splitting or moving its chunks. The namespace is removed if it has no chunks.
+	 */
+	public void reloadRoutingTable(ChunkRoutingTable table, ShardClient shardClient, String namespace) {
+		List<RawBsonDocument> nsChunks = new ArrayList<>();
+		for (RawBsonDocument chunk : shardClient.getSourceChunks(newChunkQuery(shardClient, namespace))) {
+			nsChunks.add(chunk);
+		}
+		if (nsChunks.isEmpty()) {
+			table.removeNamespace(namespace);
+		} else {
+			putRoutes(table, shardClient, namespace, nsChunks);
+		}
+	}
+	
+	private void putRoutes(ChunkRoutingTable table, ShardClient shardClient, String ns, List<RawBsonDocument> nsChunks) {
+		if (ns == null) {
+			return;
+		}
+		Document collMeta = shardClient.getCollectionsMap().get(ns);
+		if (collMeta == null) {
+			logger.warn("No collection metadata found for namespace: {}", ns);
+			return;
+		}
+		Document shardKeysDoc = (Document) collMeta.get("key");
+		table.putNamespace(ns, nsChunks, shardKeysDoc.size() == 1);
+	}
+	
 	/**
 	 * Reloads the chunk map for a specific namespace.
 	 * This method:
@@ -333,7 +423,7 @@ public class ChunkManager {
 	 * @param chunkMap The chunk map to update
 	 */
 	public void reloadChunkMapForNamespace(ShardClient shardClient, String namespace,
-			Map<String, RawBsonDocument> chunksCache, 
+			Map<ChunkKey, RawBsonDocument> chunksCache, 
 			Map<String, NavigableMap<BsonValueWrapper, CountingMegachunk>> chunkMap) {
 		logger.debug("Reloading chunk map for namespace: {}", namespace);
 		
@@ -341,8 +431,8 @@ public class ChunkManager {
 		shardClient.reloadChunksCacheForNamespace(namespace);
 		
 		// Filter chunks for this namespace from the updated cache
-		Map<String, RawBsonDocument> namespaceChunks = new LinkedHashMap<>();
-		for (Map.Entry<String, RawBsonDocument> entry : chunksCache.entrySet()) {
+		Map<ChunkKey, RawBsonDocument> namespaceChunks = new LinkedHashMap<>();
+		for (Map.Entry<ChunkKey, RawBsonDocument> entry : chunksCache.entrySet()) {
 			RawBsonDocument chunk = entry.getValue();
 			String chunkNs = extractNamespaceFromChunk(chunk, shardClient);
 			if (namespace.equals(chunkNs)) {
@@ -357,7 +447,7 @@ public class ChunkManager {
 	}
 
 	// Keep the existing convenience wrapper
-	public void loadChunkMap(String namespace, Map<String, RawBsonDocument> chunksCache, 
+	public void loadChunkMap(String namespace, Map<ChunkKey, RawBsonDocument> chunksCache, 
 			Map<String, NavigableMap<BsonValueWrapper, CountingMegachunk>> chunkMap) {
 		loadChunkMap(sourceShardClient, namespace, chunksCache, chunkMap);
 	}
@@ -370,7 +460,7 @@ public class ChunkManager {
 	 * @param chunksCache The chunks cache to update
 	 * @param chunkMap The chunk map to update
 	 */
-	public void reloadNamespace(String namespace, Map<String, RawBsonDocument> chunksCache,
+	public void reloadNamespace(String namespace, Map<ChunkKey, RawBsonDocument> chunksCache,
 			Map<String, NavigableMap<BsonValueWrapper, CountingMegachunk>> chunkMap) {
 		reloadNamespace(sourceShardClient, namespace, chunksCache, chunkMap);
 	}
@@ -385,7 +475,7 @@ public class ChunkManager {
 	 * @param chunkMap The chunk map to update
 	 */
 	public void reloadNamespace(ShardClient shardClient, String namespace, 
-			Map<String, RawBsonDocument> chunksCache,
+			Map<ChunkKey, RawBsonDocument> chunksCache,
 			Map<String, NavigableMap<BsonValueWrapper, CountingMegachunk>> chunkMap) {
 		logger.info("Reloading namespace '{}' in both chunks cache and chunk map", namespace);
 		long startTime = System.currentTimeMillis();
@@ -439,12 +529,13 @@ public class ChunkManager {
 	    }
 	}
 	
-	public List<Megachunk> getMegaChunks(Map<String, RawBsonDocument> chunksCache, ShardClient shardClient) {
+	public List<Megachunk> getMegaChunks(Map<ChunkKey, RawBsonDocument> chunksCache, ShardClient shardClient) {
 		List<Megachunk> optimizedChunks = new ArrayList<>();
 		
 		Megachunk mega = null;
 
-		for (RawBsonDocument chunk : chunksCache.values()) {
+		for (Map.Entry<ChunkKey, RawBsonDocument> entry : chunksCache.entrySet()) {
+			RawBsonDocument chunk = entry.getValue();
 
 			String ns = chunk.getString("ns").getValue();
 			if (config.filterCheck(ns)) {
@@ -452,7 +543,7 @@ public class ChunkManager {
 			}
 			
 			String shard = chunk.getString("shard").getValue();
-			String chunkId = shardClient.getIdFromChunk(chunk);
+			ChunkKey chunkId = entry.getKey();
 			
 			if (mega == null || !ns.equals(mega.getNs()) || !shard.equals(mega.getShard())) {
 				if (mega != null) {
@@ -492,14 +583,14 @@ public class ChunkManager {
 		logger.debug("createAndMoveChunks (optimized) started");
 		//logger.debug("chunkQuery: {}", chunkQuery);
 
-		Map<String, RawBsonDocument> sourceChunksCache = sourceShardClient.loadChunksCache(sourceChunkQuery);
+		Map<ChunkKey, RawBsonDocument> sourceChunksCache = sourceShardClient.loadChunksCache(sourceChunkQuery);
 		
 		// Initialize destination chunk query if not already done
 		if (destChunkQuery == null) {
 			initializeDestChunkQuery();
 		}
 		
-		Set<String> destMins = getChunkMins(destChunkQuery);
+		Set<ChunkKey> destMins = getChunkMins(destChunkQuery);
 		
 		// step 1: build a list of "megachunks", each representing a range of consecutive chunks
 		// that reside on the same shard. See Megachunk class.
@@ -528,47 +619,41 @@ public class ChunkManager {
 		
 		int chunkCount = 0;
 		
-		long ts;
-		long startTsSeconds = Instant.now().getEpochSecond();
 
-		// step 2: create splits for each of the megachunks, wherever they reside
+		// step 2: create splits for each of the megachunks, wherever they reside.
+		// Boundaries already present on the destination are skipped, which keeps reruns idempotent
+		ChunkSplitExecutor megaSplitter = new ChunkSplitExecutor(
+				(ns, middle) -> destShardClient.splitAt(ns, middle, true) != null, splitThreads);
 		for (Megachunk mega2 : optimizedChunks) {
 			if (!mega2.isLast()) {
-				String megaHash = ((RawBsonDocument) mega2.getMax()).toJson();
-				String megaId = String.format("%s_%s", mega2.getNs(), megaHash);
+				ChunkKey megaId = ChunkKey.ofMin(mega2.getNs(), mega2.getMax());
 				
 				if (! destMins.contains(megaId)) {
-					String targetNs = mega2.getNs();
-					Document splitResult = destShardClient.splitAt(targetNs, mega2.getMax(), true);
-					if (splitResult == null) {
-						totalErrorCount++;
-					} else {
-						chunkCount++;
-					}
+					megaSplitter.add(mega2.getNs(), mega2.getNs(), mega2.getMax());
 				} else {
 					// Chunk already exists, count it as created
 					chunkCount++;
 				}
-				
-				ts = Instant.now().getEpochSecond();
-				long secondsSinceLastLog = ts - startTsSeconds;
-				if (secondsSinceLastLog >= 60) {
-					printChunkStatus(chunkCount, optimizedChunks.size(), "optimized chunks created");
-					startTsSeconds = ts;
-				}
 			}
 		}
+		final int existingMegaBoundaries = chunkCount;
+		int megaSplitErrors = megaSplitter.run(
+				done -> printChunkStatus(existingMegaBoundaries + done, optimizedChunks.size(), "optimized chunks created"));
+		totalErrorCount += megaSplitErrors;
+		chunkCount += megaSplitter.size() - megaSplitErrors;
 		
 		logger.debug("phase 2 complete, {} megachunk boundaries created", chunkCount);
 		
 		// get current locations of megachunks on destination
-		Map<String, String> destChunkToShardMap = readDestinationChunks();
+		Map<ChunkKey, String> destChunkToShardMap = readDestinationChunks();
 		destMins = getChunkMins(destChunkQuery);
 
-		int moveCount = 0;
-		startTsSeconds = Instant.now().getEpochSecond();
-
-		// step 3: move megachunks to correct shards
+		// step 3: move megachunks to correct shards, concurrently across shard pairs
+		ChunkMigrationScheduler scheduler = new ChunkMigrationScheduler(
+				m -> destShardClient.moveChunkWithResult(m.getNs(), m.getMin(), m.getMax(), m.getToShard(),
+						false, waitForDelete, false, false),
+				moveChunkThreads);
+		Map<ChunkKey, String> megaShards = new HashMap<>();
 	    for (Megachunk mega2 : optimizedChunks) {
 	        String mappedShard;
 	        
@@ -587,21 +672,14 @@ public class ChunkManager {
 
 	        String destShard = destChunkToShardMap.get(mega2.getId());
 	        if (doMove && destShard != null && !mappedShard.equals(destShard)) {
-	            boolean moveSuccess = destShardClient.moveChunk(mega2.getNs(), (RawBsonDocument)mega2.getMin(), 
-	                    (RawBsonDocument)mega2.getMax(), mappedShard, false, false, waitForDelete, false);
-	            if (!moveSuccess) {
-					totalErrorCount++;
-	            }
-	            moveCount++;
+	            scheduler.add(mega2.getNs(), mega2.getMin(), mega2.getMax(), destShard, mappedShard);
+	            megaShards.put(mega2.getId(), mappedShard);
+	        } else {
+	            megaShards.put(mega2.getId(), destShard);
 	        }
-	        
-			ts = Instant.now().getEpochSecond();
-			long secondsSinceLastLog = ts - startTsSeconds;
-			if (secondsSinceLastLog >= 60) {
-				printChunkStatus(moveCount, optimizedChunks.size(), "chunks moved");
-				startTsSeconds = ts;
-			}
 		}
+		int moveCount = scheduler.size();
+		totalErrorCount += scheduler.run();
 		
 		logger.debug("phase 3 complete, {} chunks moved", moveCount);
 
@@ -610,37 +688,33 @@ public class ChunkManager {
 			logger.debug("Adjacent chunks will remain consolidated, total chunk count should be reduced on target");
 		} else {
 			chunkCount = 0; // Reset to count actual chunks created
-			startTsSeconds = Instant.now().getEpochSecond();
 
+			// splits within a megachunk all land on the shard that now owns it, so lanes are
+			// per namespace and shard
 			logger.debug("Splitting megachunks to mirror source chunks");
+			ChunkSplitExecutor midSplitter = new ChunkSplitExecutor(
+					(ns, middle) -> destShardClient.splitAt(ns, middle, true) != null, splitThreads);
 			for (Megachunk mega2 : optimizedChunks) {
 				// Each megachunk represents at least one chunk (from last mid/min to max)
 				chunkCount++;
+				String lane = mega2.getNs() + "|" + megaShards.get(mega2.getId());
 
 				for (BsonDocument mid : mega2.getMids()) {
 					// getChunkMinKey
-					String midHash = ((RawBsonDocument) mid).toJson();
-					String midId = String.format("%s_%s", mega2.getNs(), midHash);
+					ChunkKey midId = ChunkKey.ofMin(mega2.getNs(), mid);
 					if (!destMins.contains(midId)) {
-						String targetNs = mega2.getNs();
-						Document splitResult = destShardClient.splitAt(targetNs, mid, true);
-						if (splitResult == null) {
-							totalErrorCount++;
-						} else {
-							chunkCount++;
-						}
+						midSplitter.add(lane, mega2.getNs(), mid);
 					} else {
 						// Chunk already exists, count it as created
 						chunkCount++;
 					}
-					ts = Instant.now().getEpochSecond();
-					long secondsSinceLastLog = ts - startTsSeconds;
-					if (secondsSinceLastLog >= 60) {
-						printChunkStatus(chunkCount, totalChunks, "chunks created");
-						startTsSeconds = ts;
-					}
 				}
 			}
+			final int existingChunks = chunkCount;
+			int midSplitErrors = midSplitter.run(
+					done -> printChunkStatus(existingChunks + done, totalChunks, "chunks created"));
+			totalErrorCount += midSplitErrors;
+			chunkCount += midSplitter.size() - midSplitErrors;
 		}
 		
 		// Use appropriate total for percentage calculation
@@ -699,7 +773,7 @@ public class ChunkManager {
 			logger.debug("destChunkQuery after initialization: {}", destChunkQuery);
 		}
 		
-		Map<String, RawBsonDocument> sourceChunksCache = sourceShardClient.loadChunksCache(sourceChunkQuery);
+		Map<ChunkKey, RawBsonDocument> sourceChunksCache = sourceShardClient.loadChunksCache(sourceChunkQuery);
 		destShardClient.loadChunksCache(destChunkQuery);
 
 		String lastNs = null;
@@ -731,8 +805,8 @@ public class ChunkManager {
 		if (destChunkQuery == null) {
 			initializeDestChunkQuery();
 		}
-		Map<String, String> destChunkMap = readDestinationChunks();
-		Map<String, RawBsonDocument> sourceChunksCache = sourceShardClient.loadChunksCache(sourceChunkQuery);
+		Map<ChunkKey, String> destChunkMap = readDestinationChunks();
+		Map<ChunkKey, RawBsonDocument> sourceChunksCache = sourceShardClient.loadChunksCache(sourceChunkQuery);
 		
 		destShardClient.loadChunksCache(destChunkQuery);
 
@@ -744,9 +818,10 @@ public class ChunkManager {
 		int sourceTotalCount = 0;
 		int errorCount = 0;
 
-		for (RawBsonDocument sourceChunk : sourceChunksCache.values()) {
+		for (Map.Entry<ChunkKey, RawBsonDocument> sourceEntry : sourceChunksCache.entrySet()) {
+			RawBsonDocument sourceChunk = sourceEntry.getValue();
 			sourceTotalCount++;
-			String sourceId = sourceShardClient.getIdFromChunk(sourceChunk);
+			ChunkKey sourceId = sourceEntry.getKey();
 			//logger.debug("source id: " + sourceId);
 			
 			String sourceNs = sourceChunk.getString("ns").getValue();
@@ -836,8 +911,8 @@ public class ChunkManager {
 			initializeDestChunkQuery();
 		}
 		
-		Map<String, RawBsonDocument> sourceChunksCache = sourceShardClient.loadChunksCache(sourceChunkQuery);
-		Map<String, RawBsonDocument> destChunksCache = destShardClient.loadChunksCache(destChunkQuery);
+		Map<ChunkKey, RawBsonDocument> sourceChunksCache = sourceShardClient.loadChunksCache(sourceChunkQuery);
+		Map<ChunkKey, RawBsonDocument> destChunksCache = destShardClient.loadChunksCache(destChunkQuery);
 		
 		List<Megachunk> sourceMega = getMegaChunks(sourceChunksCache, sourceShardClient);
 		
@@ -882,35 +957,31 @@ public class ChunkManager {
 		return isEquivalent;
 	}
 	
-	private Map<String, String> readDestinationChunks() {
+	private Map<ChunkKey, String> readDestinationChunks() {
 		logger.debug("Reading destination chunks");
-		Map<String, String> destChunkMap = new HashMap<String, String>();
+		Map<ChunkKey, String> destChunkMap = new HashMap<>();
 		
-		Map<String, RawBsonDocument> destChunks = destShardClient.getChunksCache(destChunkQuery);
+		Map<ChunkKey, RawBsonDocument> destChunks = destShardClient.copyChunksCache(destChunkQuery);
 		
-		for (RawBsonDocument destChunk : destChunks.values()) {
-			String id = destShardClient.getIdFromChunk(destChunk);
-			//logger.debug("dest id: " + id);
-			String shard = destChunk.getString("shard").getValue();
-			destChunkMap.put(id, shard);
+		for (Map.Entry<ChunkKey, RawBsonDocument> entry : destChunks.entrySet()) {
+			String shard = entry.getValue().getString("shard").getValue();
+			destChunkMap.put(entry.getKey(), shard);
 		}
 		logger.debug("Done reading destination chunks, count = " + destChunkMap.size());
 		return destChunkMap;
 	}
 	
-	private String getChunkMinKey(RawBsonDocument chunk) {
+	private ChunkKey getChunkMinKey(RawBsonDocument chunk) {
 		RawBsonDocument min = (RawBsonDocument) chunk.get("min");
 		String ns = chunk.getString("ns").getValue();
-		String minHash = ((RawBsonDocument) min).toJson();
-		String id = String.format("%s_%s", ns, minHash);
-		return id;
+		return ChunkKey.ofMin(ns, min);
 	}
 	
-	private Set<String> getChunkMins(BsonDocument chunkQuery) {
-		Set<String> minsSet = new HashSet<>();
+	private Set<ChunkKey> getChunkMins(BsonDocument chunkQuery) {
+		Set<ChunkKey> minsSet = new HashSet<>();
 		//MongoCollection<RawBsonDocument> destChunksColl = destShardClient.getChunksCollectionRaw();
 		//FindIterable<RawBsonDocument> destChunks = destChunksColl.find().sort(destShardClient.getChunkSort());
-		Map<String, RawBsonDocument> destChunksMap = destShardClient.getChunksCache(chunkQuery);
+		Map<ChunkKey, RawBsonDocument> destChunksMap = destShardClient.copyChunksCache(chunkQuery);
 
 		for (RawBsonDocument chunk : destChunksMap.values()) {
 			minsSet.add(getChunkMinKey(chunk));
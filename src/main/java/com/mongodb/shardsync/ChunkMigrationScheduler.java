@@ -0,0 +1,310 @@
+package com.mongodb.shardsync;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.BsonDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.mongodb.MongoCommandException;
+import com.mongodb.MongoException;
+import com.mongodb.MongoSocketException;
+import com.mongodb.MongoTimeoutException;
+
+/**
+ * Runs chunk migrations concurrently. A shard can only take part in one migration at a
+ * time, as donor or recipient, so migrations are started greedily in the order they were
+ * added whenever both of their shards are idle. Migrations that fail with a transient
+ * error (conflicting migration, lock busy, stepdown, network) are retried with
+ * exponential backoff.
+ * <p>
+ * Pending migrations are queued per donor and recipient shard pair, so finding the next
+ * migration to start only looks at the head of each pair's queue rather than rescanning
+ * every pending migration.
+ */
+public class ChunkMigrationScheduler {
+
+	private static Logger logger = LoggerFactory.getLogger(ChunkMigrationScheduler.class);
+
+	public static final int DEFAULT_MAX_RETRIES = 5;
+	public static final long DEFAULT_INITIAL_BACKOFF_MS = 1000;
+	private static final long MAX_BACKOFF_MS = 30000;
+	private static final long IDLE_POLL_MS = 1000;
+
+	// LockBusy, ConflictingOperationInProgress, the not primary / shutdown family and
+	// network errors reported by the shards
+	private static final Set<Integer> TRANSIENT_ERROR_CODES = Set.of(6, 7, 46, 89, 91, 117, 189,
+			9001, 10107, 11600, 11602, 13435, 13436);
+
+	/**
+	 * Issues a single migration, e.g. ShardClient.moveChunkWithResult.
+	 */
+	public interface Mover {
+		MoveChunkResult move(Migration migration);
+	}
+
+	public static class Migration {
+		private final String ns;
+		private final BsonDocument min;
+		private final BsonDocument max;
+		private final String fromShard;
+		private final String toShard;
+
+		private int attempts;
+		private long seq;
+		private long notBefore;
+		private MoveChunkResult result;
+		private MongoException error;
+
+		Migration(String ns, BsonDocument min, BsonDocument max, String fromShard, String toShard) {
+			this.ns = ns;
+			this.min = min;
+			this.max = max;
+			this.fromShard = fromShard;
+			this.toShard = toShard;
+		}
+
+		public String getNs() {
+			return ns;
+		}
+
+		public BsonDocument getMin() {
+			return min;
+		}
+
+		public BsonDocument getMax() {
+			return max;
+		}
+
+		public String getFromShard() {
+			return fromShard;
+		}
+
+		public String getToShard() {
+			return toShard;
+		}
+
+		public int getAttempts() {
+			return attempts;
+		}
+
+		private String describe() {
+			String reason = error != null ? error.getMessage() : result.getDescription();
+			return String.format("%s %s -> %s, min: %s: %s", ns, fromShard, toShard, min.toJson(), reason);
+		}
+	}
+
+	private final Mover mover;
+	private final int numThreads;
+	private final int maxRetries;
+	private final long initialBackoffMs;
+
+	// donor -> recipient -> migrations in the order they were added (or requeued)
+	private final Map<String, Map<String, Deque<Migration>>> pending = new LinkedHashMap<>();
+	private final PriorityQueue<Migration> delayed = new PriorityQueue<>(Comparator.comparingLong(m -> m.notBefore));
+	private final List<Migration> failed = new ArrayList<>();
+	private int pendingCount;
+	private long nextSeq;
+
+	public ChunkMigrationScheduler(Mover mover, int numThreads) {
+		this(mover, numThreads, DEFAULT_MAX_RETRIES, DEFAULT_INITIAL_BACKOFF_MS);
+	}
+
+	public ChunkMigrationScheduler(Mover mover, int numThreads, int maxRetries, long initialBackoffMs) {
+		this.mover = mover;
+		this.numThreads = Math.max(1, numThreads);
+		this.maxRetries = maxRetries;
+		this.initialBackoffMs = initialBackoffMs;
+	}
+
+	public void add(String ns, BsonDocument min, BsonDocument max, String fromShard, String toShard) {
+		enqueue(new Migration(ns, min, max, fromShard, toShard));
+	}
+
+	public int size() {
+		return pendingCount + delayed.size();
+	}
+
+	private void enqueue(Migration m) {
+		m.seq = nextSeq++;
+		pending.computeIfAbsent(m.fromShard, k -> new LinkedHashMap<>())
+				.computeIfAbsent(m.toShard, k -> new ArrayDeque<>()).add(m);
+		pendingCount++;
+	}
+
+	/**
+	 * The earliest added migration whose donor and recipient are both idle, or null.
+	 */
+	private Migration pollStartable(Set<String> busyShards) {
+		Deque<Migration> first = null;
+		for (Map.Entry<String, Map<String, Deque<Migration>>> donor : pending.entrySet()) {
+			if (busyShards.contains(donor.getKey())) {
+				continue;
+			}
+			for (Map.Entry<String, Deque<Migration>> recipient : donor.getValue().entrySet()) {
+				Deque<Migration> queue = recipient.getValue();
+				if (queue.isEmpty() || busyShards.contains(recipient.getKey())) {
+					continue;
+				}
+				if (first == null || queue.peekFirst().seq < first.peekFirst().seq) {
+					first = queue;
+				}
+			}
+		}
+		if (first == null) {
+			return null;
+		}
+		pendingCount--;
+		return first.pollFirst();
+	}
+
+	private List<Migration> drainPending() {
+		List<Migration> all = new ArrayList<>(size());
+		for (Map<String, Deque<Migration>> byRecipient : pending.values()) {
+			for (Deque<Migration> queue : byRecipient.values()) {
+				all.addAll(queue);
+			}
+		}
+		all.addAll(delayed);
+		pending.clear();
+		delayed.clear();
+		pendingCount = 0;
+		return all;
+	}
+
+	public List<Migration> getFailed() {
+		return failed;
+	}
+
+	/**
+	 * Run all added migrations to completion.
+	 *
+	 * @return the number of migrations that failed, after retries
+	 */
+	public int run() {
+		int total = size();
+		if (total == 0) {
+			return 0;
+		}
+		logger.debug("Starting {} chunk migrations with {} threads", total, numThreads);
+
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads,
+				new ThreadFactoryBuilder().setNameFormat("MoveChunk-%d").build());
+		ExecutorCompletionService<Migration> completionService = new ExecutorCompletionService<>(executor);
+		Set<String> busyShards = new HashSet<>();
+		int active = 0;
+		int completed = 0;
+		int retries = 0;
+		long lastLogSeconds = Instant.now().getEpochSecond();
+
+		try {
+			while (size() > 0 || active > 0) {
+				long now = System.currentTimeMillis();
+				while (!delayed.isEmpty() && delayed.peek().notBefore <= now) {
+					enqueue(delayed.poll());
+				}
+				while (active < numThreads) {
+					Migration m = pollStartable(busyShards);
+					if (m == null) {
+						break;
+					}
+					busyShards.add(m.fromShard);
+					busyShards.add(m.toShard);
+					active++;
+					completionService.submit(() -> execute(m));
+				}
+				long nextRetry = delayed.isEmpty() ? Long.MAX_VALUE : delayed.peek().notBefore;
+
+				long waitMs = nextRetry == Long.MAX_VALUE ? IDLE_POLL_MS
+						: Math.max(1, Math.min(IDLE_POLL_MS, nextRetry - now));
+				if (active == 0) {
+					Thread.sleep(waitMs);
+					continue;
+				}
+				Future<Migration> future = completionService.poll(waitMs, TimeUnit.MILLISECONDS);
+				if (future == null) {
+					continue;
+				}
+				Migration m = future.get();
+				active--;
+				busyShards.remove(m.fromShard);
+				busyShards.remove(m.toShard);
+
+				if (m.error == null && m.result.isSuccess()) {
+					completed++;
+				} else if (isTransient(m) && m.attempts <= maxRetries) {
+					long backoff = Math.min(MAX_BACKOFF_MS, initialBackoffMs << (m.attempts - 1));
+					logger.debug("Retrying migration in {}ms (attempt {}): {}", backoff, m.attempts, m.describe());
+					m.notBefore = System.currentTimeMillis() + backoff;
+					delayed.add(m);
+					retries++;
+				} else {
+					logger.error("Chunk migration failed after {} attempt(s): {}", m.attempts, m.describe());
+					failed.add(m);
+				}
+
+				long nowSeconds = Instant.now().getEpochSecond();
+				if (nowSeconds - lastLogSeconds >= 60) {
+					logger.debug(String.format("%.1f %% of chunks moved ( %,d / %,d ), %d active, %d retries",
+							(completed + failed.size()) * 100.0 / total, completed, total, active, retries));
+					lastLogSeconds = nowSeconds;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			logger.warn("Interrupted with {} chunk migrations outstanding", size() + active);
+			failed.addAll(drainPending());
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Unexpected error running chunk migration", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+
+		logger.debug("{} chunk migrations complete, {} failed, {} retries", completed, failed.size(), retries);
+		return failed.size();
+	}
+
+	private Migration execute(Migration m) {
+		m.attempts++;
+		m.result = null;
+		m.error = null;
+		try {
+			m.result = mover.move(m);
+		} catch (MongoException e) {
+			m.error = e;
+		}
+		return m;
+	}
+
+	static boolean isTransient(Migration m) {
+		if (m.error != null) {
+			if (m.error instanceof MongoSocketException || m.error instanceof MongoTimeoutException) {
+				return true;
+			}
+			return m.error instanceof MongoCommandException && isTransient((MongoCommandException) m.error);
+		}
+		MongoCommandException mce = m.result.getException();
+		return mce != null && isTransient(mce);
+	}
+
+	private static boolean isTransient(MongoCommandException mce) {
+		return TRANSIENT_ERROR_CODES.contains(mce.getErrorCode()) || mce.hasErrorLabel("RetryableWriteError");
+	}
+}
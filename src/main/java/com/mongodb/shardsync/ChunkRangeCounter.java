@@ -0,0 +1,253 @@
+package com.mongodb.shardsync;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bson.BsonDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Compares document counts per chunk range between source and destination. Each source
+ * range is counted on the source shard that owns it, and on the destination it is cut at
+ * the destination chunk boundaries and each piece counted on the shard owning that piece,
+ * so that every count goes straight to a single shard and orphans on other shards are not
+ * included. Ranges are counted in parallel, with the destination pieces of a range counted
+ * on a second pool while the source count runs.
+ */
+public class ChunkRangeCounter {
+
+	private static Logger logger = LoggerFactory.getLogger(ChunkRangeCounter.class);
+
+	private static final long PROGRESS_INTERVAL_SECONDS = 60;
+
+	/**
+	 * Counts the documents in [min, max) of a namespace on one shard.
+	 */
+	public interface RangeCounter {
+		long count(String shard, String ns, BsonDocument min, BsonDocument max);
+	}
+
+	public static class RangeCount {
+		private final String ns;
+		private final BsonDocument min;
+		private final BsonDocument max;
+		private final String sourceShard;
+		private long sourceCount = -1;
+		private long destCount = -1;
+		private String error;
+
+		RangeCount(String ns, BsonDocument min, BsonDocument max, String sourceShard) {
+			this.ns = ns;
+			this.min = min;
+			this.max = max;
+			this.sourceShard = sourceShard;
+		}
+
+		public String getNs() {
+			return ns;
+		}
+
+		public BsonDocument getMin() {
+			return min;
+		}
+
+		public BsonDocument getMax() {
+			return max;
+		}
+
+		public String getSourceShard() {
+			return sourceShard;
+		}
+
+		public long getSourceCount() {
+			return sourceCount;
+		}
+
+		public long getDestCount() {
+			return destCount;
+		}
+
+		public String getError() {
+			return error;
+		}
+
+		public boolean isMatch() {
+			return error == null && sourceCount == destCount;
+		}
+
+		@Override
+		public String toString() {
+			String range = String.format("%s [%s, %s) on %s", ns, min.toJson(), max.toJson(), sourceShard);
+			if (error != null) {
+				return range + ": " + error;
+			}
+			return String.format("%s: source=%s, dest=%s, diff=%s", range, sourceCount, destCount,
+					sourceCount - destCount);
+		}
+	}
+
+	private final RangeCounter sourceCounter;
+	private final RangeCounter destCounter;
+	private final ChunkRoutingTable destRoutes;
+	private final int numThreads;
+	private final List<RangeCount> ranges = new ArrayList<>();
+
+	private long sourceTotal;
+	private long destTotal;
+
+	public ChunkRangeCounter(RangeCounter sourceCounter, RangeCounter destCounter, ChunkRoutingTable destRoutes,
+			int numThreads) {
+		this.sourceCounter = sourceCounter;
+		this.destCounter = destCounter;
+		this.destRoutes = destRoutes;
+		this.numThreads = Math.max(1, numThreads);
+	}
+
+	public void add(String ns, BsonDocument min, BsonDocument max, String sourceShard) {
+		ranges.add(new RangeCount(ns, min, max, sourceShard));
+	}
+
+	public int size() {
+		return ranges.size();
+	}
+
+	public long getSourceTotal() {
+		return sourceTotal;
+	}
+
+	public long getDestTotal() {
+		return destTotal;
+	}
+
+	/**
+	 * Count all added ranges on both sides.
+	 *
+	 * @return the ranges whose counts differ or could not be counted, in the order added
+	 */
+	public List<RangeCount> run() {
+		List<RangeCount> mismatches = new ArrayList<>();
+		if (ranges.isEmpty()) {
+			return mismatches;
+		}
+		logger.debug("Counting {} ranges with {} threads", ranges.size(), numThreads);
+
+		ExecutorService sourcePool = Executors.newFixedThreadPool(numThreads,
+				new ThreadFactoryBuilder().setNameFormat("RangeCount-%d").build());
+		ExecutorService destPool = Executors.newFixedThreadPool(numThreads,
+				new ThreadFactoryBuilder().setNameFormat("DestRangeCount-%d").build());
+		AtomicInteger completed = new AtomicInteger();
+		try {
+			List<Future<?>> futures = new ArrayList<>(ranges.size());
+			for (RangeCount range : ranges) {
+				futures.add(sourcePool.submit(() -> {
+					countRange(range, destPool);
+					completed.incrementAndGet();
+				}));
+			}
+
+			long lastLogSeconds = Instant.now().getEpochSecond();
+			for (Future<?> future : futures) {
+				future.get();
+				long nowSeconds = Instant.now().getEpochSecond();
+				if (nowSeconds - lastLogSeconds >= PROGRESS_INTERVAL_SECONDS) {
+					logger.info("Range counts: {} of {} ranges complete", completed.get(), ranges.size());
+					lastLogSeconds = nowSeconds;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			logger.warn("Interrupted with {} ranges outstanding", ranges.size() - completed.get());
+		} catch (ExecutionException e) {
+			// countRange records its own errors, so this is unexpected
+			logger.error("Range count failed", e.getCause());
+		} finally {
+			sourcePool.shutdownNow();
+			destPool.shutdownNow();
+		}
+
+		sourceTotal = 0;
+		destTotal = 0;
+		for (RangeCount range : ranges) {
+			if (!range.isMatch()) {
+				if (range.error == null && range.sourceCount < 0) {
+					range.error = "not counted";
+				}
+				mismatches.add(range);
+			}
+			sourceTotal += Math.max(0, range.sourceCount);
+			destTotal += Math.max(0, range.destCount);
+		}
+		return mismatches;
+	}
+
+	private void countRange(RangeCount range, ExecutorService destPool) {
+		try {
+			List<Future<Long>> destCounts = new ArrayList<>();
+			for (Piece piece : destPieces(range)) {
+				destCounts.add(destPool.submit(() -> destCounter.count(piece.shard, range.ns, piece.min, piece.max)));
+			}
+			if (destCounts.isEmpty()) {
+				range.error = "namespace not found in destination routing table";
+				return;
+			}
+			range.sourceCount = sourceCounter.count(range.sourceShard, range.ns, range.min, range.max);
+			long destCount = 0;
+			for (Future<Long> count : destCounts) {
+				destCount += count.get();
+			}
+			range.destCount = destCount;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			range.error = "interrupted";
+		} catch (ExecutionException e) {
+			logger.error("{}: dest range count error", range.ns, e.getCause());
+			range.error = String.valueOf(e.getCause().getMessage());
+		} catch (RuntimeException e) {
+			logger.error("{}: source range count error", range.ns, e);
+			range.error = String.valueOf(e.getMessage());
+		}
+	}
+
+	private static class Piece {
+		final String shard;
+		final BsonDocument min;
+		final BsonDocument max;
+
+		Piece(String shard, BsonDocument min, BsonDocument max) {
+			this.shard = shard;
+			this.min = min;
+			this.max = max;
+		}
+	}
+
+	/**
+	 * Cut a source range at the destination chunk boundaries.
+	 */
+	List<Piece> destPieces(RangeCount range) {
+		List<Piece> pieces = new ArrayList<>();
+		if (!destRoutes.containsNamespace(range.ns)) {
+			return pieces;
+		}
+		int first = Math.max(0, destRoutes.findChunk(range.ns, range.min));
+		int last = destRoutes.findChunk(range.ns, range.max);
+		if (last > first && destRoutes.getMin(range.ns, last).equals(range.max)) {
+			last--;
+		}
+		for (int i = first; i <= last; i++) {
+			BsonDocument min = i == first ? range.min : destRoutes.getMin(range.ns, i);
+			BsonDocument max = i == last ? range.max : destRoutes.getMax(range.ns, i);
+			pieces.add(new Piece(destRoutes.getShard(range.ns, i), min, max));
+		}
+		return pieces;
+	}
+}
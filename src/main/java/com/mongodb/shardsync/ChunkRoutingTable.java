@@ -0,0 +1,217 @@
+package com.mongodb.shardsync;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.RawBsonDocument;
+import org.bson.io.BasicOutputBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mongodb.util.bson.BsonValueWrapper;
+import com.mongodb.util.bson.CanonicalBsonComparator;
+
+/**
+ * Compact chunk routing table, partitioned by namespace.
+ * <p>
+ * For each namespace the chunk boundaries are kept sorted as raw BSON in one byte array
+ * with an offset array, and the owning shard of each chunk as a short index into a shared
+ * list of shard names. Chunks cover the key space contiguously, so the max of chunk i is
+ * the min of chunk i + 1 and only the final max is stored separately. That is roughly
+ * 30-40 bytes per chunk, instead of a RawBsonDocument, key and map entry per chunk.
+ * <p>
+ * Lookups take the same BsonValueWrapper shard key values as the CountingMegachunk maps
+ * built by ChunkManager: the bare value for a single field shard key, otherwise the whole
+ * shard key document. Boundaries are compared in the server's sort order, reading each
+ * probed boundary in place from the byte array.
+ * <p>
+ * Like the CountingMegachunk maps, routes are keyed by namespace rather than collection
+ * UUID, so the table has to be rebuilt after a collection is renamed, dropped or
+ * resharded.
+ */
+public class ChunkRoutingTable {
+
+	private static Logger logger = LoggerFactory.getLogger(ChunkRoutingTable.class);
+
+	private final List<String> shardNames = new CopyOnWriteArrayList<>();
+	private final Map<String, Short> shardIds = new HashMap<>();
+	private final Map<String, NamespaceRoutes> namespaces = new ConcurrentHashMap<>();
+
+	private static class NamespaceRoutes {
+		final boolean singleFieldKey;
+		// boundaries[offsets[i] .. offsets[i + 1]) is the min of chunk i, the last one is the final max
+		final byte[] boundaries;
+		final int[] offsets;
+		final short[] shards;
+
+		NamespaceRoutes(boolean singleFieldKey, byte[] boundaries, int[] offsets, short[] shards) {
+			this.singleFieldKey = singleFieldKey;
+			this.boundaries = boundaries;
+			this.offsets = offsets;
+			this.shards = shards;
+		}
+
+		int size() {
+			return shards.length;
+		}
+
+		RawBsonDocument boundary(int i) {
+			return new RawBsonDocument(boundaries, offsets[i], offsets[i + 1] - offsets[i]);
+		}
+	}
+
+	/**
+	 * Replace the routes of a namespace.
+	 *
+	 * @param chunks the namespace's chunks, sorted by min
+	 * @param singleFieldKey true if the shard key has a single field
+	 */
+	public void putNamespace(String ns, List<RawBsonDocument> chunks, boolean singleFieldKey) {
+		if (chunks.isEmpty()) {
+			namespaces.remove(ns);
+			return;
+		}
+		BasicOutputBuffer buffer = new BasicOutputBuffer();
+		int[] offsets = new int[chunks.size() + 2];
+		short[] shards = new short[chunks.size()];
+		RawBsonDocument previousMax = null;
+		for (int i = 0; i < chunks.size(); i++) {
+			RawBsonDocument chunk = chunks.get(i);
+			RawBsonDocument min = (RawBsonDocument) chunk.get("min");
+			if (previousMax != null && !previousMax.equals(min)) {
+				logger.warn("{}: chunks are not contiguous at {}, routing for the gap is approximate", ns, min.toJson());
+			}
+			offsets[i] = buffer.getPosition();
+			writeRaw(buffer, min);
+			shards[i] = shardId(chunk.getString("shard").getValue());
+			previousMax = (RawBsonDocument) chunk.get("max");
+		}
+		offsets[chunks.size()] = buffer.getPosition();
+		writeRaw(buffer, previousMax);
+		offsets[chunks.size() + 1] = buffer.getPosition();
+
+		namespaces.put(ns, new NamespaceRoutes(singleFieldKey, buffer.toByteArray(), offsets, shards));
+	}
+
+	private static void writeRaw(BasicOutputBuffer buffer, RawBsonDocument doc) {
+		ByteBuffer bytes = doc.getByteBuffer().asNIO();
+		buffer.writeBytes(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+	}
+
+	private synchronized short shardId(String shard) {
+		Short id = shardIds.get(shard);
+		if (id == null) {
+			id = (short) shardNames.size();
+			shardNames.add(shard);
+			shardIds.put(shard, id);
+		}
+		return id;
+	}
+
+	public void removeNamespace(String ns) {
+		namespaces.remove(ns);
+	}
+
+	public boolean containsNamespace(String ns) {
+		return namespaces.containsKey(ns);
+	}
+
+	public int size(String ns) {
+		NamespaceRoutes routes = namespaces.get(ns);
+		return routes == null ? 0 : routes.size();
+	}
+
+	public int getChunkCount() {
+		int count = 0;
+		for (NamespaceRoutes routes : namespaces.values()) {
+			count += routes.size();
+		}
+		return count;
+	}
+
+	/**
+	 * Approximate heap used by the routing arrays, for logging.
+	 */
+	public long getMemoryBytes() {
+		long bytes = 0;
+		for (NamespaceRoutes routes : namespaces.values()) {
+			bytes += routes.boundaries.length + 4L * routes.offsets.length + 2L * routes.shards.length;
+		}
+		return bytes;
+	}
+
+	/**
+	 * Index of the chunk owning the given shard key value, i.e. the last chunk whose min is
+	 * at or below it, or -1 if the namespace is unknown or the value sorts below all chunks.
+	 */
+	public int findChunk(String ns, BsonValueWrapper shardKeyValue) {
+		NamespaceRoutes routes = namespaces.get(ns);
+		if (routes == null) {
+			return -1;
+		}
+		BsonValue value = shardKeyValue.getValue();
+		int low = 0;
+		int high = routes.size() - 1;
+		int found = -1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (CanonicalBsonComparator.INSTANCE.compare(boundaryValue(routes, mid), value) <= 0) {
+				found = mid;
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Index of the chunk owning a chunk bound document (e.g. the min of a chunk from another
+	 * cluster), or -1 as for {@link #findChunk(String, BsonValueWrapper)}.
+	 */
+	public int findChunk(String ns, BsonDocument bound) {
+		NamespaceRoutes routes = namespaces.get(ns);
+		if (routes == null) {
+			return -1;
+		}
+		BsonValue value = routes.singleFieldKey ? bound.get(bound.getFirstKey()) : bound;
+		return findChunk(ns, new BsonValueWrapper(value));
+	}
+
+	private static BsonValue boundaryValue(NamespaceRoutes routes, int i) {
+		RawBsonDocument bound = routes.boundary(i);
+		return routes.singleFieldKey ? bound.get(bound.getFirstKey()) : bound;
+	}
+
+	/**
+	 * Shard owning the given shard key value, or null if not routable.
+	 */
+	public String getShard(String ns, BsonValueWrapper shardKeyValue) {
+		int i = findChunk(ns, shardKeyValue);
+		return i < 0 ? null : getShard(ns, i);
+	}
+
+	public String getShard(String ns, int chunkIndex) {
+		return shardNames.get(namespaces.get(ns).shards[chunkIndex]);
+	}
+
+	public BsonDocument getMin(String ns, int chunkIndex) {
+		return namespaces.get(ns).boundary(chunkIndex);
+	}
+
+	public BsonDocument getMax(String ns, int chunkIndex) {
+		return namespaces.get(ns).boundary(chunkIndex + 1);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("ChunkRoutingTable [namespaces=%s, chunks=%s, shards=%s, bytes=%s]", namespaces.size(),
+				getChunkCount(), shardNames.size(), getMemoryBytes());
+	}
+}
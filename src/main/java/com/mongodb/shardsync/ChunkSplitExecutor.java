@@ -0,0 +1,126 @@
+package com.mongodb.shardsync;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+import org.bson.BsonDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Runs splitAt commands with bounded concurrency. Splits are grouped into lanes (e.g. by
+ * namespace, or namespace and owning shard), the splits within a lane are issued in order
+ * by a single thread, and up to numThreads lanes are in flight at once. Keeping a lane on
+ * one thread avoids splits of the same range contending for the collection's metadata
+ * lock, while independent namespaces and shards proceed in parallel.
+ */
+public class ChunkSplitExecutor {
+
+	private static Logger logger = LoggerFactory.getLogger(ChunkSplitExecutor.class);
+
+	private static final long PROGRESS_INTERVAL_SECONDS = 60;
+
+	/**
+	 * Issues a single split, e.g. ShardClient.splitAt. Returns false if the split failed.
+	 */
+	public interface Splitter {
+		boolean split(String ns, BsonDocument middle);
+	}
+
+	private static class Split {
+		final String ns;
+		final BsonDocument middle;
+
+		Split(String ns, BsonDocument middle) {
+			this.ns = ns;
+			this.middle = middle;
+		}
+	}
+
+	private final Splitter splitter;
+	private final int numThreads;
+	private final Map<String, List<Split>> lanes = new LinkedHashMap<>();
+	private int size;
+
+	public ChunkSplitExecutor(Splitter splitter, int numThreads) {
+		this.splitter = splitter;
+		this.numThreads = Math.max(1, numThreads);
+	}
+
+	public void add(String lane, String ns, BsonDocument middle) {
+		lanes.computeIfAbsent(lane, k -> new ArrayList<>()).add(new Split(ns, middle));
+		size++;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Run all added splits to completion.
+	 *
+	 * @param progress called periodically with the number of splits completed so far
+	 * @return the number of splits that failed
+	 */
+	public int run(IntConsumer progress) {
+		if (size == 0) {
+			return 0;
+		}
+		logger.debug("Starting {} splits in {} lanes with {} threads", size, lanes.size(), numThreads);
+
+		AtomicInteger completed = new AtomicInteger();
+		AtomicInteger errors = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads,
+				new ThreadFactoryBuilder().setNameFormat("Split-%d").build());
+
+		// longest lanes first, so that one big namespace does not start last and hold up the end
+		List<List<Split>> sortedLanes = new ArrayList<>(lanes.values());
+		sortedLanes.sort((a, b) -> Integer.compare(b.size(), a.size()));
+		for (List<Split> lane : sortedLanes) {
+			executor.execute(() -> {
+				for (Split split : lane) {
+					if (Thread.currentThread().isInterrupted()) {
+						return;
+					}
+					try {
+						if (!splitter.split(split.ns, split.middle)) {
+							errors.incrementAndGet();
+						}
+					} catch (RuntimeException e) {
+						logger.error("split error for namespace {}, middle: {}", split.ns, split.middle.toJson(), e);
+						errors.incrementAndGet();
+					}
+					completed.incrementAndGet();
+				}
+			});
+		}
+		executor.shutdown();
+
+		long lastLogSeconds = Instant.now().getEpochSecond();
+		try {
+			while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+				long nowSeconds = Instant.now().getEpochSecond();
+				if (nowSeconds - lastLogSeconds >= PROGRESS_INTERVAL_SECONDS) {
+					progress.accept(completed.get());
+					lastLogSeconds = nowSeconds;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			executor.shutdownNow();
+			logger.warn("Interrupted with {} splits outstanding", size - completed.get());
+			return errors.get() + size - completed.get();
+		}
+		return errors.get();
+	}
+}
@@ -0,0 +1,144 @@
+package com.mongodb.shardsync;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.mongodb.ServerAddress;
+import com.mongodb.connection.ConnectionId;
+import com.mongodb.event.ConnectionCheckOutFailedEvent;
+import com.mongodb.event.ConnectionCheckedOutEvent;
+import com.mongodb.event.ConnectionClosedEvent;
+import com.mongodb.event.ConnectionCreatedEvent;
+import com.mongodb.event.ConnectionPoolListener;
+import com.mongodb.event.ConnectionReadyEvent;
+import com.mongodb.util.ThreadUtils;
+
+/**
+ * Connection pool listener for one MongoClient, counting check outs, the time spent
+ * waiting for a connection and the connections that are open and ready per server.
+ */
+public class ConnectionPoolMetrics implements ConnectionPoolListener {
+
+	private final String name;
+
+	private final LongAdder checkouts = new LongAdder();
+	private final LongAdder checkoutFailures = new LongAdder();
+	private final LongAdder waitMicros = new LongAdder();
+	private final AtomicLong maxWaitMicros = new AtomicLong();
+	private final LongAdder connectionsCreated = new LongAdder();
+	private final LongAdder connectionsClosed = new LongAdder();
+	private final Set<ConnectionId> readyConnections = ConcurrentHashMap.newKeySet();
+
+	public ConnectionPoolMetrics(String name) {
+		this.name = name;
+	}
+
+	@Override
+	public void connectionCheckedOut(ConnectionCheckedOutEvent event) {
+		checkouts.increment();
+		recordWait(event.getElapsedTime(TimeUnit.MICROSECONDS));
+	}
+
+	@Override
+	public void connectionCheckOutFailed(ConnectionCheckOutFailedEvent event) {
+		checkoutFailures.increment();
+		recordWait(event.getElapsedTime(TimeUnit.MICROSECONDS));
+	}
+
+	@Override
+	public void connectionCreated(ConnectionCreatedEvent event) {
+		connectionsCreated.increment();
+	}
+
+	@Override
+	public void connectionReady(ConnectionReadyEvent event) {
+		readyConnections.add(event.getConnectionId());
+	}
+
+	@Override
+	public void connectionClosed(ConnectionClosedEvent event) {
+		connectionsClosed.increment();
+		readyConnections.remove(event.getConnectionId());
+	}
+
+	private void recordWait(long micros) {
+		waitMicros.add(micros);
+		maxWaitMicros.accumulateAndGet(micros, Math::max);
+	}
+
+	public int getReadyConnections(ServerAddress server) {
+		int count = 0;
+		for (ConnectionId id : readyConnections) {
+			if (id.getServerId().getAddress().equals(server)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Wait for the driver's background maintenance to open minSize connections to each of
+	 * the given servers.
+	 *
+	 * @return false if that did not happen within the timeout
+	 */
+	public boolean awaitReadyConnections(Collection<ServerAddress> servers, int minSize, long timeoutMillis) {
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		while (true) {
+			boolean ready = true;
+			for (ServerAddress server : servers) {
+				if (getReadyConnections(server) < minSize) {
+					ready = false;
+					break;
+				}
+			}
+			if (ready) {
+				return true;
+			}
+			if (System.currentTimeMillis() >= deadline) {
+				return false;
+			}
+			ThreadUtils.sleep(50);
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getCheckouts() {
+		return checkouts.sum();
+	}
+
+	public long getCheckoutFailures() {
+		return checkoutFailures.sum();
+	}
+
+	public long getConnectionsCreated() {
+		return connectionsCreated.sum();
+	}
+
+	public long getOpenConnections() {
+		return connectionsCreated.sum() - connectionsClosed.sum();
+	}
+
+	public double getMeanWaitMillis() {
+		long n = checkouts.sum() + checkoutFailures.sum();
+		return n == 0 ? 0 : waitMicros.sum() / 1000.0 / n;
+	}
+
+	public double getMaxWaitMillis() {
+		return maxWaitMicros.get() / 1000.0;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s: checkouts: %d, failures: %d, wait mean: %.2fms, max: %.2fms, open: %d, created: %d",
+				name, getCheckouts(), getCheckoutFailures(), getMeanWaitMillis(), getMaxWaitMillis(),
+				getOpenConnections(), getConnectionsCreated());
+	}
+}
@@ -0,0 +1,661 @@
+package com.mongodb.shardsync;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import org.bson.BsonArray;
+import org.bson.BsonBinary;
+import org.bson.BsonBoolean;
+import org.bson.BsonDateTime;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonNull;
+import org.bson.BsonString;
+import org.bson.BsonTimestamp;
+import org.bson.BsonValue;
+import org.bson.RawBsonDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.model.ChunkKey;
+import com.mongodb.util.bson.BsonStreamUtil;
+import com.mongodb.util.bson.BsonUuidUtil;
+import com.mongodb.util.bson.BsonValueWrapper;
+
+/**
+ * Keeps a chunks cache for a chunk query current without re-reading all of config.chunks.
+ * <p>
+ * Every split, merge and migration bumps the chunk version (lastmod) of the chunks it
+ * produces, so on refresh the highest lastmod per namespace is read first (a distinct scan
+ * of the ns/uuid + lastmod index) and only namespaces whose version moved are fetched,
+ * and only their chunks with a newer lastmod. A changed chunk replaces the cached chunk with
+ * the same min, which covers moves and splits. Merges leave the other merged chunks behind,
+ * which is caught by comparing the namespace's chunk count with the server and reloading
+ * that namespace. Namespaces whose epoch changed (dropped and recreated, resharded, shard
+ * key refined) are reloaded as well.
+ * <p>
+ * The cache keeps the same layout as a full load: each namespace's chunks are contiguous
+ * and sorted by min, which getMegaChunks relies on.
+ * <p>
+ * The snapshot file holds a full copy of the cache followed by a journal: after a refresh
+ * only the namespaces that changed are appended, with all of their chunks, and the file is
+ * rewritten in full once the journal outgrows the full copy. config.collections is not part
+ * of the snapshot: it is one small document per sharded collection, which ShardClient
+ * reads at startup anyway and refresh() re-reads for the epochs every time, so a copy would
+ * save no round trip and could only go stale.
+ */
+public class IncrementalChunksCache {
+
+	private static Logger logger = LoggerFactory.getLogger(IncrementalChunksCache.class);
+
+	private static final int DELTA_QUERY_BATCH_SIZE = 500;
+	private static final int SNAPSHOT_VERSION = 2;
+
+	private static class NamespaceVersion {
+		// value of the ns (4.x) or uuid (5.0+) field in config.chunks
+		final BsonValue key;
+		BsonValue epoch;
+		BsonTimestamp lastmod;
+
+		NamespaceVersion(BsonValue key) {
+			this.key = key;
+		}
+	}
+
+	/**
+	 * The config server reads the cache makes.
+	 */
+	interface ConfigSource {
+		String getName();
+
+		boolean isVersion5OrLater();
+
+		/**
+		 * Chunks matching the query with their ns, sorted as ShardClient.getSourceChunks does.
+		 */
+		Iterable<RawBsonDocument> findChunks(BsonDocument query);
+
+		Iterable<RawBsonDocument> aggregateChunks(List<BsonDocument> pipeline);
+
+		long countChunks(BsonDocument query);
+
+		Iterable<RawBsonDocument> findCollections(BsonDocument query, BsonDocument projection);
+
+		Map<UUID, String> getCollectionsUuidMap();
+
+		void refreshCollectionsMap();
+	}
+
+	private final ConfigSource source;
+	private final BsonDocument chunkQuery;
+	private final Map<ChunkKey, RawBsonDocument> cache;
+
+	private final Map<String, NamespaceVersion> versions = new HashMap<>();
+	// per namespace, min-only key -> full key of the cached chunk starting at that min
+	private final Map<String, Map<ChunkKey, ChunkKey>> minIndex = new HashMap<>();
+
+	// snapshot file state: namespaces changed since the last write, and the sizes of the
+	// full copy and of the journal appended after it
+	private final Set<String> unsavedNamespaces = new LinkedHashSet<>();
+	private boolean fullSnapshotNeeded = true;
+	private File snapshotFile;
+	private long snapshotBaseBytes;
+	private long snapshotJournalBytes;
+
+	public IncrementalChunksCache(ShardClient shardClient, BsonDocument chunkQuery,
+			Map<ChunkKey, RawBsonDocument> cache) {
+		this(shardClientSource(shardClient), chunkQuery, cache);
+	}
+
+	IncrementalChunksCache(ConfigSource source, BsonDocument chunkQuery, Map<ChunkKey, RawBsonDocument> cache) {
+		this.source = source;
+		this.chunkQuery = chunkQuery;
+		this.cache = cache;
+	}
+
+	private static ConfigSource shardClientSource(ShardClient shardClient) {
+		return new ConfigSource() {
+			@Override
+			public String getName() {
+				return shardClient.getName();
+			}
+
+			@Override
+			public boolean isVersion5OrLater() {
+				return shardClient.isVersion5OrLater();
+			}
+
+			@Override
+			public Iterable<RawBsonDocument> findChunks(BsonDocument query) {
+				return shardClient.getSourceChunks(query);
+			}
+
+			@Override
+			public Iterable<RawBsonDocument> aggregateChunks(List<BsonDocument> pipeline) {
+				return shardClient.getChunksCollectionRaw().aggregate(pipeline);
+			}
+
+			@Override
+			public long countChunks(BsonDocument query) {
+				return shardClient.getChunksCollectionRaw().countDocuments(query);
+			}
+
+			@Override
+			public Iterable<RawBsonDocument> findCollections(BsonDocument query, BsonDocument projection) {
+				MongoCollection<RawBsonDocument> collections = shardClient.getConfigDb().getCollection("collections",
+						RawBsonDocument.class);
+				return collections.find(query).projection(projection);
+			}
+
+			@Override
+			public Map<UUID, String> getCollectionsUuidMap() {
+				return shardClient.getCollectionsUuidMap();
+			}
+
+			@Override
+			public void refreshCollectionsMap() {
+				shardClient.populateCollectionsMap(true);
+			}
+		};
+	}
+
+	public BsonDocument getChunkQuery() {
+		return chunkQuery;
+	}
+
+	/**
+	 * Full load of all chunks matching the chunk query, replacing any cached chunks of
+	 * those namespaces.
+	 */
+	public void load() {
+		Map<String, NamespaceVersion> current = fetchVersions();
+		fetchEpochs(current);
+		removeNamespaces(current.keySet());
+		versions.clear();
+		minIndex.clear();
+		versions.putAll(current);
+
+		int count = 0;
+		for (RawBsonDocument chunk : source.findChunks(chunkQuery)) {
+			applyChunk(chunk);
+			count++;
+		}
+		fullSnapshotNeeded = true;
+		logger.debug("*** {}: loaded {} chunks for {} namespaces into chunksCache", source.getName(), count,
+				versions.size());
+	}
+
+	/**
+	 * Apply the chunk changes since the last load or refresh.
+	 *
+	 * @return true if any namespace changed
+	 */
+	public boolean refresh() {
+		Map<String, NamespaceVersion> current = fetchVersions();
+		fetchEpochs(current);
+
+		Set<String> removed = new HashSet<>(versions.keySet());
+		removed.removeAll(current.keySet());
+		removeNamespaces(removed);
+		for (String ns : removed) {
+			versions.remove(ns);
+			minIndex.remove(ns);
+		}
+
+		List<String> reload = new ArrayList<>();
+		Map<String, BsonTimestamp[]> deltaRanges = new LinkedHashMap<>();
+		for (Map.Entry<String, NamespaceVersion> entry : current.entrySet()) {
+			String ns = entry.getKey();
+			NamespaceVersion now = entry.getValue();
+			NamespaceVersion cached = versions.get(ns);
+			if (cached == null || !cached.key.equals(now.key) || cached.epoch == null
+					|| !cached.epoch.equals(now.epoch)) {
+				reload.add(ns);
+			} else if (now.lastmod.compareTo(cached.lastmod) > 0) {
+				deltaRanges.put(ns, new BsonTimestamp[] { cached.lastmod, now.lastmod });
+			}
+			versions.put(ns, now);
+		}
+
+		int deltaCount = applyDeltas(deltaRanges);
+
+		// anything the deltas could not reconcile (i.e. merges) gets reloaded
+		for (String ns : deltaRanges.keySet()) {
+			long serverCount = source.countChunks(namespaceQuery(ns));
+			if (serverCount != minIndex.getOrDefault(ns, Map.of()).size()) {
+				reload.add(ns);
+			}
+		}
+		for (String ns : reload) {
+			reloadNamespace(ns);
+		}
+
+		Set<String> changed = new HashSet<>(deltaRanges.keySet());
+		changed.addAll(reload);
+		changed.addAll(removed);
+		if (!changed.isEmpty()) {
+			resort(changed);
+			unsavedNamespaces.addAll(changed);
+		}
+		logger.debug("*** {}: chunksCache refreshed, {} changed chunks applied, {} namespaces reloaded, {} removed",
+				source.getName(), deltaCount, reload.size(), removed.size());
+		return !changed.isEmpty();
+	}
+
+	/**
+	 * Save the cached chunks and namespace versions to a file. The first write (and any
+	 * write after load(), to another file, or once the journal is larger than the full copy)
+	 * writes a header document with the chunk query, the versions and the chunk count,
+	 * followed by the chunks in cache order, and replaces the file atomically. Later writes
+	 * append a journal record per namespace changed since: its version and chunk count
+	 * followed by its chunks, or a removed marker. Failures are logged, not thrown, since
+	 * the snapshot is only an optimization.
+	 */
+	public void writeSnapshot(File file) {
+		if (fullSnapshotNeeded || !file.equals(snapshotFile) || snapshotJournalBytes > snapshotBaseBytes) {
+			writeFullSnapshot(file);
+		} else if (!unsavedNamespaces.isEmpty()) {
+			appendSnapshot(file);
+		}
+	}
+
+	private void writeFullSnapshot(File file) {
+		BsonArray versionDocs = new BsonArray();
+		for (Map.Entry<String, NamespaceVersion> entry : versions.entrySet()) {
+			versionDocs.add(versionDoc(entry.getKey(), entry.getValue()));
+		}
+		List<RawBsonDocument> chunks = new ArrayList<>(cache.size());
+		for (Map.Entry<ChunkKey, RawBsonDocument> entry : cache.entrySet()) {
+			if (versions.containsKey(entry.getKey().getNs())) {
+				chunks.add(entry.getValue());
+			}
+		}
+		File tmp = new File(file.getPath() + ".tmp");
+		try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp.toPath()))) {
+			BsonStreamUtil.writeDocument(out, new BsonDocument("version", new BsonInt32(SNAPSHOT_VERSION))
+					.append("created", new BsonDateTime(System.currentTimeMillis()))
+					.append("chunkQuery", chunkQuery)
+					.append("versions", versionDocs)
+					.append("chunks", new BsonInt32(chunks.size())));
+			for (RawBsonDocument chunk : chunks) {
+				BsonStreamUtil.writeDocument(out, chunk);
+			}
+		} catch (IOException | RuntimeException e) {
+			logger.warn("{}: error writing chunks snapshot {}: {}", source.getName(), tmp, e.getMessage());
+			tmp.delete();
+			fullSnapshotNeeded = true;
+			return;
+		}
+		try {
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			logger.warn("{}: error writing chunks snapshot {}: {}", source.getName(), file, e.getMessage());
+			fullSnapshotNeeded = true;
+			return;
+		}
+		snapshotFile = file;
+		snapshotBaseBytes = file.length();
+		snapshotJournalBytes = 0;
+		fullSnapshotNeeded = false;
+		unsavedNamespaces.clear();
+		logger.debug("{}: wrote {} chunks for {} namespaces to snapshot {}", source.getName(), chunks.size(),
+				versions.size(), file);
+	}
+
+	private void appendSnapshot(File file) {
+		Map<String, List<RawBsonDocument>> chunks = new HashMap<>();
+		for (Map.Entry<ChunkKey, RawBsonDocument> entry : cache.entrySet()) {
+			String ns = entry.getKey().getNs();
+			if (unsavedNamespaces.contains(ns)) {
+				chunks.computeIfAbsent(ns, k -> new ArrayList<>()).add(entry.getValue());
+			}
+		}
+		int count = 0;
+		try (OutputStream out = new BufferedOutputStream(
+				Files.newOutputStream(file.toPath(), StandardOpenOption.APPEND))) {
+			for (String ns : unsavedNamespaces) {
+				NamespaceVersion version = versions.get(ns);
+				if (version == null) {
+					BsonStreamUtil.writeDocument(out, new BsonDocument("ns", new BsonString(ns))
+							.append("removed", BsonBoolean.TRUE));
+					continue;
+				}
+				List<RawBsonDocument> nsChunks = chunks.getOrDefault(ns, List.of());
+				BsonStreamUtil.writeDocument(out, versionDoc(ns, version).append("chunks", new BsonInt32(nsChunks.size())));
+				for (RawBsonDocument chunk : nsChunks) {
+					BsonStreamUtil.writeDocument(out, chunk);
+				}
+				count += nsChunks.size();
+			}
+		} catch (IOException | RuntimeException e) {
+			// a partly appended record is dropped on restore, but nothing may be appended after it
+			logger.warn("{}: error appending to chunks snapshot {}: {}", source.getName(), file, e.getMessage());
+			fullSnapshotNeeded = true;
+			return;
+		}
+		snapshotJournalBytes = file.length() - snapshotBaseBytes;
+		logger.debug("{}: appended {} chunks for {} changed namespaces to snapshot {}", source.getName(), count,
+				unsavedNamespaces.size(), file);
+		unsavedNamespaces.clear();
+	}
+
+	private static BsonDocument versionDoc(String ns, NamespaceVersion version) {
+		return new BsonDocument("ns", new BsonString(ns))
+				.append("key", version.key)
+				.append("epoch", version.epoch == null ? BsonNull.VALUE : version.epoch)
+				.append("lastmod", version.lastmod);
+	}
+
+	private static NamespaceVersion readVersion(BsonDocument doc) {
+		NamespaceVersion version = new NamespaceVersion(doc.get("key"));
+		version.epoch = doc.isNull("epoch") ? null : doc.get("epoch");
+		version.lastmod = doc.getTimestamp("lastmod");
+		return version;
+	}
+
+	/**
+	 * Replace the cached chunks and versions with a snapshot written for the same chunk
+	 * query. The snapshot is not validated here; the caller must refresh() afterwards,
+	 * which compares the snapshot versions and epochs with config.chunks and
+	 * config.collections and fetches whatever changed since it was written. A journal
+	 * record cut short (e.g. by a crash while appending) is dropped along with anything
+	 * after it, which leaves its namespace at the older version of the full copy.
+	 *
+	 * @return false if there is no usable snapshot, leaving the cache unchanged
+	 */
+	public boolean restoreSnapshot(File file) {
+		if (!file.exists()) {
+			return false;
+		}
+		Map<String, NamespaceVersion> restored = new HashMap<>();
+		// chunks per namespace in cache order
+		Map<String, List<RawBsonDocument>> chunks = new LinkedHashMap<>();
+		long baseBytes = 0;
+		long validBytes;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+			RawBsonDocument header = BsonStreamUtil.readDocument(in);
+			if (header == null || header.getInt32("version", new BsonInt32(0)).getValue() != SNAPSHOT_VERSION) {
+				logger.info("{}: ignoring chunks snapshot {}, unknown version", source.getName(), file);
+				return false;
+			}
+			if (!chunkQuery.equals(header.getDocument("chunkQuery"))) {
+				logger.info("{}: ignoring chunks snapshot {}, written for a different chunk query", source.getName(),
+						file);
+				return false;
+			}
+			baseBytes += size(header);
+			for (BsonValue value : header.getArray("versions")) {
+				BsonDocument doc = value.asDocument();
+				restored.put(doc.getString("ns").getValue(), readVersion(doc));
+			}
+			int baseCount = header.getInt32("chunks").getValue();
+			for (int i = 0; i < baseCount; i++) {
+				RawBsonDocument chunk = BsonStreamUtil.readDocument(in);
+				if (chunk == null) {
+					throw new IOException("snapshot ends after " + i + " of " + baseCount + " chunks");
+				}
+				baseBytes += size(chunk);
+				chunks.computeIfAbsent(chunk.getString("ns").getValue(), k -> new ArrayList<>()).add(chunk);
+			}
+			validBytes = baseBytes + readJournal(in, restored, chunks);
+		} catch (IOException | RuntimeException e) {
+			logger.warn("{}: ignoring unreadable chunks snapshot {}: {}", source.getName(), file, e.getMessage());
+			return false;
+		}
+
+		removeNamespaces(versions.keySet());
+		removeNamespaces(restored.keySet());
+		versions.clear();
+		minIndex.clear();
+		versions.putAll(restored);
+		int count = 0;
+		for (List<RawBsonDocument> nsChunks : chunks.values()) {
+			for (RawBsonDocument chunk : nsChunks) {
+				applyChunk(chunk);
+				count++;
+			}
+		}
+		snapshotFile = file;
+		snapshotBaseBytes = baseBytes;
+		snapshotJournalBytes = validBytes - baseBytes;
+		fullSnapshotNeeded = validBytes != file.length();
+		unsavedNamespaces.clear();
+		if (fullSnapshotNeeded) {
+			logger.warn("{}: chunks snapshot {} has an incomplete journal record, ignored", source.getName(), file);
+		}
+		logger.info("{}: restored {} chunks for {} namespaces from snapshot {}", source.getName(), count,
+				restored.size(), file);
+		return true;
+	}
+
+	/**
+	 * Apply the journal records to the restored versions and chunks, stopping at the first
+	 * incomplete or unreadable record.
+	 *
+	 * @return the bytes of the complete records
+	 */
+	private static long readJournal(DataInputStream in, Map<String, NamespaceVersion> restored,
+			Map<String, List<RawBsonDocument>> chunks) {
+		long bytes = 0;
+		try {
+			RawBsonDocument record;
+			while ((record = BsonStreamUtil.readDocument(in)) != null) {
+				long recordBytes = size(record);
+				String ns = record.getString("ns").getValue();
+				if (record.containsKey("removed")) {
+					restored.remove(ns);
+					chunks.remove(ns);
+					bytes += recordBytes;
+					continue;
+				}
+				NamespaceVersion version = readVersion(record);
+				int count = record.getInt32("chunks").getValue();
+				List<RawBsonDocument> nsChunks = new ArrayList<>(count);
+				for (int i = 0; i < count; i++) {
+					RawBsonDocument chunk = BsonStreamUtil.readDocument(in);
+					if (chunk == null) {
+						return bytes;
+					}
+					recordBytes += size(chunk);
+					nsChunks.add(chunk);
+				}
+				restored.put(ns, version);
+				chunks.put(ns, nsChunks);
+				bytes += recordBytes;
+			}
+		} catch (IOException | RuntimeException e) {
+			// the complete records are still good
+		}
+		return bytes;
+	}
+
+	private static long size(RawBsonDocument doc) {
+		return doc.getByteBuffer().remaining();
+	}
+
+	private int applyDeltas(Map<String, BsonTimestamp[]> deltaRanges) {
+		int count = 0;
+		List<BsonDocument> clauses = new ArrayList<>();
+		for (Map.Entry<String, BsonTimestamp[]> entry : deltaRanges.entrySet()) {
+			BsonTimestamp[] range = entry.getValue();
+			clauses.add(new BsonDocument(nsField(), versions.get(entry.getKey()).key)
+					.append("lastmod", new BsonDocument("$gt", range[0]).append("$lte", range[1])));
+			if (clauses.size() == DELTA_QUERY_BATCH_SIZE) {
+				count += applyDeltaBatch(clauses);
+				clauses.clear();
+			}
+		}
+		if (!clauses.isEmpty()) {
+			count += applyDeltaBatch(clauses);
+		}
+		return count;
+	}
+
+	private int applyDeltaBatch(List<BsonDocument> clauses) {
+		BsonDocument query = new BsonDocument("$and",
+				new BsonArray(Arrays.asList(chunkQuery, new BsonDocument("$or", new BsonArray(clauses)))));
+		int count = 0;
+		for (RawBsonDocument chunk : source.findChunks(query)) {
+			applyChunk(chunk);
+			count++;
+		}
+		return count;
+	}
+
+	private void reloadNamespace(String ns) {
+		removeNamespaces(Set.of(ns));
+		minIndex.remove(ns);
+		for (RawBsonDocument chunk : source.findChunks(namespaceQuery(ns))) {
+			applyChunk(chunk);
+		}
+	}
+
+	/**
+	 * Put a current chunk into the cache, replacing the cached chunk with the same min.
+	 */
+	void applyChunk(RawBsonDocument chunk) {
+		String ns = chunk.getString("ns").getValue();
+		RawBsonDocument min = (RawBsonDocument) chunk.get("min");
+		RawBsonDocument max = (RawBsonDocument) chunk.get("max");
+		ChunkKey key = ShardClient.getIdFromChunk(ns, min, max);
+		ChunkKey previous = minIndex.computeIfAbsent(ns, k -> new HashMap<>()).put(ChunkKey.ofMin(ns, min), key);
+		if (previous != null && !previous.equals(key)) {
+			cache.remove(previous);
+		}
+		cache.put(key, chunk);
+	}
+
+	/**
+	 * Rebuild the cache order so that the chunks of each changed namespace are contiguous
+	 * and sorted by min, at the position of the namespace's first chunk.
+	 */
+	void resort(Set<String> namespaces) {
+		Map<String, List<Map.Entry<ChunkKey, RawBsonDocument>>> sorted = new HashMap<>();
+		for (Map.Entry<ChunkKey, RawBsonDocument> entry : cache.entrySet()) {
+			if (namespaces.contains(entry.getKey().getNs())) {
+				sorted.computeIfAbsent(entry.getKey().getNs(), k -> new ArrayList<>()).add(entry);
+			}
+		}
+		Comparator<Map.Entry<ChunkKey, RawBsonDocument>> byMin = Comparator
+				.comparing(e -> new BsonValueWrapper(e.getValue().get("min")));
+		sorted.values().forEach(list -> list.sort(byMin));
+
+		Map<ChunkKey, RawBsonDocument> rebuilt = new LinkedHashMap<>();
+		for (Map.Entry<ChunkKey, RawBsonDocument> entry : cache.entrySet()) {
+			String ns = entry.getKey().getNs();
+			if (!namespaces.contains(ns)) {
+				rebuilt.put(entry.getKey(), entry.getValue());
+			} else if (!rebuilt.containsKey(entry.getKey())) {
+				for (Map.Entry<ChunkKey, RawBsonDocument> e : sorted.get(ns)) {
+					rebuilt.put(e.getKey(), e.getValue());
+				}
+			}
+		}
+		cache.clear();
+		cache.putAll(rebuilt);
+	}
+
+	private void removeNamespaces(Set<String> namespaces) {
+		if (namespaces.isEmpty()) {
+			return;
+		}
+		Iterator<ChunkKey> it = cache.keySet().iterator();
+		while (it.hasNext()) {
+			if (namespaces.contains(it.next().getNs())) {
+				it.remove();
+			}
+		}
+	}
+
+	private String nsField() {
+		return source.isVersion5OrLater() ? "uuid" : "ns";
+	}
+
+	private BsonDocument namespaceQuery(String ns) {
+		return new BsonDocument("$and", new BsonArray(
+				Arrays.asList(chunkQuery, new BsonDocument(nsField(), versions.get(ns).key))));
+	}
+
+	/**
+	 * Highest chunk version per namespace. Sorting on both fields descending walks the
+	 * { ns/uuid: 1, lastmod: 1 } index backwards, so the server can answer the $group/$first
+	 * with a distinct scan of the index instead of reading and sorting the chunks.
+	 */
+	private Map<String, NamespaceVersion> fetchVersions() {
+		String nsField = nsField();
+		List<BsonDocument> pipeline = versionsPipeline(chunkQuery, nsField);
+
+		Map<String, NamespaceVersion> output = new HashMap<>();
+		boolean refreshedCollections = false;
+		for (RawBsonDocument doc : source.aggregateChunks(pipeline)) {
+			BsonValue key = doc.get("_id");
+			String ns;
+			if (key.isBinary()) {
+				UUID uuid = BsonUuidUtil.convertBsonBinaryToUuid((BsonBinary) key);
+				ns = source.getCollectionsUuidMap().get(uuid);
+				if (ns == null && !refreshedCollections) {
+					source.refreshCollectionsMap();
+					refreshedCollections = true;
+					ns = source.getCollectionsUuidMap().get(uuid);
+				}
+				if (ns == null) {
+					logger.warn("{}: no collection found for chunks with uuid {}, skipping", source.getName(), uuid);
+					continue;
+				}
+			} else {
+				ns = key.asString().getValue();
+			}
+			NamespaceVersion version = new NamespaceVersion(key);
+			version.lastmod = doc.getTimestamp("lastmod");
+			output.put(ns, version);
+		}
+		return output;
+	}
+
+	static List<BsonDocument> versionsPipeline(BsonDocument chunkQuery, String nsField) {
+		return Arrays.asList(
+				new BsonDocument("$match", chunkQuery),
+				new BsonDocument("$sort", new BsonDocument(nsField, new BsonInt32(-1)).append("lastmod", new BsonInt32(-1))),
+				new BsonDocument("$group", new BsonDocument("_id", new BsonString("$" + nsField))
+						.append("lastmod", new BsonDocument("$first", new BsonString("$lastmod")))));
+	}
+
+	private void fetchEpochs(Map<String, NamespaceVersion> namespaces) {
+		if (namespaces.isEmpty()) {
+			return;
+		}
+		List<BsonValue> ids = new ArrayList<>();
+		namespaces.keySet().forEach(ns -> ids.add(new BsonString(ns)));
+		BsonDocument query = new BsonDocument("_id", new BsonDocument("$in", new BsonArray(ids)));
+		BsonDocument projection = new BsonDocument("lastmodEpoch", new BsonInt32(1)).append("dropped", new BsonInt32(1));
+		for (RawBsonDocument coll : source.findCollections(query, projection)) {
+			if (coll.containsKey("dropped") && coll.getBoolean("dropped").getValue()) {
+				continue;
+			}
+			NamespaceVersion version = namespaces.get(coll.getString("_id").getValue());
+			if (version != null) {
+				version.epoch = coll.get("lastmodEpoch");
+			}
+		}
+	}
+}
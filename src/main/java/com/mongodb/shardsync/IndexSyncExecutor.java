@@ -0,0 +1,204 @@
+package com.mongodb.shardsync;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.mongodb.model.IndexSpec;
+import com.mongodb.model.Namespace;
+
+/**
+ * Runs index builds for many namespaces with bounded concurrency. Each namespace is one
+ * build (normally a single createIndexes command with all of its missing indexes), builds
+ * are queued by the shard that coordinates them, and at most threadsPerShard builds run
+ * against any one shard while up to numThreads run overall. Index sync time then scales
+ * with the number of shards rather than the number of collections.
+ */
+public class IndexSyncExecutor {
+
+	private static Logger logger = LoggerFactory.getLogger(IndexSyncExecutor.class);
+
+	private static final long PROGRESS_INTERVAL_SECONDS = 60;
+
+	/**
+	 * Builds the indexes of one namespace, e.g. with ShardClient.createIndexes.
+	 * Returns the number of indexes created, or -1 if the build failed.
+	 */
+	public interface IndexBuilder {
+		int build(Namespace ns, Set<IndexSpec> specs);
+	}
+
+	public static class IndexBuild {
+		private final String shard;
+		private final Namespace ns;
+		private final Set<IndexSpec> specs;
+		private int created;
+		private long millis;
+		private boolean success;
+
+		IndexBuild(String shard, Namespace ns, Set<IndexSpec> specs) {
+			this.shard = shard;
+			this.ns = ns;
+			this.specs = specs;
+		}
+
+		public String getShard() {
+			return shard;
+		}
+
+		public Namespace getNs() {
+			return ns;
+		}
+
+		public Set<IndexSpec> getSpecs() {
+			return specs;
+		}
+
+		public int getCreated() {
+			return created;
+		}
+
+		public long getMillis() {
+			return millis;
+		}
+
+		public boolean isSuccess() {
+			return success;
+		}
+	}
+
+	private final IndexBuilder builder;
+	private final int numThreads;
+	private final int threadsPerShard;
+	private final Map<String, Queue<IndexBuild>> shardQueues = new LinkedHashMap<>();
+	private final List<IndexBuild> builds = new ArrayList<>();
+
+	public IndexSyncExecutor(IndexBuilder builder, int numThreads, int threadsPerShard) {
+		this.builder = builder;
+		this.numThreads = Math.max(1, numThreads);
+		this.threadsPerShard = Math.max(1, threadsPerShard);
+	}
+
+	/**
+	 * The source indexes that are missing on the destination. A source index counts as
+	 * present if the destination has an equal index (key, unique, sparse and TTL; with
+	 * extendTtl the TTL is not compared) under any name. If the destination instead has an
+	 * index with the same name or key but other options, creating the source index would
+	 * fail or duplicate it, so it is not returned but described in mismatches.
+	 */
+	public static Set<IndexSpec> missingIndexes(Set<IndexSpec> sourceSpecs, Set<IndexSpec> destSpecs,
+			boolean extendTtl, List<String> mismatches) {
+		Set<IndexSpec> missing = new HashSet<>();
+		for (IndexSpec spec : sourceSpecs) {
+			IndexSpec conflict = null;
+			boolean present = false;
+			for (IndexSpec dest : destSpecs) {
+				boolean ignoreTtl = extendTtl && spec.getExpireAfterSeconds() != null;
+				if (ignoreTtl ? spec.equalsIgnoringTtl(dest) : spec.equals(dest)) {
+					present = true;
+					break;
+				}
+				if (dest.getName().equals(spec.getName()) || dest.hasSameKey(spec)) {
+					conflict = dest;
+				}
+			}
+			if (present) {
+				continue;
+			}
+			if (conflict != null) {
+				mismatches.add(String.format("%s: source %s, destination %s", spec.getNamespace(), spec, conflict));
+			} else {
+				missing.add(spec);
+			}
+		}
+		return missing;
+	}
+
+	public void add(String shard, Namespace ns, Set<IndexSpec> specs) {
+		IndexBuild build = new IndexBuild(shard, ns, specs);
+		shardQueues.computeIfAbsent(shard, k -> new ConcurrentLinkedQueue<>()).add(build);
+		builds.add(build);
+	}
+
+	public int size() {
+		return builds.size();
+	}
+
+	/**
+	 * Run all added builds to completion.
+	 *
+	 * @return the builds, in the order added, with their outcome and timing
+	 */
+	public List<IndexBuild> run() {
+		if (builds.isEmpty()) {
+			return builds;
+		}
+		logger.debug("Starting {} index builds on {} shards with {} threads, {} per shard", builds.size(),
+				shardQueues.size(), numThreads, threadsPerShard);
+
+		AtomicInteger completed = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads,
+				new ThreadFactoryBuilder().setNameFormat("Index-%d").build());
+
+		// threadsPerShard workers drain each shard's queue; interleave shards so that the first
+		// numThreads workers to start are spread across shards
+		List<Queue<IndexBuild>> queues = new ArrayList<>(shardQueues.values());
+		for (int w = 0; w < threadsPerShard; w++) {
+			for (Queue<IndexBuild> queue : queues) {
+				if (w < queue.size()) {
+					executor.execute(() -> drain(queue, completed));
+				}
+			}
+		}
+		executor.shutdown();
+
+		long lastLogSeconds = Instant.now().getEpochSecond();
+		try {
+			while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+				long nowSeconds = Instant.now().getEpochSecond();
+				if (nowSeconds - lastLogSeconds >= PROGRESS_INTERVAL_SECONDS) {
+					logger.info("Index sync: {} of {} namespaces complete", completed.get(), builds.size());
+					lastLogSeconds = nowSeconds;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			executor.shutdownNow();
+			logger.warn("Interrupted with {} index builds outstanding", builds.size() - completed.get());
+		}
+		return builds;
+	}
+
+	private void drain(Queue<IndexBuild> queue, AtomicInteger completed) {
+		IndexBuild build;
+		while ((build = queue.poll()) != null) {
+			if (Thread.currentThread().isInterrupted()) {
+				return;
+			}
+			long start = System.currentTimeMillis();
+			try {
+				int created = builder.build(build.ns, build.specs);
+				build.success = created >= 0;
+				build.created = Math.max(0, created);
+			} catch (RuntimeException e) {
+				logger.error("index build error for namespace {}", build.ns, e);
+			}
+			build.millis = System.currentTimeMillis() - start;
+			completed.incrementAndGet();
+		}
+	}
+}
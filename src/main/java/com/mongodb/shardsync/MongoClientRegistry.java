@@ -0,0 +1,67 @@
+package com.mongodb.shardsync;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+
+/**
+ * Process wide cache of MongoClients, so that ShardClients created by different parts of
+ * a tool for the same cluster (e.g. ChunkManager and RecheckUtil in diff3) share the
+ * shard connection pools instead of each opening their own. Clients are keyed by the
+ * caller, which must include everything that distinguishes the settings (hosts,
+ * credentials, pool sizes) in the key.
+ */
+public class MongoClientRegistry {
+
+	private static final Logger logger = LoggerFactory.getLogger(MongoClientRegistry.class);
+
+	private static class Entry {
+		final MongoClient client;
+		final ConnectionPoolMetrics metrics;
+
+		Entry(MongoClient client, ConnectionPoolMetrics metrics) {
+			this.client = client;
+			this.metrics = metrics;
+		}
+	}
+
+	private static final Map<String, Entry> clients = new ConcurrentHashMap<>();
+
+	/**
+	 * Return the client registered under key, or create one from the settings with a
+	 * ConnectionPoolMetrics listener named name attached.
+	 */
+	public static MongoClient getOrCreate(String key, String name, MongoClientSettings.Builder settings) {
+		return clients.computeIfAbsent(key, k -> {
+			ConnectionPoolMetrics metrics = new ConnectionPoolMetrics(name);
+			settings.applyToConnectionPoolSettings(builder -> builder.addConnectionPoolListener(metrics));
+			logger.debug("{} creating MongoClient", name);
+			return new Entry(MongoClients.create(settings.build()), metrics);
+		}).client;
+	}
+
+	/**
+	 * @return the pool metrics for a client created by this registry, otherwise null
+	 */
+	public static ConnectionPoolMetrics getMetrics(MongoClient client) {
+		for (Entry entry : clients.values()) {
+			if (entry.client == client) {
+				return entry.metrics;
+			}
+		}
+		return null;
+	}
+
+	public static void closeAll() {
+		for (Entry entry : clients.values()) {
+			entry.client.close();
+		}
+		clients.clear();
+	}
+}
@@ -23,9 +23,11 @@ import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.bson.codecs.configuration.CodecRegistries.fromProviders;
 import static org.bson.codecs.configuration.CodecRegistries.fromRegistries;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -56,6 +58,7 @@ import org.slf4j.LoggerFactory;
 import com.mongodb.ConnectionString;
 import com.mongodb.MongoClientSettings;
 import com.mongodb.MongoCommandException;
+import com.mongodb.MongoCredential;
 import com.mongodb.MongoException;
 import com.mongodb.MongoSocketException;
 import com.mongodb.MongoTimeoutException;
@@ -73,7 +76,9 @@ import com.mongodb.client.model.IndexOptions;
 import com.mongodb.client.model.Sorts;
 import com.mongodb.client.model.UpdateOptions;
 import com.mongodb.client.result.DeleteResult;
+import com.mongodb.connection.ServerDescription;
 import com.mongodb.internal.dns.DefaultDnsResolver;
+import com.mongodb.model.ChunkKey;
 import com.mongodb.model.DatabaseCatalog;
 import com.mongodb.model.DatabaseCatalogProvider;
 import com.mongodb.model.IndexSpec;
@@ -107,6 +112,7 @@ public class ShardClient {
 
 	private final static int ONE_GIGABYTE = 1024 * 1024 * 1024;
 	private final static int ONE_MEGABYTE = 1024 * 1024;
+	private final static long SHARD_POOL_WARMUP_TIMEOUT_MS = 30000;
 
 	private DocumentCodec codec = new DocumentCodec();
 
@@ -130,7 +136,9 @@ public class ShardClient {
 	private MongoDatabase configDb;
 	private Map<String, Shard> shardsMap = new LinkedHashMap<String, Shard>();
 
-	private Map<String, RawBsonDocument> chunksCache = new LinkedHashMap<>();
+	private Map<ChunkKey, RawBsonDocument> chunksCache = new LinkedHashMap<>();
+	private IncrementalChunksCache incrementalChunksCache;
+	private File metadataSnapshotDir;
 
 	private Map<String, Shard> tertiaryShardsMap = new LinkedHashMap<String, Shard>();
 	Map<String, String> rsNameToShardIdMap = new HashMap<>();
@@ -157,6 +165,8 @@ public class ShardClient {
 	private DatabaseCatalogProvider databaseCatalogProvider;
 
 	private Map<String, MongoClient> shardMongoClients = new TreeMap<String, MongoClient>();
+	private int shardPoolMinSize;
+	private int shardPoolMaxSize;
 
 	private List<String> srvHosts;
 
@@ -643,12 +653,20 @@ public class ShardClient {
             if (connectionString.getReadPreference() != null) {
 				settingsBuilder.readPreference(connectionString.getReadPreference());
 			}
-			MongoClientSettings settings = settingsBuilder.build();
-			MongoClient mongoClient = MongoClients.create(settings);
+			settingsBuilder.applyToConnectionPoolSettings(builder -> {
+				if (shardPoolMaxSize > 0) {
+					builder.maxSize(shardPoolMaxSize);
+				}
+				if (shardPoolMinSize > 0) {
+					builder.minSize(shardPoolMinSize);
+				}
+			});
+			MongoClient mongoClient = MongoClientRegistry.getOrCreate(shardClientKey(serverAddressList),
+					name + " " + shard.getId(), settingsBuilder);
 
 			shardMongoClients.put(shard.getId(), mongoClient);
 			
-			logger.debug("{} - clusterSettings: {}, sslSettings: {}", name, settings.getClusterSettings(), settings.getSslSettings());
+			logger.debug("{} - clusterSettings: {}", name, mongoClient.getClusterDescription().getClusterSettings());
 
 			// logger.debug(String.format("%s isMaster started: %s", name, shardHost));
 			Document isMasterResult = mongoClient.getDatabase("admin").runCommand(new Document("isMaster", 1));
@@ -658,6 +676,69 @@ public class ShardClient {
 				// logger.debug(String.format("%s isMaster complete: %s", name, shardHost));
 			}
 		}
+		if (shardPoolMinSize > 0) {
+			warmShardConnectionPools();
+		}
+	}
+
+	/**
+	 * Key for MongoClientRegistry, made of everything that populateShardMongoClients() puts
+	 * in the shard client settings.
+	 */
+	private String shardClientKey(List<ServerAddress> serverAddressList) {
+		StringBuilder key = new StringBuilder();
+		key.append(serverAddressList);
+		MongoCredential credential = connectionString.getCredential();
+		if (credential != null) {
+			key.append('|').append(credential.getUserName()).append('@').append(credential.getSource())
+					.append('|').append(credential.getMechanism());
+		}
+		key.append('|').append(rsSsl != null ? rsSsl : connectionString.getSslEnabled());
+		key.append('|').append(connectionString.getApplicationName());
+		key.append('|').append(connectionString.getReadPreference());
+		key.append('|').append(shardPoolMinSize).append('|').append(shardPoolMaxSize);
+		return key.toString();
+	}
+
+	/**
+	 * The driver opens minSize connections per server in the background once a pool is
+	 * created. Wait for that to finish, so that many worker threads starting at once find
+	 * warm pools rather than all opening connections (and authenticating) together.
+	 */
+	private void warmShardConnectionPools() {
+		long start = System.currentTimeMillis();
+		for (Map.Entry<String, MongoClient> entry : shardMongoClients.entrySet()) {
+			ConnectionPoolMetrics metrics = MongoClientRegistry.getMetrics(entry.getValue());
+			if (metrics == null) {
+				continue;
+			}
+			List<ServerAddress> servers = new ArrayList<>();
+			for (ServerDescription sd : entry.getValue().getClusterDescription().getServerDescriptions()) {
+				if (sd.isOk() && (sd.isPrimary() || sd.isSecondary())) {
+					servers.add(sd.getAddress());
+				}
+			}
+			long remaining = Math.max(0, SHARD_POOL_WARMUP_TIMEOUT_MS - (System.currentTimeMillis() - start));
+			if (!metrics.awaitReadyConnections(servers, shardPoolMinSize, remaining)) {
+				logger.warn("{} {}: connection pool warmup timed out, {}", name, entry.getKey(), metrics);
+			}
+		}
+		logger.debug("{} warmed shard connection pools to {} connections in {}ms", name, shardPoolMinSize,
+				System.currentTimeMillis() - start);
+	}
+
+	public void logConnectionPoolMetrics() {
+		for (MongoClient client : shardMongoClients.values()) {
+			ConnectionPoolMetrics metrics = MongoClientRegistry.getMetrics(client);
+			if (metrics != null) {
+				logger.info("{} connection pool {}", name, metrics);
+			}
+		}
+	}
+
+	public void setShardPoolSize(int shardPoolMinSize, int shardPoolMaxSize) {
+		this.shardPoolMinSize = shardPoolMinSize;
+		this.shardPoolMaxSize = shardPoolMaxSize;
 	}
 
 	public Document getLatestOplogEntry(String shardId) {
@@ -1002,6 +1083,30 @@ public class ShardClient {
 		databaseCatalogProvider.populateDatabaseCatalog();
 	}
 
+	/**
+	 * Keep a snapshot of this cluster's metadata in the given directory, so that later runs
+	 * only fetch what changed: the chunks cache (see IncrementalChunksCache.restoreSnapshot,
+	 * validated against chunk versions and collection epochs) and the database catalog (see
+	 * DatabaseCatalogCache). Files are named after this client, e.g. source-chunks.bson.
+	 */
+	public void setMetadataSnapshotDir(File metadataSnapshotDir) {
+		if (!metadataSnapshotDir.isDirectory() && !metadataSnapshotDir.mkdirs()) {
+			logger.warn("{}: unable to create metadata snapshot directory {}, snapshots disabled", name,
+					metadataSnapshotDir);
+			return;
+		}
+		this.metadataSnapshotDir = metadataSnapshotDir;
+		setDatabaseCatalogCache(new File(metadataSnapshotDir, name + "-catalog.bson"),
+				StandardDatabaseCatalogProvider.DEFAULT_CACHE_MAX_AGE_SECONDS);
+	}
+
+	/**
+	 * Cache the database catalog on disk, see DatabaseCatalogCache.
+	 */
+	public void setDatabaseCatalogCache(File cacheFile, long maxAgeSeconds) {
+		((StandardDatabaseCatalogProvider) databaseCatalogProvider).setCache(cacheFile, maxAgeSeconds);
+	}
+
 	public DatabaseCatalog getDatabaseCatalog()  {
 		return getDatabaseCatalog(null);
 	}
@@ -1329,7 +1434,32 @@ public class ShardClient {
 		return users;
 	}
 
-	public void createIndexes(Namespace ns, Set<IndexSpec> sourceSpecs, boolean extendTtl) {
+	/**
+	 * The existing indexes of a collection, with their keys and options as listIndexes
+	 * returns them, or an empty set if the collection does not exist.
+	 */
+	public Set<IndexSpec> getIndexSpecs(Namespace ns) {
+		Set<IndexSpec> specs = new HashSet<>();
+		try {
+			for (RawBsonDocument index : mongoClient.getDatabase(ns.getDatabaseName())
+					.getCollection(ns.getCollectionName(), RawBsonDocument.class).listIndexes(RawBsonDocument.class)) {
+				specs.add(IndexSpec.fromDocument(index, ns));
+			}
+		} catch (MongoCommandException mce) {
+			// NamespaceNotFound
+			if (mce.getCode() != 26) {
+				throw mce;
+			}
+		}
+		return specs;
+	}
+
+	/**
+	 * Create the given indexes with a single createIndexes command.
+	 *
+	 * @return false if the command failed, other than for an index that already exists
+	 */
+	public boolean createIndexes(Namespace ns, Set<IndexSpec> sourceSpecs, boolean extendTtl) {
 		//MongoClient client = getShardMongoClient(shardName);
 		MongoDatabase db = mongoClient.getDatabase(ns.getDatabaseName());
 
@@ -1375,10 +1505,12 @@ public class ShardClient {
 					logger.warn("⚠️ Index already exists for {} (code 85)", ns);
 				} else {
 					logger.error("❌ Failed to create indexes for {}: {}", ns, mce.getMessage());
+					return false;
 				}
 			}
 
 		}
+		return true;
 	}
 
 	public void findOrphans(boolean doMove) {
@@ -1444,7 +1576,7 @@ public class ShardClient {
 //		return getIdFromChunk(ns, min, max);
 //	}
 	
-	public String getIdFromChunk(RawBsonDocument sourceChunk) {
+	public ChunkKey getIdFromChunk(RawBsonDocument sourceChunk) {
 		RawBsonDocument min = null;
 		BsonValue minVal = sourceChunk.get("min");
 		if (minVal instanceof BsonDocument) {
@@ -1460,25 +1592,23 @@ public class ShardClient {
 		} else {
 			BsonBinary bsonUuid = sourceChunk.getBinary("uuid");
 			UUID uuid = BsonUuidUtil.convertBsonBinaryToUuid(bsonUuid);
-			this.collectionsUuidMap.get(uuid);
+			ns = this.collectionsUuidMap.get(uuid);
 		}
 		
 		
 		return getIdFromChunk(ns, min, max);
 	}
 	
-	public static String getIdFromChunk(String ns, RawBsonDocument min, RawBsonDocument max) {
-		String minHash = min.toJson();
-		String maxHash = max.toJson();
-		return String.format("%s_%s_%s", ns, minHash, maxHash);
+	public static ChunkKey getIdFromChunk(String ns, RawBsonDocument min, RawBsonDocument max) {
+		return new ChunkKey(ns, min, max);
 	}
 
 	public static String getShardFromChunk(BsonDocument chunk) {
 		return chunk.getString("shard").getValue();
 	}
 	
-	public Map<String, RawBsonDocument> getChunksCache(BsonDocument chunkQuery) {
-		Map<String, RawBsonDocument> cache = new LinkedHashMap<>(); 
+	public Map<ChunkKey, RawBsonDocument> getChunksCache(BsonDocument chunkQuery) {
+		Map<ChunkKey, RawBsonDocument> cache = new LinkedHashMap<>(); 
 		return loadChunksCache(chunkQuery, cache);
 	}
 	
@@ -1501,8 +1631,8 @@ public class ShardClient {
 	 * @param namespaceFilter Optional namespace to filter existing entries when not clearing all
 	 * @return The updated cache
 	 */
-	private Map<String, RawBsonDocument> loadChunksCacheInternal(BsonDocument chunkQuery, 
-			Map<String, RawBsonDocument> cache, boolean clearExisting, String namespaceFilter) {
+	private Map<ChunkKey, RawBsonDocument> loadChunksCacheInternal(BsonDocument chunkQuery, 
+			Map<ChunkKey, RawBsonDocument> cache, boolean clearExisting, String namespaceFilter) {
 		
 		// Clear existing entries if requested
 		if (clearExisting) {
@@ -1522,7 +1652,7 @@ public class ShardClient {
 		int count = 0;
 		for (Iterator<RawBsonDocument> sourceChunksIterator = sourceChunks.iterator(); sourceChunksIterator.hasNext();) {
 			RawBsonDocument chunk = sourceChunksIterator.next();
-			String chunkId = getIdFromChunk(chunk);
+			ChunkKey chunkId = getIdFromChunk(chunk);
 			cache.put(chunkId, chunk);
 			count++;
 		}
@@ -1542,14 +1672,12 @@ public class ShardClient {
 	 * @param namespace The namespace to remove chunks for
 	 * @return The number of chunks removed
 	 */
-	private int removeChunksForNamespace(Map<String, RawBsonDocument> cache, String namespace) {
-		Iterator<Map.Entry<String, RawBsonDocument>> iterator = cache.entrySet().iterator();
+	private int removeChunksForNamespace(Map<ChunkKey, RawBsonDocument> cache, String namespace) {
+		// the namespace is part of the key, no need to look into the chunk documents
+		Iterator<ChunkKey> iterator = cache.keySet().iterator();
 		int removedCount = 0;
 		while (iterator.hasNext()) {
-			Map.Entry<String, RawBsonDocument> entry = iterator.next();
-			RawBsonDocument chunk = entry.getValue();
-			String chunkNs = getNamespaceFromChunk(chunk);
-			if (namespace.equals(chunkNs)) {
+			if (namespace.equals(iterator.next().getNs())) {
 				iterator.remove();
 				removedCount++;
 			}
@@ -1557,13 +1685,42 @@ public class ShardClient {
 		return removedCount;
 	}
 	
-	public Map<String, RawBsonDocument> loadChunksCache(BsonDocument chunkQuery, Map<String, RawBsonDocument> cache) {
+	public Map<ChunkKey, RawBsonDocument> loadChunksCache(BsonDocument chunkQuery, Map<ChunkKey, RawBsonDocument> cache) {
 		// Full load - no namespace filter, don't clear existing (backwards compatibility)
 		return loadChunksCacheInternal(chunkQuery, cache, false, null);
 	}
 
-	public Map<String, RawBsonDocument> loadChunksCache(BsonDocument chunkQuery) {
-		return loadChunksCache(chunkQuery, chunksCache);
+	/**
+	 * Loads chunks matching chunkQuery into the chunks cache. Repeated calls with the same
+	 * query only fetch the chunks that changed since the previous call, see
+	 * IncrementalChunksCache.
+	 */
+	public synchronized Map<ChunkKey, RawBsonDocument> loadChunksCache(BsonDocument chunkQuery) {
+		File snapshotFile = metadataSnapshotDir == null ? null : new File(metadataSnapshotDir, name + "-chunks.bson");
+		boolean changed;
+		if (incrementalChunksCache != null && incrementalChunksCache.getChunkQuery().equals(chunkQuery)) {
+			changed = incrementalChunksCache.refresh();
+		} else {
+			incrementalChunksCache = new IncrementalChunksCache(this, chunkQuery, chunksCache);
+			if (snapshotFile != null && incrementalChunksCache.restoreSnapshot(snapshotFile)) {
+				changed = incrementalChunksCache.refresh();
+			} else {
+				incrementalChunksCache.load();
+				changed = true;
+			}
+		}
+		if (snapshotFile != null && changed) {
+			incrementalChunksCache.writeSnapshot(snapshotFile);
+		}
+		return chunksCache;
+	}
+
+	/**
+	 * Like loadChunksCache, but returns an immutable copy (in cache order) that later
+	 * refreshes of the cache don't change under the caller.
+	 */
+	public synchronized Map<ChunkKey, RawBsonDocument> copyChunksCache(BsonDocument chunkQuery) {
+		return Collections.unmodifiableMap(new LinkedHashMap<>(loadChunksCache(chunkQuery)));
 	}
 	
 	/**
@@ -1576,12 +1733,15 @@ public class ShardClient {
 	 * @param namespace The namespace to reload chunks for
 	 * @return The updated chunks cache
 	 */
-	public Map<String, RawBsonDocument> reloadChunksCacheForNamespace(String namespace) {
+	public synchronized Map<ChunkKey, RawBsonDocument> reloadChunksCacheForNamespace(String namespace) {
 		logger.debug("Reloading chunks cache for namespace: {}", namespace);
 
 		// Create query for specific namespace
 		BsonDocument namespaceQuery = createNamespaceChunkQuery(namespace);
 
+		// the incremental cache's view of this namespace is now stale, next load starts over
+		incrementalChunksCache = null;
+
 		// Use the internal method with namespace-specific clearing
 		return loadChunksCacheInternal(namespaceQuery, chunksCache, true, namespace);
 	}
@@ -1624,7 +1784,7 @@ public class ShardClient {
 		return null;
 	}
 	
-	private MongoIterable<RawBsonDocument> getSourceChunks(Bson chunkQuery) {
+	MongoIterable<RawBsonDocument> getSourceChunks(Bson chunkQuery) {
 		if (chunkQuery == null) {
 			throw new IllegalArgumentException("chunkQuery cannot be null");
 		}
@@ -1653,21 +1813,21 @@ public class ShardClient {
 		return sourceChunks;
 	}
 
-	public Map<String, Map<String, RawBsonDocument>> loadChunksCacheMap(Document chunkQuery) {
-		Map<String, Map<String, RawBsonDocument>> output = new HashMap<>();
+	public Map<String, Map<ChunkKey, RawBsonDocument>> loadChunksCacheMap(Document chunkQuery) {
+		Map<String, Map<ChunkKey, RawBsonDocument>> output = new HashMap<>();
 		
 		MongoIterable<RawBsonDocument> sourceChunks = getSourceChunks(chunkQuery);
 		
 		int count = 0;
 		for (Iterator<RawBsonDocument> sourceChunksIterator = sourceChunks.iterator(); sourceChunksIterator.hasNext();) {
 			RawBsonDocument chunk = sourceChunksIterator.next();
-			String chunkId = getIdFromChunk(chunk);
+			ChunkKey chunkId = getIdFromChunk(chunk);
 			String shard = getShardFromChunk(chunk);
 
 			if (!output.containsKey(shard)) {
 				output.put(shard, new HashMap<>());
 			}
-			Map<String, RawBsonDocument> shardChunkCache = output.get(shard);
+			Map<ChunkKey, RawBsonDocument> shardChunkCache = output.get(shard);
 			shardChunkCache.put(chunkId, chunk);
 			count++;
 		}
@@ -1676,7 +1836,7 @@ public class ShardClient {
 	}
 
 //	public boolean checkChunkExists(BsonDocument chunk) {
-//		String id = getIdFromChunk(chunk);
+//		ChunkKey id = getIdFromChunk(chunk);
 //		return chunksCache.containsKey(id);
 //	}
 
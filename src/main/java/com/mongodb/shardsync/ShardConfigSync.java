@@ -20,10 +20,16 @@ import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -33,6 +39,7 @@ import org.apache.commons.exec.ExecuteException;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.bson.BSONException;
 import org.bson.BsonDocument;
+import org.bson.BsonInt32;
 import org.bson.BsonTimestamp;
 import org.bson.Document;
 import org.bson.RawBsonDocument;
@@ -47,11 +54,13 @@ import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.mongodb.ConnectionString;
 import com.mongodb.MongoClientSettings;
 import com.mongodb.MongoCommandException;
 import com.mongodb.MongoCredential;
 import com.mongodb.MongoException;
+import com.mongodb.MongoInterruptedException;
 import com.mongodb.MongoSecurityException;
 import com.mongodb.atlas.AtlasServiceGenerator;
 import com.mongodb.atlas.AtlasUtil;
@@ -62,6 +71,7 @@ import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoClients;
 import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoDatabase;
 import com.mongodb.client.MongoIterable;
 import com.mongodb.client.model.Collation;
@@ -69,6 +79,7 @@ import com.mongodb.client.model.CollationAlternate;
 import com.mongodb.client.model.CollationCaseFirst;
 import com.mongodb.client.model.CollationMaxVariable;
 import com.mongodb.client.model.CollationStrength;
+import com.mongodb.client.model.CountOptions;
 import com.mongodb.client.model.CreateCollectionOptions;
 import com.mongodb.client.model.ReplaceOptions;
 import com.mongodb.client.model.TimeSeriesGranularity;
@@ -76,6 +87,7 @@ import com.mongodb.client.model.TimeSeriesOptions;
 import com.mongodb.client.model.ValidationOptions;
 import com.mongodb.connection.ClusterDescription;
 import com.mongodb.connection.ServerDescription;
+import com.mongodb.model.ChunkKey;
 import com.mongodb.model.IndexSpec;
 import com.mongodb.model.Namespace;
 import com.mongodb.model.Privilege;
@@ -415,28 +427,55 @@ public class ShardConfigSync implements Callable<Integer> {
         return success;
     }
 
+    /**
+     * Index specs of all collections, with listCollections per database and listIndexes per
+     * collection fanned out over indexThreads.
+     */
     private Map<Namespace, Set<IndexSpec>> getIndexSpecs(MongoClient client, Set<String> filterSet) {
         Map<Namespace, Set<IndexSpec>> sourceIndexSpecs = new LinkedHashMap<>();
-        for (String dbName : client.listDatabaseNames()) {
-            MongoDatabase sourceDb = client.getDatabase(dbName);
-            for (Document collectionInfo : sourceDb.listCollections()) {
-                String collectionName = collectionInfo.getString("name");
-                String type = collectionInfo.getString("type");
-                Namespace ns = new Namespace(dbName, collectionName);
-                if (config.filterCheck(ns) || (filterSet != null && !filterSet.contains(ns.getNamespace()))) {
-                    continue;
-                }
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, config.getIndexThreads()),
+                new ThreadFactoryBuilder().setNameFormat("ListIndexes-%d").build());
+        try {
+            Map<String, Future<List<Document>>> listings = new LinkedHashMap<>();
+            for (String dbName : client.listDatabaseNames()) {
+                MongoDatabase sourceDb = client.getDatabase(dbName);
+                listings.put(dbName, pool.submit(() -> sourceDb.listCollections().into(new ArrayList<>())));
+            }
 
-                if (collectionName.equals("system.views") || (type != null && type.equals("view"))) {
-                    logger.debug("Skipping view: {}", ns);
-                    continue;
-                }
+            Map<Namespace, Future<Set<IndexSpec>>> specs = new LinkedHashMap<>();
+            for (Map.Entry<String, Future<List<Document>>> listing : listings.entrySet()) {
+                String dbName = listing.getKey();
+                MongoDatabase sourceDb = client.getDatabase(dbName);
+                for (Document collectionInfo : listing.getValue().get()) {
+                    String collectionName = collectionInfo.getString("name");
+                    String type = collectionInfo.getString("type");
+                    Namespace ns = new Namespace(dbName, collectionName);
+                    if (config.filterCheck(ns) || (filterSet != null && !filterSet.contains(ns.getNamespace()))) {
+                        continue;
+                    }
 
-                MongoCollection<RawBsonDocument> collection = sourceDb.getCollection(collectionName, RawBsonDocument.class);
-                Set<IndexSpec> indexSpecs = getCollectionIndexSpecs(collection);
-                sourceIndexSpecs.put(ns, indexSpecs);
+                    if (collectionName.equals("system.views") || (type != null && type.equals("view"))) {
+                        logger.debug("Skipping view: {}", ns);
+                        continue;
+                    }
 
+                    MongoCollection<RawBsonDocument> collection = sourceDb.getCollection(collectionName, RawBsonDocument.class);
+                    specs.put(ns, pool.submit(() -> getCollectionIndexSpecs(collection)));
+                }
+            }
+            for (Map.Entry<Namespace, Future<Set<IndexSpec>>> entry : specs.entrySet()) {
+                sourceIndexSpecs.put(entry.getKey(), entry.getValue().get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MongoInterruptedException("Interrupted listing indexes", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
             }
+            throw new IllegalStateException("Error listing indexes", e.getCause());
+        } finally {
+            pool.shutdownNow();
         }
         return sourceIndexSpecs;
     }
@@ -473,17 +512,34 @@ public class ShardConfigSync implements Callable<Integer> {
 
         //Map<Namespace, Set<IndexSpec>> destShardIndexSpecs = getIndexSpecs(destShardClient.getMongoClient(), null);
 
+        // index builds are coordinated by the database primary shard
+        Map<String, String> dbPrimaries = new HashMap<>();
+        for (Document database : destShardClient.getDatabasesCollection().find()) {
+            dbPrimaries.put(database.getString("_id"), database.getString("primary"));
+        }
+
+        Queue<String> mismatches = new ConcurrentLinkedQueue<>();
+        IndexSyncExecutor executor = new IndexSyncExecutor((ns, specs) -> {
+            List<String> nsMismatches = new ArrayList<>();
+            Set<IndexSpec> missing = IndexSyncExecutor.missingIndexes(specs, destShardClient.getIndexSpecs(ns),
+                    extendTtl, nsMismatches);
+            for (String mismatch : nsMismatches) {
+                logger.warn("  ⚠️  Index differs on destination, not created: {}", mismatch);
+            }
+            mismatches.addAll(nsMismatches);
+            if (missing.isEmpty()) {
+                logger.debug("  ⏭️  Skipping {} - all {} indexes exist", ns, specs.size());
+                return 0;
+            }
+            return destShardClient.createIndexes(ns, missing, extendTtl) ? missing.size() : -1;
+        }, config.getIndexThreads(), config.getIndexThreadsPerShard());
+
         int totalNamespaces = sourceIndexSpecs.size();
-        int processedNamespaces = 0;
-        int totalIndexesCreated = 0;
         int totalIndexesSkipped = 0;
         
         for (Map.Entry<Namespace, Set<IndexSpec>> sourceEntry : sourceIndexSpecs.entrySet()) {
             Namespace ns = sourceEntry.getKey();
             Set<IndexSpec> sourceSpecs = sourceEntry.getValue();
-            processedNamespaces++;
-            
-            logger.info("Processing namespace {}/{}: {}", processedNamespaces, totalNamespaces, ns);
 
             // Filter indexes if ttlOnly is enabled
             Set<IndexSpec> specsToSync = sourceSpecs;
@@ -493,27 +549,64 @@ public class ShardConfigSync implements Callable<Integer> {
                     .collect(java.util.stream.Collectors.toSet());
                 
                 if (specsToSync.size() < sourceSpecs.size()) {
-                    logger.info("  📋 TTL-only filter: {} total indexes → {} TTL indexes", 
-                               sourceSpecs.size(), specsToSync.size());
+                    logger.debug("  📋 TTL-only filter for {}: {} total indexes → {} TTL indexes", 
+                               ns, sourceSpecs.size(), specsToSync.size());
                 }
             }
 
             if (createMissing && !specsToSync.isEmpty()) {
-                logger.info("  🔨 Creating {} indexes for {}", specsToSync.size(), ns);
-                destShardClient.createIndexes(ns, specsToSync, extendTtl);
-                totalIndexesCreated += specsToSync.size();
+                String shard = dbPrimaries.getOrDefault(ns.getDatabaseName(), "");
+                executor.add(shard, ns, specsToSync);
             } else if (createMissing && specsToSync.isEmpty()) {
-                logger.info("  ⏭️  Skipping {} - no indexes to create", ns);
+                logger.debug("  ⏭️  Skipping {} - no indexes to create", ns);
                 totalIndexesSkipped++;
             }
         }
+
+        logger.info("Syncing indexes for {} of {} namespaces", executor.size(), totalNamespaces);
+        List<IndexSyncExecutor.IndexBuild> builds = executor.run();
+
+        int totalIndexesCreated = 0;
+        List<IndexSyncExecutor.IndexBuild> failures = new ArrayList<>();
+        for (IndexSyncExecutor.IndexBuild build : builds) {
+            totalIndexesCreated += build.getCreated();
+            if (!build.isSuccess()) {
+                failures.add(build);
+            }
+        }
+        List<IndexSyncExecutor.IndexBuild> slowest = new ArrayList<>(builds);
+        slowest.sort((a, b) -> Long.compare(b.getMillis(), a.getMillis()));
         
         logger.info("=== INDEX SYNC COMPLETE ===");
         logger.info("✅ Summary:");
-        logger.info("    Namespaces processed: {}", processedNamespaces);
+        logger.info("    Namespaces processed: {}", builds.size());
         logger.info("    Indexes created: {}", totalIndexesCreated);
         if (totalIndexesSkipped > 0) {
-            logger.info("    Indexes skipped: {}", totalIndexesSkipped);
+            logger.info("    Namespaces skipped: {}", totalIndexesSkipped);
+        }
+        if (!slowest.isEmpty()) {
+            logger.info("    Slowest namespaces:");
+            for (IndexSyncExecutor.IndexBuild build : slowest.subList(0, Math.min(10, slowest.size()))) {
+                logger.info("      {} on {}: {} indexes created in {}ms", build.getNs(), build.getShard(),
+                        build.getCreated(), build.getMillis());
+            }
+        }
+        if (!mismatches.isEmpty()) {
+            logger.warn("⚠️  {} indexes differ between source and destination and were not created:",
+                    mismatches.size());
+            for (String mismatch : mismatches) {
+                logger.warn("  • {}", mismatch);
+            }
+        }
+        if (!failures.isEmpty()) {
+            logger.error("❌ Index sync failed for {} namespaces:", failures.size());
+            for (IndexSyncExecutor.IndexBuild build : failures) {
+                logger.error("  • {}", build.getNs());
+            }
+        }
+        for (IndexSyncExecutor.IndexBuild build : builds) {
+            logger.debug("{} on {}: {} of {} indexes created in {}ms", build.getNs(), build.getShard(),
+                    build.getCreated(), build.getSpecs().size(), build.getMillis());
         }
     }
 
@@ -1303,14 +1396,14 @@ public class ShardConfigSync implements Callable<Integer> {
         // Check 2: Verify no sharded collections exist using destination chunksCache
         try {
             // Get the chunksCache from destination client (should be populated after initChunkManager)
-            Map<String, RawBsonDocument> destChunksCache = destShardClient.getChunksCache(new BsonDocument());
+            Map<ChunkKey, RawBsonDocument> destChunksCache = destShardClient.getChunksCache(new BsonDocument());
             
             if (destChunksCache != null && !destChunksCache.isEmpty()) {
                 // Count chunks for non-system databases
                 Map<String, Integer> namespaceCounts = new HashMap<>();
                 int nonSystemChunkCount = 0;
                 
-                for (Map.Entry<String, RawBsonDocument> entry : destChunksCache.entrySet()) {
+                for (Map.Entry<ChunkKey, RawBsonDocument> entry : destChunksCache.entrySet()) {
                     RawBsonDocument chunk = entry.getValue();
                     String ns = chunk.getString("ns").getValue();
                     String dbName = ns.split("\\.")[0];
@@ -2010,46 +2103,85 @@ public class ShardConfigSync implements Callable<Integer> {
         List<String> mismatches = new ArrayList<>();
         List<String> missingDestDatabases = new ArrayList<>();
 
-        for (Document sourceInfo : sourceDatabaseInfo) {
-            String dbName = sourceInfo.getString("name");
+        // fan the counts out, source and dest of each collection run concurrently
+        int countThreads = config.getCountThreads();
+        boolean fastCounts = config.isFastCounts();
+        ExecutorService countPool = Executors.newFixedThreadPool(countThreads,
+                new ThreadFactoryBuilder().setNameFormat("Count-%d").build());
+        ExecutorService destCountPool = Executors.newFixedThreadPool(countThreads,
+                new ThreadFactoryBuilder().setNameFormat("DestCount-%d").build());
+        Map<String, Map<String, Future<long[]>>> dbCountFutures = new LinkedHashMap<>();
 
-            if (config.filtered && !config.getIncludeDatabasesAll().contains(dbName)
-                    || DatabaseUtil.isSystemDatabase(dbName)) {
-                logger.debug("Ignore " + dbName + " for compare, filtered");
-                continue;
+        try {
+            for (Document sourceInfo : sourceDatabaseInfo) {
+                String dbName = sourceInfo.getString("name");
+
+                if (config.filtered && !config.getIncludeDatabasesAll().contains(dbName)
+                        || DatabaseUtil.isSystemDatabase(dbName)) {
+                    logger.debug("Ignore " + dbName + " for compare, filtered");
+                    continue;
+                }
+
+                Document destInfo = destDbInfoMap.get(dbName);
+                if (destInfo != null) {
+                    MongoDatabase sourceDb = sourceShardClient.getMongoClient().getDatabase(dbName);
+                    MongoDatabase destDb = destShardClient.getMongoClient().getDatabase(dbName);
+                    Map<String, Future<long[]>> collCountFutures = new LinkedHashMap<>();
+                    MongoIterable<String> sourceCollectionNames = sourceDb.listCollectionNames();
+                    for (String collectionName : sourceCollectionNames) {
+                        if (collectionName.startsWith("system.")) {
+                            continue;
+                        }
+
+                        Namespace ns = new Namespace(dbName, collectionName);
+                        if (config.filtered && !config.getIncludeNamespaces().contains(ns)
+                                && !config.getIncludeDatabases().contains(dbName)) {
+                            continue;
+                        }
+
+                        collCountFutures.put(collectionName, countPool.submit(
+                                () -> doCounts(sourceDb, destDb, collectionName, null, fastCounts, destCountPool)));
+                    }
+                    dbCountFutures.put(dbName, collCountFutures);
+                } else {
+                    logger.error("❌ Destination database not found: {}", dbName);
+                    missingDestDatabases.add(dbName);
+                }
             }
 
-            Document destInfo = destDbInfoMap.get(dbName);
-            if (destInfo != null) {
+            // results are logged here, in database order, rather than from the count threads
+            for (Map.Entry<String, Map<String, Future<long[]>>> dbEntry : dbCountFutures.entrySet()) {
+                String dbName = dbEntry.getKey();
                 logger.info("📁 Comparing database: {}", dbName);
-
                 long sourceTotal = 0;
                 long destTotal = 0;
                 int collCount = 0;
 
-                MongoDatabase sourceDb = sourceShardClient.getMongoClient().getDatabase(dbName);
-                MongoDatabase destDb = destShardClient.getMongoClient().getDatabase(dbName);
-                MongoIterable<String> sourceCollectionNames = sourceDb.listCollectionNames();
-                for (String collectionName : sourceCollectionNames) {
-                    if (collectionName.startsWith("system.")) {
-                        continue;
-                    }
-
-                    Namespace ns = new Namespace(dbName, collectionName);
-                    if (config.filtered && !config.getIncludeNamespaces().contains(ns)
-                            && !config.getIncludeDatabases().contains(dbName)) {
+                for (Map.Entry<String, Future<long[]>> collEntry : dbEntry.getValue().entrySet()) {
+                    String collectionName = collEntry.getKey();
+                    totalCollections++;
+                    collCount++;
+                    long[] result;
+                    try {
+                        result = collEntry.getValue().get();
+                    } catch (ExecutionException e) {
+                        logger.error("  ❌ {}.{}: count failed: {}", dbName, collectionName, e.getCause().getMessage());
+                        mismatchedCollections++;
+                        mismatches.add(String.format("%s.%s: count failed: %s", dbName, collectionName,
+                                e.getCause().getMessage()));
                         continue;
                     }
-
-                    long[] result = doCounts(sourceDb, destDb, collectionName);
                     sourceTotal += result[0];
                     destTotal += result[1];
-                    collCount++;
-                    totalCollections++;
-                    
+
                     if (result[0] == result[1]) {
+                        logger.info("  ✅ {}.{}: {} documents{}", dbName, collectionName, result[0],
+                                result[2] == 1 ? " (estimated)" : "");
                         matchingCollections++;
                     } else {
+                        long diff = result[0] - result[1];
+                        logger.error("  ❌ {}.{}: source={}, dest={}, diff={}{}", dbName, collectionName,
+                                result[0], result[1], diff > 0 ? "+" : "", diff);
                         mismatchedCollections++;
                         mismatches.add(String.format("%s.%s: source=%d, dest=%d, diff=%d", 
                             dbName, collectionName, result[0], result[1], (result[0] - result[1])));
@@ -2062,10 +2194,14 @@ public class ShardConfigSync implements Callable<Integer> {
                     logger.error("❌ Database {} - MISMATCH: {} collections, source={} docs, dest={} docs, diff={}", 
                         dbName, collCount, sourceTotal, destTotal, (sourceTotal - destTotal));
                 }
-            } else {
-                logger.error("❌ Destination database not found: {}", dbName);
-                missingDestDatabases.add(dbName);
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Interrupted while comparing counts");
+            return false;
+        } finally {
+            countPool.shutdownNow();
+            destCountPool.shutdownNow();
         }
         
         // Print summary
@@ -2101,36 +2237,50 @@ public class ShardConfigSync implements Callable<Integer> {
 
 
 
-    private long[] doCounts(MongoDatabase sourceDb, MongoDatabase destDb, String collectionName) {
-        return doCounts(sourceDb, destDb, collectionName, null);
-    }
+    /**
+     * Count a collection on both sides. With a destPool the dest count runs there while the
+     * source count runs on the calling thread. With fastCounts, estimatedDocumentCount is tried
+     * first and exact counts are only taken when the estimates differ; note that on a sharded
+     * cluster estimates include orphans, so a matching estimate is accepted as-is.
+     *
+     * @return the source and dest counts, and 1 if they are estimates or 0 if exact
+     */
+    private long[] doCounts(MongoDatabase sourceDb, MongoDatabase destDb, String collectionName, Bson query,
+            boolean fastCounts, ExecutorService destPool) throws InterruptedException, ExecutionException {
 
-    private long[] doCounts(MongoDatabase sourceDb, MongoDatabase destDb, String collectionName, Bson query) {
+        if (fastCounts && query == null) {
+            long[] estimate = countBoth(sourceDb, destDb, collectionName, null, true, destPool);
+            if (estimate[0] == estimate[1]) {
+                return new long[] { estimate[0], estimate[1], 1 };
+            }
+            logger.debug("{}.{}: estimated counts differ (source={}, dest={}), running exact counts",
+                    sourceDb.getName(), collectionName, estimate[0], estimate[1]);
+        }
+
+        long[] result = countBoth(sourceDb, destDb, collectionName, query, false, destPool);
+        return new long[] { result[0], result[1], 0 };
+    }
 
+    private long[] countBoth(MongoDatabase sourceDb, MongoDatabase destDb, String collectionName, Bson query,
+            boolean estimated, ExecutorService destPool) throws InterruptedException, ExecutionException {
         long[] result = new long[2];
-        Long sourceCount = null;
-        Long destCount = null;
-        if (query == null) {
-            sourceCount = sourceDb.getCollection(collectionName).countDocuments();
-            destCount = destDb.getCollection(collectionName).countDocuments();
+        if (destPool == null) {
+            result[0] = count(sourceDb, collectionName, query, estimated);
+            result[1] = count(destDb, collectionName, query, estimated);
         } else {
-            //db.getCollection(collectionName).countDocuments();
-            sourceCount = sourceDb.getCollection(collectionName).countDocuments(query);
-            destCount = destDb.getCollection(collectionName).countDocuments(query);
+            Future<Long> destCount = destPool.submit(() -> count(destDb, collectionName, query, estimated));
+            result[0] = count(sourceDb, collectionName, query, estimated);
+            result[1] = destCount.get();
         }
+        return result;
+    }
 
-        result[0] = sourceCount;
-        result[1] = destCount;
-
-        if (sourceCount.equals(destCount)) {
-            logger.info("  ✅ {}.{}: {} documents", sourceDb.getName(), collectionName, sourceCount);
-            return result;
-        } else {
-            long diff = sourceCount - destCount;
-            logger.error("  ❌ {}.{}: source={}, dest={}, diff={}{}", sourceDb.getName(), collectionName,
-                    sourceCount, destCount, diff > 0 ? "+" : "", diff);
-            return result;
+    private static long count(MongoDatabase db, String collectionName, Bson query, boolean estimated) {
+        MongoCollection<RawBsonDocument> coll = db.getCollection(collectionName, RawBsonDocument.class);
+        if (estimated) {
+            return coll.estimatedDocumentCount();
         }
+        return query == null ? coll.countDocuments() : coll.countDocuments(query);
     }
 
     public boolean compareChunkCounts() {
@@ -2217,6 +2367,95 @@ public class ShardConfigSync implements Callable<Integer> {
         }
     }
 
+    /**
+     * Compare document counts per source chunk range. Each range is counted directly on the
+     * owning shard primaries of source and destination (see ChunkRangeCounter), which is much
+     * cheaper than a full diff and narrows down where one is needed.
+     */
+    public boolean compareChunkRangeCounts() {
+        logger.info("=== COMPARING CHUNK RANGE COUNTS ===");
+        initChunkManager();
+        sourceShardClient.populateShardMongoClients();
+        destShardClient.populateShardMongoClients();
+        sourceShardClient.populateCollectionsMap();
+        destShardClient.populateCollectionsMap();
+
+        Map<ChunkKey, RawBsonDocument> sourceChunks = sourceShardClient.getChunksCache(chunkManager.initializeSourceChunkQuery());
+        Map<ChunkKey, RawBsonDocument> destChunks = destShardClient.getChunksCache(chunkManager.initializeDestChunkQuery());
+        ChunkRoutingTable destRoutes = chunkManager.loadRoutingTable(destShardClient, destChunks);
+
+        Map<String, BsonDocument> shardKeys = new HashMap<>();
+        ChunkRangeCounter counter = new ChunkRangeCounter(
+                (shard, ns, min, max) -> countRange(sourceShardClient, shard, ns, shardKeys.get(ns), min, max),
+                (shard, ns, min, max) -> countRange(destShardClient, shard, ns, shardKeys.get(ns), min, max),
+                destRoutes, config.getCountThreads());
+
+        for (Map.Entry<ChunkKey, RawBsonDocument> entry : sourceChunks.entrySet()) {
+            String ns = entry.getKey().getNs();
+            if (!shardKeys.containsKey(ns)) {
+                Document collMeta = sourceShardClient.getCollectionsMap().get(ns);
+                if (collMeta == null) {
+                    logger.warn("No collection metadata found for namespace: {}, skipping", ns);
+                    continue;
+                }
+                shardKeys.put(ns, ((Document) collMeta.get("key")).toBsonDocument());
+            }
+            RawBsonDocument chunk = entry.getValue();
+            counter.add(ns, chunk.getDocument("min"), chunk.getDocument("max"), chunk.getString("shard").getValue());
+        }
+
+        logger.info("Counting {} chunk ranges in {} namespaces", counter.size(), shardKeys.size());
+        List<ChunkRangeCounter.RangeCount> mismatches = counter.run();
+
+        logger.info("=== CHUNK RANGE COUNT COMPARISON SUMMARY ===");
+        logger.info("Total ranges compared: {}", counter.size());
+        logger.info("Total documents: source={}, dest={}", counter.getSourceTotal(), counter.getDestTotal());
+        if (mismatches.isEmpty()) {
+            logger.info("=== CHUNK RANGE COUNT COMPARISON SUCCESSFUL ===");
+            logger.info("🎉 All chunk range counts match between source and destination");
+            return true;
+        }
+        logger.error("=== CHUNK RANGE COUNT COMPARISON FAILED ===");
+        logger.error("{} ranges with mismatched counts:", mismatches.size());
+        for (ChunkRangeCounter.RangeCount range : mismatches) {
+            logger.error("  • {}", range);
+        }
+        return false;
+    }
+
+    /**
+     * Count the documents of a shard key range on one shard. The count runs on the shard,
+     * with a filter for the range (see ShardKeyRangeFilter) and the shard key index as hint.
+     * Hashed shard keys have bounds a filter cannot express, so those ranges are counted by
+     * walking the shard key index with min/max and a shard key projection.
+     */
+    private static long countRange(ShardClient shardClient, String shard, String ns, BsonDocument shardKey,
+            BsonDocument min, BsonDocument max) {
+        MongoClient client = shardClient.getShardMongoClient(shard);
+        if (client == null) {
+            throw new IllegalStateException(shardClient.getName() + " has no client for shard " + shard);
+        }
+        Namespace namespace = new Namespace(ns);
+        MongoCollection<RawBsonDocument> coll = client.getDatabase(namespace.getDatabaseName())
+                .getCollection(namespace.getCollectionName(), RawBsonDocument.class);
+        if (ShardKeyRangeFilter.isSupported(shardKey)) {
+            return coll.countDocuments(ShardKeyRangeFilter.of(min, max), new CountOptions().hint(shardKey));
+        }
+        BsonDocument projection = new BsonDocument("_id", new BsonInt32(0));
+        for (String key : shardKey.keySet()) {
+            projection.append(key, new BsonInt32(1));
+        }
+        long count = 0;
+        try (MongoCursor<RawBsonDocument> cursor = coll.find().min(min).max(max).hint(shardKey)
+                .projection(projection).batchSize(10000).iterator()) {
+            while (cursor.hasNext()) {
+                cursor.next();
+                count++;
+            }
+        }
+        return count;
+    }
+
     public boolean compareCollectionUuidsWithOutput() {
         logger.info("=== COMPARING COLLECTION UUIDs ===");
         logger.debug("Starting compareCollectionUuids");
@@ -2745,7 +2984,7 @@ public class ShardConfigSync implements Callable<Integer> {
         BsonDocument namespaceQuery = chunkManager.newChunkQuery(destShardClient, namespace);
         
         // Get all chunks for this namespace
-        Map<String, RawBsonDocument> namespaceChunks = destShardClient.getChunksCache(namespaceQuery);
+        Map<ChunkKey, RawBsonDocument> namespaceChunks = destShardClient.getChunksCache(namespaceQuery);
         
         int moveCount = 0;
         int skipCount = 0;
@@ -2789,7 +3028,7 @@ public class ShardConfigSync implements Callable<Integer> {
         BsonDocument namespaceQuery = chunkManager.newChunkQuery(destShardClient, namespace);
         
         // Get all chunks for this namespace
-        Map<String, RawBsonDocument> namespaceChunks = destShardClient.getChunksCache(namespaceQuery);
+        Map<ChunkKey, RawBsonDocument> namespaceChunks = destShardClient.getChunksCache(namespaceQuery);
         
         if (namespaceChunks.size() <= 1) {
             logger.debug("Namespace {} has {} chunks, no merge needed", namespace, namespaceChunks.size());
@@ -85,6 +85,17 @@ public class ShardConfigSyncApp implements Callable<Integer> {
             "Example: --resumeDbPath /data/mongomirror will create /data/mongomirror/mongomirror_resume_shard01.db")
     private String resumeDbPath;
 
+    @Option(names = {"--metadataSnapshotDir"}, description = "Directory to keep a snapshot of cluster metadata (chunks, " +
+            "collection and index catalog) in, so that later runs only fetch what changed since the previous run")
+    private String metadataSnapshotDir;
+
+    @Option(names = {"--shardPoolMinSize"}, description = "Connections to open to each shard member up front, " +
+            "waiting for them before starting work (default: 0, none)")
+    private int shardPoolMinSize;
+
+    @Option(names = {"--shardPoolMaxSize"}, description = "Max connections per shard member (default: 0, driver default of 100)")
+    private int shardPoolMaxSize;
+
     // Advanced connection options grouped in a mixin
     @CommandLine.Mixin
     private AdvancedConnectionMixin advancedConnection = new AdvancedConnectionMixin();
@@ -180,6 +191,9 @@ public class ShardConfigSyncApp implements Callable<Integer> {
         if (resumeDbPath != null) {
             config.setResumeDbPath(resumeDbPath);
         }
+        config.setMetadataSnapshotDir(metadataSnapshotDir);
+        config.setShardPoolMinSize(shardPoolMinSize);
+        config.setShardPoolMaxSize(shardPoolMaxSize);
 
         return config;
     }
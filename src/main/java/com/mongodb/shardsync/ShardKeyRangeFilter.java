@@ -0,0 +1,254 @@
+package com.mongodb.shardsync;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntPredicate;
+
+import org.bson.BsonArray;
+import org.bson.BsonBoolean;
+import org.bson.BsonDocument;
+import org.bson.BsonNull;
+import org.bson.BsonString;
+import org.bson.BsonType;
+import org.bson.BsonValue;
+
+import com.mongodb.util.bson.CanonicalBsonComparator;
+
+/**
+ * Query filter matching the documents of a chunk range [min, max), i.e. what a min/max
+ * scan of the shard key index returns, so that the range can be counted on the server.
+ * <p>
+ * Compound shard keys are compared lexicographically, as an $or over the key prefixes.
+ * Query comparisons ($gt, $lt) only match values of the same type bracket as the bound,
+ * while index order sorts all types, so each comparison is widened with a $type clause
+ * for the brackets above or below the bound (and missing fields, which the index holds
+ * as null). The widening is left out for the leading field when both of its bounds are
+ * in the same bracket, the common case, which keeps the index bounds tight.
+ * <p>
+ * Hashed shard keys are not supported: the bounds are hashed values that a filter on
+ * the field cannot express.
+ */
+final class ShardKeyRangeFilter {
+
+	private static final int NULL_BRACKET = 5;
+
+	private static final Map<BsonType, String> TYPE_ALIASES = new EnumMap<>(BsonType.class);
+	static {
+		TYPE_ALIASES.put(BsonType.MIN_KEY, "minKey");
+		TYPE_ALIASES.put(BsonType.UNDEFINED, "undefined");
+		TYPE_ALIASES.put(BsonType.NULL, "null");
+		TYPE_ALIASES.put(BsonType.DOUBLE, "double");
+		TYPE_ALIASES.put(BsonType.INT32, "int");
+		TYPE_ALIASES.put(BsonType.INT64, "long");
+		TYPE_ALIASES.put(BsonType.DECIMAL128, "decimal");
+		TYPE_ALIASES.put(BsonType.STRING, "string");
+		TYPE_ALIASES.put(BsonType.SYMBOL, "symbol");
+		TYPE_ALIASES.put(BsonType.DOCUMENT, "object");
+		TYPE_ALIASES.put(BsonType.ARRAY, "array");
+		TYPE_ALIASES.put(BsonType.BINARY, "binData");
+		TYPE_ALIASES.put(BsonType.OBJECT_ID, "objectId");
+		TYPE_ALIASES.put(BsonType.BOOLEAN, "bool");
+		TYPE_ALIASES.put(BsonType.DATE_TIME, "date");
+		TYPE_ALIASES.put(BsonType.TIMESTAMP, "timestamp");
+		TYPE_ALIASES.put(BsonType.REGULAR_EXPRESSION, "regex");
+		TYPE_ALIASES.put(BsonType.DB_POINTER, "dbPointer");
+		TYPE_ALIASES.put(BsonType.JAVASCRIPT, "javascript");
+		TYPE_ALIASES.put(BsonType.JAVASCRIPT_WITH_SCOPE, "javascriptWithScope");
+		TYPE_ALIASES.put(BsonType.MAX_KEY, "maxKey");
+	}
+
+	private ShardKeyRangeFilter() {
+	}
+
+	static boolean isSupported(BsonDocument shardKey) {
+		for (BsonValue v : shardKey.values()) {
+			if (v.isString()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param min the inclusive lower bound, with the shard key's fields in order
+	 * @param max the exclusive upper bound
+	 */
+	static BsonDocument of(BsonDocument min, BsonDocument max) {
+		List<String> fields = new ArrayList<>(min.keySet());
+		String leading = fields.get(0);
+		boolean leadingBracketed = !isMinOrMaxKey(min.get(leading)) && !isMinOrMaxKey(max.get(leading))
+				&& bracket(min.get(leading)) == bracket(max.get(leading));
+
+		List<BsonDocument> clauses = new ArrayList<>(2);
+		if (!allOfType(min, BsonType.MIN_KEY)) {
+			clauses.add(lowerBound(fields, min, leadingBracketed));
+		}
+		// documents holding MaxKey itself are above a MaxKey bound, so the upper bound stays
+		clauses.add(upperBound(fields, max, leadingBracketed));
+		if (fields.size() == 1 && leadingBracketed) {
+			// {x: {$gte: min, $lt: max}}
+			BsonDocument range = clauses.get(0).getDocument(leading).clone();
+			range.putAll(clauses.get(1).getDocument(leading));
+			return new BsonDocument(leading, range);
+		}
+		return clauses.size() == 1 ? clauses.get(0) : new BsonDocument("$and", new BsonArray(clauses));
+	}
+
+	/**
+	 * key >= min: some field is above its bound with all earlier fields equal, or the last
+	 * field is at or above its bound with all earlier fields equal.
+	 */
+	private static BsonDocument lowerBound(List<String> fields, BsonDocument min, boolean leadingBracketed) {
+		List<BsonDocument> branches = new ArrayList<>();
+		int last = fields.size() - 1;
+		for (int i = 0; i < last; i++) {
+			BsonDocument gt = greaterThan(fields.get(i), min.get(fields.get(i)), i == 0 && leadingBracketed);
+			if (gt != null) {
+				branches.add(and(prefixEquals(fields, min, i), gt));
+			}
+		}
+		BsonDocument gte = greaterThanOrEqual(fields.get(last), min.get(fields.get(last)), last == 0 && leadingBracketed);
+		BsonDocument prefix = prefixEquals(fields, min, last);
+		branches.add(gte == null ? prefix : and(prefix, gte));
+		return or(branches);
+	}
+
+	/**
+	 * key < max: some field is below its bound with all earlier fields equal.
+	 */
+	private static BsonDocument upperBound(List<String> fields, BsonDocument max, boolean leadingBracketed) {
+		List<BsonDocument> branches = new ArrayList<>();
+		for (int i = 0; i < fields.size(); i++) {
+			BsonDocument lt = lessThan(fields.get(i), max.get(fields.get(i)), i == 0 && leadingBracketed);
+			if (lt != null) {
+				branches.add(and(prefixEquals(fields, max, i), lt));
+			}
+		}
+		return or(branches);
+	}
+
+	private static BsonDocument prefixEquals(List<String> fields, BsonDocument bound, int length) {
+		BsonDocument eq = new BsonDocument();
+		for (int i = 0; i < length; i++) {
+			eq.append(fields.get(i), new BsonDocument("$eq", bound.get(fields.get(i))));
+		}
+		return eq;
+	}
+
+	/**
+	 * field > value in index order, or null if nothing is.
+	 */
+	private static BsonDocument greaterThan(String field, BsonValue value, boolean sameBracket) {
+		if (value.getBsonType() == BsonType.MAX_KEY) {
+			return null;
+		}
+		if (value.getBsonType() == BsonType.MIN_KEY) {
+			return new BsonDocument(field, new BsonDocument("$not", new BsonDocument("$type", new BsonString("minKey"))));
+		}
+		int b = bracket(value);
+		if (value.isNull()) {
+			return otherBrackets(field, t -> t > b);
+		}
+		BsonDocument gt = new BsonDocument(field, new BsonDocument("$gt", value));
+		if (sameBracket) {
+			return gt;
+		}
+		return or(List.of(gt, otherBrackets(field, t -> t > b)));
+	}
+
+	/**
+	 * field >= value in index order, or null if everything is.
+	 */
+	private static BsonDocument greaterThanOrEqual(String field, BsonValue value, boolean sameBracket) {
+		if (value.getBsonType() == BsonType.MIN_KEY) {
+			return null;
+		}
+		if (value.getBsonType() == BsonType.MAX_KEY) {
+			return new BsonDocument(field, new BsonDocument("$eq", value));
+		}
+		// {$eq: null} rather than {$gte: null}, to say outright that missing fields match
+		BsonDocument gte = new BsonDocument(field, new BsonDocument(value.isNull() ? "$eq" : "$gte", value));
+		if (sameBracket) {
+			return gte;
+		}
+		int b = bracket(value);
+		return or(List.of(gte, otherBrackets(field, t -> t > b)));
+	}
+
+	/**
+	 * field < value in index order, or null if nothing is.
+	 */
+	private static BsonDocument lessThan(String field, BsonValue value, boolean sameBracket) {
+		if (value.getBsonType() == BsonType.MIN_KEY) {
+			return null;
+		}
+		if (value.getBsonType() == BsonType.MAX_KEY) {
+			return new BsonDocument(field, new BsonDocument("$not", new BsonDocument("$type", new BsonString("maxKey"))));
+		}
+		int b = bracket(value);
+		if (value.isNull()) {
+			return otherBrackets(field, t -> t < b);
+		}
+		BsonDocument lt = new BsonDocument(field, new BsonDocument("$lt", value));
+		if (sameBracket) {
+			return lt;
+		}
+		return or(List.of(lt, otherBrackets(field, t -> t < b)));
+	}
+
+	/**
+	 * The field has a type in one of the matching brackets. A null bracket match is written
+	 * as {$eq: null}, which also matches missing fields.
+	 */
+	private static BsonDocument otherBrackets(String field, IntPredicate test) {
+		BsonArray types = new BsonArray();
+		for (Map.Entry<BsonType, String> entry : TYPE_ALIASES.entrySet()) {
+			int b = CanonicalBsonComparator.typeBracket(entry.getKey());
+			if (b != NULL_BRACKET && test.test(b)) {
+				types.add(new BsonString(entry.getValue()));
+			}
+		}
+		List<BsonDocument> branches = new ArrayList<>(2);
+		if (!types.isEmpty()) {
+			branches.add(new BsonDocument(field, new BsonDocument("$type", types)));
+		}
+		if (test.test(NULL_BRACKET)) {
+			branches.add(new BsonDocument(field, new BsonDocument("$eq", BsonNull.VALUE)));
+		}
+		return or(branches);
+	}
+
+	private static BsonDocument and(BsonDocument prefix, BsonDocument condition) {
+		if (prefix.isEmpty()) {
+			return condition;
+		}
+		return new BsonDocument("$and", new BsonArray(List.of(prefix, condition)));
+	}
+
+	private static BsonDocument or(List<BsonDocument> branches) {
+		if (branches.isEmpty()) {
+			// matches nothing
+			return new BsonDocument("$expr", BsonBoolean.FALSE);
+		}
+		return branches.size() == 1 ? branches.get(0) : new BsonDocument("$or", new BsonArray(branches));
+	}
+
+	private static int bracket(BsonValue value) {
+		return CanonicalBsonComparator.typeBracket(value.getBsonType());
+	}
+
+	private static boolean isMinOrMaxKey(BsonValue value) {
+		return value.getBsonType() == BsonType.MIN_KEY || value.getBsonType() == BsonType.MAX_KEY;
+	}
+
+	private static boolean allOfType(BsonDocument bound, BsonType type) {
+		for (BsonValue v : bound.values()) {
+			if (v.getBsonType() != type) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
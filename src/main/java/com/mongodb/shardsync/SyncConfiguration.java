@@ -62,6 +62,12 @@ public class SyncConfiguration extends BaseConfiguration {
 	public String destVersion;
 	public List<Integer> destVersionArray;
 	public boolean skipFlushRouterConfig;
+	public int moveChunkThreads = DEFAULT_MOVE_CHUNK_THREADS;
+	public int splitThreads = DEFAULT_SPLIT_THREADS;
+	public int countThreads = DEFAULT_COUNT_THREADS;
+	public boolean fastCounts;
+	public int indexThreads = DEFAULT_INDEX_THREADS;
+	public int indexThreadsPerShard = DEFAULT_INDEX_THREADS_PER_SHARD;
 	
 	private String usersInputCsv;
     private String usersOutputCsv;
@@ -69,6 +75,12 @@ public class SyncConfiguration extends BaseConfiguration {
     private String wiredTigerConfigString;
     private Set<String> targetShards;
 
+	public static final int DEFAULT_MOVE_CHUNK_THREADS = 8;
+	public static final int DEFAULT_SPLIT_THREADS = 8;
+	public static final int DEFAULT_COUNT_THREADS = 8;
+	public static final int DEFAULT_INDEX_THREADS = 16;
+	public static final int DEFAULT_INDEX_THREADS_PER_SHARD = 4;
+
 	public SyncConfiguration() {
 		super();
 
@@ -269,6 +281,54 @@ public class SyncConfiguration extends BaseConfiguration {
 	public void setSkipFlushRouterConfig(boolean skipFlushRouterConfig) {
 		this.skipFlushRouterConfig = skipFlushRouterConfig;
 	}
+
+	public int getMoveChunkThreads() {
+		return moveChunkThreads;
+	}
+
+	public void setMoveChunkThreads(int moveChunkThreads) {
+		this.moveChunkThreads = moveChunkThreads;
+	}
+
+	public int getSplitThreads() {
+		return splitThreads;
+	}
+
+	public void setSplitThreads(int splitThreads) {
+		this.splitThreads = splitThreads;
+	}
+
+	public int getCountThreads() {
+		return countThreads;
+	}
+
+	public void setCountThreads(int countThreads) {
+		this.countThreads = countThreads;
+	}
+
+	public boolean isFastCounts() {
+		return fastCounts;
+	}
+
+	public void setFastCounts(boolean fastCounts) {
+		this.fastCounts = fastCounts;
+	}
+
+	public int getIndexThreads() {
+		return indexThreads;
+	}
+
+	public void setIndexThreads(int indexThreads) {
+		this.indexThreads = indexThreads;
+	}
+
+	public int getIndexThreadsPerShard() {
+		return indexThreadsPerShard;
+	}
+
+	public void setIndexThreadsPerShard(int indexThreadsPerShard) {
+		this.indexThreadsPerShard = indexThreadsPerShard;
+	}
 	
 	public void setMongomirrorBinary(String binaryPath) {
 		if (binaryPath != null) {
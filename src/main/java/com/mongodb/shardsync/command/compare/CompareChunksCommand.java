@@ -29,6 +29,14 @@ public class CompareChunksCommand implements Callable<Integer> {
             description = "Compare chunk counts only")
     private boolean counts;
     
+    @Option(names = {"--rangeCounts"},
+            description = "Compare document counts per source chunk range, counted on the owning shards")
+    private boolean rangeCounts;
+    
+    @Option(names = {"--countThreads"},
+            description = "Number of ranges to count concurrently with --rangeCounts (default: ${DEFAULT-VALUE})")
+    private int countThreads = SyncConfiguration.DEFAULT_COUNT_THREADS;
+    
     @Option(names = {"--move"},
             description = "Compare and move chunks if needed")
     private boolean move;
@@ -46,9 +54,15 @@ public class CompareChunksCommand implements Callable<Integer> {
         }
 
         SyncConfiguration config = parent.createConfiguration();
+        config.setCountThreads(countThreads);
         ShardConfigSync sync = new ShardConfigSync(config);
         sync.initialize();
 
+        if (rangeCounts) {
+            boolean success = sync.compareChunkRangeCounts();
+            return success ? 0 : 1;
+        }
+
         // If NOT using legacy catalog mirror, use the new CatalogVerifier methods
         if (!legacyCatalogMirror) {
             // New verification method - equivalent, strict, and move options don't apply
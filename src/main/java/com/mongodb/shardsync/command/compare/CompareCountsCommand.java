@@ -9,6 +9,7 @@ import com.mongodb.shardsync.ShardConfigSync;
 import com.mongodb.shardsync.SyncConfiguration;
 
 import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
 import picocli.CommandLine.ParentCommand;
 
 /**
@@ -24,11 +25,21 @@ public class CompareCountsCommand implements Callable<Integer> {
     @ParentCommand
     private CompareCommand parent;
     
+    @Option(names = {"--countThreads"},
+            description = "Number of collections to count concurrently (default: ${DEFAULT-VALUE})")
+    private int countThreads = SyncConfiguration.DEFAULT_COUNT_THREADS;
+    
+    @Option(names = {"--fastCounts"},
+            description = "Compare estimated counts first, exact counts only for collections that differ")
+    private boolean fastCounts;
+    
     @Override
     public Integer call() throws Exception {
         logger.debug("Starting compare counts command");
         
         SyncConfiguration config = parent.createConfiguration();
+        config.setCountThreads(countThreads);
+        config.setFastCounts(fastCounts);
         
         ShardConfigSync sync = new ShardConfigSync(config);
         sync.initialize();
@@ -27,10 +27,20 @@ public class SyncIndexesCommand implements Callable<Integer> {
             description = "Use collMod to update TTL indexes on destination based on source")
     private boolean collModTtl;
     
+    @Option(names = {"--indexThreads"},
+            description = "Number of namespaces to build indexes for concurrently (default: ${DEFAULT-VALUE})")
+    private int indexThreads = SyncConfiguration.DEFAULT_INDEX_THREADS;
+    
+    @Option(names = {"--indexThreadsPerShard"},
+            description = "Maximum concurrent index builds per destination shard (default: ${DEFAULT-VALUE})")
+    private int indexThreadsPerShard = SyncConfiguration.DEFAULT_INDEX_THREADS_PER_SHARD;
+    
     @Override
     public Integer call() throws Exception {
         SyncConfiguration config = parent.createConfiguration();
         config.setExtendTtl(extendTtl);
+        config.setIndexThreads(indexThreads);
+        config.setIndexThreadsPerShard(indexThreadsPerShard);
         
         ShardConfigSync sync = new ShardConfigSync(config);
         sync.initialize();
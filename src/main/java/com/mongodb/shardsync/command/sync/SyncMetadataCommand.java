@@ -33,6 +33,14 @@ public class SyncMetadataCommand implements Callable<Integer> {
             description = "Skip the flushRouterConfig step")
     private boolean skipFlushRouterConfig;
     
+    @Option(names = {"--moveChunkThreads"},
+            description = "Max concurrent chunk migrations, at most one per shard (default: ${DEFAULT-VALUE})")
+    private int moveChunkThreads = SyncConfiguration.DEFAULT_MOVE_CHUNK_THREADS;
+    
+    @Option(names = {"--splitThreads"},
+            description = "Max concurrent chunk splits, one per namespace/shard (default: ${DEFAULT-VALUE})")
+    private int splitThreads = SyncConfiguration.DEFAULT_SPLIT_THREADS;
+    
     @Option(names = {"--force"}, 
             description = "Skip preflight checks and force sync operation")
     private boolean force;
@@ -41,6 +49,8 @@ public class SyncMetadataCommand implements Callable<Integer> {
     public Integer call() throws Exception {
         SyncConfiguration config = parent.createConfiguration();
         config.setSkipFlushRouterConfig(skipFlushRouterConfig);
+        config.setMoveChunkThreads(moveChunkThreads);
+        config.setSplitThreads(splitThreads);
         ShardConfigSync sync = new ShardConfigSync(config);
         sync.initialize();
 
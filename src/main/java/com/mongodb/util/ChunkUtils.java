@@ -13,6 +13,7 @@ import org.bson.RawBsonDocument;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.mongodb.model.ChunkKey;
 import com.mongodb.model.Megachunk;
 import com.mongodb.shardsync.ShardClient;
 import com.mongodb.util.bson.BsonUuidUtil;
@@ -45,7 +46,7 @@ public class ChunkUtils {
 
         try {
             BsonDocument query = new BsonDocument("shard", new org.bson.BsonString(shardId));
-            Map<String, RawBsonDocument> chunksMap = shardClient.loadChunksCache(query);
+            Map<ChunkKey, RawBsonDocument> chunksMap = shardClient.loadChunksCache(query);
 
             List<Megachunk> chunks = new ArrayList<>();
             int jumboSkipped = 0;
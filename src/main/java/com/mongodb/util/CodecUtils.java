@@ -7,6 +7,8 @@ import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.codec.binary.Hex;
 
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.zip.CRC32;
@@ -54,6 +56,23 @@ public final class CodecUtils {
     return d.digest();
   }
 
+  public static String md5Hex(final ByteBuffer pV) {
+    final MessageDigest d = sCache.get();
+    d.update(pV);
+    return Hex.encodeHexString(d.digest());
+  }
+
+  /** Digests the remaining bytes of the buffer into the first 16 bytes of pOut. */
+  public static void md5(final ByteBuffer pV, final byte[] pOut) {
+    final MessageDigest d = sCache.get();
+    d.update(pV);
+    try {
+      d.digest(pOut, 0, MD5_BYTE_SIZE);
+    } catch (final DigestException e) {
+      throw new IllegalArgumentException(e);
+    }
+  }
+
   public static byte[] sha1(final byte[] pV) throws NoSuchAlgorithmException {
     return MessageDigest.getInstance("SHA-1").digest(pV);
   }
@@ -0,0 +1,48 @@
+package com.mongodb.util.bson;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.bson.BsonDocument;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+
+/**
+ * Reads and writes files of concatenated BSON documents, the format of mongodump .bson
+ * files. Each document starts with its own little endian int32 length, so no framing is
+ * needed.
+ */
+public class BsonStreamUtil {
+
+	private static final BsonDocumentCodec codec = new BsonDocumentCodec();
+
+	public static void writeDocument(OutputStream out, BsonDocument doc) throws IOException {
+		RawBsonDocument raw = doc instanceof RawBsonDocument ? (RawBsonDocument) doc : new RawBsonDocument(doc, codec);
+		ByteBuffer bytes = raw.getByteBuffer().asNIO();
+		out.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+	}
+
+	/**
+	 * Read the next document, or null at the end of the stream.
+	 */
+	public static RawBsonDocument readDocument(DataInputStream in) throws IOException {
+		byte[] sizeBytes = new byte[4];
+		try {
+			in.readFully(sizeBytes);
+		} catch (EOFException e) {
+			return null;
+		}
+		int size = ByteBuffer.wrap(sizeBytes).order(ByteOrder.LITTLE_ENDIAN).getInt();
+		if (size < 5) {
+			throw new IOException("Invalid BSON document size " + size);
+		}
+		byte[] bytes = new byte[size];
+		System.arraycopy(sizeBytes, 0, bytes, 0, 4);
+		in.readFully(bytes, 4, size - 4);
+		return new RawBsonDocument(bytes);
+	}
+}
@@ -0,0 +1,348 @@
+package com.mongodb.util.bson;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.bson.BsonArray;
+import org.bson.BsonBinary;
+import org.bson.BsonDbPointer;
+import org.bson.BsonDocument;
+import org.bson.BsonRegularExpression;
+import org.bson.BsonType;
+import org.bson.BsonValue;
+import org.bson.types.Decimal128;
+
+/**
+ * Orders BsonValues the way the server orders them for sort and index keys, so that
+ * results sorted by the server can be merged client side.
+ * <ul>
+ * <li>Values of different types are ordered by type bracket (MinKey, null, numbers,
+ * strings, objects, arrays, binary, ObjectId, boolean, date, timestamp, regex, ...,
+ * MaxKey). All numeric types share one bracket, as do string and symbol.</li>
+ * <li>Numbers are compared by value, NaN before all other numbers.</li>
+ * <li>Strings are compared by their UTF-8 bytes, i.e. by code point.</li>
+ * <li>Binary is compared by length, then subtype, then unsigned bytes.</li>
+ * <li>Objects are compared element by element (type bracket, field name, value).</li>
+ * </ul>
+ * Collations are not taken into account. A null BsonValue (missing field) compares as
+ * BSON null, as it does in a sort.
+ *
+ * @see <a href="https://www.mongodb.com/docs/manual/reference/bson-type-comparison-order/">BSON Types Comparison Order</a>
+ */
+public class CanonicalBsonComparator implements Comparator<BsonValue> {
+
+    public static final CanonicalBsonComparator INSTANCE = new CanonicalBsonComparator();
+
+    @Override
+    public int compare(BsonValue x, BsonValue y) {
+        int bracket = Integer.compare(typeBracket(x), typeBracket(y));
+        if (bracket != 0) {
+            return bracket;
+        }
+        if (x == null || y == null) {
+            return 0;
+        }
+        switch (x.getBsonType()) {
+            case MIN_KEY:
+            case MAX_KEY:
+            case NULL:
+            case UNDEFINED:
+                return 0;
+            case INT32:
+            case INT64:
+            case DOUBLE:
+            case DECIMAL128:
+                return compareNumbers(x, y);
+            case STRING:
+            case SYMBOL:
+                return compareStrings(stringValue(x), stringValue(y));
+            case DOCUMENT:
+                return compareDocuments(x.asDocument(), y.asDocument());
+            case ARRAY:
+                return compareArrays(x.asArray(), y.asArray());
+            case BINARY:
+                return compareBinary(x.asBinary(), y.asBinary());
+            case OBJECT_ID:
+                return x.asObjectId().getValue().compareTo(y.asObjectId().getValue());
+            case BOOLEAN:
+                return Boolean.compare(x.asBoolean().getValue(), y.asBoolean().getValue());
+            case DATE_TIME:
+                return Long.compare(x.asDateTime().getValue(), y.asDateTime().getValue());
+            case TIMESTAMP:
+                return Long.compareUnsigned(x.asTimestamp().getValue(), y.asTimestamp().getValue());
+            case REGULAR_EXPRESSION:
+                return compareRegex(x.asRegularExpression(), y.asRegularExpression());
+            case DB_POINTER:
+                return compareDbPointers(x.asDBPointer(), y.asDBPointer());
+            case JAVASCRIPT:
+                return compareStrings(x.asJavaScript().getCode(), y.asJavaScript().getCode());
+            case JAVASCRIPT_WITH_SCOPE:
+                int code = compareStrings(x.asJavaScriptWithScope().getCode(), y.asJavaScriptWithScope().getCode());
+                return code != 0 ? code
+                        : compareDocuments(x.asJavaScriptWithScope().getScope(), y.asJavaScriptWithScope().getScope());
+            default:
+                throw new IllegalArgumentException("Unsupported BsonType: " + x.getBsonType());
+        }
+    }
+
+    /**
+     * A hash code consistent with {@link #compare}: values that compare equal, such as
+     * NumberInt(1), NumberLong(1) and 1.0, or a string and a symbol, hash alike.
+     */
+    public static int hash(BsonValue value) {
+        if (value == null) {
+            return typeBracket(BsonType.NULL);
+        }
+        switch (value.getBsonType()) {
+            case INT32:
+            case INT64:
+            case DOUBLE:
+            case DECIMAL128:
+                return hashNumber(value);
+            case STRING:
+            case SYMBOL:
+                return stringValue(value).hashCode();
+            case DOCUMENT:
+                int h = 1;
+                for (Map.Entry<String, BsonValue> e : value.asDocument().entrySet()) {
+                    h = 31 * (31 * h + e.getKey().hashCode()) + hash(e.getValue());
+                }
+                return h;
+            case ARRAY:
+                int a = 1;
+                for (BsonValue v : value.asArray()) {
+                    a = 31 * a + hash(v);
+                }
+                return a;
+            case MIN_KEY:
+            case MAX_KEY:
+            case NULL:
+            case UNDEFINED:
+                return typeBracket(value);
+            default:
+                return value.hashCode();
+        }
+    }
+
+    private static int hashNumber(BsonValue value) {
+        if (isIntegral(value.getBsonType())) {
+            return Long.hashCode(value.asNumber().longValue());
+        }
+        if (isNaN(value)) {
+            return 0x7ff80000;
+        }
+        int inf = infinity(value);
+        if (inf != 0) {
+            return inf;
+        }
+        BigDecimal d = toBigDecimal(value);
+        if (d.signum() == 0) {
+            return 0;
+        }
+        try {
+            return Long.hashCode(d.longValueExact());
+        } catch (ArithmeticException e) {
+            // fraction or outside the long range
+            return d.stripTrailingZeros().hashCode();
+        }
+    }
+
+    /**
+     * Canonical type order used by the server (BSONElement::canonicalType).
+     */
+    static int typeBracket(BsonValue value) {
+        return value == null ? 5 : typeBracket(value.getBsonType());
+    }
+
+    /**
+     * Canonical type order of a BSON type, see {@link #typeBracket(BsonValue)}.
+     */
+    public static int typeBracket(BsonType type) {
+        switch (type) {
+            case MIN_KEY:
+                return -1;
+            case UNDEFINED:
+                return 0;
+            case NULL:
+                return 5;
+            case INT32:
+            case INT64:
+            case DOUBLE:
+            case DECIMAL128:
+                return 10;
+            case STRING:
+            case SYMBOL:
+                return 15;
+            case DOCUMENT:
+                return 20;
+            case ARRAY:
+                return 25;
+            case BINARY:
+                return 30;
+            case OBJECT_ID:
+                return 35;
+            case BOOLEAN:
+                return 40;
+            case DATE_TIME:
+                return 45;
+            case TIMESTAMP:
+                return 47;
+            case REGULAR_EXPRESSION:
+                return 50;
+            case DB_POINTER:
+                return 55;
+            case JAVASCRIPT:
+                return 60;
+            case JAVASCRIPT_WITH_SCOPE:
+                return 65;
+            case MAX_KEY:
+                return 127;
+            default:
+                throw new IllegalArgumentException("Unsupported BsonType: " + type);
+        }
+    }
+
+    private static String stringValue(BsonValue value) {
+        return value.getBsonType() == BsonType.SYMBOL ? value.asSymbol().getSymbol() : value.asString().getValue();
+    }
+
+    /**
+     * UTF-8 byte order is code point order, which differs from String.compareTo (UTF-16
+     * code units) for characters outside the BMP.
+     */
+    static int compareStrings(String x, String y) {
+        int i = 0;
+        int j = 0;
+        while (i < x.length() && j < y.length()) {
+            int cx = x.codePointAt(i);
+            int cy = y.codePointAt(j);
+            if (cx != cy) {
+                return Integer.compare(cx, cy);
+            }
+            i += Character.charCount(cx);
+            j += Character.charCount(cy);
+        }
+        return Boolean.compare(i < x.length(), j < y.length());
+    }
+
+    private static int compareNumbers(BsonValue x, BsonValue y) {
+        BsonType xType = x.getBsonType();
+        BsonType yType = y.getBsonType();
+        if (isIntegral(xType) && isIntegral(yType)) {
+            return Long.compare(x.asNumber().longValue(), y.asNumber().longValue());
+        }
+        boolean xNaN = isNaN(x);
+        boolean yNaN = isNaN(y);
+        if (xNaN || yNaN) {
+            return Boolean.compare(!xNaN, !yNaN);
+        }
+        int xInf = infinity(x);
+        int yInf = infinity(y);
+        if (xInf != 0 || yInf != 0) {
+            return Integer.compare(xInf, yInf);
+        }
+        if (xType == BsonType.DOUBLE && yType == BsonType.DOUBLE) {
+            double dx = x.asDouble().getValue();
+            double dy = y.asDouble().getValue();
+            // -0.0 and 0.0 are equal
+            return dx == dy ? 0 : Double.compare(dx, dy);
+        }
+        // mixed types, compare exactly
+        return toBigDecimal(x).compareTo(toBigDecimal(y));
+    }
+
+    private static boolean isIntegral(BsonType type) {
+        return type == BsonType.INT32 || type == BsonType.INT64;
+    }
+
+    private static boolean isNaN(BsonValue value) {
+        if (value.isDouble()) {
+            return Double.isNaN(value.asDouble().getValue());
+        }
+        return value.isDecimal128() && value.asDecimal128().getValue().isNaN();
+    }
+
+    private static int infinity(BsonValue value) {
+        if (value.isDouble()) {
+            double d = value.asDouble().getValue();
+            return Double.isInfinite(d) ? (d > 0 ? 1 : -1) : 0;
+        }
+        if (value.isDecimal128()) {
+            Decimal128 d = value.asDecimal128().getValue();
+            return d.isInfinite() ? (d.isNegative() ? -1 : 1) : 0;
+        }
+        return 0;
+    }
+
+    private static BigDecimal toBigDecimal(BsonValue value) {
+        switch (value.getBsonType()) {
+            case INT32:
+                return BigDecimal.valueOf(value.asInt32().getValue());
+            case INT64:
+                return BigDecimal.valueOf(value.asInt64().getValue());
+            case DOUBLE:
+                return new BigDecimal(value.asDouble().getValue());
+            default:
+                try {
+                    return value.asDecimal128().getValue().bigDecimalValue();
+                } catch (ArithmeticException e) {
+                    // negative zero has no BigDecimal representation
+                    return BigDecimal.ZERO;
+                }
+        }
+    }
+
+    private int compareDocuments(BsonDocument x, BsonDocument y) {
+        Iterator<Map.Entry<String, BsonValue>> xi = x.entrySet().iterator();
+        Iterator<Map.Entry<String, BsonValue>> yi = y.entrySet().iterator();
+        while (xi.hasNext() && yi.hasNext()) {
+            Map.Entry<String, BsonValue> xe = xi.next();
+            Map.Entry<String, BsonValue> ye = yi.next();
+            int cmp = Integer.compare(typeBracket(xe.getValue()), typeBracket(ye.getValue()));
+            if (cmp == 0) {
+                cmp = compareStrings(xe.getKey(), ye.getKey());
+            }
+            if (cmp == 0) {
+                cmp = compare(xe.getValue(), ye.getValue());
+            }
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return Boolean.compare(xi.hasNext(), yi.hasNext());
+    }
+
+    private int compareArrays(BsonArray x, BsonArray y) {
+        int n = Math.min(x.size(), y.size());
+        for (int i = 0; i < n; i++) {
+            int cmp = compare(x.get(i), y.get(i));
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return Integer.compare(x.size(), y.size());
+    }
+
+    private static int compareBinary(BsonBinary x, BsonBinary y) {
+        byte[] xd = x.getData();
+        byte[] yd = y.getData();
+        int cmp = Integer.compare(xd.length, yd.length);
+        if (cmp == 0) {
+            cmp = Integer.compare(Byte.toUnsignedInt(x.getType()), Byte.toUnsignedInt(y.getType()));
+        }
+        return cmp != 0 ? cmp : Arrays.compareUnsigned(xd, yd);
+    }
+
+    private static int compareRegex(BsonRegularExpression x, BsonRegularExpression y) {
+        int cmp = compareStrings(x.getPattern(), y.getPattern());
+        return cmp != 0 ? cmp : compareStrings(x.getOptions(), y.getOptions());
+    }
+
+    private static int compareDbPointers(BsonDbPointer x, BsonDbPointer y) {
+        int cmp = compareStrings(x.getNamespace(), y.getNamespace());
+        return cmp != 0 ? cmp : x.getId().compareTo(y.getId());
+    }
+}
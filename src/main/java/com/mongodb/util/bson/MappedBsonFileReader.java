@@ -0,0 +1,240 @@
+package com.mongodb.util.bson;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import org.bson.RawBsonDocument;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Reads a file of concatenated BSON documents (e.g. a mongodump of the oplog) through
+ * memory mapped segments of the file. Document boundaries are found from the length
+ * prefixes and each document is handed out as a RawBsonDocument over a copy of its bytes
+ * (RawBsonDocument can only wrap a byte array), so nothing is decoded unless the caller
+ * reads a field.
+ * <p>
+ * The file can be divided into splits at document boundaries and read by several threads.
+ * Finding the boundaries means walking the length prefixes from the start of the file, so
+ * a split read is mostly worthwhile when the file is already in the page cache or the
+ * per-document work (filtering) is the bottleneck.
+ */
+public class MappedBsonFileReader implements Closeable {
+
+	private static final long MAX_MAP_BYTES = 1L << 30;
+	private static final int QUEUE_BATCH_SIZE = 256;
+	private static final int QUEUE_DEPTH = 64;
+
+	/**
+	 * A contiguous range of whole documents, [start, end) in file offsets.
+	 */
+	public class Split {
+		private final long start;
+		private final long end;
+
+		Split(long start, long end) {
+			this.start = start;
+			this.end = end;
+		}
+
+		public long getStart() {
+			return start;
+		}
+
+		public long getEnd() {
+			return end;
+		}
+
+		/**
+		 * Pass each document in the split that the filter accepts to the consumer, in file
+		 * order.
+		 */
+		public void forEach(Predicate<RawBsonDocument> filter, Consumer<RawBsonDocument> consumer) throws IOException {
+			walk(start, end, (buffer, offset, size, fileOffset) -> {
+				byte[] bytes = new byte[size];
+				buffer.get(offset, bytes);
+				RawBsonDocument doc = new RawBsonDocument(bytes);
+				if (filter == null || filter.test(doc)) {
+					consumer.accept(doc);
+				}
+			});
+		}
+	}
+
+	private interface DocumentVisitor {
+		void visit(MappedByteBuffer buffer, int offset, int size, long fileOffset);
+	}
+
+	private final File file;
+	private final FileChannel channel;
+	private final long fileSize;
+
+	public MappedBsonFileReader(File file) throws IOException {
+		this.file = file;
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		this.fileSize = channel.size();
+	}
+
+	public long getFileSize() {
+		return fileSize;
+	}
+
+	/**
+	 * Read the whole file in order.
+	 */
+	public void forEach(Predicate<RawBsonDocument> filter, Consumer<RawBsonDocument> consumer) throws IOException {
+		new Split(0, fileSize).forEach(filter, consumer);
+	}
+
+	/**
+	 * Divide the file into up to n splits of about the same size.
+	 */
+	public List<Split> split(int n) throws IOException {
+		List<Split> splits = new ArrayList<>();
+		long target = Math.max(1, fileSize / Math.max(1, n));
+		long[] splitStart = {0};
+		walk(0, fileSize, (buffer, offset, size, fileOffset) -> {
+			long docEnd = fileOffset + size;
+			if (docEnd - splitStart[0] >= target && splits.size() < n - 1) {
+				splits.add(new Split(splitStart[0], docEnd));
+				splitStart[0] = docEnd;
+			}
+		});
+		if (splitStart[0] < fileSize || splits.isEmpty()) {
+			splits.add(new Split(splitStart[0], fileSize));
+		}
+		return splits;
+	}
+
+	/**
+	 * Filter the splits on separate threads, passing the accepted documents to the consumer
+	 * on the calling thread in file order. Each split can run ahead of the consumer by a
+	 * bounded number of accepted documents.
+	 */
+	public void forEachParallel(int threads, Predicate<RawBsonDocument> filter, Consumer<RawBsonDocument> consumer)
+			throws IOException {
+		List<Split> splits = split(threads);
+		if (splits.size() == 1) {
+			splits.get(0).forEach(filter, consumer);
+			return;
+		}
+		List<BlockingQueue<List<RawBsonDocument>>> queues = new ArrayList<>();
+		AtomicReference<Exception> error = new AtomicReference<>();
+		ExecutorService executor = Executors.newFixedThreadPool(splits.size(),
+				new ThreadFactoryBuilder().setNameFormat("BsonSplit-%d").setDaemon(true).build());
+		for (Split split : splits) {
+			BlockingQueue<List<RawBsonDocument>> queue = new ArrayBlockingQueue<>(QUEUE_DEPTH);
+			queues.add(queue);
+			executor.execute(() -> {
+				List<RawBsonDocument> batch = new ArrayList<>(QUEUE_BATCH_SIZE);
+				try {
+					split.forEach(filter, doc -> {
+						batch.add(doc);
+						if (batch.size() >= QUEUE_BATCH_SIZE) {
+							put(queue, new ArrayList<>(batch));
+							batch.clear();
+						}
+					});
+					if (!batch.isEmpty()) {
+						put(queue, batch);
+					}
+				} catch (CancellationException e) {
+					return;
+				} catch (Exception e) {
+					error.compareAndSet(null, e);
+				}
+				// an empty batch marks the end of the split
+				try {
+					queue.put(List.of());
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+		}
+		executor.shutdown();
+		try {
+			for (BlockingQueue<List<RawBsonDocument>> queue : queues) {
+				List<RawBsonDocument> batch;
+				while (!(batch = queue.take()).isEmpty()) {
+					batch.forEach(consumer);
+				}
+				if (error.get() != null) {
+					break;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted reading " + file, e);
+		} finally {
+			executor.shutdownNow();
+		}
+		Exception e = error.get();
+		if (e instanceof IOException) {
+			throw (IOException) e;
+		} else if (e != null) {
+			throw new IOException("Error reading " + file, e);
+		}
+	}
+
+	/**
+	 * Hand a batch to the consumer, stopping the split if the consumer has gone away.
+	 */
+	private static void put(BlockingQueue<List<RawBsonDocument>> queue, List<RawBsonDocument> batch) {
+		try {
+			queue.put(batch);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CancellationException();
+		}
+	}
+
+	private void walk(long start, long end, DocumentVisitor visitor) throws IOException {
+		long pos = start;
+		while (pos < end) {
+			long segmentSize = Math.min(MAX_MAP_BYTES, end - pos);
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, pos, segmentSize);
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			int offset = 0;
+			while (offset < segmentSize) {
+				if (segmentSize - offset < 4) {
+					break;
+				}
+				int size = buffer.getInt(offset);
+				if (size < 5 || pos + offset + size > end) {
+					throw new IOException(String.format("Invalid BSON document size %s at offset %s of %s", size,
+							pos + offset, file));
+				}
+				if (offset + (long) size > segmentSize) {
+					// runs past this segment, map the next one from the start of the document
+					break;
+				}
+				visitor.visit(buffer, offset, size, pos + offset);
+				offset += size;
+			}
+			if (offset == 0) {
+				throw new IOException(String.format("Truncated BSON document at offset %s of %s", pos, file));
+			}
+			pos += offset;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
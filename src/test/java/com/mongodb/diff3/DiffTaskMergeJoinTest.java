@@ -0,0 +1,101 @@
+package com.mongodb.diff3;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.bson.BsonBinary;
+import org.bson.BsonDocument;
+import org.bson.BsonDouble;
+import org.bson.BsonInt32;
+import org.bson.BsonInt64;
+import org.bson.BsonNull;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.junit.jupiter.api.Test;
+
+public class DiffTaskMergeJoinTest {
+
+	private static final List<String> SORT = Arrays.asList("sk", "_id");
+
+	private static RawBsonDocument doc(BsonValue sk, int id) {
+		BsonDocument d = new BsonDocument("_id", new BsonInt32(id));
+		if (sk != null) {
+			d.append("sk", sk);
+		}
+		return new RawBsonDocument(d, new BsonDocumentCodec());
+	}
+
+	private static class Recorder implements DiffTask.MergeJoinHandler {
+		final List<Integer> matched = new ArrayList<>();
+		final List<Integer> srcOnly = new ArrayList<>();
+		final List<Integer> destOnly = new ArrayList<>();
+
+		@Override
+		public void matched(RawBsonDocument src, RawBsonDocument dest) {
+			assertEquals(src.get("_id"), dest.get("_id"));
+			matched.add(src.getInt32("_id").getValue());
+		}
+
+		@Override
+		public void sourceOnly(RawBsonDocument src) {
+			srcOnly.add(src.getInt32("_id").getValue());
+		}
+
+		@Override
+		public void destOnly(RawBsonDocument dest) {
+			destOnly.add(dest.getInt32("_id").getValue());
+		}
+	}
+
+	private static Recorder join(List<RawBsonDocument> src, List<RawBsonDocument> dest) {
+		Recorder recorder = new Recorder();
+		DiffTask.mergeJoin(src.iterator(), dest.iterator(), SORT, recorder);
+		return recorder;
+	}
+
+	@Test
+	public void testMissingAndNullShardKeys() {
+		// missing and null shard keys sort first and together, ordered by _id
+		List<RawBsonDocument> src = Arrays.asList(doc(null, 1), doc(BsonNull.VALUE, 2), doc(null, 3),
+				doc(new BsonInt32(1), 4));
+		List<RawBsonDocument> dest = Arrays.asList(doc(BsonNull.VALUE, 1), doc(null, 2), doc(null, 3),
+				doc(new BsonInt32(1), 4));
+		Recorder r = join(src, dest);
+		assertEquals(Arrays.asList(1, 2, 3, 4), r.matched);
+		assertEquals(0, r.srcOnly.size() + r.destOnly.size());
+	}
+
+	@Test
+	public void testMixedTypes() {
+		// server order: null < numbers (by value, any type) < strings
+		List<RawBsonDocument> src = Arrays.asList(doc(BsonNull.VALUE, 1), doc(new BsonInt32(2), 2),
+				doc(new BsonDouble(2.5), 3), doc(new BsonInt64(3), 4), doc(new BsonString("a"), 5),
+				doc(new BsonString("b"), 7));
+		List<RawBsonDocument> dest = Arrays.asList(doc(BsonNull.VALUE, 1), doc(new BsonInt64(2), 2),
+				doc(new BsonDouble(2.5), 3), doc(new BsonInt32(3), 4), doc(new BsonString("a"), 6),
+				doc(new BsonString("b"), 7));
+		Recorder r = join(src, dest);
+		assertEquals(Arrays.asList(1, 2, 3, 4, 7), r.matched);
+		assertEquals(Arrays.asList(5), r.srcOnly);
+		assertEquals(Arrays.asList(6), r.destOnly);
+	}
+
+	@Test
+	public void testBinaryKeys() {
+		// server order: shorter first, then unsigned bytes
+		BsonBinary b1 = new BsonBinary(new byte[] { 0x01 });
+		BsonBinary b2 = new BsonBinary(new byte[] { (byte) 0x80 });
+		BsonBinary b3 = new BsonBinary(new byte[] { 0x00, 0x00 });
+		List<RawBsonDocument> src = Arrays.asList(doc(b1, 1), doc(b2, 2), doc(b3, 3));
+		List<RawBsonDocument> dest = Arrays.asList(doc(b1, 1), doc(b3, 3));
+		Recorder r = join(src, dest);
+		assertEquals(Arrays.asList(1, 3), r.matched);
+		assertEquals(Arrays.asList(2), r.srcOnly);
+		assertEquals(0, r.destOnly.size());
+	}
+}
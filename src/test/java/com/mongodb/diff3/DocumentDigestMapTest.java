@@ -0,0 +1,75 @@
+package com.mongodb.diff3;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonInt64;
+import org.bson.BsonObjectId;
+import org.bson.BsonString;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+
+import com.mongodb.util.CodecUtils;
+
+public class DocumentDigestMapTest {
+
+	private static RawBsonDocument doc(BsonDocument d) {
+		return new RawBsonDocument(d, new BsonDocumentCodec());
+	}
+
+	@Test
+	public void testKeysAndDigests() {
+		DocumentDigestMap source = new DocumentDigestMap(4);
+		DocumentDigestMap dest = new DocumentDigestMap(4);
+
+		ObjectId oid = new ObjectId();
+		source.put(doc(new BsonDocument("_id", new BsonObjectId(oid)).append("x", new BsonInt32(1))));
+		source.put(doc(new BsonDocument("a", new BsonString("first")).append("_id", new BsonString("k1"))));
+		source.put(doc(new BsonDocument("_id", new BsonInt32(7))));
+
+		dest.put(doc(new BsonDocument("_id", new BsonObjectId(oid)).append("x", new BsonInt32(2))));
+		dest.put(doc(new BsonDocument("a", new BsonString("first")).append("_id", new BsonString("k1"))));
+		dest.put(doc(new BsonDocument("_id", new BsonInt64(7))));
+
+		assertEquals(3, source.size());
+		assertEquals(new BsonObjectId(oid), source.getKey(0));
+		assertEquals(new BsonString("k1"), source.getKey(1));
+		assertEquals(new BsonInt32(7), source.getKey(2));
+
+		assertEquals(0, dest.indexOf(source, 0));
+		assertFalse(source.digestEquals(0, dest, 0));
+		assertEquals(1, dest.indexOf(source, 1));
+		assertTrue(source.digestEquals(1, dest, 1));
+		// int32 and int64 _ids are different keys, as they are for BsonValue.equals()
+		assertEquals(-1, dest.indexOf(source, 2));
+	}
+
+	@Test
+	public void testDigestMatchesMd5OfDocument() {
+		RawBsonDocument d = doc(new BsonDocument("_id", new BsonInt32(1)).append("v", new BsonString("abc")));
+		DocumentDigestMap map = new DocumentDigestMap();
+		int bytes = map.put(d);
+		assertEquals(d.getByteBuffer().remaining(), bytes);
+		assertEquals(CodecUtils.md5Hex(d.getByteBuffer().asNIO()), map.getDigestHex(0));
+	}
+
+	@Test
+	public void testGrowthAndDuplicates() {
+		DocumentDigestMap map = new DocumentDigestMap(16);
+		for (int i = 0; i < 10000; i++) {
+			map.put(doc(new BsonDocument("_id", new BsonInt32(i)).append("v", new BsonInt32(i))));
+		}
+		map.put(doc(new BsonDocument("_id", new BsonInt32(5)).append("v", new BsonInt32(-1))));
+		assertEquals(10000, map.size());
+		DocumentDigestMap probe = new DocumentDigestMap();
+		probe.put(doc(new BsonDocument("_id", new BsonInt32(5)).append("v", new BsonInt32(-1))));
+		int idx = map.indexOf(probe, 0);
+		assertEquals(5, idx);
+		assertTrue(map.digestEquals(idx, probe, 0));
+	}
+}
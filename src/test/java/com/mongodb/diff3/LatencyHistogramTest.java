@@ -0,0 +1,37 @@
+package com.mongodb.diff3;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void testBuckets() {
+		for (long v : new long[] { 0, 1, 15, 16, 17, 31, 32, 1000, 123456789L, Long.MAX_VALUE }) {
+			int bucket = LatencyHistogram.bucket(v);
+			assertTrue(LatencyHistogram.lowestInBucket(bucket) <= v);
+			assertTrue(LatencyHistogram.highestInBucket(bucket) >= v);
+		}
+		assertEquals(15, LatencyHistogram.highestInBucket(LatencyHistogram.bucket(15)));
+	}
+
+	@Test
+	public void testPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getPercentile(50));
+
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i);
+		}
+		assertEquals(1000, histogram.getCount());
+		assertEquals(1000, histogram.getMax());
+		assertEquals(1000, histogram.getPercentile(100));
+
+		long p50 = histogram.getPercentile(50);
+		assertTrue(p50 >= 500 && p50 <= 500 * 1.07, "p50 " + p50);
+		long p99 = histogram.getPercentile(99);
+		assertTrue(p99 >= 990 && p99 <= 1000, "p99 " + p99);
+	}
+}
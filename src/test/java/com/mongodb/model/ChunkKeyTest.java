@@ -0,0 +1,70 @@
+package com.mongodb.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import org.bson.BsonDocument;
+import org.bson.BsonDecimal128;
+import org.bson.BsonDouble;
+import org.bson.BsonInt32;
+import org.bson.BsonInt64;
+import org.bson.BsonMaxKey;
+import org.bson.BsonMinKey;
+import org.bson.BsonString;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.bson.types.Decimal128;
+import org.junit.jupiter.api.Test;
+
+public class ChunkKeyTest {
+
+	private static RawBsonDocument raw(BsonDocument d) {
+		return new RawBsonDocument(d, new BsonDocumentCodec());
+	}
+
+	@Test
+	public void testEqualityOnBoundBytes() {
+		BsonDocument chunk = new BsonDocument("ns", new BsonString("db.c"))
+				.append("min", new BsonDocument("x", new BsonMinKey()))
+				.append("max", new BsonDocument("x", new BsonInt32(10)));
+		RawBsonDocument rawChunk = raw(chunk);
+		RawBsonDocument min = (RawBsonDocument) rawChunk.get("min");
+		RawBsonDocument max = (RawBsonDocument) rawChunk.get("max");
+
+		ChunkKey key = new ChunkKey("db.c", min, max);
+		ChunkKey same = new ChunkKey("db.c", new BsonDocument("x", new BsonMinKey()),
+				new BsonDocument("x", new BsonInt32(10)));
+		assertEquals(key, same);
+		assertEquals(key.hashCode(), same.hashCode());
+		assertEquals(min, key.getMin());
+		assertEquals(max, key.getMax());
+
+		assertNotEquals(key, new ChunkKey("db.d", min, max));
+		assertNotEquals(key, new ChunkKey("db.c", min, raw(new BsonDocument("x", new BsonMaxKey()))));
+		assertNotEquals(key, ChunkKey.ofMin("db.c", min));
+		assertEquals(ChunkKey.ofMin("db.c", min), ChunkKey.ofMin("db.c", new BsonDocument("x", new BsonMinKey())));
+	}
+
+	@Test
+	public void testNumericBoundsEqualByValue() {
+		ChunkKey int32 = new ChunkKey("db.c", new BsonDocument("x", new BsonInt32(1)),
+				new BsonDocument("x", new BsonInt32(10)));
+		ChunkKey int64 = new ChunkKey("db.c", new BsonDocument("x", new BsonInt64(1)),
+				new BsonDocument("x", new BsonInt64(10)));
+		ChunkKey dbl = new ChunkKey("db.c", raw(new BsonDocument("x", new BsonDouble(1.0))),
+				raw(new BsonDocument("x", new BsonDecimal128(Decimal128.parse("10.00")))));
+		assertEquals(int32, int64);
+		assertEquals(int32.hashCode(), int64.hashCode());
+		assertEquals(int32, dbl);
+		assertEquals(int32.hashCode(), dbl.hashCode());
+		assertEquals(ChunkKey.ofMin("db.c", new BsonDocument("x", new BsonInt64(1))),
+				ChunkKey.ofMin("db.c", new BsonDocument("x", new BsonInt32(1))));
+
+		assertNotEquals(int32, new ChunkKey("db.c", new BsonDocument("x", new BsonDouble(1.5)),
+				new BsonDocument("x", new BsonInt32(10))));
+		assertNotEquals(int32, new ChunkKey("db.c", new BsonDocument("y", new BsonInt64(1)),
+				new BsonDocument("x", new BsonInt64(10))));
+		assertEquals(new ChunkKey("db.c", new BsonDocument("x", new BsonDouble(2.5)), null),
+				new ChunkKey("db.c", new BsonDocument("x", new BsonDecimal128(Decimal128.parse("2.50"))), null));
+	}
+}
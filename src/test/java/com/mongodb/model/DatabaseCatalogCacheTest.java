@@ -0,0 +1,136 @@
+package com.mongodb.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Set;
+
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class DatabaseCatalogCacheTest {
+
+	@TempDir
+	Path tempDir;
+
+	private static Collection collection(String ns, boolean sharded, long count) {
+		Namespace namespace = new Namespace(ns);
+		CollectionStats stats = CollectionStats.fromDocument(new Document("ns", ns).append("size", count * 100)
+				.append("count", count).append("nindexes", 2).append("storageSize", 4096));
+		RawBsonDocument idIndex = new RawBsonDocument(new BsonDocument("v", new BsonInt32(2))
+				.append("key", new BsonDocument("_id", new BsonInt32(1))).append("name", new BsonString("_id_")),
+				new BsonDocumentCodec());
+		RawBsonDocument ttlIndex = new RawBsonDocument(new BsonDocument("v", new BsonInt32(2))
+				.append("key", new BsonDocument("ts", new BsonInt32(1))).append("name", new BsonString("ts_1"))
+				.append("expireAfterSeconds", new BsonInt32(60)), new BsonDocumentCodec());
+		return new Collection(namespace, sharded, stats,
+				Set.of(IndexSpec.fromDocument(idIndex, namespace), IndexSpec.fromDocument(ttlIndex, namespace)));
+	}
+
+	@Test
+	public void testRoundTrip() {
+		DatabaseCatalog catalog = new DatabaseCatalog();
+		Database db1 = new Database("db1");
+		db1.addCollection(collection("db1.a", true, 10));
+		db1.addCollection(collection("db1.b", false, 20));
+		catalog.addDatabase(db1);
+		Database db2 = new Database("db2");
+		db2.addCollection(collection("db2.c", false, 5));
+		catalog.addDatabase(db2);
+
+		BsonDocument fingerprint = new BsonDocument("db1", new BsonArray()).append("db2", new BsonArray());
+		File file = tempDir.resolve("catalog.bson").toFile();
+		DatabaseCatalogCache.write(file, fingerprint, catalog);
+
+		DatabaseCatalog cached = DatabaseCatalogCache.read(file, fingerprint, 3600);
+		assertNotNull(cached);
+		assertEquals(2, cached.getDatabases().size());
+		assertEquals(1, cached.getShardedCollections().size());
+		assertEquals(2, cached.getUnshardedCollections().size());
+		assertEquals(35, cached.getTotalSizeAndCount()[1]);
+		assertEquals(3500, cached.getTotalSizeAndCount()[0]);
+
+		Collection c = cached.getDatabase("db2").getCollection("db2.c");
+		assertEquals(2, c.getIndexes().size());
+		assertEquals(2, c.getCollectionStats().getNumIndexes().intValue());
+		assertTrue(c.getIndexes().stream().anyMatch(ix -> ix.getExpireAfterSeconds() != null));
+
+		// changed collections or an expired cache are not used
+		assertNull(DatabaseCatalogCache.read(file, new BsonDocument("db1", new BsonArray()), 3600));
+		assertNull(DatabaseCatalogCache.read(file, fingerprint, -1));
+		assertNull(DatabaseCatalogCache.read(tempDir.resolve("missing.bson").toFile(), fingerprint, 3600));
+	}
+
+	@Test
+	public void testEmptyDatabaseAndExcludedCollectionsRoundTrip() {
+		DatabaseCatalog catalog = new DatabaseCatalog();
+		catalog.addDatabase(new Database("empty"));
+		Database db1 = new Database("db1");
+		db1.addCollection(collection("db1.a", false, 10));
+		db1.excludeCollection("system.views");
+		db1.excludeCollection("someView");
+		catalog.addDatabase(db1);
+		Database onlyExcluded = new Database("db2");
+		onlyExcluded.excludeCollection("system.profile");
+		catalog.addDatabase(onlyExcluded);
+
+		BsonDocument fingerprint = new BsonDocument("empty", new BsonDocument());
+		File file = tempDir.resolve("catalog.bson").toFile();
+		DatabaseCatalogCache.write(file, fingerprint, catalog);
+		DatabaseCatalog cached = DatabaseCatalogCache.read(file, fingerprint, 3600);
+
+		assertNotNull(cached);
+		assertEquals(3, cached.getDatabases().size());
+		assertNotNull(cached.getDatabase("empty"));
+		assertTrue(cached.getDatabase("empty").getAllCollections().isEmpty());
+		assertEquals(Set.of("system.views", "someView"), cached.getDatabase("db1").getExcludedCollections());
+		assertNotNull(cached.getDatabase("db1").getCollection("db1.a"));
+		assertEquals(Set.of("system.profile"), cached.getDatabase("db2").getExcludedCollections());
+		assertTrue(cached.getDatabase("db2").getAllCollections().isEmpty());
+	}
+
+	@Test
+	public void testCollectionFingerprint() {
+		BsonDocument info = new BsonDocument("name", new BsonString("a"))
+				.append("options", new BsonDocument())
+				.append("info", new BsonDocument("uuid", new BsonString("u1")));
+		Document shardedMeta = new Document("_id", "db1.a").append("key", new Document("x", 1))
+				.append("unique", false).append("lastmodEpoch", "e1");
+		BsonDocument fingerprint = StandardDatabaseCatalogProvider.collectionFingerprint(info, shardedMeta);
+
+		assertEquals(fingerprint, StandardDatabaseCatalogProvider.collectionFingerprint(info.clone(),
+				new Document(shardedMeta).append("noBalance", true)));
+		assertNotEquals(fingerprint, StandardDatabaseCatalogProvider.collectionFingerprint(info, null));
+		assertNotEquals(fingerprint, StandardDatabaseCatalogProvider.collectionFingerprint(info,
+				new Document(shardedMeta).append("key", new Document("y", 1))));
+		assertNotEquals(fingerprint, StandardDatabaseCatalogProvider.collectionFingerprint(info,
+				new Document(shardedMeta).append("lastmodEpoch", "e2")));
+		assertNotEquals(fingerprint, StandardDatabaseCatalogProvider.collectionFingerprint(
+				info.clone().append("options", new BsonDocument("validator", new BsonDocument())), shardedMeta));
+		assertNotEquals(fingerprint, StandardDatabaseCatalogProvider.collectionFingerprint(
+				info.clone().append("info", new BsonDocument("uuid", new BsonString("u2"))), shardedMeta));
+	}
+
+	@Test
+	public void testDatabaseFingerprint() {
+		BsonDocument fingerprint = StandardDatabaseCatalogProvider.databaseFingerprint(
+				new Document("db", "db1").append("indexes", 4).append("objects", 10));
+
+		assertEquals(fingerprint, StandardDatabaseCatalogProvider.databaseFingerprint(
+				new Document("db", "db1").append("indexes", 4L).append("objects", 20)));
+		assertNotEquals(fingerprint, StandardDatabaseCatalogProvider.databaseFingerprint(
+				new Document("db", "db1").append("indexes", 5).append("objects", 10)));
+	}
+}
@@ -0,0 +1,110 @@
+package com.mongodb.oplog;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bson.BsonDocument;
+import org.bson.BsonDouble;
+import org.bson.BsonInt32;
+import org.bson.BsonInt64;
+import org.bson.BsonString;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.junit.jupiter.api.Test;
+
+import com.mongodb.MongoException;
+
+public class OplogBatchApplierTest {
+
+	private static RawBsonDocument op(String op, String ns, int id, int seq) {
+		BsonDocument doc = new BsonDocument("op", new BsonString(op)).append("ns", new BsonString(ns));
+		if (op.equals("u")) {
+			doc.append("o2", new BsonDocument("_id", new BsonInt32(id)))
+					.append("o", new BsonDocument("$set", new BsonDocument("seq", new BsonInt32(seq))));
+		} else if (op.equals("c")) {
+			doc.append("o", new BsonDocument("create", new BsonString("c" + seq)));
+		} else {
+			doc.append("o", new BsonDocument("_id", new BsonInt32(id)).append("seq", new BsonInt32(seq)));
+		}
+		return new RawBsonDocument(doc, new BsonDocumentCodec());
+	}
+
+	private static int seq(RawBsonDocument op) {
+		BsonDocument o = op.getDocument("o");
+		return o.containsKey("$set") ? o.getDocument("$set").getInt32("seq").getValue()
+				: o.containsKey("seq") ? o.getInt32("seq").getValue() : -1;
+	}
+
+	@Test
+	public void testOrderingBarriersAndRetry() {
+		List<RawBsonDocument> appliedOps = Collections.synchronizedList(new ArrayList<>());
+		List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+		OplogBatchApplier applier = new OplogBatchApplier(ops -> {
+			for (RawBsonDocument op : ops) {
+				// the update of _id 13 fails, on its own or as part of a batch
+				if (op.getString("op").getValue().equals("u") && op.getDocument("o2").getInt32("_id").getValue() == 13) {
+					throw new MongoException("bad op");
+				}
+			}
+			batchSizes.add(ops.size());
+			appliedOps.addAll(ops);
+		}, 4, 10);
+
+		int seq = 0;
+		int commandSeq = 0;
+		for (int round = 0; round < 5; round++) {
+			for (int id = 0; id < 20; id++) {
+				applier.add(op(round == 0 ? "i" : "u", "db.coll", id, seq++));
+			}
+			if (round == 2) {
+				commandSeq = seq++;
+				applier.add(op("c", "db.$cmd", 0, commandSeq));
+			}
+		}
+		applier.close();
+
+		// 100 CRUD ops and the command, less the 4 updates of _id 13
+		assertEquals(97, applier.getApplied());
+		assertEquals(4, applier.getErrors());
+		assertEquals(97, appliedOps.size());
+		assertTrue(batchSizes.stream().anyMatch(size -> size > 1));
+
+		// per document order is kept, and the command splits the stream in two
+		Map<Integer, Integer> lastSeqById = new HashMap<>();
+		int commandIndex = -1;
+		for (int i = 0; i < appliedOps.size(); i++) {
+			RawBsonDocument op = appliedOps.get(i);
+			if (op.getString("op").getValue().equals("c")) {
+				commandIndex = i;
+				continue;
+			}
+			int id = op.getString("op").getValue().equals("u") ? op.getDocument("o2").getInt32("_id").getValue()
+					: op.getDocument("o").getInt32("_id").getValue();
+			Integer last = lastSeqById.put(id, seq(op));
+			assertTrue(last == null || last < seq(op), "out of order for _id " + id);
+			assertEquals(commandIndex >= 0 && i > commandIndex, seq(op) > commandSeq);
+		}
+		assertTrue(commandIndex > 0);
+	}
+
+	@Test
+	public void testNumericIdsEqualByValueShareALane() {
+		OplogBatchApplier applier = new OplogBatchApplier(ops -> {
+		}, 16, 10);
+		for (int id = 0; id < 100; id++) {
+			BsonDocument asInt = new BsonDocument("op", new BsonString("i")).append("ns", new BsonString("db.coll"))
+					.append("o", new BsonDocument("_id", new BsonInt32(id)));
+			BsonDocument asLong = new BsonDocument("op", new BsonString("u")).append("ns", new BsonString("db.coll"))
+					.append("o2", new BsonDocument("_id", new BsonInt64(id)))
+					.append("o", new BsonDocument("$set", new BsonDocument("x", new BsonDouble(id))));
+			assertEquals(applier.laneFor(asInt), applier.laneFor(asLong));
+		}
+		applier.close();
+	}
+}
@@ -0,0 +1,119 @@
+package com.mongodb.oplog;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.junit.jupiter.api.Test;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.WriteModel;
+import com.mongodb.model.Namespace;
+import com.mongodb.mongosync.BulkWriteOutput;
+
+public class OplogBulkWriterTest {
+
+	private static int id(WriteModel<BsonDocument> model) {
+		if (model instanceof InsertOneModel) {
+			return ((InsertOneModel<BsonDocument>) model).getDocument().getInt32("_id").getValue();
+		}
+		return ((BsonDocument) ((UpdateOneModel<BsonDocument>) model).getFilter()).getInt32("_id").getValue();
+	}
+
+	private static int seq(WriteModel<BsonDocument> model) {
+		if (model instanceof InsertOneModel) {
+			return ((InsertOneModel<BsonDocument>) model).getDocument().getInt32("seq").getValue();
+		}
+		return ((BsonDocument) ((UpdateOneModel<BsonDocument>) model).getUpdate()).getDocument("$set")
+				.getInt32("seq").getValue();
+	}
+
+	@Test
+	public void testOrderingAndErrorIsolation() {
+		Map<Integer, List<Integer>> seqsById = new ConcurrentHashMap<>();
+		List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+
+		OplogBulkWriter writer = new OplogBulkWriter((ns, models) -> {
+			Set<Integer> ids = new HashSet<>();
+			List<BulkWriteError> errors = new ArrayList<>();
+			int inserted = 0;
+			int modified = 0;
+			for (int i = 0; i < models.size(); i++) {
+				WriteModel<BsonDocument> model = models.get(i);
+				assertTrue(ids.add(id(model)), "two writes for one _id in a batch");
+				if (id(model) == 7 && model instanceof InsertOneModel) {
+					// fails the whole request, so the batch is split down to this write
+					throw new MongoException("network error");
+				}
+			}
+			for (int i = 0; i < models.size(); i++) {
+				WriteModel<BsonDocument> model = models.get(i);
+				if (id(model) == 11 && model instanceof UpdateOneModel) {
+					errors.add(new BulkWriteError(2, "bad update", new BsonDocument(), i));
+					continue;
+				}
+				if (id(model) == 12 && model instanceof InsertOneModel) {
+					errors.add(new BulkWriteError(11000, "duplicate key", new BsonDocument(), i));
+					continue;
+				}
+				seqsById.computeIfAbsent(id(model), k -> Collections.synchronizedList(new ArrayList<>())).add(seq(model));
+				if (model instanceof InsertOneModel) {
+					inserted++;
+				} else {
+					modified++;
+				}
+			}
+			batchSizes.add(models.size());
+			BulkWriteResult result = BulkWriteResult.acknowledged(inserted, modified, 0, modified, List.of());
+			if (!errors.isEmpty()) {
+				throw new MongoBulkWriteException(result, errors, null, new ServerAddress());
+			}
+			return result;
+		}, 4, 50, 2);
+
+		Namespace ns = new Namespace("db", "c");
+		int seq = 0;
+		for (int round = 0; round < 3; round++) {
+			for (int id = 0; id < 100; id++) {
+				BsonDocument filter = new BsonDocument("_id", new BsonInt32(id));
+				WriteModel<BsonDocument> model = round == 0
+						? new InsertOneModel<>(filter.clone().append("seq", new BsonInt32(seq)))
+						: new UpdateOneModel<>(filter, new BsonDocument("$set", new BsonDocument("seq", new BsonInt32(seq))));
+				writer.add(ns, filter.get("_id"), model);
+				seq++;
+			}
+		}
+		writer.close();
+
+		// the insert of 7 failed on its own, the 2 updates of 11 are write errors
+		assertEquals(3, writer.getErrors());
+		BulkWriteOutput total = writer.getTotalOutput();
+		assertEquals(98, total.getInsertedCount());
+		assertEquals(198, total.getModifiedCount());
+		assertEquals(1, total.getDuplicateKeyExceptionCount());
+		assertEquals(4, writer.getLaneOutputs().size());
+		assertTrue(batchSizes.stream().anyMatch(size -> size > 1));
+
+		for (Map.Entry<Integer, List<Integer>> entry : seqsById.entrySet()) {
+			List<Integer> seqs = entry.getValue();
+			List<Integer> sorted = new ArrayList<>(seqs);
+			Collections.sort(sorted);
+			assertEquals(sorted, seqs, "out of order for _id " + entry.getKey());
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package com.mongodb.oplog;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.bson.BsonTimestamp;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class OplogCheckpointStoreTest {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	public void testSaveAndLoad() throws IOException {
+		File file = tempDir.resolve("checkpoints.bson").toFile();
+		OplogCheckpointStore store = new OplogCheckpointStore(file);
+		assertTrue(store.load().isEmpty());
+
+		Map<String, BsonTimestamp> checkpoints = new HashMap<>();
+		checkpoints.put("shard0", new BsonTimestamp(1700000000, 5));
+		checkpoints.put("shard1", new BsonTimestamp(1700000001, 1));
+		store.save(checkpoints);
+
+		checkpoints.put("shard1", new BsonTimestamp(1700000002, 3));
+		store.save(checkpoints);
+		assertFalse(new File(file.getPath() + ".tmp").exists());
+
+		Map<String, BsonTimestamp> loaded = new OplogCheckpointStore(file).load();
+		assertEquals(checkpoints, loaded);
+	}
+
+	@Test
+	public void testUnreadableFile() throws IOException {
+		File file = tempDir.resolve("checkpoints.bson").toFile();
+		Files.write(file.toPath(), new byte[] { 1, 2, 3 });
+		assertTrue(new OplogCheckpointStore(file).load().isEmpty());
+	}
+}
@@ -0,0 +1,29 @@
+package com.mongodb.oplog;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
+import org.bson.RawBsonDocument;
+import org.junit.jupiter.api.Test;
+
+public class OplogUtilTest {
+
+	@Test
+	public void testEntrySize() {
+		BsonDocument entry = new BsonDocument("op", new BsonString("i")).append("ns", new BsonString("db.c"))
+				.append("o", new BsonDocument("_id", new BsonInt32(1)).append("x", new BsonString("x".repeat(100))));
+		RawBsonDocument full = RawBsonDocument.parse(entry.toJson());
+		assertEquals(full.getByteBuffer().remaining(), OplogUtil.getEntrySize(full));
+
+		// what the server returns with the analyzer projection
+		BsonDocument projected = new BsonDocument("op", new BsonString("i")).append("ns", new BsonString("db.c"))
+				.append("o", new BsonDocument("_id", new BsonInt32(1)))
+				.append(OplogUtil.ENTRY_SIZE_FIELD, new BsonInt32(full.getByteBuffer().remaining()));
+		RawBsonDocument raw = RawBsonDocument.parse(projected.toJson());
+		assertTrue(raw.getByteBuffer().remaining() < full.getByteBuffer().remaining());
+		assertEquals(full.getByteBuffer().remaining(), OplogUtil.getEntrySize(raw));
+	}
+}
@@ -0,0 +1,322 @@
+package com.mongodb.oplog;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonTimestamp;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.bson.conversions.Bson;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.MongoException;
+import com.mongodb.ServerAddress;
+import com.mongodb.ServerCursor;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.oplog.ShardOplogTailer.OplogBatch;
+
+public class ShardOplogTailerTest {
+
+	private static final BsonTimestamp LATEST = new BsonTimestamp(100, 1);
+
+	@TempDir
+	Path tempDir;
+
+	/**
+	 * Cursor returning scripted entries: a document, null for an empty tryNext, or an
+	 * exception to throw. Once the script is used up it behaves like a quiet oplog.
+	 */
+	private static class StubCursor implements MongoCursor<RawBsonDocument> {
+		private final Deque<Object> script;
+
+		StubCursor(List<Object> script) {
+			this.script = new LinkedList<>(script);
+		}
+
+		@Override
+		public RawBsonDocument tryNext() {
+			Object next = script.poll();
+			if (next instanceof RuntimeException) {
+				throw (RuntimeException) next;
+			}
+			if (next == null) {
+				try {
+					Thread.sleep(5);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			return (RawBsonDocument) next;
+		}
+
+		@Override
+		public void close() {
+		}
+
+		@Override
+		public boolean hasNext() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public RawBsonDocument next() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public int available() {
+			return 0;
+		}
+
+		@Override
+		public ServerCursor getServerCursor() {
+			return null;
+		}
+
+		@Override
+		public ServerAddress getServerAddress() {
+			return null;
+		}
+	}
+
+	/**
+	 * Hands out one scripted cursor per tail() call and records the queries.
+	 */
+	private static class StubSource implements ShardOplogTailer.OplogSource {
+		private final Map<String, Deque<List<Object>>> cursors = new HashMap<>();
+		private final Map<String, List<BsonDocument>> queries = new ConcurrentHashMap<>();
+
+		StubSource cursor(String shardId, Object... script) {
+			cursors.computeIfAbsent(shardId, k -> new ArrayDeque<>()).add(Arrays.asList(script));
+			return this;
+		}
+
+		List<BsonDocument> queries(String shardId) {
+			return queries.getOrDefault(shardId, List.of());
+		}
+
+		@Override
+		public BsonTimestamp getLatestOplogTimestamp(String shardId) {
+			return LATEST;
+		}
+
+		@Override
+		public synchronized MongoCursor<RawBsonDocument> tail(String shardId, Bson query, Bson projection,
+				int batchSize) {
+			queries.computeIfAbsent(shardId, k -> new CopyOnWriteArrayList<>())
+					.add(query.toBsonDocument(BsonDocument.class, MongoClientSettings.getDefaultCodecRegistry()));
+			Deque<List<Object>> scripts = cursors.get(shardId);
+			List<Object> script = scripts == null || scripts.isEmpty() ? List.of() : scripts.poll();
+			return new StubCursor(script);
+		}
+	}
+
+	private static RawBsonDocument entry(int time, int inc) {
+		return new RawBsonDocument(new BsonDocument("ts", new BsonTimestamp(time, inc)).append("op",
+				new BsonString("i")), new BsonDocumentCodec());
+	}
+
+	private static BsonDocument tsQuery(String op, BsonTimestamp ts) {
+		return new BsonDocument("ts", new BsonDocument(op, ts));
+	}
+
+	private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (!condition.getAsBoolean()) {
+			assertTrue(System.currentTimeMillis() < deadline, "timed out");
+			Thread.sleep(10);
+		}
+	}
+
+	@Test
+	public void testStartsAtLatestAndResumesAfterDeliveredTs() throws InterruptedException {
+		StubSource source = new StubSource().cursor("shard0", entry(100, 1), entry(101, 1), null,
+				new MongoException(6, "host unreachable"));
+		ShardOplogTailer tailer = new ShardOplogTailer(source, List.of("shard0"));
+		tailer.setRetryDelay(1, 1);
+		List<OplogBatch> batches = new CopyOnWriteArrayList<>();
+		tailer.addConsumer(batches::add);
+		tailer.start();
+		waitFor(() -> source.queries("shard0").size() >= 2);
+		tailer.stop();
+
+		// the latest entry itself is read on a fresh start, only later ones after a delivered batch
+		assertEquals(tsQuery("$gte", LATEST), source.queries("shard0").get(0));
+		assertEquals(tsQuery("$gt", new BsonTimestamp(101, 1)), source.queries("shard0").get(1));
+		assertEquals(1, batches.size());
+		assertEquals(2, batches.get(0).getEntries().size());
+	}
+
+	@Test
+	public void testResumesAfterCheckpoint() throws IOException, InterruptedException {
+		File file = tempDir.resolve("checkpoints.bson").toFile();
+		new OplogCheckpointStore(file).save(Map.of("shard0", new BsonTimestamp(90, 3)));
+		StubSource source = new StubSource();
+		ShardOplogTailer tailer = new ShardOplogTailer(source, List.of("shard0"));
+		tailer.setCheckpointFile(file);
+		tailer.start();
+		waitFor(() -> !source.queries("shard0").isEmpty());
+		tailer.stop();
+
+		assertEquals(tsQuery("$gt", new BsonTimestamp(90, 3)), source.queries("shard0").get(0));
+	}
+
+	@Test
+	public void testRetryBacksOffUntilEntriesAreRead() throws InterruptedException {
+		StubSource source = new StubSource()
+				.cursor("shard0", new MongoException(6, "error 1"))
+				.cursor("shard0", new MongoException(6, "error 2"))
+				.cursor("shard0", new MongoException(6, "error 3"))
+				.cursor("shard0", new MongoException(6, "error 4"))
+				.cursor("shard0", entry(100, 2), new MongoException(6, "error 5"));
+		List<Long> delays = new CopyOnWriteArrayList<>();
+		ShardOplogTailer tailer = new ShardOplogTailer(source, List.of("shard0")) {
+			@Override
+			void backoff(long millis) {
+				delays.add(millis);
+			}
+		};
+		tailer.setRetryDelay(10, 40);
+		tailer.start();
+		waitFor(() -> source.queries("shard0").size() >= 6);
+		tailer.stop();
+
+		// doubled up to the max, and reset once the oplog is readable again
+		assertEquals(List.of(10L, 20L, 40L, 40L, 10L), delays);
+		List<BsonDocument> queries = source.queries("shard0");
+		for (int i = 0; i < 5; i++) {
+			assertEquals(tsQuery("$gte", LATEST), queries.get(i));
+		}
+		assertEquals(tsQuery("$gt", new BsonTimestamp(100, 2)), queries.get(5));
+	}
+
+	@Test
+	public void testCheckpointAdvancesAfterConsumers() throws InterruptedException {
+		StubSource source = new StubSource()
+				.cursor("shard0", entry(100, 1), entry(100, 2), entry(100, 3))
+				.cursor("shard1", entry(200, 1));
+		ShardOplogTailer tailer = new ShardOplogTailer(source, List.of("shard0", "shard1"));
+		tailer.setBatchSize(2);
+		tailer.setCheckpointFile(tempDir.resolve("checkpoints.bson").toFile());
+		List<OplogBatch> first = new CopyOnWriteArrayList<>();
+		List<OplogBatch> second = new CopyOnWriteArrayList<>();
+		tailer.addConsumer(first::add);
+		tailer.addConsumer(second::add);
+		tailer.start();
+		waitFor(() -> second.size() == 3);
+		tailer.stop();
+
+		assertEquals(first.size(), second.size());
+		Map<String, BsonTimestamp> expected = Map.of("shard0", new BsonTimestamp(100, 3), "shard1",
+				new BsonTimestamp(200, 1));
+		assertEquals(expected, tailer.getCheckpoints());
+		assertEquals(expected, new OplogCheckpointStore(tempDir.resolve("checkpoints.bson").toFile()).load());
+	}
+
+	@Test
+	public void testSavedCheckpointStaysBeforePendingEntries() throws InterruptedException {
+		File file = tempDir.resolve("checkpoints.bson").toFile();
+		StubSource source = new StubSource().cursor("shard0", entry(100, 1), entry(100, 2), entry(101, 0));
+		ShardOplogTailer tailer = new ShardOplogTailer(source, List.of("shard0"));
+		tailer.setBatchSize(1);
+		tailer.setCheckpointFile(file);
+		List<OplogBatch> accepted = new CopyOnWriteArrayList<>();
+		Map<String, BsonTimestamp> pending = new ConcurrentHashMap<>();
+		tailer.addConsumer(new ShardOplogTailer.OplogConsumer() {
+			@Override
+			public void accept(OplogBatch batch) {
+				// buffers everything after the first entry
+				if (!accepted.isEmpty()) {
+					pending.putIfAbsent(batch.getShardId(), batch.getEntries().get(0).getTimestamp("ts"));
+				}
+				accepted.add(batch);
+			}
+
+			@Override
+			public BsonTimestamp getPendingTs(String shardId) {
+				return pending.get(shardId);
+			}
+		});
+		tailer.start();
+		waitFor(() -> accepted.size() == 3);
+		tailer.stop();
+
+		assertEquals(new BsonTimestamp(101, 0), tailer.getCheckpoints().get("shard0"));
+		assertEquals(Map.of("shard0", new BsonTimestamp(100, 1)), new OplogCheckpointStore(file).load());
+
+		// once written out, the checkpoint catches up with delivery
+		pending.clear();
+		tailer.saveCheckpoints();
+		assertEquals(Map.of("shard0", new BsonTimestamp(101, 0)), new OplogCheckpointStore(file).load());
+	}
+
+	@Test
+	public void testBefore() {
+		assertEquals(new BsonTimestamp(100, 1), ShardOplogTailer.before(new BsonTimestamp(100, 2)));
+		BsonTimestamp before = ShardOplogTailer.before(new BsonTimestamp(100, 0));
+		assertEquals(99, before.getTime());
+		assertTrue(before.compareTo(new BsonTimestamp(99, Integer.MAX_VALUE)) > 0);
+		assertTrue(before.compareTo(new BsonTimestamp(100, 0)) < 0);
+	}
+
+	@Test
+	public void testConsumerFailureStopsTailersBeforeCheckpoint() throws InterruptedException {
+		StubSource source = new StubSource().cursor("shard0", entry(100, 1), null, entry(100, 2), null,
+				entry(100, 3));
+		ShardOplogTailer tailer = new ShardOplogTailer(source, List.of("shard0"));
+		tailer.setBatchSize(1);
+		RuntimeException error = new IllegalStateException("consumer failed");
+		List<OplogBatch> accepted = Collections.synchronizedList(new ArrayList<>());
+		tailer.addConsumer(batch -> {
+			if (batch.getLastTs().equals(new BsonTimestamp(100, 2))) {
+				throw error;
+			}
+			accepted.add(batch);
+		});
+		tailer.start();
+
+		assertSame(error, assertThrows(IllegalStateException.class, tailer::awaitTermination));
+		// the failed batch is not checkpointed, so it is delivered again on restart
+		assertEquals(new BsonTimestamp(100, 1), tailer.getCheckpoints().get("shard0"));
+		assertEquals(1, accepted.size());
+	}
+
+	@Test
+	public void testCappedPositionLostStopsAllTailers() throws InterruptedException {
+		StubSource source = new StubSource()
+				.cursor("shard0", entry(100, 1), new MongoException(136, "CappedPositionLost"))
+				.cursor("shard1", entry(200, 1));
+		ShardOplogTailer tailer = new ShardOplogTailer(source, List.of("shard0", "shard1"));
+		tailer.setBatchSize(1);
+		tailer.start();
+
+		MongoException e = assertThrows(MongoException.class, tailer::awaitTermination);
+		assertEquals(136, e.getCode());
+		assertSame(e, tailer.getFailure());
+		// shard0 is not re-opened past the lost position
+		assertEquals(1, source.queries("shard0").size());
+		assertEquals(new BsonTimestamp(100, 1), tailer.getCheckpoints().get("shard0"));
+	}
+}
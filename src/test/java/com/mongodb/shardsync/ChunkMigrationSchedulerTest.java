@@ -0,0 +1,114 @@
+package com.mongodb.shardsync;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.junit.jupiter.api.Test;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.ServerAddress;
+
+public class ChunkMigrationSchedulerTest {
+
+	private static MongoCommandException commandException(int code) {
+		BsonDocument response = new BsonDocument("ok", new BsonInt32(0))
+				.append("code", new BsonInt32(code));
+		return new MongoCommandException(response, new ServerAddress());
+	}
+
+	private static BsonDocument bound(int x) {
+		return new BsonDocument("x", new BsonInt32(x));
+	}
+
+	@Test
+	public void testOneMigrationPerShard() {
+		Set<String> busy = ConcurrentHashMap.newKeySet();
+		AtomicInteger conflicts = new AtomicInteger();
+		AtomicInteger maxActive = new AtomicInteger();
+		AtomicInteger active = new AtomicInteger();
+
+		ChunkMigrationScheduler scheduler = new ChunkMigrationScheduler(m -> {
+			if (!busy.add(m.getFromShard()) | !busy.add(m.getToShard())) {
+				conflicts.incrementAndGet();
+			}
+			maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+			try {
+				Thread.sleep(20);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			active.decrementAndGet();
+			busy.remove(m.getFromShard());
+			busy.remove(m.getToShard());
+			return MoveChunkResult.success();
+		}, 8);
+
+		for (int i = 0; i < 40; i++) {
+			scheduler.add("db.c", bound(i), bound(i + 1), "shard" + (i % 4), "shard" + (4 + i % 4));
+		}
+		assertEquals(0, scheduler.run());
+		assertEquals(0, conflicts.get());
+		assertTrue(maxActive.get() > 1 && maxActive.get() <= 4, "max active " + maxActive.get());
+	}
+
+	@Test
+	public void testRetryTransientOnly() {
+		Map<Integer, AtomicInteger> attempts = new ConcurrentHashMap<>();
+		ChunkMigrationScheduler scheduler = new ChunkMigrationScheduler(m -> {
+			int x = m.getMin().getInt32("x").getValue();
+			int attempt = attempts.computeIfAbsent(x, k -> new AtomicInteger()).incrementAndGet();
+			if (x == 0 && attempt < 3) {
+				// ConflictingOperationInProgress
+				return MoveChunkResult.failure(commandException(117));
+			} else if (x == 1) {
+				// ChunkRangeCleanupPending is not treated as transient here
+				return MoveChunkResult.failure(commandException(200));
+			}
+			return MoveChunkResult.success();
+		}, 2, 5, 1);
+
+		scheduler.add("db.c", bound(0), bound(1), "a", "b");
+		scheduler.add("db.c", bound(1), bound(2), "c", "d");
+		assertEquals(1, scheduler.run());
+		assertEquals(3, attempts.get(0).get());
+		assertEquals(1, attempts.get(1).get());
+		assertEquals(1, scheduler.getFailed().size());
+	}
+
+	@Test
+	public void testRetriesExhausted() {
+		ChunkMigrationScheduler scheduler = new ChunkMigrationScheduler(
+				m -> MoveChunkResult.failure(commandException(46)), 1, 2, 1);
+		scheduler.add("db.c", bound(0), bound(1), "a", "b");
+		assertEquals(1, scheduler.run());
+		assertEquals(3, scheduler.getFailed().get(0).getAttempts());
+	}
+
+	@Test
+	public void testStartsInAddedOrder() {
+		List<Integer> started = new ArrayList<>();
+		ChunkMigrationScheduler scheduler = new ChunkMigrationScheduler(m -> {
+			started.add(m.getMin().getInt32("x").getValue());
+			return MoveChunkResult.success();
+		}, 1);
+
+		List<Integer> expected = new ArrayList<>();
+		for (int i = 0; i < 30; i++) {
+			scheduler.add("db.c", bound(i), bound(i + 1), "shard" + (i % 3), "shard" + (3 + i % 5));
+			expected.add(i);
+		}
+		assertEquals(30, scheduler.size());
+		assertEquals(0, scheduler.run());
+		assertEquals(expected, started);
+		assertEquals(0, scheduler.size());
+	}
+}
@@ -0,0 +1,95 @@
+package com.mongodb.shardsync;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonMaxKey;
+import org.bson.BsonMinKey;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.junit.jupiter.api.Test;
+
+public class ChunkRangeCounterTest {
+
+	private static BsonDocument x(BsonValue value) {
+		return new BsonDocument("x", value);
+	}
+
+	private static BsonDocument x(int value) {
+		return x(new BsonInt32(value));
+	}
+
+	private static RawBsonDocument chunk(BsonDocument min, BsonDocument max, String shard) {
+		BsonDocument doc = new BsonDocument("ns", new BsonString("db.c"))
+				.append("min", min)
+				.append("max", max)
+				.append("shard", new BsonString(shard));
+		return new RawBsonDocument(doc, new BsonDocumentCodec());
+	}
+
+	private static int bound(BsonDocument bound, int unbounded) {
+		BsonValue v = bound.get("x");
+		return v.isInt32() ? v.asInt32().getValue() : unbounded;
+	}
+
+	/**
+	 * Counts the values in [min, max) held by the given shard.
+	 */
+	private static ChunkRangeCounter.RangeCounter counter(Map<String, NavigableSet<Integer>> shards) {
+		return (shard, ns, min, max) -> shards.get(shard)
+				.subSet(bound(min, Integer.MIN_VALUE), true, bound(max, Integer.MAX_VALUE), false).size();
+	}
+
+	private static NavigableSet<Integer> values(int from, int to) {
+		NavigableSet<Integer> values = new TreeSet<>();
+		for (int i = from; i < to; i++) {
+			values.add(i);
+		}
+		return values;
+	}
+
+	@Test
+	public void testRangesSplitAtDestBoundaries() {
+		// source: [min, 50) on sh0, [50, max) on sh1
+		Map<String, NavigableSet<Integer>> source = Map.of("sh0", values(0, 50), "sh1", values(50, 100));
+
+		// dest: [min, 30) on d0, [30, 70) on d1, [70, max) on d0, with 60 missing and an orphan 10 on d1
+		NavigableSet<Integer> d0 = values(0, 30);
+		d0.addAll(values(70, 100));
+		NavigableSet<Integer> d1 = values(30, 70);
+		d1.remove(60);
+		d1.add(10);
+		Map<String, NavigableSet<Integer>> dest = Map.of("d0", d0, "d1", d1);
+
+		ChunkRoutingTable destRoutes = new ChunkRoutingTable();
+		destRoutes.putNamespace("db.c", List.of(
+				chunk(x(new BsonMinKey()), x(30), "d0"),
+				chunk(x(30), x(70), "d1"),
+				chunk(x(70), x(new BsonMaxKey()), "d0")), true);
+
+		ChunkRangeCounter rangeCounter = new ChunkRangeCounter(counter(source), counter(dest), destRoutes, 2);
+		rangeCounter.add("db.c", x(new BsonMinKey()), x(50), "sh0");
+		rangeCounter.add("db.c", x(50), x(new BsonMaxKey()), "sh1");
+		rangeCounter.add("db.other", x(new BsonMinKey()), x(new BsonMaxKey()), "sh0");
+
+		List<ChunkRangeCounter.RangeCount> mismatches = rangeCounter.run();
+		assertEquals(2, mismatches.size());
+
+		ChunkRangeCounter.RangeCount upper = mismatches.get(0);
+		assertEquals(x(50), upper.getMin());
+		assertEquals(50, upper.getSourceCount());
+		assertEquals(49, upper.getDestCount());
+
+		assertEquals("db.other", mismatches.get(1).getNs());
+		assertEquals(100, rangeCounter.getSourceTotal());
+		assertEquals(99, rangeCounter.getDestTotal());
+	}
+}
@@ -0,0 +1,92 @@
+package com.mongodb.shardsync;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.List;
+
+import org.bson.BsonDocument;
+import org.bson.BsonDouble;
+import org.bson.BsonInt32;
+import org.bson.BsonInt64;
+import org.bson.BsonMaxKey;
+import org.bson.BsonMinKey;
+import org.bson.BsonNull;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.junit.jupiter.api.Test;
+
+import com.mongodb.util.bson.BsonValueWrapper;
+
+public class ChunkRoutingTableTest {
+
+	private static RawBsonDocument chunk(BsonDocument min, BsonDocument max, String shard) {
+		BsonDocument doc = new BsonDocument("ns", new BsonString("db.c"))
+				.append("min", min)
+				.append("max", max)
+				.append("shard", new BsonString(shard));
+		return new RawBsonDocument(doc, new BsonDocumentCodec());
+	}
+
+	private static BsonDocument x(BsonValue value) {
+		return new BsonDocument("x", value);
+	}
+
+	private static BsonValueWrapper key(int value) {
+		return new BsonValueWrapper(new BsonInt32(value));
+	}
+
+	@Test
+	public void testSingleFieldKey() {
+		ChunkRoutingTable table = new ChunkRoutingTable();
+		table.putNamespace("db.c", List.of(
+				chunk(x(new BsonMinKey()), x(new BsonInt32(0)), "sh0"),
+				chunk(x(new BsonInt32(0)), x(new BsonInt32(100)), "sh1"),
+				chunk(x(new BsonInt32(100)), x(new BsonMaxKey()), "sh0")), true);
+
+		assertEquals(3, table.getChunkCount());
+		assertEquals("sh0", table.getShard("db.c", key(-5)));
+		assertEquals("sh1", table.getShard("db.c", key(0)));
+		assertEquals("sh1", table.getShard("db.c", key(99)));
+		assertEquals("sh0", table.getShard("db.c", key(100)));
+		assertNull(table.getShard("db.other", key(1)));
+
+		int i = table.findChunk("db.c", key(50));
+		assertEquals(1, i);
+		assertEquals(x(new BsonInt32(0)), table.getMin("db.c", i));
+		assertEquals(x(new BsonInt32(100)), table.getMax("db.c", i));
+		assertEquals(x(new BsonMaxKey()), table.getMax("db.c", 2));
+	}
+
+	@Test
+	public void testCompoundKey() {
+		BsonDocument mid = new BsonDocument("a", new BsonInt32(5)).append("b", new BsonInt32(5));
+		ChunkRoutingTable table = new ChunkRoutingTable();
+		table.putNamespace("db.c", List.of(
+				chunk(new BsonDocument("a", new BsonMinKey()).append("b", new BsonMinKey()), mid, "sh0"),
+				chunk(mid, new BsonDocument("a", new BsonMaxKey()).append("b", new BsonMaxKey()), "sh1")), false);
+
+		BsonDocument below = new BsonDocument("a", new BsonInt32(5)).append("b", new BsonInt32(4));
+		BsonDocument above = new BsonDocument("a", new BsonInt32(5)).append("b", new BsonInt32(6));
+		assertEquals("sh0", table.getShard("db.c", new BsonValueWrapper(below)));
+		assertEquals("sh1", table.getShard("db.c", new BsonValueWrapper(mid)));
+		assertEquals("sh1", table.getShard("db.c", new BsonValueWrapper(above)));
+	}
+
+	@Test
+	public void testMixedTypeBoundaries() {
+		ChunkRoutingTable table = new ChunkRoutingTable();
+		table.putNamespace("db.c", List.of(
+				chunk(x(new BsonMinKey()), x(new BsonInt32(0)), "sh0"),
+				chunk(x(new BsonInt32(0)), x(new BsonString("m")), "sh1"),
+				chunk(x(new BsonString("m")), x(new BsonMaxKey()), "sh2")), true);
+
+		assertEquals("sh1", table.getShard("db.c", new BsonValueWrapper(new BsonInt64(5))));
+		assertEquals("sh1", table.getShard("db.c", new BsonValueWrapper(new BsonString("a"))));
+		assertEquals("sh2", table.getShard("db.c", new BsonValueWrapper(new BsonString("z"))));
+		assertEquals("sh0", table.getShard("db.c", new BsonValueWrapper(new BsonNull())));
+		assertEquals(1, table.findChunk("db.c", x(new BsonDouble(0.0))));
+	}
+}
@@ -0,0 +1,55 @@
+package com.mongodb.shardsync;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.junit.jupiter.api.Test;
+
+public class ChunkSplitExecutorTest {
+
+	@Test
+	public void testLanesRunInOrderAndConcurrently() {
+		Map<String, List<Integer>> splitsByNs = new ConcurrentHashMap<>();
+		Set<String> activeNs = ConcurrentHashMap.newKeySet();
+		AtomicInteger laneConflicts = new AtomicInteger();
+		AtomicInteger maxActive = new AtomicInteger();
+
+		ChunkSplitExecutor executor = new ChunkSplitExecutor((ns, middle) -> {
+			if (!activeNs.add(ns)) {
+				laneConflicts.incrementAndGet();
+			}
+			maxActive.accumulateAndGet(activeNs.size(), Math::max);
+			try {
+				Thread.sleep(5);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			splitsByNs.computeIfAbsent(ns, k -> new CopyOnWriteArrayList<>()).add(middle.getInt32("x").getValue());
+			activeNs.remove(ns);
+			// every 10th split fails
+			return middle.getInt32("x").getValue() % 10 != 9;
+		}, 3);
+
+		for (int n = 0; n < 5; n++) {
+			for (int x = 0; x < 10; x++) {
+				executor.add("db.c" + n, "db.c" + n, new BsonDocument("x", new BsonInt32(x)));
+			}
+		}
+		assertEquals(50, executor.size());
+		assertEquals(5, executor.run(done -> {}));
+		assertEquals(0, laneConflicts.get());
+		assertTrue(maxActive.get() > 1 && maxActive.get() <= 3, "max active " + maxActive.get());
+		for (List<Integer> splits : splitsByNs.values()) {
+			assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), splits);
+		}
+	}
+}
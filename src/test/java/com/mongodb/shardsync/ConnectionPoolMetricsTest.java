@@ -0,0 +1,59 @@
+package com.mongodb.shardsync;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.mongodb.ServerAddress;
+import com.mongodb.connection.ClusterId;
+import com.mongodb.connection.ConnectionId;
+import com.mongodb.connection.ServerId;
+import com.mongodb.event.ConnectionCheckOutFailedEvent;
+import com.mongodb.event.ConnectionCheckedOutEvent;
+import com.mongodb.event.ConnectionClosedEvent;
+import com.mongodb.event.ConnectionCreatedEvent;
+import com.mongodb.event.ConnectionReadyEvent;
+
+public class ConnectionPoolMetricsTest {
+
+	@Test
+	public void testCountsAndReadyConnections() {
+		ClusterId clusterId = new ClusterId();
+		ServerAddress a = new ServerAddress("a", 27017);
+		ServerAddress b = new ServerAddress("b", 27017);
+		ServerId serverA = new ServerId(clusterId, a);
+		ServerId serverB = new ServerId(clusterId, b);
+		ConnectionPoolMetrics metrics = new ConnectionPoolMetrics("sh0");
+
+		ConnectionId a1 = new ConnectionId(serverA);
+		ConnectionId a2 = new ConnectionId(serverA);
+		ConnectionId b1 = new ConnectionId(serverB);
+		for (ConnectionId id : List.of(a1, a2, b1)) {
+			metrics.connectionCreated(new ConnectionCreatedEvent(id));
+			metrics.connectionReady(new ConnectionReadyEvent(id, 0));
+		}
+		assertEquals(2, metrics.getReadyConnections(a));
+		assertEquals(1, metrics.getReadyConnections(b));
+		assertTrue(metrics.awaitReadyConnections(List.of(a, b), 1, 0));
+		assertFalse(metrics.awaitReadyConnections(List.of(a, b), 2, 100));
+
+		metrics.connectionClosed(new ConnectionClosedEvent(a2, ConnectionClosedEvent.Reason.IDLE));
+		assertEquals(1, metrics.getReadyConnections(a));
+		assertEquals(2, metrics.getOpenConnections());
+		assertEquals(3, metrics.getConnectionsCreated());
+
+		metrics.connectionCheckedOut(new ConnectionCheckedOutEvent(a1, 1, TimeUnit.MILLISECONDS.toNanos(2)));
+		metrics.connectionCheckedOut(new ConnectionCheckedOutEvent(b1, 2, TimeUnit.MILLISECONDS.toNanos(4)));
+		metrics.connectionCheckOutFailed(new ConnectionCheckOutFailedEvent(serverA, 3,
+				ConnectionCheckOutFailedEvent.Reason.TIMEOUT, TimeUnit.MILLISECONDS.toNanos(12)));
+		assertEquals(2, metrics.getCheckouts());
+		assertEquals(1, metrics.getCheckoutFailures());
+		assertEquals(6.0, metrics.getMeanWaitMillis(), 0.01);
+		assertEquals(12.0, metrics.getMaxWaitMillis(), 0.01);
+	}
+}
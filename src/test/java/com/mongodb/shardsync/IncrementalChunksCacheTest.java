@@ -0,0 +1,383 @@
+package com.mongodb.shardsync;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonMaxKey;
+import org.bson.BsonMinKey;
+import org.bson.BsonObjectId;
+import org.bson.BsonString;
+import org.bson.BsonTimestamp;
+import org.bson.BsonValue;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.mongodb.model.ChunkKey;
+import com.mongodb.util.bson.CanonicalBsonComparator;
+
+public class IncrementalChunksCacheTest {
+
+	private static final BsonDocument CHUNK_QUERY = new BsonDocument();
+
+	@TempDir
+	Path tempDir;
+
+	/**
+	 * config.chunks (keyed by ns, as before 5.0) and config.collections, answering the
+	 * query shapes the cache sends. Every chunk change gets a new lastmod.
+	 */
+	private static class FakeConfig implements IncrementalChunksCache.ConfigSource {
+		private final List<BsonDocument> chunks = new ArrayList<>();
+		private final Map<String, BsonValue> epochs = new HashMap<>();
+		private int time = 1;
+		private int fullLoads;
+
+		FakeConfig put(String ns, BsonValue min, BsonValue max, String shard) {
+			remove(ns, min);
+			epochs.putIfAbsent(ns, new BsonObjectId());
+			BsonDocument chunk = new BsonDocument();
+			chunk.putAll(chunk(ns, min, max, shard));
+			chunks.add(chunk.append("lastmod", new BsonTimestamp(time++, 0)));
+			return this;
+		}
+
+		void remove(String ns, BsonValue min) {
+			chunks.removeIf(c -> c.getString("ns").getValue().equals(ns) && c.getDocument("min").get("x").equals(min));
+		}
+
+		void drop(String ns) {
+			chunks.removeIf(c -> c.getString("ns").getValue().equals(ns));
+			epochs.remove(ns);
+		}
+
+		@Override
+		public String getName() {
+			return "fake";
+		}
+
+		@Override
+		public boolean isVersion5OrLater() {
+			return false;
+		}
+
+		@Override
+		public Iterable<RawBsonDocument> findChunks(BsonDocument query) {
+			if (query.equals(CHUNK_QUERY)) {
+				fullLoads++;
+			}
+			List<BsonDocument> matched = new ArrayList<>();
+			for (BsonDocument chunk : chunks) {
+				if (matches(chunk, query)) {
+					matched.add(chunk);
+				}
+			}
+			matched.sort((a, b) -> {
+				int cmp = a.getString("ns").getValue().compareTo(b.getString("ns").getValue());
+				return cmp != 0 ? cmp : CanonicalBsonComparator.INSTANCE.compare(a.get("min"), b.get("min"));
+			});
+			List<RawBsonDocument> output = new ArrayList<>();
+			for (BsonDocument chunk : matched) {
+				BsonDocument projected = chunk.clone();
+				projected.remove("lastmod");
+				output.add(new RawBsonDocument(projected, new BsonDocumentCodec()));
+			}
+			return output;
+		}
+
+		@Override
+		public Iterable<RawBsonDocument> aggregateChunks(List<BsonDocument> pipeline) {
+			BsonDocument match = pipeline.get(0).getDocument("$match");
+			Map<String, BsonTimestamp> lastmods = new HashMap<>();
+			for (BsonDocument chunk : chunks) {
+				if (matches(chunk, match)) {
+					lastmods.merge(chunk.getString("ns").getValue(), chunk.getTimestamp("lastmod"),
+							(a, b) -> a.compareTo(b) >= 0 ? a : b);
+				}
+			}
+			List<RawBsonDocument> output = new ArrayList<>();
+			lastmods.forEach((ns, lastmod) -> output.add(new RawBsonDocument(
+					new BsonDocument("_id", new BsonString(ns)).append("lastmod", lastmod), new BsonDocumentCodec())));
+			return output;
+		}
+
+		@Override
+		public long countChunks(BsonDocument query) {
+			return chunks.stream().filter(c -> matches(c, query)).count();
+		}
+
+		@Override
+		public Iterable<RawBsonDocument> findCollections(BsonDocument query, BsonDocument projection) {
+			List<RawBsonDocument> output = new ArrayList<>();
+			for (BsonValue id : query.getDocument("_id").getArray("$in")) {
+				BsonValue epoch = epochs.get(id.asString().getValue());
+				if (epoch != null) {
+					output.add(new RawBsonDocument(new BsonDocument("_id", id).append("lastmodEpoch", epoch),
+							new BsonDocumentCodec()));
+				}
+			}
+			return output;
+		}
+
+		@Override
+		public Map<UUID, String> getCollectionsUuidMap() {
+			return Map.of();
+		}
+
+		@Override
+		public void refreshCollectionsMap() {
+		}
+
+		private static boolean matches(BsonDocument doc, BsonDocument query) {
+			for (Map.Entry<String, BsonValue> e : query.entrySet()) {
+				if (e.getKey().equals("$and")) {
+					if (!e.getValue().asArray().stream().allMatch(q -> matches(doc, q.asDocument()))) {
+						return false;
+					}
+				} else if (e.getKey().equals("$or")) {
+					if (e.getValue().asArray().stream().noneMatch(q -> matches(doc, q.asDocument()))) {
+						return false;
+					}
+				} else if (e.getValue().isDocument() && e.getValue().asDocument().containsKey("$gt")) {
+					BsonTimestamp value = doc.getTimestamp(e.getKey());
+					BsonDocument range = e.getValue().asDocument();
+					if (value.compareTo(range.getTimestamp("$gt")) <= 0
+							|| value.compareTo(range.getTimestamp("$lte")) > 0) {
+						return false;
+					}
+				} else if (!e.getValue().equals(doc.get(e.getKey()))) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	private static FakeConfig twoCollections() {
+		return new FakeConfig()
+				.put("db.a", new BsonMinKey(), new BsonInt32(0), "sh0")
+				.put("db.a", new BsonInt32(0), new BsonInt32(10), "sh0")
+				.put("db.a", new BsonInt32(10), new BsonMaxKey(), "sh1")
+				.put("db.b", new BsonMinKey(), new BsonInt32(0), "sh0")
+				.put("db.b", new BsonInt32(0), new BsonMaxKey(), "sh1");
+	}
+
+	private static List<String> fullLoad(FakeConfig config) {
+		Map<ChunkKey, RawBsonDocument> cache = new LinkedHashMap<>();
+		new IncrementalChunksCache(config, CHUNK_QUERY, cache).load();
+		return describe(cache);
+	}
+
+	private static List<String> restore(FakeConfig config, File file) {
+		Map<ChunkKey, RawBsonDocument> cache = new LinkedHashMap<>();
+		assertTrue(new IncrementalChunksCache(config, CHUNK_QUERY, cache).restoreSnapshot(file));
+		return describe(cache);
+	}
+
+	private static RawBsonDocument chunk(String ns, BsonValue min, BsonValue max, String shard) {
+		BsonDocument doc = new BsonDocument("ns", new BsonString(ns))
+				.append("min", new BsonDocument("x", min))
+				.append("max", new BsonDocument("x", max))
+				.append("shard", new BsonString(shard));
+		return new RawBsonDocument(doc, new BsonDocumentCodec());
+	}
+
+	private static List<String> describe(Map<ChunkKey, RawBsonDocument> cache) {
+		List<String> output = new ArrayList<>();
+		for (RawBsonDocument chunk : cache.values()) {
+			output.add(chunk.getString("ns").getValue() + ":" + chunk.getDocument("min").get("x") + ":"
+					+ chunk.getString("shard").getValue());
+		}
+		return output;
+	}
+
+	@Test
+	public void testVersionsPipelineFollowsTheIndex() {
+		BsonDocument query = BsonDocument.parse("{ns: {$ne: 'config.system.sessions'}}");
+		List<BsonDocument> pipeline = IncrementalChunksCache.versionsPipeline(query, "uuid");
+
+		// both keys descending, the { uuid: 1, lastmod: 1 } index read backwards
+		assertEquals(Arrays.asList(new BsonDocument("$match", query),
+				BsonDocument.parse("{$sort: {uuid: -1, lastmod: -1}}"),
+				BsonDocument.parse("{$group: {_id: '$uuid', lastmod: {$first: '$lastmod'}}}")), pipeline);
+		assertEquals(Arrays.asList("uuid", "lastmod"),
+				new ArrayList<>(pipeline.get(1).getDocument("$sort").keySet()));
+	}
+
+	@Test
+	public void testSplitAndMoveDeltas() {
+		Map<ChunkKey, RawBsonDocument> cache = new LinkedHashMap<>();
+		IncrementalChunksCache incremental = new IncrementalChunksCache((ShardClient) null, new BsonDocument(), cache);
+		incremental.applyChunk(chunk("db.a", new BsonMinKey(), new BsonInt32(0), "sh0"));
+		incremental.applyChunk(chunk("db.a", new BsonInt32(0), new BsonInt32(10), "sh0"));
+		incremental.applyChunk(chunk("db.a", new BsonInt32(10), new BsonMaxKey(), "sh0"));
+		incremental.applyChunk(chunk("db.b", new BsonMinKey(), new BsonMaxKey(), "sh1"));
+
+		// split [0, 10) at 5, then move [5, 10)
+		incremental.applyChunk(chunk("db.a", new BsonInt32(5), new BsonInt32(10), "sh0"));
+		incremental.applyChunk(chunk("db.a", new BsonInt32(0), new BsonInt32(5), "sh0"));
+		incremental.applyChunk(chunk("db.a", new BsonInt32(5), new BsonInt32(10), "sh1"));
+		incremental.resort(Set.of("db.a"));
+
+		assertEquals(List.of("db.a:BsonMinKey:sh0", "db.a:BsonInt32{value=0}:sh0", "db.a:BsonInt32{value=5}:sh1",
+				"db.a:BsonInt32{value=10}:sh0", "db.b:BsonMinKey:sh1"), describe(cache));
+	}
+
+	@Test
+	public void testSnapshotRoundTripThenRefresh() {
+		FakeConfig config = twoCollections();
+		Map<ChunkKey, RawBsonDocument> cache = new LinkedHashMap<>();
+		IncrementalChunksCache written = new IncrementalChunksCache(config, CHUNK_QUERY, cache);
+		written.load();
+		File file = tempDir.resolve("chunks.bson").toFile();
+		written.writeSnapshot(file);
+
+		// split and move in db.a, db.b dropped, db.c created
+		config.put("db.a", new BsonInt32(0), new BsonInt32(5), "sh0");
+		config.put("db.a", new BsonInt32(5), new BsonInt32(10), "sh1");
+		config.drop("db.b");
+		config.put("db.c", new BsonMinKey(), new BsonMaxKey(), "sh1");
+
+		Map<ChunkKey, RawBsonDocument> restoredCache = new LinkedHashMap<>();
+		IncrementalChunksCache restored = new IncrementalChunksCache(config, CHUNK_QUERY, restoredCache);
+		config.fullLoads = 0;
+		assertTrue(restored.restoreSnapshot(file));
+		assertEquals(describe(cache), describe(restoredCache));
+		assertTrue(restored.refresh());
+		assertEquals(0, config.fullLoads);
+		assertEquals(fullLoad(config), describe(restoredCache));
+		assertFalse(restored.refresh());
+	}
+
+	@Test
+	public void testStaleSnapshotIsReconciled() {
+		FakeConfig config = twoCollections();
+		IncrementalChunksCache written = new IncrementalChunksCache(config, CHUNK_QUERY, new LinkedHashMap<>());
+		written.load();
+		File file = tempDir.resolve("chunks.bson").toFile();
+		written.writeSnapshot(file);
+
+		// db.a dropped and recreated with a new epoch, db.b merged
+		config.drop("db.a");
+		config.put("db.a", new BsonMinKey(), new BsonInt32(100), "sh1");
+		config.put("db.a", new BsonInt32(100), new BsonMaxKey(), "sh0");
+		config.remove("db.b", new BsonInt32(0));
+		config.put("db.b", new BsonMinKey(), new BsonMaxKey(), "sh0");
+
+		Map<ChunkKey, RawBsonDocument> cache = new LinkedHashMap<>();
+		IncrementalChunksCache restored = new IncrementalChunksCache(config, CHUNK_QUERY, cache);
+		assertTrue(restored.restoreSnapshot(file));
+		assertTrue(restored.refresh());
+		assertEquals(fullLoad(config), describe(cache));
+	}
+
+	@Test
+	public void testSnapshotAppendsChangedNamespaces() throws IOException {
+		FakeConfig config = twoCollections();
+		Map<ChunkKey, RawBsonDocument> cache = new LinkedHashMap<>();
+		IncrementalChunksCache incremental = new IncrementalChunksCache(config, CHUNK_QUERY, cache);
+		incremental.load();
+		File file = tempDir.resolve("chunks.bson").toFile();
+		incremental.writeSnapshot(file);
+		byte[] base = Files.readAllBytes(file.toPath());
+
+		config.put("db.a", new BsonInt32(0), new BsonInt32(5), "sh0");
+		config.put("db.a", new BsonInt32(5), new BsonInt32(10), "sh0");
+		assertTrue(incremental.refresh());
+		incremental.writeSnapshot(file);
+		byte[] appended = Files.readAllBytes(file.toPath());
+		assertTrue(appended.length > base.length);
+		assertArrayEquals(base, Arrays.copyOf(appended, base.length));
+		assertEquals(describe(cache), restore(config, file));
+
+		config.drop("db.b");
+		assertTrue(incremental.refresh());
+		incremental.writeSnapshot(file);
+		assertEquals(describe(cache), restore(config, file));
+
+		// rewritten in full once the journal is larger than the full copy
+		long length = file.length();
+		for (int i = 0; i < 10 && file.length() >= length; i++) {
+			length = file.length();
+			config.put("db.a", new BsonInt32(10), new BsonMaxKey(), i % 2 == 0 ? "sh0" : "sh1");
+			assertTrue(incremental.refresh());
+			incremental.writeSnapshot(file);
+		}
+		assertTrue(file.length() < length);
+		assertEquals(describe(cache), restore(config, file));
+	}
+
+	@Test
+	public void testTruncatedJournalRecordIsDropped() throws IOException {
+		FakeConfig config = twoCollections();
+		Map<ChunkKey, RawBsonDocument> cache = new LinkedHashMap<>();
+		IncrementalChunksCache incremental = new IncrementalChunksCache(config, CHUNK_QUERY, cache);
+		incremental.load();
+		File file = tempDir.resolve("chunks.bson").toFile();
+		incremental.writeSnapshot(file);
+		List<String> before = describe(cache);
+
+		config.put("db.a", new BsonInt32(0), new BsonInt32(5), "sh1");
+		assertTrue(incremental.refresh());
+		incremental.writeSnapshot(file);
+		byte[] bytes = Files.readAllBytes(file.toPath());
+		Files.write(file.toPath(), Arrays.copyOf(bytes, bytes.length - 3));
+
+		// the cut record is dropped, leaving db.a at the version of the full copy
+		Map<ChunkKey, RawBsonDocument> restoredCache = new LinkedHashMap<>();
+		IncrementalChunksCache restored = new IncrementalChunksCache(config, CHUNK_QUERY, restoredCache);
+		assertTrue(restored.restoreSnapshot(file));
+		assertEquals(before, describe(restoredCache));
+		assertTrue(restored.refresh());
+		assertEquals(fullLoad(config), describe(restoredCache));
+
+		// nothing is appended after the cut record, the next write replaces the file
+		restored.writeSnapshot(file);
+		assertEquals(describe(restoredCache), restore(config, file));
+	}
+
+	@Test
+	public void testUnusableSnapshotLeavesCacheUnchanged() throws IOException {
+		FakeConfig config = twoCollections();
+		Map<ChunkKey, RawBsonDocument> cache = new LinkedHashMap<>();
+		IncrementalChunksCache incremental = new IncrementalChunksCache(config, CHUNK_QUERY, cache);
+		incremental.load();
+		List<String> loaded = describe(cache);
+		File file = tempDir.resolve("chunks.bson").toFile();
+
+		assertFalse(incremental.restoreSnapshot(file));
+
+		Files.write(file.toPath(), new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+		assertFalse(incremental.restoreSnapshot(file));
+
+		new IncrementalChunksCache(config, new BsonDocument("ns", new BsonString("db.a")), new LinkedHashMap<>())
+				.writeSnapshot(file);
+		assertFalse(incremental.restoreSnapshot(file));
+
+		// cut inside the full copy
+		incremental.writeSnapshot(file);
+		byte[] bytes = Files.readAllBytes(file.toPath());
+		Files.write(file.toPath(), Arrays.copyOf(bytes, bytes.length - 10));
+		assertFalse(new IncrementalChunksCache(config, CHUNK_QUERY, new LinkedHashMap<>()).restoreSnapshot(file));
+
+		assertEquals(loaded, describe(cache));
+	}
+}
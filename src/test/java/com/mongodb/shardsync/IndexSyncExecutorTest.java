@@ -0,0 +1,101 @@
+package com.mongodb.shardsync;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bson.RawBsonDocument;
+import org.junit.jupiter.api.Test;
+
+import com.mongodb.model.IndexSpec;
+import com.mongodb.model.Namespace;
+
+public class IndexSyncExecutorTest {
+
+	@Test
+	public void testPerShardConcurrency() {
+		Map<String, AtomicInteger> activeByShard = new ConcurrentHashMap<>();
+		Map<String, AtomicInteger> maxByShard = new ConcurrentHashMap<>();
+		AtomicInteger active = new AtomicInteger();
+		AtomicInteger maxActive = new AtomicInteger();
+
+		IndexSyncExecutor executor = new IndexSyncExecutor((ns, specs) -> {
+			String shard = ns.getDatabaseName();
+			int shardActive = activeByShard.computeIfAbsent(shard, k -> new AtomicInteger()).incrementAndGet();
+			maxByShard.computeIfAbsent(shard, k -> new AtomicInteger()).accumulateAndGet(shardActive, Math::max);
+			maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+			try {
+				Thread.sleep(5);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			active.decrementAndGet();
+			activeByShard.get(shard).decrementAndGet();
+			return ns.getCollectionName().equals("c7") ? -1 : 1;
+		}, 5, 2);
+
+		for (int s = 0; s < 3; s++) {
+			for (int c = 0; c < 10; c++) {
+				// one database per shard, so the builder can tell which shard it is on
+				executor.add("sh" + s, new Namespace("sh" + s, "c" + c), Collections.emptySet());
+			}
+		}
+		assertEquals(30, executor.size());
+
+		List<IndexSyncExecutor.IndexBuild> builds = executor.run();
+		assertEquals(30, builds.size());
+		int created = 0;
+		int failed = 0;
+		for (IndexSyncExecutor.IndexBuild build : builds) {
+			created += build.getCreated();
+			if (!build.isSuccess()) {
+				failed++;
+				assertFalse(build.getCreated() > 0);
+			}
+		}
+		assertEquals(27, created);
+		assertEquals(3, failed);
+		for (AtomicInteger max : maxByShard.values()) {
+			assertTrue(max.get() <= 2, "max per shard " + max.get());
+		}
+		assertTrue(maxActive.get() > 2 && maxActive.get() <= 5, "max active " + maxActive.get());
+	}
+
+	private static IndexSpec spec(Namespace ns, String json) {
+		return IndexSpec.fromDocument(RawBsonDocument.parse(json), ns);
+	}
+
+	@Test
+	public void testMissingIndexesComparesKeyAndOptions() {
+		Namespace ns = new Namespace("db", "c");
+		IndexSpec a = spec(ns, "{key: {a: 1}, name: 'a_1'}");
+		IndexSpec b = spec(ns, "{key: {b: 1}, name: 'b_1', unique: true}");
+		IndexSpec c = spec(ns, "{key: {c: 1}, name: 'c_1'}");
+		IndexSpec ttl = spec(ns, "{key: {t: 1}, name: 't_1', expireAfterSeconds: 3600}");
+		IndexSpec d = spec(ns, "{key: {d: 1}, name: 'd_1'}");
+
+		Set<IndexSpec> dest = Set.of(
+				spec(ns, "{key: {a: NumberLong(1)}, name: 'a_renamed'}"),
+				spec(ns, "{key: {b: 1}, name: 'b_1'}"),
+				spec(ns, "{key: {x: 1}, name: 'c_1'}"),
+				spec(ns, "{key: {t: 1}, name: 't_1', expireAfterSeconds: 1576800000}"));
+
+		List<String> mismatches = new ArrayList<>();
+		assertEquals(Set.of(d), IndexSyncExecutor.missingIndexes(Set.of(a, b, c, ttl, d), dest, true, mismatches));
+		// b exists without unique, c_1 is a different key
+		assertEquals(2, mismatches.size());
+
+		mismatches.clear();
+		assertEquals(Set.of(d), IndexSyncExecutor.missingIndexes(Set.of(a, b, c, ttl, d), dest, false, mismatches));
+		// the TTL differs too when it was not extended
+		assertEquals(3, mismatches.size());
+	}
+}
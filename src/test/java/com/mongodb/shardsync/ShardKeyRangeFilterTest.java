@@ -0,0 +1,191 @@
+package com.mongodb.shardsync;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.bson.BsonBoolean;
+import org.bson.BsonDocument;
+import org.bson.BsonDouble;
+import org.bson.BsonInt32;
+import org.bson.BsonInt64;
+import org.bson.BsonMaxKey;
+import org.bson.BsonMinKey;
+import org.bson.BsonNull;
+import org.bson.BsonObjectId;
+import org.bson.BsonString;
+import org.bson.BsonType;
+import org.bson.BsonValue;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+
+import com.mongodb.util.bson.CanonicalBsonComparator;
+
+public class ShardKeyRangeFilterTest {
+
+	private static final Map<String, BsonType> TYPES = Map.of("minKey", BsonType.MIN_KEY, "null", BsonType.NULL,
+			"int", BsonType.INT32, "long", BsonType.INT64, "double", BsonType.DOUBLE, "string", BsonType.STRING,
+			"objectId", BsonType.OBJECT_ID, "bool", BsonType.BOOLEAN, "maxKey", BsonType.MAX_KEY);
+
+	private static final List<BsonValue> VALUES = List.of(new BsonMinKey(), BsonNull.VALUE, new BsonInt32(-1),
+			new BsonInt32(0), new BsonInt64(5), new BsonDouble(7.5), new BsonInt32(100), new BsonString(""),
+			new BsonString("m"), new BsonString("z"), new BsonObjectId(new ObjectId("5f0000000000000000000000")),
+			BsonBoolean.FALSE, new BsonMaxKey());
+
+	/**
+	 * Query matching as the server does it for the operators the filter uses: comparisons
+	 * only within a type bracket, {$eq: null} matching missing fields.
+	 */
+	private static boolean matches(BsonDocument doc, BsonDocument filter) {
+		for (Map.Entry<String, BsonValue> e : filter.entrySet()) {
+			String key = e.getKey();
+			if (key.equals("$and")) {
+				for (BsonValue f : e.getValue().asArray()) {
+					if (!matches(doc, f.asDocument())) {
+						return false;
+					}
+				}
+			} else if (key.equals("$or")) {
+				boolean any = false;
+				for (BsonValue f : e.getValue().asArray()) {
+					any |= matches(doc, f.asDocument());
+				}
+				if (!any) {
+					return false;
+				}
+			} else if (key.equals("$expr")) {
+				if (!e.getValue().asBoolean().getValue()) {
+					return false;
+				}
+			} else if (!matchesField(doc.get(key), e.getValue().asDocument())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean matchesField(BsonValue value, BsonDocument ops) {
+		for (Map.Entry<String, BsonValue> op : ops.entrySet()) {
+			BsonValue arg = op.getValue();
+			boolean result;
+			switch (op.getKey()) {
+			case "$not":
+				result = !matchesField(value, arg.asDocument());
+				break;
+			case "$type":
+				result = false;
+				List<BsonValue> aliases = arg.isArray() ? arg.asArray() : List.of(arg);
+				for (BsonValue alias : aliases) {
+					result |= value != null && TYPES.get(alias.asString().getValue()) == value.getBsonType();
+				}
+				break;
+			case "$eq":
+				if (arg.isNull()) {
+					result = value == null || value.isNull();
+				} else {
+					Integer eq = value == null ? null : compareInBracket(value, arg);
+					result = eq != null && eq == 0;
+				}
+				break;
+			default:
+				Integer cmp = value == null ? null : compareInBracket(value, arg);
+				if (cmp == null) {
+					result = false;
+				} else if (op.getKey().equals("$gt")) {
+					result = cmp > 0;
+				} else if (op.getKey().equals("$gte")) {
+					result = cmp >= 0;
+				} else {
+					result = cmp < 0;
+				}
+			}
+			if (!result) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static Integer compareInBracket(BsonValue value, BsonValue arg) {
+		if (CanonicalBsonComparator.typeBracket(value.getBsonType()) != CanonicalBsonComparator
+				.typeBracket(arg.getBsonType())) {
+			return null;
+		}
+		return CanonicalBsonComparator.INSTANCE.compare(value, arg);
+	}
+
+	/**
+	 * The filter matches exactly the documents whose key is in [min, max) in index order.
+	 */
+	private static void assertRange(List<BsonDocument> docs, List<String> fields, BsonDocument min, BsonDocument max) {
+		BsonDocument filter = ShardKeyRangeFilter.of(min, max);
+		for (BsonDocument doc : docs) {
+			BsonDocument key = new BsonDocument();
+			for (String f : fields) {
+				key.append(f, doc.containsKey(f) ? doc.get(f) : BsonNull.VALUE);
+			}
+			boolean inRange = CanonicalBsonComparator.INSTANCE.compare(key, min) >= 0
+					&& CanonicalBsonComparator.INSTANCE.compare(key, max) < 0;
+			assertEquals(inRange, matches(doc, filter), "doc " + doc.toJson() + " filter " + filter.toJson());
+		}
+	}
+
+	private static BsonDocument x(BsonValue value) {
+		return new BsonDocument("x", value);
+	}
+
+	@Test
+	public void testSingleFieldBracketedRange() {
+		assertEquals(BsonDocument.parse("{x: {$gte: 0, $lt: 100}}"),
+				ShardKeyRangeFilter.of(x(new BsonInt32(0)), x(new BsonInt32(100))));
+	}
+
+	@Test
+	public void testSingleFieldMatchesIndexOrder() {
+		List<BsonDocument> docs = new ArrayList<>();
+		docs.add(new BsonDocument());
+		for (BsonValue v : VALUES) {
+			docs.add(x(v));
+		}
+		List<String> fields = List.of("x");
+		for (BsonValue min : VALUES) {
+			for (BsonValue max : VALUES) {
+				if (CanonicalBsonComparator.INSTANCE.compare(min, max) < 0) {
+					assertRange(docs, fields, x(min), x(max));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testCompoundKeyMatchesIndexOrder() {
+		List<BsonValue> values = List.of(new BsonMinKey(), BsonNull.VALUE, new BsonInt32(0), new BsonInt64(5),
+				new BsonString("m"), new BsonMaxKey());
+		List<BsonDocument> docs = new ArrayList<>();
+		List<BsonDocument> bounds = new ArrayList<>();
+		for (BsonValue a : values) {
+			docs.add(new BsonDocument("a", a));
+			for (BsonValue b : values) {
+				BsonDocument doc = new BsonDocument("a", a).append("b", b);
+				docs.add(doc);
+				bounds.add(doc);
+			}
+		}
+		List<String> fields = List.of("a", "b");
+		for (BsonDocument min : bounds) {
+			for (BsonDocument max : bounds) {
+				if (CanonicalBsonComparator.INSTANCE.compare(min, max) < 0) {
+					assertRange(docs, fields, min, max);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testHashedKeyNotSupported() {
+		assertEquals(false, ShardKeyRangeFilter.isSupported(BsonDocument.parse("{x: 'hashed'}")));
+		assertEquals(true, ShardKeyRangeFilter.isSupported(BsonDocument.parse("{x: 1, y: 1}")));
+	}
+}
@@ -0,0 +1,93 @@
+package com.mongodb.util.bson;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.bson.BsonBinary;
+import org.bson.BsonBoolean;
+import org.bson.BsonDateTime;
+import org.bson.BsonDecimal128;
+import org.bson.BsonDocument;
+import org.bson.BsonDouble;
+import org.bson.BsonInt32;
+import org.bson.BsonInt64;
+import org.bson.BsonMaxKey;
+import org.bson.BsonMinKey;
+import org.bson.BsonNull;
+import org.bson.BsonObjectId;
+import org.bson.BsonString;
+import org.bson.BsonTimestamp;
+import org.bson.BsonValue;
+import org.bson.types.Decimal128;
+import org.junit.jupiter.api.Test;
+
+public class CanonicalBsonComparatorTest {
+
+    private static final CanonicalBsonComparator comparator = CanonicalBsonComparator.INSTANCE;
+
+    @Test
+    public void testNullAndMissing() {
+        assertEquals(0, comparator.compare(BsonNull.VALUE, BsonNull.VALUE));
+        assertEquals(0, comparator.compare(null, BsonNull.VALUE));
+        assertTrue(comparator.compare(BsonNull.VALUE, new BsonString("a")) < 0);
+        assertTrue(comparator.compare(BsonNull.VALUE, new BsonInt32(Integer.MIN_VALUE)) < 0);
+    }
+
+    @Test
+    public void testTypeBracketOrder() {
+        List<BsonValue> expected = Arrays.asList(new BsonMinKey(), BsonNull.VALUE, new BsonDouble(Double.NaN),
+                new BsonInt64(-5), new BsonInt32(3), new BsonDouble(3.5), new BsonString(""),
+                new BsonString("b"), new BsonDocument("a", new BsonInt32(1)),
+                new BsonBinary(new byte[] { 1 }), new BsonObjectId(), BsonBoolean.FALSE, BsonBoolean.TRUE,
+                new BsonDateTime(0), new BsonTimestamp(1, 1), new BsonMaxKey());
+        List<BsonValue> shuffled = new ArrayList<>(expected);
+        Collections.reverse(shuffled);
+        shuffled.sort(comparator);
+        assertEquals(expected, shuffled);
+    }
+
+    @Test
+    public void testNumbersByValue() {
+        assertEquals(0, comparator.compare(new BsonInt32(5), new BsonInt64(5)));
+        assertEquals(0, comparator.compare(new BsonInt64(5), new BsonDouble(5.0)));
+        assertEquals(0, comparator.compare(new BsonDouble(-0.0), new BsonInt32(0)));
+        assertEquals(0, comparator.compare(new BsonDecimal128(Decimal128.parse("2.50")), new BsonDouble(2.5)));
+        assertTrue(comparator.compare(new BsonInt64(Long.MAX_VALUE), new BsonDouble(9.223372036854775807E18)) < 0);
+        assertTrue(comparator.compare(new BsonDouble(2.2), new BsonInt32(3)) < 0);
+        assertTrue(comparator.compare(new BsonDouble(Double.NEGATIVE_INFINITY), new BsonInt64(Long.MIN_VALUE)) < 0);
+        assertTrue(comparator.compare(new BsonDouble(Double.NaN), new BsonDouble(Double.NEGATIVE_INFINITY)) < 0);
+    }
+
+    @Test
+    public void testStringsByUtf8Bytes() {
+        // U+FF61 is one UTF-16 unit above the surrogates, but sorts before U+1F600 in UTF-8
+        assertTrue("｡".compareTo("😀") > 0);
+        assertTrue(comparator.compare(new BsonString("｡"), new BsonString("😀")) < 0);
+        assertTrue(comparator.compare(new BsonString("ab"), new BsonString("abc")) < 0);
+    }
+
+    @Test
+    public void testBinary() {
+        // unsigned bytes
+        assertTrue(comparator.compare(new BsonBinary(new byte[] { 0x01 }), new BsonBinary(new byte[] { (byte) 0x80 })) < 0);
+        // length before content
+        assertTrue(comparator.compare(new BsonBinary(new byte[] { (byte) 0xff }), new BsonBinary(new byte[] { 0, 0 })) < 0);
+        // then subtype
+        assertTrue(comparator.compare(new BsonBinary((byte) 0, new byte[] { 9 }), new BsonBinary((byte) 4, new byte[] { 1 })) < 0);
+    }
+
+    @Test
+    public void testDocuments() {
+        BsonDocument a = new BsonDocument("a", new BsonInt32(1));
+        assertEquals(0, comparator.compare(a, new BsonDocument("a", new BsonDouble(1.0))));
+        // type bracket of the first element before its name
+        assertTrue(comparator.compare(new BsonDocument("z", new BsonInt32(1)), new BsonDocument("a", new BsonString("x"))) < 0);
+        assertTrue(comparator.compare(a, new BsonDocument("b", new BsonInt32(0))) < 0);
+        assertTrue(comparator.compare(a, a.clone().append("b", BsonNull.VALUE)) < 0);
+    }
+}
@@ -0,0 +1,90 @@
+package com.mongodb.util.bson;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
+import org.bson.RawBsonDocument;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class MappedBsonFileReaderTest {
+
+	@TempDir
+	Path tempDir;
+
+	private File writeFile(int count) throws IOException {
+		File file = tempDir.resolve("oplog.bson").toFile();
+		try (OutputStream out = Files.newOutputStream(file.toPath())) {
+			for (int i = 0; i < count; i++) {
+				// vary the sizes so split points do not line up with a fixed stride
+				BsonStreamUtil.writeDocument(out, new BsonDocument("i", new BsonInt32(i))
+						.append("ns", new BsonString(i % 3 == 0 ? "config.x" : "db.c"))
+						.append("pad", new BsonString("x".repeat(i % 50))));
+			}
+		}
+		return file;
+	}
+
+	private static int i(RawBsonDocument doc) {
+		return doc.getInt32("i").getValue();
+	}
+
+	@Test
+	public void testSplitsAndOrderedParallelRead() throws IOException {
+		File file = writeFile(5000);
+		try (MappedBsonFileReader reader = new MappedBsonFileReader(file)) {
+			List<Integer> all = new ArrayList<>();
+			reader.forEach(null, doc -> all.add(i(doc)));
+			assertEquals(5000, all.size());
+			assertEquals(4999, (int) all.get(4999));
+
+			List<MappedBsonFileReader.Split> splits = reader.split(4);
+			assertEquals(4, splits.size());
+			assertEquals(0, splits.get(0).getStart());
+			assertEquals(file.length(), splits.get(3).getEnd());
+			int total = 0;
+			for (int s = 0; s < splits.size(); s++) {
+				if (s > 0) {
+					assertEquals(splits.get(s - 1).getEnd(), splits.get(s).getStart());
+				}
+				List<Integer> docs = new ArrayList<>();
+				splits.get(s).forEach(null, doc -> docs.add(i(doc)));
+				total += docs.size();
+			}
+			assertEquals(5000, total);
+
+			List<Integer> filtered = new ArrayList<>();
+			reader.forEachParallel(4, doc -> !doc.getString("ns").getValue().startsWith("config."),
+					doc -> filtered.add(i(doc)));
+			List<Integer> expected = new ArrayList<>();
+			for (int i = 0; i < 5000; i++) {
+				if (i % 3 != 0) {
+					expected.add(i);
+				}
+			}
+			assertEquals(expected, filtered);
+		}
+	}
+
+	@Test
+	public void testTruncatedFile() throws IOException {
+		File file = writeFile(10);
+		byte[] bytes = Files.readAllBytes(file.toPath());
+		Files.write(file.toPath(), Arrays.copyOf(bytes, bytes.length - 3));
+		try (MappedBsonFileReader reader = new MappedBsonFileReader(file)) {
+			assertThrows(IOException.class, () -> reader.forEachParallel(2, null, doc -> {}));
+		}
+	}
+}